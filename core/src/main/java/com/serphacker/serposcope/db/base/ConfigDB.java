@@ -46,6 +46,8 @@ public class ConfigDB extends AbstractDB {
     
     public final static String APP_PRUNE_RUNS = "app.prune.runs";
     
+    public final static String APP_PROXY_JUDGE_URL = "app.proxy.judgeurl";
+    
     QConfig t_cfg = QConfig.config;
     
     public void update(String name, String value){
@@ -152,6 +154,8 @@ public class ConfigDB extends AbstractDB {
         
         config.setPruneRuns(getInt(APP_PRUNE_RUNS, Config.DEFAULT_PRUNE_RUNS));
         
+        config.setProxyJudgeUrl(get(APP_PROXY_JUDGE_URL, null));
+        
         return config;
     }
     
@@ -175,6 +179,8 @@ public class ConfigDB extends AbstractDB {
         update(APP_DISPLAY_GOOGLE_TARGET, config.getDisplayGoogleTarget());
         
         updateInt(APP_PRUNE_RUNS, config.getPruneRuns());
+        
+        update(APP_PROXY_JUDGE_URL, config.getProxyJudgeUrl());
     }
     
 }
@@ -10,11 +10,17 @@ package com.serphacker.serposcope.db.base;
 import com.google.common.io.ByteStreams;
 import com.google.inject.Singleton;
 import com.serphacker.serposcope.db.AbstractDB;
+import com.serphacker.serposcope.db.google.GoogleRankSeriesDB;
+import com.serphacker.serposcope.db.google.GoogleSerpDB;
+import com.serphacker.serposcope.db.google.GoogleUrlDB;
 import com.serphacker.serposcope.scraper.google.GoogleCountryCode;
 import java.io.InputStream;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import javax.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,7 +29,7 @@ import org.slf4j.LoggerFactory;
 @Singleton
 public class MigrationDB extends AbstractDB {
     
-    public final static int LAST_DB_VERSION = 7;
+    public final static int LAST_DB_VERSION = 12;
     
     public final static String[] DB_SCHEMA_FILES = new String[]{
         "/db/00-base.h2.sql",
@@ -32,12 +38,21 @@ public class MigrationDB extends AbstractDB {
     
     public final static String[] TABLES = new String[]{
         "CONFIG", "USER", "GROUP", "EVENT", "USER_GROUP", "RUN", "PROXY",
-        "GOOGLE_SEARCH", "GOOGLE_SERP", "GOOGLE_SEARCH_GROUP", "GOOGLE_TARGET", "GOOGLE_RANK", "GOOGLE_RANK_BEST", "GOOGLE_TARGET_SUMMARY"
+        "GOOGLE_SEARCH", "GOOGLE_URL", "GOOGLE_SERP", "GOOGLE_SEARCH_GROUP", "GOOGLE_TARGET", "GOOGLE_RANK", "GOOGLE_RANK_BEST", "GOOGLE_RANK_SERIES", "GOOGLE_TARGET_SUMMARY"
     };    
     
     @Inject
     ConfigDB config;
     
+    @Inject
+    GoogleRankSeriesDB rankSeries;
+    
+    @Inject
+    GoogleUrlDB urlDB;
+    
+    @Inject
+    GoogleSerpDB serpDB;
+    
     private static final Logger LOG = LoggerFactory.getLogger(MigrationDB.class);
     
     public boolean isDbCreated() throws Exception {
@@ -64,6 +79,7 @@ public class MigrationDB extends AbstractDB {
     }
     
     protected void recreateDb(String[] resources) throws Exception {
+        urlDB.clearCache();
         try(
             Connection con = ds.getConnection();
             Statement stmt = con.createStatement()
@@ -75,6 +91,8 @@ public class MigrationDB extends AbstractDB {
     }
     
     public void migrateIfNeeded() throws Exception {
+        // GOOGLE_URL may have been imported
+        urlDB.clearCache();
         int dbVersion = config.getInt(ConfigDB.APP_DBVERSION, 0);
         if(dbVersion >= LAST_DB_VERSION){
             LOG.info("database up to date");
@@ -108,6 +126,15 @@ public class MigrationDB extends AbstractDB {
                         case 6:
                             upgradeFromV6(stmt);
                             break;
+                        case 9:
+                            upgradeFromV9();
+                            break;
+                        case 10:
+                            upgradeFromV10(stmt);
+                            break;
+                        case 11:
+                            upgradeFromV11(stmt);
+                            break;
                     }
                 }catch(Exception ex){
                     con.rollback();
@@ -196,4 +223,191 @@ public class MigrationDB extends AbstractDB {
         stmt.executeUpdate("insert into `CONFIG` values ('app.dbversion','7') on duplicate key update `value` = '7';");
     }    
     
+    protected void upgradeFromV9() throws Exception {
+        // rank history of the existing runs
+        if(!rankSeries.rebuild()){
+            throw new Exception("failed to build GOOGLE_RANK_SERIES");
+        }
+    }
+    
+    /**
+     * the rows are converted on other connections so the migration can't be rolled back, each step
+     * checks what is already done and the migration resumes after a failure
+     */
+    protected void upgradeFromV10(Statement stmt) throws Exception {
+        Connection con = stmt.getConnection();
+        if(!hasTable(con, "GOOGLE_URL")){
+            stmt.executeUpdate(
+                "create table `GOOGLE_URL` (" + 
+                "    id int primary key auto_increment," + 
+                "    hash int not null," + 
+                "    url varchar(2048) not null" + 
+                ") engine = innodb default charset=utf8 /*! collate utf8_bin */;"
+            );
+        }
+        if(!hasIndex(con, "GOOGLE_URL", "GOOGLE_URL_HASH")){
+            stmt.executeUpdate("create index GOOGLE_URL_HASH on `GOOGLE_URL`(hash);");
+        }
+        for (String table : new String[]{"GOOGLE_RANK", "GOOGLE_RANK_BEST"}) {
+            if(!hasColumn(con, table, "url_id")){
+                stmt.executeUpdate("alter table `" + table + "` add column `url_id` int;");
+            }
+            if(!hasForeignKey(con, table, "url_id")){
+                stmt.executeUpdate("alter table `" + table + "` add foreign key (`url_id`) references `GOOGLE_URL`(id);");
+            }
+        }
+        con.commit();
+        
+        // serps and ranks reference GOOGLE_URL
+        if(serpDB.rewriteAll() < 0){
+            throw new Exception("failed to rewrite GOOGLE_SERP");
+        }
+        
+        try(Connection conRW = ds.getConnection()){
+            if(hasColumn(conRW, "GOOGLE_RANK", "url")){
+                for (Integer runId : selectIds(conRW, "select distinct `run_id` from `GOOGLE_RANK` where `url_id` is null;")) {
+                    upgradeUrls(conRW, 
+                        "select `group_id`, `google_target_id`, `google_search_id`, `url` from `GOOGLE_RANK` " + 
+                        "where `run_id` = " + runId + " and `url` is not null and `url_id` is null;",
+                        "update `GOOGLE_RANK` set `url_id` = ? " + 
+                        "where `run_id` = " + runId + " and `group_id` = ? and `google_target_id` = ? and `google_search_id` = ?;"
+                    );
+                }
+                stmt.executeUpdate("alter table `GOOGLE_RANK` drop column `url`;");
+            }
+            if(hasColumn(conRW, "GOOGLE_RANK_BEST", "url")){
+                for (Integer groupId : selectIds(conRW, "select distinct `group_id` from `GOOGLE_RANK_BEST` where `url_id` is null;")) {
+                    upgradeUrls(conRW, 
+                        "select `group_id`, `google_target_id`, `google_search_id`, `url` from `GOOGLE_RANK_BEST` " + 
+                        "where `group_id` = " + groupId + " and `url` is not null and `url_id` is null;",
+                        "update `GOOGLE_RANK_BEST` set `url_id` = ? " + 
+                        "where `group_id` = ? and `google_target_id` = ? and `google_search_id` = ?;"
+                    );
+                }
+                stmt.executeUpdate("alter table `GOOGLE_RANK_BEST` drop column `url`;");
+            }
+        }
+        
+        stmt.executeUpdate("insert into `CONFIG` values ('app.dbversion','11') on duplicate key update `value` = '11';");
+    }
+    
+    protected void upgradeFromV11(Statement stmt) throws Exception {
+        Connection con = stmt.getConnection();
+        if(!hasColumn(con, "GOOGLE_SERP", "base_run_id")){
+            stmt.executeUpdate("alter table `GOOGLE_SERP` add column `base_run_id` int default null;");
+        }
+        if(!hasIndex(con, "GOOGLE_SERP", "GOOGLE_SERP_SEARCH_RUN")){
+            stmt.executeUpdate("create index GOOGLE_SERP_SEARCH_RUN on `GOOGLE_SERP`(google_search_id, run_id);");
+        }
+        if(!hasIndex(con, "GOOGLE_SERP", "GOOGLE_SERP_BASE_RUN")){
+            stmt.executeUpdate("create index GOOGLE_SERP_BASE_RUN on `GOOGLE_SERP`(base_run_id);");
+        }
+        stmt.executeUpdate("insert into `CONFIG` values ('app.dbversion','12') on duplicate key update `value` = '12';");
+    }
+    
+    /**
+     * @return the name of the table as stored by the database, null if it doesn't exist
+     */
+    protected String tableName(Connection con, String table) throws Exception {
+        try(ResultSet rs = con.getMetaData().getTables(con.getCatalog(), null, "%", null)){
+            while(rs.next()){
+                if(table.equalsIgnoreCase(rs.getString("TABLE_NAME"))){
+                    return rs.getString("TABLE_NAME");
+                }
+            }
+        }
+        return null;
+    }
+    
+    protected boolean hasTable(Connection con, String table) throws Exception {
+        return tableName(con, table) != null;
+    }
+    
+    protected boolean hasColumn(Connection con, String table, String column) throws Exception {
+        try(
+            Statement stmtRO = con.createStatement(); 
+            ResultSet rs = stmtRO.executeQuery("select * from `" + table + "` where 1 = 0;")
+        ){
+            for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
+                if(column.equalsIgnoreCase(rs.getMetaData().getColumnName(i))){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    protected boolean hasIndex(Connection con, String table, String index) throws Exception {
+        String name = tableName(con, table);
+        if(name == null){
+            return false;
+        }
+        try(ResultSet rs = con.getMetaData().getIndexInfo(con.getCatalog(), null, name, false, false)){
+            while(rs.next()){
+                if(index.equalsIgnoreCase(rs.getString("INDEX_NAME"))){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    protected boolean hasForeignKey(Connection con, String table, String column) throws Exception {
+        String name = tableName(con, table);
+        if(name == null){
+            return false;
+        }
+        try(ResultSet rs = con.getMetaData().getImportedKeys(con.getCatalog(), null, name)){
+            while(rs.next()){
+                if(column.equalsIgnoreCase(rs.getString("FKCOLUMN_NAME"))){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    protected List<Integer> selectIds(Connection con, String select) throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        try(Statement stmtRO = con.createStatement(); ResultSet rs = stmtRO.executeQuery(select)){
+            while(rs.next()){
+                ids.add(rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+    
+    /**
+     * @param select (group_id, google_target_id, google_search_id, url) of a chunk of rows
+     * @param update sets the url id of a row from (url_id, group_id, google_target_id, google_search_id)
+     */
+    protected void upgradeUrls(Connection con, String select, String update) throws Exception {
+        List<int[]> keys = new ArrayList<>();
+        List<String> urls = new ArrayList<>();
+        try(Statement stmtRO = con.createStatement(); ResultSet rs = stmtRO.executeQuery(select)){
+            while(rs.next()){
+                keys.add(new int[]{rs.getInt(1), rs.getInt(2), rs.getInt(3)});
+                urls.add(rs.getString(4));
+            }
+        }
+        if(urls.isEmpty()){
+            return;
+        }
+        
+        int[] urlIds = urlDB.getIds(urls.toArray(new String[0]));
+        try(PreparedStatement ps = con.prepareStatement(update)){
+            for (int i = 0; i < urlIds.length; i++) {
+                if(urlIds[i] == 0){
+                    throw new Exception("failed to store url " + urls.get(i));
+                }
+                ps.setInt(1, urlIds[i]);
+                ps.setInt(2, keys.get(i)[0]);
+                ps.setInt(3, keys.get(i)[1]);
+                ps.setInt(4, keys.get(i)[2]);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+    
 }
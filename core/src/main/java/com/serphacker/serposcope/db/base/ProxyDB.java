@@ -96,6 +96,55 @@ public class ProxyDB extends AbstractDB {
         return updated;
     }        
     
+    /**
+     * batch update of the status, last check and remote ip of the proxies
+     */
+    public boolean updateChecks(Collection<Proxy> proxies){
+        if(proxies.isEmpty()){
+            return false;
+        }
+        
+        try(Connection con = ds.getConnection()){
+            SQLUpdateClause update = new SQLUpdateClause(con, dbTplConf, t_proxy);
+            for (Proxy proxy : proxies) {
+                update
+                    .set(t_proxy.status, (byte)proxy.getStatus().ordinal())
+                    .set(t_proxy.lastCheck, proxy.getLastCheck() == null ? null : Timestamp.valueOf(proxy.getLastCheck()))
+                    .set(t_proxy.remoteIp, proxy.getRemoteip())
+                    .where(t_proxy.id.eq(proxy.getId()))
+                    .addBatch();
+            }
+            return update.execute() > 0;
+        } catch(Exception ex){
+            LOG.error("SQL Error", ex);
+        }
+        return false;
+    }
+    
+    public boolean updateHealth(Collection<Proxy> proxies){
+        if(proxies.isEmpty()){
+            return false;
+        }
+        
+        try(Connection con = ds.getConnection()){
+            SQLUpdateClause update = new SQLUpdateClause(con, dbTplConf, t_proxy);
+            for (Proxy proxy : proxies) {
+                update
+                    .set(t_proxy.successCount, proxy.getSuccessCount())
+                    .set(t_proxy.failureCount, proxy.getFailureCount())
+                    .set(t_proxy.captchaCount, proxy.getCaptchaCount())
+                    .set(t_proxy.latencyMs, proxy.getLatencyMS())
+                    .set(t_proxy.score, proxy.getScore())
+                    .where(t_proxy.id.eq(proxy.getId()))
+                    .addBatch();
+            }
+            return update.execute() > 0;
+        } catch(Exception ex){
+            LOG.error("SQL Error", ex);
+        }
+        return false;
+    }
+    
     public List<Proxy> list(){
         List<Proxy> proxies = new ArrayList<>();
         
@@ -141,7 +190,7 @@ public class ProxyDB extends AbstractDB {
             proxyStatus = Proxy.Status.values()[tuple.get(t_proxy.status)];
         }
         
-        return new Proxy(
+        Proxy proxy = new Proxy(
             tuple.get(t_proxy.id),
             Proxy.Type.values()[tuple.get(t_proxy.type)],
             tuple.get(t_proxy.ip),
@@ -152,6 +201,16 @@ public class ProxyDB extends AbstractDB {
             tuple.get(t_proxy.lastCheck) == null ? null : tuple.get(t_proxy.lastCheck).toLocalDateTime(),
             proxyStatus
         );
+        proxy.setSuccessCount(orZero(tuple.get(t_proxy.successCount)));
+        proxy.setFailureCount(orZero(tuple.get(t_proxy.failureCount)));
+        proxy.setCaptchaCount(orZero(tuple.get(t_proxy.captchaCount)));
+        proxy.setLatencyMS(orZero(tuple.get(t_proxy.latencyMs)));
+        proxy.setScore(orZero(tuple.get(t_proxy.score)));
+        return proxy;
+    }
+    
+    protected static int orZero(Integer value){
+        return value == null ? 0 : value;
     }
     
 }
@@ -8,9 +8,11 @@
 
 package com.serphacker.serposcope.db.base;
 
+import com.google.inject.Inject;
 import com.querydsl.sql.SQLQuery;
 import com.querydsl.sql.dml.SQLDeleteClause;
 import com.serphacker.serposcope.db.AbstractDB;
+import com.serphacker.serposcope.db.google.GoogleSerpDB;
 import com.serphacker.serposcope.querybuilder.QGoogleRank;
 import com.serphacker.serposcope.querybuilder.QGoogleSerp;
 import com.serphacker.serposcope.querybuilder.QGoogleTargetSummary;
@@ -25,6 +27,9 @@ public class PruneDB extends AbstractDB {
     QGoogleSerp t_serp = QGoogleSerp.googleSerp;
     QGoogleTargetSummary t_target_summary = QGoogleTargetSummary.googleTargetSummary;
     
+    @Inject
+    GoogleSerpDB serpDB;
+    
     public long prune(int maxRuns){
         
         if(maxRuns <= 0){
@@ -57,6 +62,7 @@ public class PruneDB extends AbstractDB {
                 .fetch();
             
             new SQLDeleteClause(con, dbTplConf, t_google_rank).where(t_google_rank.runId.in(runIds)).execute();
+            serpDB.rebase(con, runIds);
             new SQLDeleteClause(con, dbTplConf, t_serp).where(t_serp.runId.in(runIds)).execute();
             new SQLDeleteClause(con, dbTplConf, t_target_summary).where(t_target_summary.runId.in(runIds)).execute();
             return new SQLDeleteClause(con, dbTplConf, t_run).where(t_run.id.in(runIds)).execute();
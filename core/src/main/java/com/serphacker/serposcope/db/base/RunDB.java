@@ -151,6 +151,20 @@ public class RunDB extends AbstractDB {
         return updated;        
     }
     
+    public boolean updateThreads(Run run){
+        boolean updated = false;
+        try(Connection conn = ds.getConnection()){
+            updated = new SQLUpdateClause(conn, dbTplConf, t_run)
+                .set(t_run.threads, run.getThreads())
+                .set(t_run.threadsLog, run.getThreadsLog())
+                .where(t_run.id.eq(run.getId()))
+                .execute() == 1;
+        }catch(Exception ex){
+            LOG.error("SQL error", ex);
+        }
+        return updated;        
+    }
+    
     public void delete(int runId){
         try(Connection conn = ds.getConnection()){
             new SQLDeleteClause(conn, dbTplConf, t_run).where(t_run.id.eq(runId)).execute();
@@ -417,6 +431,8 @@ public class RunDB extends AbstractDB {
         run.setErrors(tuple.get(t_run.errors));
         run.setCaptchas(tuple.get(t_run.captchas));
         run.setMode(Run.Mode.values()[tuple.get(t_run.mode)]);
+        run.setThreads(tuple.get(t_run.threads) == null ? 0 : tuple.get(t_run.threads));
+        run.setThreadsLog(tuple.get(t_run.threadsLog));
         
         return run;
     }
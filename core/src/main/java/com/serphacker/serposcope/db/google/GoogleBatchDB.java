@@ -0,0 +1,52 @@
+/* 
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ * 
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.db.google;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.serphacker.serposcope.db.AbstractDB;
+import com.serphacker.serposcope.models.google.GoogleBest;
+import com.serphacker.serposcope.models.google.GoogleRank;
+import com.serphacker.serposcope.models.google.GoogleSerp;
+import java.sql.Connection;
+import java.util.Collection;
+
+/**
+ * writes the serps, ranks and bests of several searches in a single transaction
+ */
+@Singleton
+public class GoogleBatchDB extends AbstractDB {
+    
+    @Inject
+    GoogleSerpDB serpDB;
+    
+    @Inject
+    GoogleRankDB rankDB;
+    
+    public boolean insert(Collection<GoogleSerp> serps, Collection<GoogleRank> ranks, Collection<GoogleBest> bests){
+        try(Connection con = ds.getConnection()){
+            con.setAutoCommit(false);
+            try {
+                serpDB.insert(con, serps);
+                rankDB.insert(con, ranks);
+                rankDB.insertBest(con, bests);
+                con.commit();
+                return true;
+            } catch(Exception ex){
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch(Exception ex){
+            LOG.error("SQL error", ex);
+        }
+        return false;
+    }
+    
+}
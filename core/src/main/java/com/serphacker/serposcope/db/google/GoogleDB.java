@@ -28,10 +28,16 @@ public class GoogleDB {
     @Inject
     public GoogleRankDB rank;
     
+    @Inject
+    public GoogleRankSeriesDB rankSeries;
+    
     @Inject
     public GoogleTargetSummaryDB targetSummary;
     
     @Inject
     public GoogleSerpRescanDB serpRescan;
     
+    @Inject
+    public GoogleBatchDB batch;
+    
 }
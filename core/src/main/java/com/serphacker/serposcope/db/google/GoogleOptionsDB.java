@@ -20,7 +20,12 @@ public class GoogleOptionsDB {
     private final static String MIN_PAUSE_BETWEEN_PAGE_SEC = "google.min_pause_between_page_sec";
     private final static String MAX_PAUSE_BETWEEN_PAGE_SEC = "google.max_pause_between_page_sec";    
     private final static String MAX_THREADS = "google.maxThreads";
+    private final static String MIN_THREADS = "google.minThreads";
+    private final static String HEDGE_PERCENT = "google.hedgePercent";
     private final static String FETCH_RETRY = "google.fetchRetry";    
+    private final static String PROXY_REQUESTS_PER_MINUTE = "google.proxyRequestsPerMinute";
+    private final static String THREAD_PER_PROXY = "google.threadPerProxy";
+    private final static String SERP_KEYFRAME_INTERVAL = "google.serpKeyframeInterval";
     
     private final static String DEFAULT_DATACENTER = "google.default_datacenter";
     private final static String DEFAULT_DEVICE = "google.default.device";
@@ -39,7 +44,12 @@ public class GoogleOptionsDB {
         options.setMinPauseBetweenPageSec(configDB.getInt(MIN_PAUSE_BETWEEN_PAGE_SEC, options.getMinPauseBetweenPageSec()));
         options.setMaxPauseBetweenPageSec(configDB.getInt(MAX_PAUSE_BETWEEN_PAGE_SEC, options.getMaxPauseBetweenPageSec()));        
         options.setMaxThreads(configDB.getInt(MAX_THREADS, options.getMaxThreads()));
+        options.setMinThreads(configDB.getInt(MIN_THREADS, options.getMinThreads()));
+        options.setHedgePercent(configDB.getInt(HEDGE_PERCENT, options.getHedgePercent()));
         options.setFetchRetry(configDB.getInt(FETCH_RETRY, options.getFetchRetry()));
+        options.setProxyRequestsPerMinute(configDB.getInt(PROXY_REQUESTS_PER_MINUTE, options.getProxyRequestsPerMinute()));
+        options.setThreadPerProxy(configDB.getBoolean(THREAD_PER_PROXY, options.isThreadPerProxy()));
+        options.setSerpKeyframeInterval(configDB.getInt(SERP_KEYFRAME_INTERVAL, options.getSerpKeyframeInterval()));
         
         options.setDefaultDatacenter(configDB.get(DEFAULT_DATACENTER, options.getDefaultDatacenter()));
         options.setDefaultDevice(configDB.get(DEFAULT_DEVICE, null));
@@ -60,7 +70,12 @@ public class GoogleOptionsDB {
         configDB.updateInt(MIN_PAUSE_BETWEEN_PAGE_SEC, nullIfDefault(opts.getMinPauseBetweenPageSec(), def.getMinPauseBetweenPageSec()));
         configDB.updateInt(MAX_PAUSE_BETWEEN_PAGE_SEC, nullIfDefault(opts.getMaxPauseBetweenPageSec(), def.getMaxPauseBetweenPageSec()));
         configDB.updateInt(MAX_THREADS, nullIfDefault(opts.getMaxThreads(), def.getMaxThreads()));
+        configDB.updateInt(MIN_THREADS, nullIfDefault(opts.getMinThreads(), def.getMinThreads()));
+        configDB.updateInt(HEDGE_PERCENT, nullIfDefault(opts.getHedgePercent(), def.getHedgePercent()));
         configDB.updateInt(FETCH_RETRY, nullIfDefault(opts.getFetchRetry(), def.getFetchRetry()));
+        configDB.updateInt(PROXY_REQUESTS_PER_MINUTE, nullIfDefault(opts.getProxyRequestsPerMinute(), def.getProxyRequestsPerMinute()));
+        configDB.updateBoolean(THREAD_PER_PROXY, nullIfDefault(opts.isThreadPerProxy(), def.isThreadPerProxy()));
+        configDB.updateInt(SERP_KEYFRAME_INTERVAL, nullIfDefault(opts.getSerpKeyframeInterval(), def.getSerpKeyframeInterval()));
 
         // search
         configDB.update(DEFAULT_DATACENTER, nullIfDefault(opts.getDefaultDatacenter(), def.getDefaultDatacenter()));
@@ -75,6 +90,10 @@ public class GoogleOptionsDB {
         return (Integer)nullIfDefaultObject(value, def);
     }
     
+    protected Boolean nullIfDefault(Boolean value, Boolean def){
+        return (Boolean)nullIfDefaultObject(value, def);
+    }
+    
     protected String nullIfDefault(String value, String def){
         return (String)nullIfDefaultObject(value, def);
     }
@@ -7,10 +7,12 @@
  */
 package com.serphacker.serposcope.db.google;
 
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.mysema.commons.lang.CloseableIterator;
 import com.querydsl.core.QueryFlag;
 import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Expression;
 import com.querydsl.sql.SQLBindings;
 import com.querydsl.sql.SQLQuery;
 import com.querydsl.sql.dml.SQLDeleteClause;
@@ -23,6 +25,7 @@ import com.serphacker.serposcope.models.google.GoogleRank;
 import com.serphacker.serposcope.models.google.GoogleTarget;
 import com.serphacker.serposcope.querybuilder.QGoogleRank;
 import com.serphacker.serposcope.querybuilder.QGoogleRankBest;
+import com.serphacker.serposcope.querybuilder.QGoogleUrl;
 import java.sql.Connection;
 import java.sql.Statement;
 import java.sql.Timestamp;
@@ -40,6 +43,54 @@ public class GoogleRankDB extends AbstractDB {
 
     static QGoogleRank t_rank = QGoogleRank.googleRank;
     static QGoogleRankBest t_best = QGoogleRankBest.googleRankBest;
+    static QGoogleUrl t_url = QGoogleUrl.googleUrl;
+    
+    /**
+     * columns of GOOGLE_RANK and the url, to be read from {@link #fromRankWithUrl(SQLQuery)}
+     */
+    public final static Expression<?>[] RANK_COLUMNS = withUrl(t_rank.all());
+    
+    @Inject
+    GoogleRankSeriesDB seriesDB;
+    
+    @Inject
+    GoogleUrlDB urlDB;
+    
+    static Expression<?>[] withUrl(Expression<?>[] columns){
+        Expression<?>[] withUrl = Arrays.copyOf(columns, columns.length + 1);
+        withUrl[columns.length] = t_url.url;
+        return withUrl;
+    }
+    
+    public static <T> SQLQuery<T> fromRankWithUrl(SQLQuery<T> query){
+        return query.from(t_rank).leftJoin(t_url).on(t_url.id.eq(t_rank.urlId));
+    }
+    
+    protected Integer[] urlIds(Collection<GoogleRank> ranks){
+        String[] urls = new String[ranks.size()];
+        int i = 0;
+        for (GoogleRank rank : ranks) {
+            urls[i++] = rank.url;
+        }
+        return nullIfZero(urlDB.getIds(urls));
+    }
+    
+    protected Integer[] bestUrlIds(Collection<GoogleBest> bests){
+        String[] urls = new String[bests.size()];
+        int i = 0;
+        for (GoogleBest best : bests) {
+            urls[i++] = best.getUrl();
+        }
+        return nullIfZero(urlDB.getIds(urls));
+    }
+    
+    static Integer[] nullIfZero(int[] ids){
+        Integer[] nullable = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            nullable[i] = ids[i] == 0 ? null : ids[i];
+        }
+        return nullable;
+    }
 
     public boolean insertBest(GoogleBest best){
         boolean inserted = false;
@@ -49,7 +100,7 @@ public class GoogleRankDB extends AbstractDB {
                 .set(t_best.googleTargetId, best.getGoogleTargetId())
                 .set(t_best.googleSearchId, best.getGoogleSearchId())
                 .set(t_best.rank, best.getRank())
-                .set(t_best.url, best.getUrl())
+                .set(t_best.urlId, urlDB.getId(best.getUrl()))
                 .set(t_best.runDay, best.getRunDay() == null ? null : Timestamp.valueOf(best.getRunDay()))
                 .execute() == 1;
         } catch(Exception ex){
@@ -58,13 +109,44 @@ public class GoogleRankDB extends AbstractDB {
         return inserted;
     }
     
+    public boolean insertBest(Collection<GoogleBest> bests){
+        try(Connection con = ds.getConnection()){
+            return insertBest(con, bests);
+        } catch(Exception ex){
+            LOG.error("SQL error", ex);
+        }
+        return false;
+    }
+    
+    public boolean insertBest(Connection con, Collection<GoogleBest> bests) throws Exception {
+        if(bests.isEmpty()){
+            return false;
+        }
+        
+        Integer[] urlIds = bestUrlIds(bests);
+        int i = 0;
+        SQLMergeClause clause = new SQLMergeClause(con, dbTplConf, t_best);
+        for (GoogleBest best : bests) {
+            clause
+                .set(t_best.groupId, best.getGroupId())
+                .set(t_best.googleTargetId, best.getGoogleTargetId())
+                .set(t_best.googleSearchId, best.getGoogleSearchId())
+                .set(t_best.rank, best.getRank())
+                .set(t_best.urlId, urlIds[i++])
+                .set(t_best.runDay, best.getRunDay() == null ? null : Timestamp.valueOf(best.getRunDay()))
+                .addBatch();
+        }
+        return clause.execute() > 0;
+    }
+    
     public GoogleBest getBest(int groupId, int googleTargetId, int googleSearchId){
         GoogleBest best = null;
         
         try(Connection con = ds.getConnection()){
             Tuple tuple = new SQLQuery<Void>(con, dbTplConf)
-                .select(t_best.all())
+                .select(withUrl(t_best.all()))
                 .from(t_best)
+                .leftJoin(t_url).on(t_url.id.eq(t_best.urlId))
                 .where(t_best.groupId.eq(groupId))
                 .where(t_best.googleTargetId.eq(googleTargetId))
                 .where(t_best.googleSearchId.eq(googleSearchId))
@@ -77,7 +159,7 @@ public class GoogleRankDB extends AbstractDB {
                     tuple.get(t_best.googleSearchId),
                     tuple.get(t_best.rank),
                     tuple.get(t_best.runDay) != null ? tuple.get(t_best.runDay).toLocalDateTime() : null,
-                    tuple.get(t_best.url)
+                    tuple.get(t_url.url)
                 );
             } else {
                 best = new GoogleBest(groupId, googleTargetId, googleSearchId, (short)GoogleRank.UNRANKED, null, null);
@@ -97,94 +179,117 @@ public class GoogleRankDB extends AbstractDB {
         }
     }
     
-    public boolean insert(Collection<GoogleRank> rank) {
+    public boolean insert(Collection<GoogleRank> ranks) {
+        try(Connection con = ds.getConnection()){
+            return insert(con, ranks);
+        } catch(Exception ex){
+            LOG.error("SQL error", ex);
+        }
+        return false;
+    }
+    
+    public boolean insert(Connection con, Collection<GoogleRank> ranks) throws Exception {
+        if(ranks.isEmpty()){
+            return false;
+        }
         if(dbTplConf.getTemplates().isNativeMerge()){
-            return insertMerge(rank);
+            return insertMerge(con, ranks);
         } else {
-            return insertOnDuplicateKey(rank);
+            return insertOnDuplicateKey(con, ranks);
         }
-    }    
+    }
     
     public boolean insertMerge(Collection<GoogleRank> ranks){
         try(Connection con = ds.getConnection()){
-            SQLMergeClause clause = new SQLMergeClause(con, dbTplConf, t_rank);
-            for (GoogleRank rank : ranks) {
-                clause
-                    .set(t_rank.runId, rank.runId)
-                    .set(t_rank.groupId, rank.groupId)
-                    .set(t_rank.googleTargetId, rank.googleTargetId)
-                    .set(t_rank.googleSearchId, rank.googleSearchId)
-                    .set(t_rank.rank, rank.rank)
-                    .set(t_rank.previousRank, rank.previousRank)
-                    .set(t_rank.diff, rank.diff)
-                    .set(t_rank.url, rank.url)
-                    .addBatch();
-            }
-            return clause.execute() > 0;
+            return insertMerge(con, ranks);
         } catch(Exception ex){
             LOG.error("SQL error", ex);
         }
         return false;
     }
     
+    protected boolean insertMerge(Connection con, Collection<GoogleRank> ranks) throws Exception {
+        Integer[] urlIds = urlIds(ranks);
+        int i = 0;
+        SQLMergeClause clause = new SQLMergeClause(con, dbTplConf, t_rank);
+        for (GoogleRank rank : ranks) {
+            clause
+                .set(t_rank.runId, rank.runId)
+                .set(t_rank.groupId, rank.groupId)
+                .set(t_rank.googleTargetId, rank.googleTargetId)
+                .set(t_rank.googleSearchId, rank.googleSearchId)
+                .set(t_rank.rank, rank.rank)
+                .set(t_rank.previousRank, rank.previousRank)
+                .set(t_rank.diff, rank.diff)
+                .set(t_rank.urlId, urlIds[i++])
+                .addBatch();
+        }
+        return clause.execute() > 0;
+    }
+    
     public boolean insertOnDuplicateKey(Collection<GoogleRank> ranks){
         try(Connection con = ds.getConnection()){
-            
-            // waiting for patch https://github.com/querydsl/querydsl/issues/1921
-            /*
-            SQLInsertClause clause = new SQLInsertClause(con, dbTplConf, t_rank);
-            clause.setBatchToBulk(true);
-            for (GoogleRank rank : ranks) {
-                clause
-                    .set(t_rank.runId, rank.runId)
-                    .set(t_rank.groupId, rank.groupId)
-                    .set(t_rank.googleTargetId, rank.googleTargetId)
-                    .set(t_rank.googleSearchId, rank.googleSearchId)
-                    .set(t_rank.rank, rank.rank)
-                    .set(t_rank.previousRank, rank.previousRank)
-                    .set(t_rank.diff, rank.diff)
-                    .set(t_rank.url, rank.url)
-                    .addBatch();
-            }
-            clause.addFlag(QueryFlag.Position.END, 
-                " on duplicate key update rank = values(rank) " +
-                ", previous_rank = values(previous_rank)" + 
-                ", diff = values(diff)" + 
-                ", url = values(url)"
-            );
-            return clause.execute() > 0;
-            */
-            
-            // 
-            StringBuilder builder = new StringBuilder("INSERT INTO `GOOGLE_RANK` " + 
-                "(`RUN_ID`, `GROUP_ID`, `GOOGLE_TARGET_ID`, `GOOGLE_SEARCH_ID`, `RANK`, `PREVIOUS_RANK`, `DIFF`, `URL`) " + 
-                "VALUES ");
-            for (GoogleRank rank : ranks) {
-                builder.append("(");
-                builder.append(rank.runId).append(',');
-                builder.append(rank.groupId).append(',');
-                builder.append(rank.googleTargetId).append(',');
-                builder.append(rank.googleSearchId).append(',');
-                builder.append(rank.rank).append(',');
-                builder.append(rank.previousRank).append(',');
-                builder.append(rank.diff).append(',');
-                builder.append(dbTplConf.asLiteral(rank.url));
-                builder.append("),");
-            }
-            builder.setCharAt(builder.length()-1, ' ');
-            builder.append(" on duplicate key update rank = values(rank) " +
-                ", previous_rank = values(previous_rank)" + 
-                ", diff = values(diff)" + 
-                ", url = values(url)"
-            );
-            try(Statement stmt = con.createStatement()){
-                return stmt.executeUpdate(builder.toString()) > 0;
-            }
-            
+            return insertOnDuplicateKey(con, ranks);
         } catch(Exception ex){
             LOG.error("SQL error", ex);
         }
         return false;
+    }
+    
+    protected boolean insertOnDuplicateKey(Connection con, Collection<GoogleRank> ranks) throws Exception {
+        Integer[] urlIds = urlIds(ranks);
+        int i = 0;
+        
+        // waiting for patch https://github.com/querydsl/querydsl/issues/1921
+        /*
+        SQLInsertClause clause = new SQLInsertClause(con, dbTplConf, t_rank);
+        clause.setBatchToBulk(true);
+        for (GoogleRank rank : ranks) {
+            clause
+                .set(t_rank.runId, rank.runId)
+                .set(t_rank.groupId, rank.groupId)
+                .set(t_rank.googleTargetId, rank.googleTargetId)
+                .set(t_rank.googleSearchId, rank.googleSearchId)
+                .set(t_rank.rank, rank.rank)
+                .set(t_rank.previousRank, rank.previousRank)
+                .set(t_rank.diff, rank.diff)
+                .set(t_rank.urlId, urlIds[i++])
+                .addBatch();
+        }
+        clause.addFlag(QueryFlag.Position.END, 
+            " on duplicate key update rank = values(rank) " +
+            ", previous_rank = values(previous_rank)" + 
+            ", diff = values(diff)" + 
+            ", url_id = values(url_id)"
+        );
+        return clause.execute() > 0;
+        */
+        
+        // 
+        StringBuilder builder = new StringBuilder("INSERT INTO `GOOGLE_RANK` " + 
+            "(`RUN_ID`, `GROUP_ID`, `GOOGLE_TARGET_ID`, `GOOGLE_SEARCH_ID`, `RANK`, `PREVIOUS_RANK`, `DIFF`, `URL_ID`) " + 
+            "VALUES ");
+        for (GoogleRank rank : ranks) {
+            builder.append("(");
+            builder.append(rank.runId).append(',');
+            builder.append(rank.groupId).append(',');
+            builder.append(rank.googleTargetId).append(',');
+            builder.append(rank.googleSearchId).append(',');
+            builder.append(rank.rank).append(',');
+            builder.append(rank.previousRank).append(',');
+            builder.append(rank.diff).append(',');
+            builder.append(urlIds[i++]);
+            builder.append("),");
+        }
+        builder.setCharAt(builder.length()-1, ' ');
+        builder.append(" on duplicate key update rank = values(rank) " +
+            ", previous_rank = values(previous_rank)" + 
+            ", diff = values(diff)" + 
+            ", url_id = values(url_id)"
+        );
+        try(Statement stmt = con.createStatement()){
+            return stmt.executeUpdate(builder.toString()) > 0;
+        }
     }    
     
     public boolean insertMerge(GoogleRank rank) {
@@ -198,7 +303,7 @@ public class GoogleRankDB extends AbstractDB {
                 .set(t_rank.rank, rank.rank)
                 .set(t_rank.previousRank, rank.previousRank)
                 .set(t_rank.diff, rank.diff)
-                .set(t_rank.url, rank.url)
+                .set(t_rank.urlId, urlDB.getId(rank.url))
                 .execute() == 1;
         } catch(Exception ex){
             LOG.error("SQL error", ex);
@@ -209,6 +314,7 @@ public class GoogleRankDB extends AbstractDB {
     public boolean insertOnDuplicateKey(GoogleRank rank) {
         boolean inserted = false;
         try(Connection con = ds.getConnection()){
+            Integer urlId = urlDB.getId(rank.url);
             inserted = new SQLInsertClause(con, dbTplConf, t_rank)
                 .set(t_rank.runId, rank.runId)
                 .set(t_rank.groupId, rank.groupId)
@@ -217,12 +323,12 @@ public class GoogleRankDB extends AbstractDB {
                 .set(t_rank.rank, rank.rank)
                 .set(t_rank.previousRank, rank.previousRank)
                 .set(t_rank.diff, rank.diff)
-                .set(t_rank.url, rank.url)
+                .set(t_rank.urlId, urlId)
                 .addFlag(QueryFlag.Position.END, 
                     " on duplicate key update rank = " + rank.rank + 
                     ", previous_rank = " + rank.previousRank + 
                     ", diff = " + rank.diff +
-                    ", url = " + (rank.url == null ? "NULL" : dbTplConf.asLiteral(rank.url))
+                    ", url_id = " + urlId
                 )
                 .execute() == 1;
         } catch(Exception ex){
@@ -257,9 +363,8 @@ public class GoogleRankDB extends AbstractDB {
         
         try(Connection con = ds.getConnection()){
             
-            Tuple tuple = new SQLQuery<Void>(con, dbTplConf)
-                .select(t_rank.all())
-                .from(t_rank)
+            Tuple tuple = fromRankWithUrl(new SQLQuery<Void>(con, dbTplConf)
+                .select(RANK_COLUMNS))
                 .where(t_rank.runId.eq(runId))
                 .where(t_rank.groupId.eq(groupId))
                 .where(t_rank.googleTargetId.eq(googleTargetId))
@@ -280,9 +385,8 @@ public class GoogleRankDB extends AbstractDB {
         
         try(Connection con = ds.getConnection()){
             
-            List<Tuple> tuples = new SQLQuery<Void>(con, dbTplConf)
-                .select(t_rank.all())
-                .from(t_rank)
+            List<Tuple> tuples = fromRankWithUrl(new SQLQuery<Void>(con, dbTplConf)
+                .select(RANK_COLUMNS))
                 .where(t_rank.runId.eq(runId))
                 .where(t_rank.groupId.eq(groupId))
                 .where(t_rank.googleTargetId.eq(targetId))
@@ -313,9 +417,8 @@ public class GoogleRankDB extends AbstractDB {
         
         try(Connection con = ds.getConnection()){
             
-            SQLQuery<Tuple> query = new SQLQuery<Void>(con, dbTplConf)
-                .select(t_rank.all())
-                .from(t_rank);
+            SQLQuery<Tuple> query = fromRankWithUrl(new SQLQuery<Void>(con, dbTplConf)
+                .select(RANK_COLUMNS));
             
             if(runs != null){
                 query.where(t_rank.runId.in(runs));
@@ -346,6 +449,105 @@ public class GoogleRankDB extends AbstractDB {
         return ranks;
     }        
     
+    public interface RankConsumer {
+        void accept(int groupId, int googleTargetId, int googleSearchId, short rank);
+    }
+    
+    /**
+     * stream the ranked (group, target, search) of a run, unranked rows are skipped
+     */
+    public void streamRanked(int runId, RankConsumer callback){
+        streamRanked(runId, null, null, callback);
+    }
+    
+    /**
+     * @param groupIds only stream the ranks of these groups, null for all
+     * @param targetIds only stream the ranks of these targets, null for all
+     */
+    public void streamRanked(int runId, Collection<Integer> groupIds, Collection<Integer> targetIds, RankConsumer callback){
+        try(Connection con = ds.getConnection()){
+            
+            SQLQuery<Tuple> query = new SQLQuery<Void>(con, dbTplConf)
+                .select(t_rank.groupId, t_rank.googleTargetId, t_rank.googleSearchId, t_rank.rank)
+                .from(t_rank)
+                .where(t_rank.runId.eq(runId))
+                .where(t_rank.rank.ne((short)GoogleRank.UNRANKED));
+            
+            if(groupIds != null){
+                query.where(t_rank.groupId.in(groupIds));
+            }
+            
+            if(targetIds != null){
+                query.where(t_rank.googleTargetId.in(targetIds));
+            }
+            
+            try(CloseableIterator<Tuple> iterate = query.iterate()){
+                
+                while(iterate.hasNext()){
+                    Tuple tuple = iterate.next();
+                    Short rank = tuple.get(t_rank.rank);
+                    if(rank == null){
+                        continue;
+                    }
+                    callback.accept(
+                        tuple.get(t_rank.groupId),
+                        tuple.get(t_rank.googleTargetId),
+                        tuple.get(t_rank.googleSearchId),
+                        rank
+                    );
+                }
+            }
+            
+        } catch(Exception ex){
+            LOG.error("SQL error", ex);
+        }
+    }
+    
+    public void streamBests(RankConsumer callback){
+        streamBests(null, null, callback);
+    }
+    
+    /**
+     * @param groupIds only stream the bests of these groups, null for all
+     * @param targetIds only stream the bests of these targets, null for all
+     */
+    public void streamBests(Collection<Integer> groupIds, Collection<Integer> targetIds, RankConsumer callback){
+        try(Connection con = ds.getConnection()){
+            
+            SQLQuery<Tuple> query = new SQLQuery<Void>(con, dbTplConf)
+                .select(t_best.groupId, t_best.googleTargetId, t_best.googleSearchId, t_best.rank)
+                .from(t_best);
+            
+            if(groupIds != null){
+                query.where(t_best.groupId.in(groupIds));
+            }
+            
+            if(targetIds != null){
+                query.where(t_best.googleTargetId.in(targetIds));
+            }
+            
+            try(CloseableIterator<Tuple> iterate = query.iterate()){
+                
+                while(iterate.hasNext()){
+                    Tuple tuple = iterate.next();
+                    Short rank = tuple.get(t_best.rank);
+                    if(rank == null){
+                        continue;
+                    }
+                    callback.accept(
+                        tuple.get(t_best.groupId),
+                        tuple.get(t_best.googleTargetId),
+                        tuple.get(t_best.googleSearchId),
+                        rank
+                    );
+                }
+            }
+            
+        } catch(Exception ex){
+            LOG.error("SQL error", ex);
+        }
+    }
+    
     public boolean deleteBySearch(int groupId, int googleSearchId){
         boolean deleted = false;
         
@@ -361,6 +563,8 @@ public class GoogleRankDB extends AbstractDB {
                 .where(t_rank.googleSearchId.eq(googleSearchId))
                 .execute() > 0;
             
+            seriesDB.deleteBySearch(con, groupId, googleSearchId);
+            
         } catch(Exception ex){
             LOG.error("SQL error", ex);
         }        
@@ -383,6 +587,8 @@ public class GoogleRankDB extends AbstractDB {
                 .where(t_rank.googleTargetId.eq(googleTargetId))
                 .execute() > 0;
             
+            seriesDB.deleteByTarget(con, groupId, googleTargetId);
+            
         } catch(Exception ex){
             LOG.error("SQL error", ex);
         }        
@@ -404,6 +610,7 @@ public class GoogleRankDB extends AbstractDB {
         try(Connection con = ds.getConnection()){
             new SQLDeleteClause(con, dbTplConf, t_best).execute();
             new SQLDeleteClause(con, dbTplConf, t_rank).execute();
+            seriesDB.wipe(con);
         } catch(Exception ex){
             LOG.error("SQL error", ex);
         }
@@ -421,7 +628,7 @@ public class GoogleRankDB extends AbstractDB {
             tuple.get(t_rank.googleSearchId),
             tuple.get(t_rank.rank),
             tuple.get(t_rank.previousRank),
-            tuple.get(t_rank.url)
+            tuple.get(t_url.url)
         );
     }
     
@@ -0,0 +1,344 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.db.google;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.mysema.commons.lang.CloseableIterator;
+import com.querydsl.core.Tuple;
+import com.querydsl.sql.SQLQuery;
+import com.querydsl.sql.dml.SQLDeleteClause;
+import com.querydsl.sql.dml.SQLInsertClause;
+import com.serphacker.serposcope.db.AbstractDB;
+import com.serphacker.serposcope.db.base.ConfigDB;
+import com.serphacker.serposcope.models.google.GoogleRank;
+import com.serphacker.serposcope.models.google.GoogleRankSeries;
+import com.serphacker.serposcope.querybuilder.QGoogleRank;
+import com.serphacker.serposcope.querybuilder.QGoogleRankSeries;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import javax.sql.rowset.serial.SerialBlob;
+
+/**
+ * rank history of every (group, target, search), one row each, so a target chart is read with a
+ * single query instead of one query per run. rows are merged at the end of each run and when
+ * ranks are rescanned. ranks of deleted runs are left in the series, readers only ask for the
+ * runs they display. a run is pending until its ranks are appended, pending runs are appended
+ * again by the next task.
+ */
+@Singleton
+public class GoogleRankSeriesDB extends AbstractDB {
+
+    public final static int WRITE_BATCH_SIZE = 500;
+    public final static String PENDING_RUNS = "google.rankSeriesPendingRuns";
+
+    @Inject
+    ConfigDB configDB;
+
+    static QGoogleRankSeries t_series = QGoogleRankSeries.googleRankSeries;
+    static QGoogleRank t_rank = QGoogleRank.googleRank;
+
+    /**
+     * @return the series of the target by search id
+     */
+    public Map<Integer, GoogleRankSeries> list(int groupId, int googleTargetId){
+        Map<Integer, GoogleRankSeries> series = new HashMap<>();
+
+        try(Connection con = ds.getConnection()){
+
+            List<Tuple> tuples = new SQLQuery<Void>(con, dbTplConf)
+                .select(t_series.all())
+                .from(t_series)
+                .where(t_series.groupId.eq(groupId))
+                .where(t_series.googleTargetId.eq(googleTargetId))
+                .fetch();
+
+            for (Tuple tuple : tuples) {
+                GoogleRankSeries serie = fromTuple(tuple);
+                if(serie != null){
+                    series.put(serie.getGoogleSearchId(), serie);
+                }
+            }
+
+        } catch(Exception ex){
+            LOG.error("SQL error", ex);
+        }
+
+        return series;
+    }
+
+    /**
+     * add the ranks to their series
+     */
+    public boolean merge(Collection<GoogleRank> ranks){
+        Map<List<Integer>, List<GoogleRank>> ranksByTarget = new LinkedHashMap<>();
+        for (GoogleRank rank : ranks) {
+            ranksByTarget.computeIfAbsent(
+                Arrays.asList(rank.groupId, rank.googleTargetId), (k) -> new ArrayList<>()
+            ).add(rank);
+        }
+
+        boolean merged = true;
+        for (Map.Entry<List<Integer>, List<GoogleRank>> entry : ranksByTarget.entrySet()) {
+            merged &= merge(entry.getKey().get(0), entry.getKey().get(1), entry.getValue());
+        }
+        return merged;
+    }
+
+    protected boolean merge(int groupId, int googleTargetId, Collection<GoogleRank> ranks){
+        Map<Integer, GoogleRankSeries> series = list(groupId, googleTargetId);
+        Map<Integer, GoogleRankSeries> updated = new HashMap<>();
+        for (GoogleRank rank : ranks) {
+            GoogleRankSeries serie = series.computeIfAbsent(rank.googleSearchId,
+                (searchId) -> new GoogleRankSeries(groupId, googleTargetId, searchId));
+            serie.put(rank.runId, rank.rank);
+            updated.put(rank.googleSearchId, serie);
+        }
+        return write(updated.values());
+    }
+
+    /**
+     * append the ranks of the run to the series, the run stays pending if it fails
+     */
+    public synchronized boolean appendRun(int runId){
+        Set<Integer> pending = getPendingRuns();
+        boolean appended = append(runId);
+        if(appended ? pending.remove(runId) : pending.add(runId)){
+            setPendingRuns(pending);
+        }
+        return appended;
+    }
+
+    /**
+     * append again the runs whose append failed or never happened
+     * @return false if a run is still pending
+     */
+    public synchronized boolean appendPendingRuns(){
+        boolean appended = true;
+        for (Integer runId : getPendingRuns()) {
+            LOG.info("appending pending run {} to the rank series", runId);
+            appended &= appendRun(runId);
+        }
+        return appended;
+    }
+
+    /**
+     * mark the run as pending before its ranks are written
+     */
+    public synchronized void addPendingRun(int runId){
+        Set<Integer> pending = getPendingRuns();
+        if(pending.add(runId)){
+            setPendingRuns(pending);
+        }
+    }
+
+    public synchronized Set<Integer> getPendingRuns(){
+        Set<Integer> pending = new TreeSet<>();
+        String value = configDB.get(PENDING_RUNS, null);
+        if(value != null && !value.isEmpty()){
+            for (String runId : value.split(",")) {
+                pending.add(Integer.parseInt(runId));
+            }
+        }
+        return pending;
+    }
+
+    protected void setPendingRuns(Set<Integer> pending){
+        configDB.update(PENDING_RUNS, pending.isEmpty() ? null
+            : pending.stream().map(String::valueOf).collect(Collectors.joining(",")));
+    }
+
+    /**
+     * the run is read in primary key order
+     */
+    protected boolean append(int runId){
+        List<GoogleRank> ranks = new ArrayList<>();
+        boolean appended = true;
+
+        try(Connection con = ds.getConnection()){
+
+            try(CloseableIterator<Tuple> iterate = new SQLQuery<Void>(con, dbTplConf)
+                .select(t_rank.groupId, t_rank.googleTargetId, t_rank.googleSearchId, t_rank.rank)
+                .from(t_rank)
+                .where(t_rank.runId.eq(runId))
+                .orderBy(t_rank.groupId.asc(), t_rank.googleTargetId.asc())
+                .iterate()){
+
+                while(iterate.hasNext()){
+                    Tuple tuple = iterate.next();
+                    GoogleRank rank = new GoogleRank(runId, tuple.get(t_rank.groupId),
+                        tuple.get(t_rank.googleTargetId), tuple.get(t_rank.googleSearchId),
+                        rankOf(tuple.get(t_rank.rank)), GoogleRank.UNRANKED, null);
+
+                    if(!ranks.isEmpty() && !sameTarget(ranks.get(0), rank)){
+                        appended &= merge(ranks.get(0).groupId, ranks.get(0).googleTargetId, ranks);
+                        ranks.clear();
+                    }
+                    ranks.add(rank);
+                }
+            }
+
+            if(!ranks.isEmpty()){
+                appended &= merge(ranks.get(0).groupId, ranks.get(0).googleTargetId, ranks);
+            }
+
+        } catch(Exception ex){
+            LOG.error("SQL error", ex);
+            return false;
+        }
+
+        return appended;
+    }
+
+    /**
+     * rebuild every series from GOOGLE_RANK with one scan
+     */
+    public boolean rebuild(){
+        List<GoogleRankSeries> batch = new ArrayList<>();
+        boolean rebuilt = true;
+
+        try(Connection con = ds.getConnection()){
+
+            new SQLDeleteClause(con, dbTplConf, t_series).execute();
+
+            GoogleRankSeries serie = null;
+            try(CloseableIterator<Tuple> iterate = new SQLQuery<Void>(con, dbTplConf)
+                .select(t_rank.groupId, t_rank.googleTargetId, t_rank.googleSearchId, t_rank.runId, t_rank.rank)
+                .from(t_rank)
+                .orderBy(t_rank.groupId.asc(), t_rank.googleTargetId.asc(), t_rank.googleSearchId.asc(), t_rank.runId.asc())
+                .iterate()){
+
+                while(iterate.hasNext()){
+                    Tuple tuple = iterate.next();
+                    int groupId = tuple.get(t_rank.groupId);
+                    int targetId = tuple.get(t_rank.googleTargetId);
+                    int searchId = tuple.get(t_rank.googleSearchId);
+                    if(serie == null || serie.getGroupId() != groupId
+                        || serie.getGoogleTargetId() != targetId || serie.getGoogleSearchId() != searchId){
+                        serie = new GoogleRankSeries(groupId, targetId, searchId);
+                        batch.add(serie);
+                        if(batch.size() > WRITE_BATCH_SIZE){
+                            // the current serie is still being read
+                            rebuilt &= write(batch.subList(0, batch.size() - 1));
+                            batch.subList(0, batch.size() - 1).clear();
+                        }
+                    }
+                    serie.put(tuple.get(t_rank.runId), rankOf(tuple.get(t_rank.rank)));
+                }
+            }
+
+            rebuilt &= write(batch);
+            if(rebuilt){
+                setPendingRuns(new TreeSet<>());
+            }
+
+        } catch(Exception ex){
+            LOG.error("SQL error", ex);
+            return false;
+        }
+
+        return rebuilt;
+    }
+
+    protected boolean write(Collection<GoogleRankSeries> series){
+        if(series.isEmpty()){
+            return true;
+        }
+
+        try(Connection con = ds.getConnection()){
+            con.setAutoCommit(false);
+            try {
+                SQLDeleteClause delete = new SQLDeleteClause(con, dbTplConf, t_series);
+                for (GoogleRankSeries serie : series) {
+                    delete
+                        .where(t_series.groupId.eq(serie.getGroupId()))
+                        .where(t_series.googleTargetId.eq(serie.getGoogleTargetId()))
+                        .where(t_series.googleSearchId.eq(serie.getGoogleSearchId()))
+                        .addBatch();
+                }
+                delete.execute();
+
+                SQLInsertClause insert = new SQLInsertClause(con, dbTplConf, t_series);
+                for (GoogleRankSeries serie : series) {
+                    insert
+                        .set(t_series.groupId, serie.getGroupId())
+                        .set(t_series.googleTargetId, serie.getGoogleTargetId())
+                        .set(t_series.googleSearchId, serie.getGoogleSearchId())
+                        .set(t_series.ranks, new SerialBlob(serie.getSerializedRanks()))
+                        .addBatch();
+                }
+                insert.execute();
+                con.commit();
+                return true;
+            } catch(Exception ex){
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch(Exception ex){
+            LOG.error("SQL error", ex);
+        }
+        return false;
+    }
+
+    public boolean deleteBySearch(Connection con, int groupId, int googleSearchId){
+        return new SQLDeleteClause(con, dbTplConf, t_series)
+            .where(t_series.groupId.eq(groupId))
+            .where(t_series.googleSearchId.eq(googleSearchId))
+            .execute() > 0;
+    }
+
+    public boolean deleteByTarget(Connection con, int groupId, int googleTargetId){
+        return new SQLDeleteClause(con, dbTplConf, t_series)
+            .where(t_series.groupId.eq(groupId))
+            .where(t_series.googleTargetId.eq(googleTargetId))
+            .execute() > 0;
+    }
+
+    public void wipe(Connection con){
+        new SQLDeleteClause(con, dbTplConf, t_series).execute();
+    }
+
+    static boolean sameTarget(GoogleRank rank1, GoogleRank rank2){
+        return rank1.groupId == rank2.groupId && rank1.googleTargetId == rank2.googleTargetId;
+    }
+
+    static int rankOf(Short rank){
+        return rank == null ? GoogleRank.UNRANKED : rank;
+    }
+
+    public static GoogleRankSeries fromTuple(Tuple tuple) throws Exception {
+        if(tuple == null){
+            return null;
+        }
+
+        GoogleRankSeries series = new GoogleRankSeries(
+            tuple.get(t_series.groupId),
+            tuple.get(t_series.googleTargetId),
+            tuple.get(t_series.googleSearchId)
+        );
+
+        Blob blob = tuple.get(t_series.ranks);
+        if(blob != null){
+            series.setSerializedRanks(blob.getBytes(1, (int)blob.length()));
+        }
+        return series;
+    }
+
+}
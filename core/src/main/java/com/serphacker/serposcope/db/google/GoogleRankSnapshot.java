@@ -0,0 +1,95 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.db.google;
+
+import com.serphacker.serposcope.models.google.GoogleRank;
+import it.unimi.dsi.fastutil.longs.Long2ShortOpenHashMap;
+import java.util.Collection;
+
+/**
+ * previous run ranks and best ranks keyed by (target, search), a target belongs
+ * to a single group so the group is not part of the key.
+ * only ranked entries are stored, missing keys are unranked.
+ *
+ * not thread safe
+ */
+public class GoogleRankSnapshot {
+
+    final Long2ShortOpenHashMap previousRanks = new Long2ShortOpenHashMap();
+    final Long2ShortOpenHashMap bests = new Long2ShortOpenHashMap();
+
+    public GoogleRankSnapshot() {
+        previousRanks.defaultReturnValue((short)GoogleRank.UNRANKED);
+        bests.defaultReturnValue((short)GoogleRank.UNRANKED);
+    }
+
+    public void load(GoogleRankDB rankDB, Integer previousRunId){
+        load(rankDB, previousRunId, null, null);
+    }
+
+    /**
+     * @param groupIds only load the ranks of these groups, null for all
+     * @param targetIds only load the ranks of these targets, null for all
+     */
+    public void load(GoogleRankDB rankDB, Integer previousRunId, Collection<Integer> groupIds, Collection<Integer> targetIds){
+        if(previousRunId != null){
+            rankDB.streamRanked(previousRunId, groupIds, targetIds, (group, target, search, rank) -> putPreviousRank(target, search, rank));
+        }
+        rankDB.streamBests(groupIds, targetIds, (group, target, search, rank) -> putBest(target, search, rank));
+        previousRanks.trim();
+        bests.trim();
+    }
+
+    public static long key(int targetId, int searchId){
+        return ((long)targetId << 32) | (searchId & 0xFFFFFFFFL);
+    }
+
+    public void putPreviousRank(int targetId, int searchId, int rank){
+        if(rank == GoogleRank.UNRANKED){
+            previousRanks.remove(key(targetId, searchId));
+        } else {
+            previousRanks.put(key(targetId, searchId), (short)rank);
+        }
+    }
+
+    public int getPreviousRank(int targetId, int searchId){
+        return previousRanks.get(key(targetId, searchId));
+    }
+
+    public void putBest(int targetId, int searchId, int rank){
+        if(rank == GoogleRank.UNRANKED){
+            bests.remove(key(targetId, searchId));
+        } else {
+            bests.put(key(targetId, searchId), (short)rank);
+        }
+    }
+
+    public int getBest(int targetId, int searchId){
+        return bests.get(key(targetId, searchId));
+    }
+
+    /**
+     * @return true if rank is equal or better than the current best, the best is then updated
+     */
+    public boolean updateBest(int targetId, int searchId, int rank){
+        if(rank == GoogleRank.UNRANKED || rank > getBest(targetId, searchId)){
+            return false;
+        }
+        putBest(targetId, searchId, rank);
+        return true;
+    }
+
+    public int previousRankSize(){
+        return previousRanks.size();
+    }
+
+    public int bestSize(){
+        return bests.size();
+    }
+
+}
@@ -22,6 +22,7 @@ import com.serphacker.serposcope.querybuilder.QGoogleSerp;
 import com.serphacker.serposcope.scraper.google.GoogleCountryCode;
 import com.serphacker.serposcope.scraper.google.GoogleDevice;
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -210,6 +211,42 @@ public class GoogleSearchDB extends AbstractDB {
         return count == null ? -1l : count;
     }
     
+    public long countUnchecked(int runId){
+        Long count = null;
+        try(Connection con = ds.getConnection()){
+            count = new SQLQuery<Void>(con, dbTplConf)
+                .select(t_gsearch.count())
+                .from(t_gsearch)
+                .where(t_gsearch.id.notIn(
+                    new SQLQuery<Void>(con, dbTplConf)
+                        .select(t_gserp.googleSearchId)
+                        .from(t_gserp)
+                        .where(t_gserp.runId.eq(runId))
+                ))
+                .fetchFirst();
+        } catch(Exception ex){
+            LOG.error("SQL error", ex);
+        }
+        
+        return count == null ? -1l : count;
+    }
+    
+    /**
+     * @return the lowest and highest search id, null if there is no search
+     */
+    public int[] idRange() throws SQLException {
+        try(Connection con = ds.getConnection()){
+            Tuple tuple = new SQLQuery<Void>(con, dbTplConf)
+                .select(t_gsearch.id.min(), t_gsearch.id.max())
+                .from(t_gsearch)
+                .fetchFirst();
+            if(tuple != null && tuple.get(0, Integer.class) != null){
+                return new int[]{tuple.get(0, Integer.class), tuple.get(1, Integer.class)};
+            }
+        }
+        return null;
+    }
+    
     public Map<Integer,Integer> countByGroup(){
         Map<Integer,Integer> map = new HashMap<>();
         try(Connection con = ds.getConnection()){
@@ -297,6 +334,20 @@ public class GoogleSearchDB extends AbstractDB {
     }    
     
     public Map<Integer, GoogleSearch> mapBySearchId(Collection<Integer> searchId){
+        try {
+            return mapBySearchId(null, searchId);
+        } catch(Exception ex){
+            LOG.error("SQL error", ex);
+        }
+        return new HashMap<>();
+    }
+    
+    /**
+     * errors are thrown so a caller walking every search knows some are missing
+     * 
+     * @param uncheckedRunId only the searches among searchId which have no serp in this run, null for all
+     */
+    public Map<Integer, GoogleSearch> mapBySearchId(Integer uncheckedRunId, Collection<Integer> searchId) throws SQLException {
         Map<Integer, GoogleSearch> searches = new HashMap<>();
         
         try(Connection con = ds.getConnection()){
@@ -305,17 +356,19 @@ public class GoogleSearchDB extends AbstractDB {
                 .select(t_gsearch.all())
                 .from(t_gsearch)
                 .where(t_gsearch.id.in(searchId));
-            
-            List<Tuple> tuples = query.fetch();
-            
-            if(tuples != null){
-                for (Tuple tuple : tuples) {
-                    searches.put(tuple.get(t_gsearch.id), fromTuple(tuple));
-                }
+            if(uncheckedRunId != null){
+                query.where(t_gsearch.id.notIn(
+                    new SQLQuery<Void>(con, dbTplConf)
+                        .select(t_gserp.googleSearchId)
+                        .from(t_gserp)
+                        .where(t_gserp.runId.eq(uncheckedRunId))
+                        .where(t_gserp.googleSearchId.in(searchId))
+                ));
             }
             
-        } catch(Exception ex){
-            LOG.error("SQL error", ex);
+            for (Tuple tuple : query.fetch()) {
+                searches.put(tuple.get(t_gsearch.id), fromTuple(tuple));
+            }
         }
         
         return searches;
@@ -343,6 +396,34 @@ public class GoogleSearchDB extends AbstractDB {
         return groups;        
     }
     
+    public Map<Integer,List<Integer>> listGroups(Collection<Integer> searchIds){
+        Map<Integer,List<Integer>> groups = new HashMap<>();
+        if(searchIds.isEmpty()){
+            return groups;
+        }
+        
+        try(Connection con = ds.getConnection()){
+            
+            List<Tuple> tuples = new SQLQuery<Void>(con, dbTplConf)
+                .select(t_ggroup.googleSearchId, t_ggroup.groupId)
+                .from(t_ggroup)
+                .where(t_ggroup.googleSearchId.in(searchIds))
+                .fetch();
+            
+            if(tuples != null){
+                for (Tuple tuple : tuples) {
+                    groups.computeIfAbsent(tuple.get(t_ggroup.googleSearchId), (k) -> new ArrayList<>())
+                        .add(tuple.get(t_ggroup.groupId));
+                }
+            }
+            
+        } catch(Exception ex){
+            LOG.error("SQL error", ex);
+        }
+        
+        return groups;
+    }
+    
     GoogleSearch fromTuple(Tuple tuple){
         if(tuple == null){
             return null;
@@ -7,44 +7,76 @@
  */
 package com.serphacker.serposcope.db.google;
 
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.mysema.commons.lang.CloseableIterator;
 import com.querydsl.core.Tuple;
 import com.querydsl.sql.SQLQuery;
 import com.querydsl.sql.dml.SQLDeleteClause;
 import com.querydsl.sql.dml.SQLInsertClause;
+import com.querydsl.sql.dml.SQLUpdateClause;
 import com.serphacker.serposcope.db.AbstractDB;
+import com.serphacker.serposcope.models.base.Group;
 import com.serphacker.serposcope.models.google.GoogleSerp;
+import com.serphacker.serposcope.models.google.GoogleSerpView;
 import com.serphacker.serposcope.querybuilder.QGoogleSerp;
-import java.nio.ByteBuffer;
+import com.serphacker.serposcope.querybuilder.QRun;
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 import javax.sql.rowset.serial.SerialBlob;
-import net.jpountz.lz4.LZ4Compressor;
-import net.jpountz.lz4.LZ4Factory;
-import net.jpountz.lz4.LZ4FastDecompressor;
 
+/**
+ * serps are stored either in full or, when a keyframe interval is set, as a delta against the
+ * previous serp of the search (base_run_id). a full serp is written every keyframe interval runs
+ * so a serp never needs more than interval - 1 deltas to be decoded.
+ * 
+ * serps are compressed with a SerpCodec, lz4 by default. the format byte of each blob tells how
+ * to decompress it.
+ */
 @Singleton
 public class GoogleSerpDB extends AbstractDB {
     
+    public final static int REWRITE_CHUNK_SIZE = 500;
+    public final static int DECODED_CACHE_SIZE = 64;
+    
     QGoogleSerp t_serp = QGoogleSerp.googleSerp;
+    QRun t_run = QRun.run;
+    
+    @Inject
+    GoogleUrlDB urlDB;
+    
+    volatile int keyframeInterval = 0;
     
-    LZ4Factory factory = LZ4Factory.fastestInstance();
-    LZ4Compressor compressor = factory.fastCompressor();
-    LZ4FastDecompressor decompressor = factory.fastDecompressor();    
+    final Lz4SerpCodec lz4 = new Lz4SerpCodec();
+    // codec of the serps written
+    volatile SerpCodec codec = lz4;
+    
+    // buffers of the serp views, reused by the streams of a thread
+    final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
 
     public boolean insert(GoogleSerp serp){
         boolean inserted = false;
         
         try(Connection con = ds.getConnection()){
             
+            Encoded encoded = encode(new Decoder(con), serp);
             inserted = new SQLInsertClause(con, dbTplConf, t_serp)
                 .set(t_serp.runId, serp.getRunId())
                 .set(t_serp.googleSearchId, serp.getGoogleSearchId())
                 .set(t_serp.runDay, Timestamp.valueOf(serp.getRunDay()))
-                .set(t_serp.serp, new SerialBlob(compress(serp.getSerializedEntries())))
+                .set(t_serp.serp, new SerialBlob(encoded.data))
+                .set(t_serp.baseRunId, encoded.baseRunId)
                 .execute() == 1;
 
         } catch(Exception ex){
@@ -54,8 +86,188 @@ public class GoogleSerpDB extends AbstractDB {
         return inserted;
     }
     
+    public boolean insert(Collection<GoogleSerp> serps){
+        try(Connection con = ds.getConnection()){
+            return insert(con, serps);
+        } catch(Exception ex){
+            LOG.error("SQL error", ex);
+        }
+        return false;
+    }
+    
+    public boolean insert(Connection con, Collection<GoogleSerp> serps) throws Exception {
+        if(serps.isEmpty()){
+            return false;
+        }
+        
+        Decoder decoder = new Decoder(con);
+        int interval = keyframeInterval;
+        Map<Long,Tuple> previous = interval > 1 ? previous(decoder, serps, interval) : null;
+        SQLInsertClause clause = new SQLInsertClause(con, dbTplConf, t_serp);
+        for (GoogleSerp serp : serps) {
+            Encoded encoded = previous == null ? encode(decoder, serp, interval, null) :
+                encode(decoder, serp, interval, previous.get(decoder.key(serp.getGoogleSearchId(), serp.getRunId())));
+            clause
+                .set(t_serp.runId, serp.getRunId())
+                .set(t_serp.googleSearchId, serp.getGoogleSearchId())
+                .set(t_serp.runDay, Timestamp.valueOf(serp.getRunDay()))
+                .set(t_serp.serp, new SerialBlob(encoded.data))
+                .set(t_serp.baseRunId, encoded.baseRunId)
+                .addBatch();
+        }
+        return clause.execute() > 0;
+    }
+    
+    static class Encoded {
+        final byte[] data;
+        final Integer baseRunId;
+
+        Encoded(byte[] data, Integer baseRunId) {
+            this.data = data;
+            this.baseRunId = baseRunId;
+        }
+    }
+    
+    protected Encoded encode(Decoder decoder, GoogleSerp serp) throws Exception {
+        int interval = keyframeInterval;
+        return encode(decoder, serp, interval, interval > 1 ? previous(decoder.con, serp) : null);
+    }
+    
+    /**
+     * @param previous row of the previous serp of the search, null if none
+     */
+    protected Encoded encode(Decoder decoder, GoogleSerp serp, int interval, Tuple previous) throws Exception {
+        if(interval > 1 && previous != null){
+            Decoded base = decoder.decode(previous);
+            if(base.depth + 1 < interval){
+                byte[] delta = serp.getSerializedDelta(base.serp, base.depth + 1, urlDB);
+                return new Encoded(compress(delta), base.serp.getRunId());
+            }
+        }
+        return new Encoded(compress(serp.getSerializedEntries(urlDB)), null);
+    }
+    
+    protected Tuple previous(Connection con, GoogleSerp serp){
+        return new SQLQuery<Void>(con, dbTplConf)
+            .select(t_serp.all())
+            .from(t_serp)
+            .where(t_serp.googleSearchId.eq(serp.getGoogleSearchId()))
+            .where(t_serp.runId.lt(serp.getRunId()))
+            .orderBy(t_serp.runId.desc())
+            .fetchFirst();
+    }
+    
+    /**
+     * previous rows of the serps of a batch, by key of the serp inserted. the rows of the last
+     * interval runs of all the searches are loaded with one query and kept by the decoder, so the
+     * previous serps and their chains are decoded without a query per serp. a search without a
+     * row in these runs is looked up alone unless there is no older run.
+     */
+    protected Map<Long,Tuple> previous(Decoder decoder, Collection<GoogleSerp> serps, int interval){
+        Map<Integer,List<GoogleSerp>> serpsByRun = new HashMap<>();
+        for (GoogleSerp serp : serps) {
+            serpsByRun.computeIfAbsent(serp.getRunId(), (runId) -> new ArrayList<>()).add(serp);
+        }
+        
+        Map<Long,Tuple> previous = new HashMap<>();
+        for (Map.Entry<Integer, List<GoogleSerp>> entry : serpsByRun.entrySet()) {
+            List<Integer> runIds = new SQLQuery<Void>(decoder.con, dbTplConf)
+                .select(t_run.id)
+                .from(t_run)
+                .where(t_run.id.lt(entry.getKey()))
+                .where(t_run.moduleId.eq(Group.Module.GOOGLE.ordinal()))
+                .orderBy(t_run.id.desc())
+                .limit(interval)
+                .fetch();
+            if(runIds.isEmpty()){
+                continue;
+            }
+            
+            List<GoogleSerp> runSerps = entry.getValue();
+            Map<Integer,Tuple> latest = new HashMap<>();
+            for (int i = 0; i < runSerps.size(); i += REWRITE_CHUNK_SIZE) {
+                List<Integer> searchIds = new ArrayList<>();
+                for (GoogleSerp serp : runSerps.subList(i, Math.min(i + REWRITE_CHUNK_SIZE, runSerps.size()))) {
+                    searchIds.add(serp.getGoogleSearchId());
+                }
+                List<Tuple> rows = new SQLQuery<Void>(decoder.con, dbTplConf)
+                    .select(t_serp.all())
+                    .from(t_serp)
+                    .where(t_serp.googleSearchId.in(searchIds))
+                    .where(t_serp.runId.in(runIds))
+                    .fetch();
+                for (Tuple row : rows) {
+                    int searchId = row.get(t_serp.googleSearchId);
+                    decoder.prefetched.put(decoder.key(searchId, row.get(t_serp.runId)), row);
+                    Tuple last = latest.get(searchId);
+                    if(last == null || last.get(t_serp.runId) < row.get(t_serp.runId)){
+                        latest.put(searchId, row);
+                    }
+                }
+            }
+            
+            // all the older runs were loaded
+            boolean complete = runIds.size() < interval;
+            for (GoogleSerp serp : runSerps) {
+                Tuple row = latest.get(serp.getGoogleSearchId());
+                if(row == null && !complete){
+                    row = previous(decoder.con, serp);
+                }
+                if(row != null){
+                    previous.put(decoder.key(serp.getGoogleSearchId(), serp.getRunId()), row);
+                }
+            }
+        }
+        return previous;
+    }
+    
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+    
+    /**
+     * @param keyframeInterval store a full serp every keyframeInterval runs of a search, the others
+     * as a delta of the previous run, 0 or 1 to always store full serps
+     */
+    public void setKeyframeInterval(int keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+    }
+    
+    /**
+     * rewrite as full serps the deltas based on serps of the runs, must be called before the serps
+     * of the runs are deleted
+     */
+    public void rebase(Connection con, Collection<Integer> runIds) throws Exception {
+        if(runIds.isEmpty()){
+            return;
+        }
+        
+        List<Tuple> keys = new SQLQuery<Void>(con, dbTplConf)
+            .select(t_serp.runId, t_serp.googleSearchId)
+            .from(t_serp)
+            .where(t_serp.baseRunId.in(runIds))
+            .where(t_serp.runId.notIn(runIds))
+            .fetch();
+        
+        Decoder decoder = new Decoder(con);
+        for (int from = 0; from < keys.size(); from += REWRITE_CHUNK_SIZE) {
+            SQLUpdateClause update = new SQLUpdateClause(con, dbTplConf, t_serp);
+            for (Tuple key : keys.subList(from, Math.min(keys.size(), from + REWRITE_CHUNK_SIZE))) {
+                GoogleSerp serp = decoder.get(key.get(t_serp.googleSearchId), key.get(t_serp.runId));
+                update
+                    .set(t_serp.serp, new SerialBlob(compress(serp.getSerializedEntries(urlDB))))
+                    .setNull(t_serp.baseRunId)
+                    .where(t_serp.runId.eq(serp.getRunId()))
+                    .where(t_serp.googleSearchId.eq(serp.getGoogleSearchId()))
+                    .addBatch();
+            }
+            update.execute();
+        }
+    }
+    
     public void deleteByRun(int runId){
         try(Connection con = ds.getConnection()){
+            rebase(con, Arrays.asList(runId));
             new SQLDeleteClause(con, dbTplConf, t_serp)
                 .where(t_serp.runId.eq(runId))
                 .execute();
@@ -87,14 +299,7 @@ public class GoogleSerpDB extends AbstractDB {
         GoogleSerp serp = null;
         try(Connection con = ds.getConnection()){
             
-            Tuple tuple = new SQLQuery<Void>(con, dbTplConf)
-                .select(t_serp.all())
-                .from(t_serp)
-                .where(t_serp.runId.eq(runId))
-                .where(t_serp.googleSearchId.eq(googleSearchId))
-                .fetchFirst();
-            
-            serp = fromTuple(tuple);
+            serp = new Decoder(con).get(googleSearchId, runId);
             
         }catch(Exception ex){
             LOG.error("SQL error", ex);
@@ -123,6 +328,33 @@ public class GoogleSerpDB extends AbstractDB {
 //        }
 //    }    
     
+    public void stream(Collection<Integer> runs, Collection<Integer> googleSearchIds, Consumer<GoogleSerp> callback){
+        if(runs.isEmpty() || googleSearchIds.isEmpty()){
+            return;
+        }
+        
+        try(Connection con = ds.getConnection()){
+            
+            // ordered so the deltas of consecutive runs reuse the serps just decoded
+            Decoder decoder = new Decoder(con);
+            try(CloseableIterator<Tuple> iterate = new SQLQuery<Void>(con, dbTplConf)
+                .select(t_serp.all())
+                .from(t_serp)
+                .where(t_serp.runId.in(runs))
+                .where(t_serp.googleSearchId.in(googleSearchIds))
+                .orderBy(t_serp.googleSearchId.asc(), t_serp.runId.asc())
+                .iterate()){
+                
+                while(iterate.hasNext()){
+                    callback.accept(decoder.decode(iterate.next()).serp);
+                }
+            }
+            
+        }catch(Exception ex){
+            LOG.error("SQL error", ex);
+        }
+    }
+    
     public void stream(Integer firstRun, Integer lastRun, int googleSearchId, Consumer<GoogleSerp> callback){
         try(Connection con = ds.getConnection()){
             
@@ -138,67 +370,342 @@ public class GoogleSerpDB extends AbstractDB {
                 query.where(t_serp.runId.loe(lastRun));
             }
             
-            CloseableIterator<Tuple> iterate = query
+            Decoder decoder = new Decoder(con);
+            try(CloseableIterator<Tuple> iterate = query
                 .where(t_serp.googleSearchId.eq(googleSearchId))
                 .orderBy(t_serp.runId.asc())
-                .iterate();
+                .iterate()){
+                
+                while(iterate.hasNext()){
+                    callback.accept(decoder.decode(iterate.next()).serp);
+                }
+            }
+            
+        }catch(Exception ex){
+            LOG.error("SQL error", ex);
+        }
+    }
+    
+    /**
+     * same as stream but the serps are read through a view decoding the entries on demand, the view
+     * is reused and only valid in the callback. deltas are still decoded in full.
+     */
+    public void streamView(Integer firstRun, Integer lastRun, int googleSearchId, Consumer<GoogleSerpView> callback){
+        Scratch buffers = scratch.get();
+        if(buffers.inUse){
+            // nested stream, the outer view still uses the buffers
+            buffers = new Scratch();
+        }
+        buffers.inUse = true;
+        
+        try(Connection con = ds.getConnection()){
+            
+            SQLQuery<Tuple> query = new SQLQuery<Void>(con, dbTplConf)
+                .select(t_serp.all())
+                .from(t_serp);
             
-            while(iterate.hasNext()){
-                GoogleSerp serp = fromTuple(iterate.next());
-                callback.accept(serp);
+            if(firstRun != null){
+                query.where(t_serp.runId.goe(firstRun));
+            }
+            
+            if(lastRun != null){
+                query.where(t_serp.runId.loe(lastRun));
+            }
+            
+            Decoder decoder = new Decoder(con);
+            GoogleSerpView view = new GoogleSerpView();
+            try(CloseableIterator<Tuple> iterate = query
+                .where(t_serp.googleSearchId.eq(googleSearchId))
+                .orderBy(t_serp.runId.asc())
+                .iterate()){
+                
+                while(iterate.hasNext()){
+                    Tuple tuple = iterate.next();
+                    int length = decompress(tuple.get(t_serp.serp), buffers);
+                    if(length > 0 && GoogleSerp.getDeltaDepth(buffers.decompressed) > 0){
+                        view.reset(decoder.decode(tuple).serp);
+                    } else {
+                        view.reset(tuple.get(t_serp.runId), googleSearchId, tuple.get(t_serp.runDay).toLocalDateTime(),
+                            buffers.decompressed, length, urlDB);
+                    }
+                    callback.accept(view);
+                }
             }
             
         }catch(Exception ex){
             LOG.error("SQL error", ex);
+        } finally {
+            buffers.inUse = false;
         }
     }
     
-    protected GoogleSerp fromTuple(Tuple tuple) throws Exception{
-        if(tuple == null){
-            return null;
+    /**
+     * rewrite every serp storing its urls in full with the url ids, by chunks of primary keys
+     * 
+     * @return number of serps rewritten, -1 on error
+     */
+    public int rewriteAll(){
+        int rewritten = 0;
+        Integer lastRunId = null;
+        Integer lastSearchId = null;
+        
+        try(Connection con = ds.getConnection()){
+            while(true){
+                // base_run_id isn't there yet when called by the migration
+                SQLQuery<Tuple> query = new SQLQuery<Void>(con, dbTplConf)
+                    .select(t_serp.runId, t_serp.googleSearchId, t_serp.runDay, t_serp.serp)
+                    .from(t_serp);
+                if(lastRunId != null){
+                    query.where(t_serp.runId.gt(lastRunId)
+                        .or(t_serp.runId.eq(lastRunId).and(t_serp.googleSearchId.gt(lastSearchId))));
+                }
+                List<Tuple> tuples = query
+                    .orderBy(t_serp.runId.asc(), t_serp.googleSearchId.asc())
+                    .limit(REWRITE_CHUNK_SIZE)
+                    .fetch();
+                if(tuples.isEmpty()){
+                    break;
+                }
+                
+                SQLUpdateClause update = new SQLUpdateClause(con, dbTplConf, t_serp);
+                for (Tuple tuple : tuples) {
+                    lastRunId = tuple.get(t_serp.runId);
+                    lastSearchId = tuple.get(t_serp.googleSearchId);
+                    Blob blob = tuple.get(t_serp.serp);
+                    if(blob == null){
+                        continue;
+                    }
+                    byte[] data = decompress(blob.getBytes(1,(int)blob.length()));
+                    // deltas are always written with the current version, serps already
+                    // rewritten by an interrupted migration are kept
+                    if(!GoogleSerp.hasFullUrls(data)){
+                        continue;
+                    }
+                    GoogleSerp serp = new GoogleSerp(lastRunId, lastSearchId, tuple.get(t_serp.runDay).toLocalDateTime());
+                    serp.setSerializedEntries(data, urlDB);
+                    update
+                        .set(t_serp.serp, new SerialBlob(compress(serp.getSerializedEntries(urlDB))))
+                        .where(t_serp.runId.eq(serp.getRunId()))
+                        .where(t_serp.googleSearchId.eq(serp.getGoogleSearchId()))
+                        .addBatch();
+                    ++rewritten;
+                }
+                if(!update.isEmpty()){
+                    update.execute();
+                }
+                LOG.info("rewritten {} serps", rewritten);
+            }
+        } catch(Exception ex){
+            LOG.error("SQL error", ex);
+            return -1;
         }
         
-        GoogleSerp serp = new GoogleSerp(tuple.get(t_serp.runId), tuple.get(t_serp.googleSearchId), tuple.get(t_serp.runDay).toLocalDateTime());
-        Blob blob = tuple.get(t_serp.serp);
-        if(blob != null){
-            byte[] compressedData = blob.getBytes(1,(int)blob.length());
-            serp.setSerializedEntries(decompress(compressedData));
+        return rewritten;
+    }
+    
+    static class Decoded {
+        final GoogleSerp serp;
+        final int depth;
+
+        Decoded(GoogleSerp serp, int depth) {
+            this.serp = serp;
+            this.depth = depth;
         }
+    }
+    
+    /**
+     * decodes serps and the deltas they are based on, the last decoded serps are kept so a stream
+     * ordered by run decodes each serp once. the rows of a chain are loaded with a single query.
+     */
+    class Decoder {
         
-        return serp;
+        final Connection con;
+        final Map<Long,Decoded> decoded = new LinkedHashMap<Long,Decoded>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Decoded> eldest) {
+                return size() > DECODED_CACHE_SIZE;
+            }
+        };
+        // rows of the chain being decoded
+        final Map<Long,Tuple> pending = new HashMap<>();
+        // rows loaded ahead for a batch, kept as long as the decoder
+        final Map<Long,Tuple> prefetched = new HashMap<>();
+        int level;
+
+        Decoder(Connection con) {
+            this.con = con;
+        }
+        
+        GoogleSerp get(int googleSearchId, int runId) throws Exception {
+            Decoded serp = load(googleSearchId, runId, 1);
+            return serp == null ? null : serp.serp;
+        }
         
+        Decoded decode(Tuple tuple) throws Exception {
+            int runId = tuple.get(t_serp.runId);
+            int searchId = tuple.get(t_serp.googleSearchId);
+            Long key = key(searchId, runId);
+            Decoded serp = decoded.get(key);
+            if(serp != null){
+                return serp;
+            }
+            
+            ++level;
+            try {
+                GoogleSerp entries = new GoogleSerp(runId, searchId, tuple.get(t_serp.runDay).toLocalDateTime());
+                int depth = 0;
+                Blob blob = tuple.get(t_serp.serp);
+                if(blob != null){
+                    byte[] data = decompress(blob.getBytes(1,(int)blob.length()));
+                    depth = GoogleSerp.getDeltaDepth(data);
+                    GoogleSerp base = null;
+                    Integer baseRunId = tuple.get(t_serp.baseRunId);
+                    if(baseRunId != null){
+                        // the base and its own chain are the depth previous rows when contiguous
+                        Decoded baseSerp = load(searchId, baseRunId, depth);
+                        if(baseSerp == null){
+                            throw new IOException("missing base run " + baseRunId + " of serp " + runId + "/" + searchId);
+                        }
+                        base = baseSerp.serp;
+                    }
+                    entries.setSerializedEntries(data, urlDB, base);
+                }
+                serp = new Decoded(entries, depth);
+                decoded.put(key, serp);
+                return serp;
+            } finally {
+                if(--level == 0){
+                    pending.clear();
+                }
+            }
+        }
+        
+        /**
+         * @param rows number of rows up to runId to load if the serp isn't already loaded
+         */
+        Decoded load(int googleSearchId, int runId, int rows) throws Exception {
+            Long key = key(googleSearchId, runId);
+            Decoded serp = decoded.get(key);
+            if(serp != null){
+                return serp;
+            }
+            
+            Tuple tuple = pending.remove(key);
+            if(tuple == null){
+                tuple = prefetched.get(key);
+            }
+            if(tuple == null){
+                List<Tuple> tuples = new SQLQuery<Void>(con, dbTplConf)
+                    .select(t_serp.all())
+                    .from(t_serp)
+                    .where(t_serp.googleSearchId.eq(googleSearchId))
+                    .where(t_serp.runId.loe(runId))
+                    .orderBy(t_serp.runId.desc())
+                    .limit(rows)
+                    .fetch();
+                for (Tuple row : tuples) {
+                    pending.putIfAbsent(key(row.get(t_serp.googleSearchId), row.get(t_serp.runId)), row);
+                }
+                tuple = pending.remove(key);
+            }
+            if(tuple == null){
+                if(level == 0){
+                    pending.clear();
+                }
+                return null;
+            }
+            return decode(tuple);
+        }
+        
+        Long key(int googleSearchId, int runId){
+            return ((long)googleSearchId << 32) | (runId & 0xFFFFFFFFl);
+        }
+        
+    }
+    
+    public SerpCodec getCodec() {
+        return codec;
     }
     
+    /**
+     * @param codec compress the serps written from now on with this codec, serps of its format and
+     * lz4 serps are read
+     */
+    public void setCodec(SerpCodec codec) {
+        this.codec = codec;
+    }
+    
+    protected SerpCodec getCodec(byte[] compressed, int length) throws Exception {
+        switch(compressed[0]){
+            case Lz4SerpCodec.FORMAT:
+                return lz4;
+            default:
+                if(compressed[0] == codec.getFormat()){
+                    return codec;
+                }
+                throw new IOException("unknown serp format " + compressed[0]);
+        }
+    }
     
     protected byte[] compress(byte[] data){
         if(data == null || data.length < 1){
             return null;
         }
+        return codec.compress(data);
+    }
+    
+    static class Scratch {
+        byte[] compressed = new byte[4096];
+        byte[] decompressed = new byte[16384];
+        boolean inUse;
+    }
+    
+    /**
+     * decompress the blob into the scratch buffers, which grow as needed
+     * 
+     * @return length of the decompressed data, 0 if blob is null
+     */
+    protected int decompress(Blob blob, Scratch buffers) throws Exception {
+        if(blob == null){
+            return 0;
+        }
         
-        int decompressedLength = data.length;
-        int maxCompressedLength = compressor.maxCompressedLength(decompressedLength);
-        byte[] tmp = new byte[maxCompressedLength];
-        int compressedLength = compressor.compress(data, 0, decompressedLength, tmp, 0, maxCompressedLength);
-
-        byte[] compressed = new byte[4 + compressedLength];
-        ByteBuffer.wrap(compressed, 0, 4).putInt(decompressedLength);
-        System.arraycopy(tmp, 0, compressed, 4, compressedLength);
+        int compressedLength = (int)blob.length();
+        if(compressedLength < 1){
+            return 0;
+        }
+        if(buffers.compressed.length < compressedLength){
+            buffers.compressed = new byte[Math.max(compressedLength, buffers.compressed.length * 2)];
+        }
+        try(InputStream stream = blob.getBinaryStream()){
+            int read = 0;
+            while(read < compressedLength){
+                int n = stream.read(buffers.compressed, read, compressedLength - read);
+                if(n < 0){
+                    throw new IOException("truncated serp blob");
+                }
+                read += n;
+            }
+        }
         
-        return compressed;
-    }    
+        SerpCodec blobCodec = getCodec(buffers.compressed, compressedLength);
+        int decompressedLength = blobCodec.getDecompressedLength(buffers.compressed, compressedLength);
+        if(buffers.decompressed.length < decompressedLength){
+            buffers.decompressed = new byte[Math.max(decompressedLength, buffers.decompressed.length * 2)];
+        }
+        blobCodec.decompress(buffers.compressed, compressedLength, buffers.decompressed);
+        return decompressedLength;
+    }
     
-    protected byte[] decompress(byte[] compressed){
-        if(compressed == null || compressed.length < 5){
+    protected byte[] decompress(byte[] compressed) throws Exception {
+        if(compressed == null || compressed.length < 1){
             return null;
         }
         
-        int decompressedLength = ByteBuffer.wrap(compressed, 0, 4).getInt();
-        byte[] decompressed = new byte[decompressedLength];
-        decompressor.decompress(compressed, 4, decompressed, 0, decompressedLength);
-        
+        SerpCodec blobCodec = getCodec(compressed, compressed.length);
+        byte[] decompressed = new byte[blobCodec.getDecompressedLength(compressed, compressed.length)];
+        blobCodec.decompress(compressed, compressed.length, decompressed);
         return decompressed;
-    }    
-    
-    
+    }
     
 }
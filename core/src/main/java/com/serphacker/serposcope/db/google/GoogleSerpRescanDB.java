@@ -13,15 +13,20 @@ import com.serphacker.serposcope.models.base.Run;
 import com.serphacker.serposcope.models.google.GoogleBest;
 import com.serphacker.serposcope.models.google.GoogleRank;
 import com.serphacker.serposcope.models.google.GoogleSearch;
-import com.serphacker.serposcope.models.google.GoogleSerp;
+import com.serphacker.serposcope.models.google.GoogleSerpView;
 import com.serphacker.serposcope.models.google.GoogleTarget;
+import com.serphacker.serposcope.models.google.GoogleTargetMatcher;
 import com.serphacker.serposcope.models.google.GoogleTargetSummary;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
@@ -35,6 +40,9 @@ public class GoogleSerpRescanDB {
     
     private static final Logger LOG = LoggerFactory.getLogger(GoogleSerpRescanDB.class);
     
+    final static int MAX_PARALLELISM = 4;
+    final static int RANK_BATCH_SIZE = 2000;
+    
     @Inject
     GoogleSearchDB searchDB;
     
@@ -47,6 +55,9 @@ public class GoogleSerpRescanDB {
     @Inject
     GoogleRankDB rankDB;
     
+    @Inject
+    GoogleRankSeriesDB rankSeriesDB;
+    
     @Inject
     RunDB runDB;
     
@@ -65,6 +76,7 @@ public class GoogleSerpRescanDB {
         }        
         
         for (GoogleTarget target : targets) {
+            GoogleTargetMatcher matcher = new GoogleTargetMatcher(Collections.singletonList(target));
             
             Map<Integer, GoogleTargetSummary> summaryByRunId = new HashMap<>();
             GoogleTargetSummary specificPreviousSummary = specPrevRunSummaryByTarget.get(target.getId());
@@ -87,17 +99,10 @@ public class GoogleSerpRescanDB {
                 }
                 final GoogleBest best = searchBest;
 
-                serpDB.stream(specificRunId, specificRunId, search.getId(), (GoogleSerp res) -> {
+                serpDB.streamView(specificRunId, specificRunId, search.getId(), (GoogleSerpView res) -> {
                     
-                    int rank = GoogleRank.UNRANKED;
-                    String rankedUrl = null;
-                    for (int i = 0; i < res.getEntries().size(); i++) {
-                        if (target.match(res.getEntries().get(i).getUrl())) {
-                            rankedUrl = res.getEntries().get(i).getUrl();
-                            rank = i + 1;
-                            break;
-                        }
-                    }
+                    int rank = matcher.match(res)[0];
+                    String rankedUrl = rank == GoogleRank.UNRANKED ? null : res.getUrl(rank - 1);
 
                     // only update last run
                     GoogleRank gRank = new GoogleRank(res.getRunId(), target.getGroupId(), target.getId(), search.getId(),
@@ -155,90 +160,62 @@ public class GoogleSerpRescanDB {
     public void rescan(Integer specificRunId, Collection<GoogleTarget> targets, Collection<GoogleSearch> searches,  boolean updateSummary) {
         LOG.debug("SERP rescan (bulk) : starting");
         long _start = System.currentTimeMillis();
+        if(targets.isEmpty() || searches.isEmpty()){
+            LOG.debug("SERP rescan : nothing to rescan");
+            return;
+        }
+        
         Map<Integer, Integer> searchCountByGroup = searchDB.countByGroup();
         Run specPrevRun = null;
         Map<Integer, GoogleTargetSummary> specPrevRunSummaryByTarget = new HashMap<>();
+        GoogleRankSnapshot snapshot = new GoogleRankSnapshot();
         
         if(specificRunId != null){
             specPrevRun = runDB.findPrevious(specificRunId);
             if(specPrevRun != null){
                 specPrevRunSummaryByTarget = targetSummaryDB.list(specPrevRun.getId()).stream()
                     .collect(Collectors.toMap(GoogleTargetSummary::getTargetId, Function.identity()));
+                // only the ranks of the rescanned targets
+                snapshot.load(rankDB, specPrevRun.getId(),
+                    targets.stream().map(GoogleTarget::getGroupId).collect(Collectors.toSet()),
+                    targets.stream().map(GoogleTarget::getId).collect(Collectors.toSet())
+                );
             }
-        }        
+        }
         
-        List<GoogleRank> ranks = new ArrayList<>();
+        // target id -> run id -> summary
+        Map<Integer, Map<Integer, GoogleTargetSummary>> summariesByTarget = new ConcurrentHashMap<>();
         for (GoogleTarget target : targets) {
-            
-            Map<Integer, GoogleTargetSummary> summaryByRunId = new HashMap<>();
+            Map<Integer, GoogleTargetSummary> summaryByRunId = new ConcurrentHashMap<>();
             GoogleTargetSummary specificPreviousSummary = specPrevRunSummaryByTarget.get(target.getId());
             if(specificPreviousSummary != null){
                 summaryByRunId.put(specPrevRun.getId(), specificPreviousSummary);
             }
-            
-            for (GoogleSearch search : searches) {
-                final MutableInt previousRunId = new MutableInt(0);
-                final MutableInt previousRank = new MutableInt(GoogleRank.UNRANKED);
-                GoogleBest searchBest = new GoogleBest(target.getGroupId(), target.getId(), search.getId(), GoogleRank.UNRANKED, null, null);
-                
-                if(specPrevRun != null){
-                    previousRunId.setValue(specPrevRun.getId());
-                    previousRank.setValue(rankDB.get(specPrevRun.getId(), target.getGroupId(), target.getId(), search.getId()));
-                    GoogleBest specificBest = rankDB.getBest(target.getGroupId(), target.getId(), search.getId());
-                    if(specificBest != null){
-                        searchBest = specificBest;
-                    }
-                }
-                final GoogleBest best = searchBest;
-
-                serpDB.stream(specificRunId, specificRunId, search.getId(), (GoogleSerp res) -> {
-                    
-                    int rank = GoogleRank.UNRANKED;
-                    String rankedUrl = null;
-                    for (int i = 0; i < res.getEntries().size(); i++) {
-                        if (target.match(res.getEntries().get(i).getUrl())) {
-                            rankedUrl = res.getEntries().get(i).getUrl();
-                            rank = i + 1;
-                            break;
-                        }
-                    }
-
-                    // only update last run
-                    GoogleRank gRank = new GoogleRank(res.getRunId(), target.getGroupId(), target.getId(), search.getId(),
-                        rank, previousRank.shortValue(), rankedUrl);
-                    ranks.add(gRank);
-                    if(ranks.size() > 2000){
-                        rankDB.insert(ranks);
-                        ranks.clear();
-                    }
-                    
-                    if(updateSummary){
-                        GoogleTargetSummary summary = summaryByRunId.get(res.getRunId());
-                        if (summary == null) {
-                            summaryByRunId.put(res.getRunId(), summary = new GoogleTargetSummary(target.getGroupId(),
-                                target.getId(), res.getRunId(), 0));
-                        }
-                        summary.addRankCandidat(gRank);
-                    }                    
-
-                    if (rank != GoogleRank.UNRANKED && rank <= best.getRank()) {
-                        best.setRank((short) rank);
-                        best.setUrl(rankedUrl);
-                        best.setRunDay(res.getRunDay());
-                    }
-
-                    previousRunId.setValue(res.getRunId());
-                    previousRank.setValue(rank);
-                });
-                
-                if (best.getRank() != GoogleRank.UNRANKED) {
-                    rankDB.insertBest(best);
-                }
-            }
-            
-            // fill previous summary score
-            if(updateSummary){
-                TreeMap<Integer, GoogleTargetSummary> summaries = new TreeMap<>(summaryByRunId);
+            summariesByTarget.put(target.getId(), summaryByRunId);
+        }
+        
+        GoogleTargetMatcher matcher = new GoogleTargetMatcher(targets);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_PARALLELISM)));
+        try {
+            pool.submit(() -> searches.parallelStream().forEach((search) -> 
+                rescan(specificRunId, matcher, search, snapshot, updateSummary ? summariesByTarget : null)
+            )).get();
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            LOG.warn("SERP rescan : interrupted");
+            return;
+        } catch(ExecutionException ex){
+            LOG.error("SERP rescan : failed", ex);
+            return;
+        } finally {
+            pool.shutdown();
+        }
+        
+        // fill previous summary score
+        if(updateSummary){
+            List<GoogleTargetSummary> inserts = new ArrayList<>();
+            for (GoogleTarget target : targets) {
+                TreeMap<Integer, GoogleTargetSummary> summaries = new TreeMap<>(summariesByTarget.get(target.getId()));
                 
                 GoogleTargetSummary previousSummary = null;
                 for (Map.Entry<Integer, GoogleTargetSummary> entry : summaries.entrySet()) {
@@ -253,20 +230,80 @@ public class GoogleSerpRescanDB {
                 if(specPrevRun != null){
                     summaries.remove(specPrevRun.getId());
                 }
+                inserts.addAll(summaries.values());
+            }
+            
+            if(!inserts.isEmpty()){
+                targetSummaryDB.insert(inserts);
+            }
+        }
+        
+        LOG.debug("SERP rescan : done, duration = {}", DurationFormatUtils.formatDurationHMS(System.currentTimeMillis()-_start));
+    }
+    
+    /**
+     * decode every serp of the search once and rank all the targets against it
+     */
+    protected void rescan(Integer specificRunId, GoogleTargetMatcher matcher, GoogleSearch search, 
+        GoogleRankSnapshot snapshot, Map<Integer, Map<Integer, GoogleTargetSummary>> summariesByTarget
+    ) {
+        List<GoogleTarget> targets = matcher.getTargets();
+        int[] previousRanks = new int[targets.size()];
+        int[] bestRanks = new int[targets.size()];
+        GoogleBest[] bests = new GoogleBest[targets.size()];
+        for (int t = 0; t < targets.size(); t++) {
+            previousRanks[t] = snapshot.getPreviousRank(targets.get(t).getId(), search.getId());
+            bestRanks[t] = snapshot.getBest(targets.get(t).getId(), search.getId());
+        }
+        
+        List<GoogleRank> ranks = new ArrayList<>();
+        serpDB.streamView(specificRunId, specificRunId, search.getId(), (GoogleSerpView res) -> {
+            int[] serpRanks = matcher.match(res);
+            for (int t = 0; t < targets.size(); t++) {
+                GoogleTarget target = targets.get(t);
+                int rank = serpRanks[t];
+                String rankedUrl = rank == GoogleRank.UNRANKED ? null : res.getUrl(rank - 1);
                 
-                if(!summaries.isEmpty()){
-                    targetSummaryDB.insert(summaries.values());
+                GoogleRank gRank = new GoogleRank(res.getRunId(), target.getGroupId(), target.getId(), search.getId(),
+                    rank, previousRanks[t], rankedUrl);
+                ranks.add(gRank);
+                
+                if(summariesByTarget != null){
+                    summariesByTarget.get(target.getId()).computeIfAbsent(res.getRunId(), 
+                        (runId) -> new GoogleTargetSummary(target.getGroupId(), target.getId(), runId, 0)
+                    ).addRankCandidat(gRank);
+                }
+                
+                if (rank != GoogleRank.UNRANKED && rank <= bestRanks[t]) {
+                    bestRanks[t] = rank;
+                    bests[t] = new GoogleBest(target.getGroupId(), target.getId(), search.getId(), rank, res.getRunDay(), rankedUrl);
                 }
+                
+                previousRanks[t] = rank;
             }
-        }
+            
+            if(ranks.size() > RANK_BATCH_SIZE){
+                rankDB.insert(ranks);
+                rankSeriesDB.merge(ranks);
+                ranks.clear();
+            }
+        });
         
         if(!ranks.isEmpty()){
             rankDB.insert(ranks);
-            ranks.clear();
+            rankSeriesDB.merge(ranks);
         }
         
-        LOG.debug("SERP rescan : done, duration = {}", DurationFormatUtils.formatDurationHMS(System.currentTimeMillis()-_start));
-    }    
+        List<GoogleBest> updatedBests = new ArrayList<>();
+        for (GoogleBest best : bests) {
+            if(best != null){
+                updatedBests.add(best);
+            }
+        }
+        if(!updatedBests.isEmpty()){
+            rankDB.insertBest(updatedBests);
+        }
+    }
     
     /*
     public void rescan(Integer specificRunId, List<GoogleSearch> searches, List<GoogleTarget> targets, boolean updateSummary) {
@@ -304,13 +341,13 @@ public class GoogleSerpRescanDB {
                 }
                 final GoogleBest best = searchBest;
 
-                serpDB.stream(specificRunId, specificRunId, search.getId(), (GoogleSerp res) -> {
+                serpDB.streamView(specificRunId, specificRunId, search.getId(), (GoogleSerpView res) -> {
                     
                     int rank = GoogleRank.UNRANKED;
                     String rankedUrl = null;
-                    for (int i = 0; i < res.getEntries().size(); i++) {
-                        if (target.match(res.getEntries().get(i).getUrl())) {
-                            rankedUrl = res.getEntries().get(i).getUrl();
+                    for (int i = 0; i < res.size(); i++) {
+                        if (target.match(res.getUrl(i))) {
+                            rankedUrl = res.getUrl(i);
                             rank = i + 1;
                             break;
                         }
@@ -0,0 +1,226 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.db.google;
+
+import com.google.inject.Singleton;
+import com.querydsl.core.Tuple;
+import com.querydsl.sql.SQLQuery;
+import com.querydsl.sql.dml.SQLInsertClause;
+import com.serphacker.serposcope.db.AbstractDB;
+import com.serphacker.serposcope.models.google.GoogleUrlDictionary;
+import com.serphacker.serposcope.querybuilder.QGoogleUrl;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * dictionary of the urls found in serps and ranks. urls are looked up by their String.hashCode()
+ * then compared, ids are never reused or deleted. the most recent urls are cached.
+ */
+@Singleton
+public class GoogleUrlDB extends AbstractDB implements GoogleUrlDictionary {
+
+    public final static int MAX_URL_LENGTH = 2048;
+    public final static int CACHE_SIZE = 100000;
+    public final static int QUERY_BATCH_SIZE = 500;
+
+    static QGoogleUrl t_url = QGoogleUrl.googleUrl;
+
+    final Object cacheLock = new Object();
+    final Map<String,Integer> idsByUrl = new LruMap<>(CACHE_SIZE);
+    final Map<Integer,String> urlsById = new LruMap<>(CACHE_SIZE);
+
+    /**
+     * @return the id of the url, null if the url is null or can't be stored
+     */
+    public Integer getId(String url){
+        int id = getIds(new String[]{url})[0];
+        return id == 0 ? null : id;
+    }
+
+    /**
+     * @return the url of the id, null if the id is null or unknown
+     */
+    public String getUrl(Integer id){
+        return id == null ? null : getUrls(new int[]{id})[0];
+    }
+
+    // synchronized so the same url is never added twice
+    @Override
+    public synchronized int[] getIds(String[] urls) {
+        int[] ids = new int[urls.length];
+        Set<String> missing = new LinkedHashSet<>();
+        synchronized(cacheLock){
+            for (int i = 0; i < urls.length; i++) {
+                if(urls[i] == null || urls[i].length() > MAX_URL_LENGTH){
+                    continue;
+                }
+                Integer id = idsByUrl.get(urls[i]);
+                if(id == null){
+                    missing.add(urls[i]);
+                } else {
+                    ids[i] = id;
+                }
+            }
+        }
+        if(missing.isEmpty()){
+            return ids;
+        }
+
+        try(Connection con = ds.getConnection()){
+            Map<String,Integer> found = find(con, missing);
+            if(found.size() < missing.size()){
+                SQLInsertClause insert = new SQLInsertClause(con, dbTplConf, t_url);
+                for (String url : missing) {
+                    if(!found.containsKey(url)){
+                        insert
+                            .set(t_url.hash, url.hashCode())
+                            .set(t_url.url, url)
+                            .addBatch();
+                    }
+                }
+                insert.execute();
+                found = find(con, missing);
+            }
+            synchronized(cacheLock){
+                for (Map.Entry<String, Integer> entry : found.entrySet()) {
+                    idsByUrl.put(entry.getKey(), entry.getValue());
+                    urlsById.put(entry.getValue(), entry.getKey());
+                }
+            }
+            for (int i = 0; i < urls.length; i++) {
+                if(ids[i] == 0 && urls[i] != null){
+                    ids[i] = found.getOrDefault(urls[i], 0);
+                }
+            }
+        } catch(Exception ex){
+            LOG.error("SQL error", ex);
+        }
+
+        return ids;
+    }
+
+    protected Map<String,Integer> find(Connection con, Collection<String> urls){
+        Map<String,Integer> found = new HashMap<>();
+        List<String> batch = new ArrayList<>(QUERY_BATCH_SIZE);
+        for (String url : urls) {
+            batch.add(url);
+            if(batch.size() == QUERY_BATCH_SIZE){
+                find(con, batch, found);
+                batch.clear();
+            }
+        }
+        if(!batch.isEmpty()){
+            find(con, batch, found);
+        }
+        return found;
+    }
+
+    protected void find(Connection con, List<String> urls, Map<String,Integer> found){
+        Set<String> wanted = new HashSet<>(urls);
+        Set<Integer> hashes = new HashSet<>();
+        for (String url : urls) {
+            hashes.add(url.hashCode());
+        }
+        List<Tuple> tuples = new SQLQuery<Void>(con, dbTplConf)
+            .select(t_url.id, t_url.url)
+            .from(t_url)
+            .where(t_url.hash.in(hashes))
+            .fetch();
+        for (Tuple tuple : tuples) {
+            String url = tuple.get(t_url.url);
+            if(wanted.contains(url)){
+                found.put(url, tuple.get(t_url.id));
+            }
+        }
+    }
+
+    @Override
+    public String[] getUrls(int[] ids) {
+        String[] urls = new String[ids.length];
+        Set<Integer> missing = new LinkedHashSet<>();
+        synchronized(cacheLock){
+            for (int i = 0; i < ids.length; i++) {
+                if(ids[i] == 0){
+                    continue;
+                }
+                urls[i] = urlsById.get(ids[i]);
+                if(urls[i] == null){
+                    missing.add(ids[i]);
+                }
+            }
+        }
+        if(missing.isEmpty()){
+            return urls;
+        }
+
+        Map<Integer,String> found = new HashMap<>();
+        try(Connection con = ds.getConnection()){
+            List<Integer> batch = new ArrayList<>(missing);
+            for (int from = 0; from < batch.size(); from += QUERY_BATCH_SIZE) {
+                List<Tuple> tuples = new SQLQuery<Void>(con, dbTplConf)
+                    .select(t_url.id, t_url.url)
+                    .from(t_url)
+                    .where(t_url.id.in(batch.subList(from, Math.min(batch.size(), from + QUERY_BATCH_SIZE))))
+                    .fetch();
+                for (Tuple tuple : tuples) {
+                    found.put(tuple.get(t_url.id), tuple.get(t_url.url));
+                }
+            }
+        } catch(Exception ex){
+            LOG.error("SQL error", ex);
+        }
+
+        synchronized(cacheLock){
+            for (Map.Entry<Integer, String> entry : found.entrySet()) {
+                urlsById.put(entry.getKey(), entry.getValue());
+                idsByUrl.put(entry.getValue(), entry.getKey());
+            }
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if(urls[i] == null && ids[i] != 0){
+                urls[i] = found.get(ids[i]);
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * must be called when GOOGLE_URL is replaced (recreated or imported)
+     */
+    public void clearCache(){
+        synchronized(cacheLock){
+            idsByUrl.clear();
+            urlsById.clear();
+        }
+    }
+
+    static class LruMap<K,V> extends LinkedHashMap<K,V> {
+
+        final int maxSize;
+
+        LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+
+    }
+
+}
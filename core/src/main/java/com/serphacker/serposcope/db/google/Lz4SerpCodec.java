@@ -0,0 +1,65 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.db.google;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * the original format : the decompressed length on 4 bytes then the lz4 block. its format byte is
+ * the high byte of the length, always 0 for a serp.
+ */
+public class Lz4SerpCodec implements SerpCodec {
+
+    public final static byte FORMAT = 0;
+
+    final LZ4Factory factory = LZ4Factory.fastestInstance();
+    final LZ4Compressor compressor = factory.fastCompressor();
+    final LZ4FastDecompressor decompressor = factory.fastDecompressor();
+
+    @Override
+    public byte getFormat() {
+        return FORMAT;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        int decompressedLength = data.length;
+        int maxCompressedLength = compressor.maxCompressedLength(decompressedLength);
+        byte[] tmp = new byte[maxCompressedLength];
+        int compressedLength = compressor.compress(data, 0, decompressedLength, tmp, 0, maxCompressedLength);
+
+        byte[] compressed = new byte[4 + compressedLength];
+        ByteBuffer.wrap(compressed, 0, 4).putInt(decompressedLength);
+        System.arraycopy(tmp, 0, compressed, 4, compressedLength);
+
+        return compressed;
+    }
+
+    @Override
+    public int getDecompressedLength(byte[] compressed, int length) throws IOException {
+        if(length < 5){
+            throw new IOException("truncated lz4 serp");
+        }
+        return ByteBuffer.wrap(compressed, 0, 4).getInt();
+    }
+
+    @Override
+    public void decompress(byte[] compressed, int length, byte[] decompressed) throws IOException {
+        try {
+            decompressor.decompress(compressed, 4, decompressed, 0, getDecompressedLength(compressed, length));
+        } catch(LZ4Exception ex){
+            throw new IOException("malformed lz4 serp", ex);
+        }
+    }
+
+}
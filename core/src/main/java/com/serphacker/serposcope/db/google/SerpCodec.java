@@ -0,0 +1,32 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.db.google;
+
+import java.io.IOException;
+
+/**
+ * compression of the serialized serps stored in GOOGLE_SERP. the first byte of a compressed serp
+ * is the format of its codec, implementations must be thread safe.
+ */
+public interface SerpCodec {
+
+    byte getFormat();
+
+    byte[] compress(byte[] data);
+
+    /**
+     * @param length length of the compressed serp in compressed
+     */
+    int getDecompressedLength(byte[] compressed, int length) throws IOException;
+
+    /**
+     * @param decompressed at least getDecompressedLength long
+     */
+    void decompress(byte[] compressed, int length, byte[] decompressed) throws IOException;
+
+}
@@ -46,6 +46,8 @@ public class Config {
     public final static int DEFAULT_PRUNE_RUNS = 365;
     int pruneRuns = DEFAULT_PRUNE_RUNS;
 
+    String proxyJudgeUrl;
+
     public String getDbcUser() {
         return dbcUser;
     }
@@ -152,5 +154,13 @@ public class Config {
     public void setPruneRuns(int pruneRuns) {
         this.pruneRuns = pruneRuns;
     }
+
+    public String getProxyJudgeUrl() {
+        return proxyJudgeUrl;
+    }
+
+    public void setProxyJudgeUrl(String proxyJudgeUrl) {
+        this.proxyJudgeUrl = proxyJudgeUrl;
+    }
     
 }
@@ -10,6 +10,7 @@ package com.serphacker.serposcope.models.base;
 import static com.serphacker.serposcope.models.base.Proxy.Status.UNCHECKED;
 import com.serphacker.serposcope.scraper.http.proxy.BindProxy;
 import com.serphacker.serposcope.scraper.http.proxy.HttpProxy;
+import com.serphacker.serposcope.scraper.http.proxy.ProxyHealth;
 import com.serphacker.serposcope.scraper.http.proxy.ScrapProxy;
 import com.serphacker.serposcope.scraper.http.proxy.SocksProxy;
 import java.time.LocalDateTime;
@@ -87,6 +88,12 @@ public class Proxy {
     String remoteip;
     LocalDateTime lastCheck;
     Status status = UNCHECKED;
+    
+    int successCount;
+    int failureCount;
+    int captchaCount;
+    int latencyMS;
+    int score;
 
     public int getId() {
         return id;
@@ -160,6 +167,61 @@ public class Proxy {
         this.status = status;
     }
     
+    public int getSuccessCount() {
+        return successCount;
+    }
+
+    public void setSuccessCount(int successCount) {
+        this.successCount = successCount;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    public void setFailureCount(int failureCount) {
+        this.failureCount = failureCount;
+    }
+
+    public int getCaptchaCount() {
+        return captchaCount;
+    }
+
+    public void setCaptchaCount(int captchaCount) {
+        this.captchaCount = captchaCount;
+    }
+
+    public int getLatencyMS() {
+        return latencyMS;
+    }
+
+    public void setLatencyMS(int latencyMS) {
+        this.latencyMS = latencyMS;
+    }
+
+    /**
+     * health score in percent
+     */
+    public int getScore() {
+        return score;
+    }
+
+    public void setScore(int score) {
+        this.score = score;
+    }
+    
+    public ProxyHealth toProxyHealth(){
+        return new ProxyHealth(successCount, failureCount, captchaCount, latencyMS);
+    }
+    
+    public void setHealth(ProxyHealth health){
+        successCount = (int)Math.min(Integer.MAX_VALUE, health.getSuccesses());
+        failureCount = (int)Math.min(Integer.MAX_VALUE, health.getFailures());
+        captchaCount = (int)Math.min(Integer.MAX_VALUE, health.getCaptchas());
+        latencyMS = health.getLatencyMS();
+        score = (int)(health.getScore() * 100);
+    }
+    
     public ScrapProxy toScrapProxy(){
         switch(type){
             case SOCKS:
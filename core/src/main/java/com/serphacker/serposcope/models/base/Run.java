@@ -44,6 +44,8 @@ public class Run {
     int progress;
     int captchas;
     int errors;
+    int threads;
+    String threadsLog;
     
     public Run(Mode mode, Module module, LocalDateTime started) {
         this.mode = mode;
@@ -131,6 +133,25 @@ public class Run {
     public void setErrors(int errors) {
         this.errors = errors;
     }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * one line per change of the number of threads during the run
+     */
+    public String getThreadsLog() {
+        return threadsLog;
+    }
+
+    public void setThreadsLog(String threadsLog) {
+        this.threadsLog = threadsLog;
+    }
     
     protected long getRemainingTimeMs(LocalDateTime now){
         if(finished != null || started == null || progress == 0 || progress == 100){
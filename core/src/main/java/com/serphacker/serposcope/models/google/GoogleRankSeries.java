@@ -0,0 +1,167 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.models.google;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * ranks of a (group, target, search) indexed by run id, sorted by run.
+ *
+ * serialized as a list of (run delta, rank delta, repeat) varints, where repeat is the number of
+ * following runs with the same run delta and the same rank. a daily run with a stable rank takes
+ * a few bytes whatever the number of runs.
+ */
+public class GoogleRankSeries {
+
+    private final static byte SERIAL_VERSION = 0;
+    private final static int INITIAL_CAPACITY = 16;
+
+    int groupId;
+    int googleTargetId;
+    int googleSearchId;
+
+    int[] runIds = new int[INITIAL_CAPACITY];
+    short[] ranks = new short[INITIAL_CAPACITY];
+    int size;
+
+    public GoogleRankSeries(int groupId, int googleTargetId, int googleSearchId) {
+        this.groupId = groupId;
+        this.googleTargetId = googleTargetId;
+        this.googleSearchId = googleSearchId;
+    }
+
+    /**
+     * set the rank of the run, appending runs in order is O(1)
+     */
+    public void put(int runId, int rank){
+        if(size > 0 && runIds[size - 1] >= runId){
+            int index = Arrays.binarySearch(runIds, 0, size, runId);
+            if(index >= 0){
+                ranks[index] = (short)rank;
+                return;
+            }
+            insertAt(-index - 1, runId, rank);
+            return;
+        }
+        insertAt(size, runId, rank);
+    }
+
+    protected void insertAt(int index, int runId, int rank){
+        if(size == runIds.length){
+            runIds = Arrays.copyOf(runIds, size * 2);
+            ranks = Arrays.copyOf(ranks, size * 2);
+        }
+        System.arraycopy(runIds, index, runIds, index + 1, size - index);
+        System.arraycopy(ranks, index, ranks, index + 1, size - index);
+        runIds[index] = runId;
+        ranks[index] = (short)rank;
+        ++size;
+    }
+
+    /**
+     * @return the rank of the run, UNRANKED if the search wasn't checked in this run
+     */
+    public int get(int runId){
+        int index = Arrays.binarySearch(runIds, 0, size, runId);
+        return index < 0 ? GoogleRank.UNRANKED : ranks[index];
+    }
+
+    public int getRunId(int index){
+        return runIds[index];
+    }
+
+    public int getRank(int index){
+        return ranks[index];
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public int getGroupId() {
+        return groupId;
+    }
+
+    public int getGoogleTargetId() {
+        return googleTargetId;
+    }
+
+    public int getGoogleSearchId() {
+        return googleSearchId;
+    }
+
+    public void setSerializedRanks(byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            byte version = buffer.get();
+            if(version != SERIAL_VERSION){
+                throw new UnsupportedOperationException("unsupported serialized version");
+            }
+
+            int count = VarInt.read(buffer);
+            runIds = new int[Math.max(INITIAL_CAPACITY, count)];
+            ranks = new short[runIds.length];
+            size = 0;
+
+            int runId = 0;
+            int rank = 0;
+            while(size < count){
+                int runDelta = VarInt.read(buffer);
+                runId += runDelta;
+                rank += VarInt.zigzagDecode(VarInt.read(buffer));
+                runIds[size] = runId;
+                ranks[size] = (short)rank;
+                ++size;
+                int repeat = VarInt.read(buffer);
+                for (int i = 0; i < repeat && size < count; i++) {
+                    runId += runDelta;
+                    runIds[size] = runId;
+                    ranks[size] = (short)rank;
+                    ++size;
+                }
+            }
+        } catch(BufferUnderflowException ex){
+            throw new IOException("truncated rank series", ex);
+        }
+    }
+
+    public byte[] getSerializedRanks() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(8 + size);
+        baos.write(SERIAL_VERSION);
+        VarInt.write(baos, size);
+
+        int previousRunId = 0;
+        int previousRank = 0;
+        int i = 0;
+        while(i < size){
+            int runDelta = runIds[i] - previousRunId;
+            VarInt.write(baos, runDelta);
+            VarInt.write(baos, VarInt.zigzagEncode(ranks[i] - previousRank));
+
+            int repeat = 0;
+            while(i + repeat + 1 < size
+                && runIds[i + repeat + 1] - runIds[i + repeat] == runDelta
+                && ranks[i + repeat + 1] == ranks[i]
+            ){
+                ++repeat;
+            }
+            VarInt.write(baos, repeat);
+
+            i += repeat;
+            previousRunId = runIds[i];
+            previousRank = ranks[i];
+            ++i;
+        }
+        return baos.toByteArray();
+    }
+
+}
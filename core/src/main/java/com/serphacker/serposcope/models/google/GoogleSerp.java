@@ -13,15 +13,26 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 
 public class GoogleSerp {
     
-    private final static byte SERIAL_VERSION = 0;
+    final static byte SERIAL_VERSION = 0;
+    final static byte SERIAL_VERSION_URL_IDS = 1;
+    final static byte SERIAL_VERSION_DELTA = 2;
+    
+    private final static int OP_COPY = 0;
+    private final static int OP_NEW = 1;
     
     int runId;
     int googleSearchId;
@@ -58,6 +69,30 @@ public class GoogleSerp {
     }
     
     public void setSerializedEntries(byte[] data) throws IOException{
+        setSerializedEntries(data, null);
+    }
+    
+    /**
+     * @param dictionary resolves the url ids, can be null if the data doesn't use url ids
+     */
+    public void setSerializedEntries(byte[] data, GoogleUrlDictionary dictionary) throws IOException{
+        setSerializedEntries(data, dictionary, null);
+    }
+    
+    /**
+     * @param base serp of the previous run, required if the data is a delta
+     */
+    public void setSerializedEntries(byte[] data, GoogleUrlDictionary dictionary, GoogleSerp base) throws IOException{
+        if(data.length > 0 && data[0] == SERIAL_VERSION_URL_IDS){
+            setSerializedEntriesWithUrlIds(data, dictionary);
+            return;
+        }
+        
+        if(data.length > 0 && data[0] == SERIAL_VERSION_DELTA){
+            setSerializedDelta(data, dictionary, base);
+            return;
+        }
+        
         ByteArrayInputStream bais = new ByteArrayInputStream(data);
         DataInputStream dis = new DataInputStream(bais);
         
@@ -81,7 +116,101 @@ public class GoogleSerp {
         }
     }
     
+    protected void setSerializedEntriesWithUrlIds(byte[] data, GoogleUrlDictionary dictionary) throws IOException{
+        ByteBuffer buffer = ByteBuffer.wrap(data, 1, data.length - 1);
+        try {
+            int entrySize = VarInt.read(buffer);
+            UrlResolver resolver = new UrlResolver(entrySize);
+            List<GoogleSerpEntry> decoded = new ArrayList<>(entrySize);
+            for (int i = 0; i < entrySize; i++) {
+                decoded.add(readEntry(buffer, resolver));
+            }
+            resolver.resolve(dictionary);
+            entries = decoded;
+        } catch(BufferUnderflowException ex){
+            throw new IOException("truncated serp", ex);
+        }
+    }
+    
+    protected void setSerializedDelta(byte[] data, GoogleUrlDictionary dictionary, GoogleSerp base) throws IOException{
+        if(base == null){
+            throw new IOException("base serp required");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data, 1, data.length - 1);
+        try {
+            VarInt.read(buffer); // depth
+            int entrySize = VarInt.read(buffer);
+            UrlResolver resolver = new UrlResolver(entrySize);
+            List<GoogleSerpEntry> decoded = new ArrayList<>(entrySize);
+            
+            int cursor = 0;
+            while(decoded.size() < entrySize){
+                int op = VarInt.read(buffer);
+                int length = op >>> 1;
+                if((op & 1) == OP_COPY){
+                    cursor += VarInt.zigzagDecode(VarInt.read(buffer));
+                    for (int i = 0; i < length; i++) {
+                        GoogleSerpEntry baseEntry = base.entries.get(cursor++);
+                        GoogleSerpEntry entry = new GoogleSerpEntry(baseEntry.url);
+                        entry.map.putAll(baseEntry.map);
+                        decoded.add(entry);
+                    }
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        decoded.add(readEntry(buffer, resolver));
+                    }
+                }
+            }
+            
+            int patches = VarInt.read(buffer);
+            int index = 0;
+            for (int i = 0; i < patches; i++) {
+                index += VarInt.read(buffer);
+                GoogleSerpEntry entry = decoded.get(index);
+                entry.map.clear();
+                readMap(buffer, entry.map);
+            }
+            
+            resolver.resolve(dictionary);
+            entries = decoded;
+        } catch(BufferUnderflowException | IndexOutOfBoundsException ex){
+            throw new IOException("malformed serp delta", ex);
+        }
+    }
+    
+    /**
+     * @return true if the data stores the urls in full, written before the url ids
+     */
+    public static boolean hasFullUrls(byte[] data) {
+        return data.length > 0 && data[0] == SERIAL_VERSION;
+    }
+    
+    /**
+     * @return number of serps to decode before this one, 0 if the data doesn't need a base serp
+     */
+    public static int getDeltaDepth(byte[] data) throws IOException {
+        if(data.length == 0 || data[0] != SERIAL_VERSION_DELTA){
+            return 0;
+        }
+        try {
+            return VarInt.read(ByteBuffer.wrap(data, 1, data.length - 1));
+        } catch(BufferUnderflowException ex){
+            throw new IOException("truncated serp", ex);
+        }
+    }
+    
     public byte[] getSerializedEntries() throws IOException {
+        return getSerializedEntries(null);
+    }
+    
+    /**
+     * @param dictionary entries are stored as url ids, null to store the urls
+     */
+    public byte[] getSerializedEntries(GoogleUrlDictionary dictionary) throws IOException {
+        if(dictionary != null){
+            return getSerializedEntriesWithUrlIds(dictionary);
+        }
+        
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         DataOutputStream dos = new DataOutputStream(baos);
 
@@ -100,7 +229,184 @@ public class GoogleSerp {
         return baos.toByteArray();
     }
     
+    /**
+     * varint entries count then for each entry : varint url id (0 followed by the utf-8 url when
+     * the dictionary can't store it), varint map size, zigzag varint keys and values
+     */
+    protected byte[] getSerializedEntriesWithUrlIds(GoogleUrlDictionary dictionary) {
+        int[] urlIds = dictionary.getIds(getUrls(entries));
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(1 + entries.size() * 8);
+        baos.write(SERIAL_VERSION_URL_IDS);
+        VarInt.write(baos, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            writeEntry(baos, entries.get(i), urlIds[i]);
+        }
+        return baos.toByteArray();
+    }
     
+    /**
+     * edit script turning the base serp into this serp : varint depth, varint entries count, then
+     * ops until every entry is produced, COPY (varint length, zigzag varint start relative to the
+     * end of the previous copy) copies a run of base entries, NEW (varint length, entries as in the
+     * url ids version) adds entries. dropped base entries are just never copied. last, the copied
+     * entries whose map changed : varint count, then varint index delta and map for each.
+     * 
+     * @param depth depth of the base serp + 1
+     */
+    public byte[] getSerializedDelta(GoogleSerp base, int depth, GoogleUrlDictionary dictionary) {
+        // base indexes of each url, consumed in order so duplicated urls are copied once each
+        Map<String,ArrayDeque<Integer>> baseIndexes = new HashMap<>();
+        for (int i = 0; i < base.entries.size(); i++) {
+            baseIndexes.computeIfAbsent(base.entries.get(i).url, (k) -> new ArrayDeque<>()).add(i);
+        }
+        
+        int[] sources = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            ArrayDeque<Integer> indexes = baseIndexes.get(entries.get(i).url);
+            sources[i] = indexes == null || indexes.isEmpty() ? -1 : indexes.poll();
+        }
+        
+        List<GoogleSerpEntry> added = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            if(sources[i] == -1){
+                added.add(entries.get(i));
+            }
+        }
+        int[] urlIds = added.isEmpty() ? new int[0] : dictionary.getIds(getUrls(added));
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(16);
+        baos.write(SERIAL_VERSION_DELTA);
+        VarInt.write(baos, depth);
+        VarInt.write(baos, entries.size());
+        
+        int cursor = 0;
+        int addedIndex = 0;
+        int i = 0;
+        while(i < entries.size()){
+            int length = 1;
+            if(sources[i] == -1){
+                while(i + length < entries.size() && sources[i + length] == -1){
+                    ++length;
+                }
+                VarInt.write(baos, (length << 1) | OP_NEW);
+                for (int j = 0; j < length; j++) {
+                    writeEntry(baos, entries.get(i + j), urlIds[addedIndex++]);
+                }
+            } else {
+                while(i + length < entries.size() && sources[i + length] == sources[i] + length){
+                    ++length;
+                }
+                VarInt.write(baos, (length << 1) | OP_COPY);
+                VarInt.write(baos, VarInt.zigzagEncode(sources[i] - cursor));
+                cursor = sources[i] + length;
+            }
+            i += length;
+        }
+        
+        List<Integer> patches = new ArrayList<>();
+        for (int j = 0; j < entries.size(); j++) {
+            if(sources[j] != -1 && !entries.get(j).map.equals(base.entries.get(sources[j]).map)){
+                patches.add(j);
+            }
+        }
+        VarInt.write(baos, patches.size());
+        int previous = 0;
+        for (Integer patch : patches) {
+            VarInt.write(baos, patch - previous);
+            writeMap(baos, entries.get(patch).map);
+            previous = patch;
+        }
+        
+        return baos.toByteArray();
+    }
     
+    static String[] getUrls(List<GoogleSerpEntry> entries){
+        String[] urls = new String[entries.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = entries.get(i).url;
+        }
+        return urls;
+    }
+    
+    static void writeEntry(ByteArrayOutputStream baos, GoogleSerpEntry entry, int urlId){
+        VarInt.write(baos, urlId);
+        if(urlId == 0){
+            byte[] url = entry.url.getBytes(StandardCharsets.UTF_8);
+            VarInt.write(baos, url.length);
+            baos.write(url, 0, url.length);
+        }
+        writeMap(baos, entry.map);
+    }
+    
+    static GoogleSerpEntry readEntry(ByteBuffer buffer, UrlResolver resolver){
+        GoogleSerpEntry entry = new GoogleSerpEntry(null);
+        int urlId = VarInt.read(buffer);
+        if(urlId == 0){
+            byte[] url = new byte[VarInt.read(buffer)];
+            buffer.get(url);
+            entry.url = new String(url, StandardCharsets.UTF_8);
+        } else {
+            resolver.add(entry, urlId);
+        }
+        readMap(buffer, entry.map);
+        return entry;
+    }
+    
+    static void writeMap(ByteArrayOutputStream baos, Short2ShortArrayMap map){
+        VarInt.write(baos, map.size());
+        for (Map.Entry<Short, Short> mapEntry : map.entrySet()) {
+            VarInt.write(baos, VarInt.zigzagEncode(mapEntry.getKey()));
+            VarInt.write(baos, VarInt.zigzagEncode(mapEntry.getValue()));
+        }
+    }
+    
+    static void readMap(ByteBuffer buffer, Short2ShortArrayMap map){
+        int mapSize = VarInt.read(buffer);
+        for (int j = 0; j < mapSize; j++) {
+            short key = (short)VarInt.zigzagDecode(VarInt.read(buffer));
+            short value = (short)VarInt.zigzagDecode(VarInt.read(buffer));
+            map.put(key, value);
+        }
+    }
+    
+    /**
+     * entries waiting for their url, all the urls of a serp are resolved at once
+     */
+    static class UrlResolver {
+        
+        final List<GoogleSerpEntry> entries;
+        int[] urlIds;
+        
+        UrlResolver(int capacity) {
+            entries = new ArrayList<>(capacity);
+            urlIds = new int[capacity];
+        }
+        
+        void add(GoogleSerpEntry entry, int urlId){
+            if(entries.size() == urlIds.length){
+                urlIds = Arrays.copyOf(urlIds, Math.max(8, urlIds.length * 2));
+            }
+            urlIds[entries.size()] = urlId;
+            entries.add(entry);
+        }
+        
+        void resolve(GoogleUrlDictionary dictionary) throws IOException {
+            if(entries.isEmpty()){
+                return;
+            }
+            if(dictionary == null){
+                throw new IOException("url dictionary required");
+            }
+            String[] urls = dictionary.getUrls(Arrays.copyOf(urlIds, entries.size()));
+            for (int i = 0; i < entries.size(); i++) {
+                if(urls[i] == null){
+                    throw new IOException("unknown url id " + urlIds[i]);
+                }
+                entries.get(i).url = urls[i];
+            }
+        }
+        
+    }
 
 }
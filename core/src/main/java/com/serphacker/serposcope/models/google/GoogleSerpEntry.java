@@ -11,8 +11,6 @@ import it.unimi.dsi.fastutil.shorts.Short2ShortArrayMap;
 import java.net.IDN;
 import java.net.URL;
 import java.net.URLDecoder;
-import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 public class GoogleSerpEntry {
@@ -24,20 +22,8 @@ public class GoogleSerpEntry {
         this.url = url;
     }
     
-    public void fillPreviousPosition(Map<Short,GoogleSerp> history){
-        for (Map.Entry<Short, GoogleSerp> entrySet : history.entrySet()) {
-            short day = entrySet.getKey();
-            List<GoogleSerpEntry> entries = entrySet.getValue().entries;
-            int position = 0;
-            
-            for (int i = 0; i < entries.size(); i++) {
-                if(this.equals(entries.get(i))){
-                    position = i + 1;
-                }
-            }
-            
-            map.put(day, (short)position);
-        }
+    public void fillPreviousPosition(GoogleSerpHistory history){
+        history.fillPreviousPosition(this);
     }
 
     public String getUrl() {
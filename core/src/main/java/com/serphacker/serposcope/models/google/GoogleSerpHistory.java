@@ -0,0 +1,59 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.models.google;
+
+import it.unimi.dsi.fastutil.objects.Object2ShortOpenHashMap;
+import it.unimi.dsi.fastutil.shorts.Short2ObjectArrayMap;
+import it.unimi.dsi.fastutil.shorts.Short2ObjectMap;
+
+/**
+ * url to position of the historical serps of a search, indexed by number of days in the past
+ */
+public class GoogleSerpHistory {
+
+    // rough per url cost : String + char[] headers, hash slot, short value
+    final static int URL_OVERHEAD_BYTES = 64;
+
+    final Short2ObjectArrayMap<Object2ShortOpenHashMap<String>> positionsByDay = new Short2ObjectArrayMap<>();
+    long estimatedBytes;
+
+    public void add(short day, GoogleSerp serp){
+        Object2ShortOpenHashMap<String> positions = new Object2ShortOpenHashMap<>(serp.getEntries().size());
+        positions.defaultReturnValue((short)0);
+        for (int i = 0; i < serp.getEntries().size(); i++) {
+            String url = serp.getEntries().get(i).getUrl();
+            // last occurrence wins, as in the historical linear scan
+            positions.put(url, (short)(i+1));
+            estimatedBytes += URL_OVERHEAD_BYTES + (url == null ? 0 : 2 * url.length());
+        }
+        positionsByDay.put(day, positions);
+    }
+
+    public int getPosition(short day, String url){
+        Object2ShortOpenHashMap<String> positions = positionsByDay.get(day);
+        if(positions == null){
+            return 0;
+        }
+        return positions.getShort(url);
+    }
+
+    public void fillPreviousPosition(GoogleSerpEntry entry){
+        for (Short2ObjectMap.Entry<Object2ShortOpenHashMap<String>> dayEntry : positionsByDay.short2ObjectEntrySet()) {
+            entry.map.put(dayEntry.getShortKey(), dayEntry.getValue().getShort(entry.url));
+        }
+    }
+
+    public boolean isEmpty(){
+        return positionsByDay.isEmpty();
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+}
@@ -0,0 +1,245 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.models.google;
+
+import it.unimi.dsi.fastutil.shorts.Short2ShortArrayMap;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * read-only view of a serp decoding its entries on demand. a view over a serialized serp (url ids
+ * version) doesn't copy the data : entries are parsed up to the last one asked and their urls are
+ * resolved by chunks, maps are only read by getMap. other versions are read through a GoogleSerp.
+ *
+ * a view is reset for each serp, it isn't valid anymore once its data is reused.
+ */
+public class GoogleSerpView {
+
+    public final static int RESOLVE_CHUNK_SIZE = 10;
+    private final static int INITIAL_CAPACITY = 16;
+
+    int runId;
+    int googleSearchId;
+    LocalDateTime runDay;
+
+    // materialized serp, null when reading the data
+    GoogleSerp serp;
+
+    ByteBuffer buffer;
+    GoogleUrlDictionary dictionary;
+    int size;
+    int parsed;
+    int resolved;
+    // position in the buffer of the next entry to parse
+    int position;
+    int[] urlIds = new int[INITIAL_CAPACITY];
+    int[] mapOffsets = new int[INITIAL_CAPACITY];
+    String[] urls = new String[INITIAL_CAPACITY];
+
+    /**
+     * view the serialized entries, data isn't copied and must not change while the view is used
+     *
+     * @param length length of the serialized entries in data
+     * @param dictionary resolves the url ids, can be null if the data doesn't use url ids
+     */
+    public void reset(int runId, int googleSearchId, LocalDateTime runDay, byte[] data, int length, GoogleUrlDictionary dictionary) throws IOException {
+        if(length > 0 && data[0] == GoogleSerp.SERIAL_VERSION_DELTA){
+            throw new IOException("a serp delta can't be viewed without its base");
+        }
+
+        if(length == 0 || data[0] != GoogleSerp.SERIAL_VERSION_URL_IDS){
+            GoogleSerp decoded = new GoogleSerp(runId, googleSearchId, runDay);
+            if(length > 0){
+                decoded.setSerializedEntries(Arrays.copyOf(data, length), dictionary);
+            }
+            reset(decoded);
+            return;
+        }
+
+        this.runId = runId;
+        this.googleSearchId = googleSearchId;
+        this.runDay = runDay;
+        this.serp = null;
+        this.dictionary = dictionary;
+        if(buffer == null || buffer.array() != data){
+            buffer = ByteBuffer.wrap(data);
+        }
+        buffer.limit(length).position(1);
+        try {
+            size = VarInt.read(buffer);
+        } catch(BufferUnderflowException ex){
+            throw new IOException("truncated serp", ex);
+        }
+        position = buffer.position();
+        parsed = 0;
+        resolved = 0;
+        if(urlIds.length < size){
+            int capacity = Math.max(size, urlIds.length * 2);
+            urlIds = new int[capacity];
+            mapOffsets = new int[capacity];
+            urls = new String[capacity];
+        } else {
+            Arrays.fill(urls, 0, size, null);
+        }
+    }
+
+    /**
+     * view an already decoded serp
+     */
+    public void reset(GoogleSerp serp){
+        this.runId = serp.getRunId();
+        this.googleSearchId = serp.getGoogleSearchId();
+        this.runDay = serp.getRunDay();
+        this.serp = serp;
+        this.dictionary = null;
+        this.size = serp.getEntries().size();
+    }
+
+    public int getRunId() {
+        return runId;
+    }
+
+    public int getGoogleSearchId() {
+        return googleSearchId;
+    }
+
+    public LocalDateTime getRunDay() {
+        return runDay;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    /**
+     * @param index 0 based position
+     * @return the url of the entry, null if its url id is unknown
+     */
+    public String getUrl(int index){
+        if(serp != null){
+            return serp.getEntries().get(index).getUrl();
+        }
+        checkIndex(index);
+        if(index >= resolved){
+            resolve(Math.min(size, Math.max(index + 1, resolved + RESOLVE_CHUNK_SIZE)));
+        }
+        return urls[index];
+    }
+
+    /**
+     * @return the index of the first entry with this url, -1 if none
+     */
+    public int indexOf(String url){
+        for (int i = 0; i < size; i++) {
+            if(url.equals(getUrl(i))){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a copy of the map of the entry
+     */
+    public Short2ShortArrayMap getMap(int index){
+        if(serp != null){
+            return new Short2ShortArrayMap(serp.getEntries().get(index).getMap());
+        }
+        checkIndex(index);
+        parse(index + 1);
+        Short2ShortArrayMap map = new Short2ShortArrayMap();
+        buffer.position(mapOffsets[index]);
+        GoogleSerp.readMap(buffer, map);
+        buffer.position(position);
+        return map;
+    }
+
+    /**
+     * @return the serp with every entry decoded
+     */
+    public GoogleSerp toSerp(){
+        if(serp != null){
+            return serp;
+        }
+        GoogleSerp decoded = new GoogleSerp(runId, googleSearchId, runDay);
+        for (int i = 0; i < size; i++) {
+            GoogleSerpEntry entry = new GoogleSerpEntry(getUrl(i));
+            entry.setMap(getMap(i));
+            decoded.addEntry(entry);
+        }
+        return decoded;
+    }
+
+    protected void checkIndex(int index){
+        if(index < 0 || index >= size){
+            throw new IndexOutOfBoundsException(index + " not in [0," + size + ")");
+        }
+    }
+
+    protected void parse(int count){
+        if(parsed >= count){
+            return;
+        }
+        buffer.position(position);
+        try {
+            while(parsed < count){
+                int urlId = VarInt.read(buffer);
+                urlIds[parsed] = urlId;
+                if(urlId == 0){
+                    int length = VarInt.read(buffer);
+                    urls[parsed] = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+                    buffer.position(buffer.position() + length);
+                }
+                mapOffsets[parsed] = buffer.position();
+                int mapSize = VarInt.read(buffer);
+                for (int j = 0; j < mapSize * 2; j++) {
+                    VarInt.read(buffer);
+                }
+                ++parsed;
+            }
+        } catch(BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException ex){
+            throw new IllegalStateException("truncated serp", ex);
+        }
+        position = buffer.position();
+    }
+
+    protected void resolve(int count){
+        parse(count);
+        int missing = 0;
+        for (int i = resolved; i < count; i++) {
+            if(urlIds[i] != 0){
+                ++missing;
+            }
+        }
+        if(missing > 0){
+            if(dictionary == null){
+                throw new IllegalStateException("url dictionary required");
+            }
+            int[] ids = new int[missing];
+            int j = 0;
+            for (int i = resolved; i < count; i++) {
+                if(urlIds[i] != 0){
+                    ids[j++] = urlIds[i];
+                }
+            }
+            String[] resolvedUrls = dictionary.getUrls(ids);
+            j = 0;
+            for (int i = resolved; i < count; i++) {
+                if(urlIds[i] != 0){
+                    urls[i] = resolvedUrls[j++];
+                }
+            }
+        }
+        resolved = count;
+    }
+
+}
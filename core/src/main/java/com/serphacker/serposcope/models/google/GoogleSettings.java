@@ -20,7 +20,12 @@ public class GoogleSettings {
     int minPauseBetweenPageSec = 5;
     int maxPauseBetweenPageSec = 5;
     int maxThreads = 1;
+    int minThreads = 0;
+    int hedgePercent = 0;
     int fetchRetry = 3;    
+    int proxyRequestsPerMinute = 0;
+    boolean threadPerProxy = false;
+    int serpKeyframeInterval = 0;
     
     GoogleCountryCode defaultCountry = GoogleCountryCode.__;
     String defaultDatacenter = null;
@@ -75,6 +80,56 @@ public class GoogleSettings {
     public void setFetchRetry(int fetchRetry) {
         this.fetchRetry = fetchRetry;
     }
+
+    public int getProxyRequestsPerMinute() {
+        return proxyRequestsPerMinute;
+    }
+
+    public void setProxyRequestsPerMinute(int proxyRequestsPerMinute) {
+        this.proxyRequestsPerMinute = proxyRequestsPerMinute;
+    }
+
+    public int getMinThreads() {
+        return minThreads;
+    }
+
+    /**
+     * lower bound of the adaptive number of threads, 0 to always run the maximum number of threads
+     */
+    public void setMinThreads(int minThreads) {
+        this.minThreads = minThreads;
+    }
+
+    public int getHedgePercent() {
+        return hedgePercent;
+    }
+
+    /**
+     * maximum percentage of pages requested a second time when slower than usual, 0 to disable
+     */
+    public void setHedgePercent(int hedgePercent) {
+        this.hedgePercent = hedgePercent;
+    }
+
+    public int getSerpKeyframeInterval() {
+        return serpKeyframeInterval;
+    }
+
+    /**
+     * store a full serp every serpKeyframeInterval runs and the others as a delta of the previous
+     * run, 0 or 1 to always store full serps
+     */
+    public void setSerpKeyframeInterval(int serpKeyframeInterval) {
+        this.serpKeyframeInterval = serpKeyframeInterval;
+    }
+
+    public boolean isThreadPerProxy() {
+        return threadPerProxy;
+    }
+
+    public void setThreadPerProxy(boolean threadPerProxy) {
+        this.threadPerProxy = threadPerProxy;
+    }
     
     // search
 
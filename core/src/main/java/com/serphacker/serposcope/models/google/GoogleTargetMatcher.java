@@ -0,0 +1,281 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.models.google;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+
+/**
+ * matches a list of targets against a serp in a single pass over its urls.
+ * DOMAIN and SUBDOMAIN targets are resolved with a host lookup walking up the
+ * parent domains, REGEX targets are only evaluated when their required literal
+ * is found in the url.
+ *
+ * immutable, thread safe
+ */
+public class GoogleTargetMatcher {
+
+    final static String HTTP = "http://";
+    final static String HTTPS = "https://";
+    final static String CHAR_CLASSES = "dDsSwWbBhHvV";
+
+    final List<GoogleTarget> targets;
+    final Map<String,IntList> domains = new HashMap<>();
+    final Map<String,IntList> subdomains = new HashMap<>();
+    final int[] regexTargets;
+    final Pattern[] regexPatterns;
+    final String[] regexLiterals;
+
+    public GoogleTargetMatcher(Collection<GoogleTarget> targets) {
+        this.targets = new ArrayList<>(targets);
+
+        IntList regexIndexes = new IntArrayList();
+        for (int i = 0; i < this.targets.size(); i++) {
+            GoogleTarget target = this.targets.get(i);
+            String pattern = target.getPattern();
+            if(target.getType() == GoogleTarget.PatternType.DOMAIN && pattern.indexOf('/') == -1){
+                domains.computeIfAbsent(pattern, (k) -> new IntArrayList(1)).add(i);
+            } else if(target.getType() == GoogleTarget.PatternType.SUBDOMAIN && pattern.indexOf('/') == -1){
+                subdomains.computeIfAbsent(pattern, (k) -> new IntArrayList(1)).add(i);
+            } else {
+                regexIndexes.add(i);
+            }
+        }
+
+        regexTargets = regexIndexes.toIntArray();
+        regexPatterns = new Pattern[regexTargets.length];
+        regexLiterals = new String[regexTargets.length];
+        for (int i = 0; i < regexTargets.length; i++) {
+            GoogleTarget target = this.targets.get(regexTargets[i]);
+            regexPatterns[i] = target.compiledPattern;
+            if(target.getType() == GoogleTarget.PatternType.REGEX){
+                regexLiterals[i] = requiredLiteral(target.getPattern());
+            }
+        }
+    }
+
+    public List<GoogleTarget> getTargets() {
+        return targets;
+    }
+
+    /**
+     * @return the first position (1 based) of every target, indexed as getTargets(),
+     * GoogleRank.UNRANKED if the target doesn't match
+     */
+    public int[] match(List<String> urls){
+        return match(urls.size(), urls::get);
+    }
+
+    public int[] match(GoogleSerp serp){
+        List<GoogleSerpEntry> entries = serp.getEntries();
+        return match(entries.size(), (i) -> entries.get(i).getUrl());
+    }
+
+    /**
+     * only decodes the urls up to the last target found
+     */
+    public int[] match(GoogleSerpView serp){
+        return match(serp.size(), serp::getUrl);
+    }
+
+    protected int[] match(int size, IntFunction<String> urlAt){
+        int[] ranks = new int[targets.size()];
+        Arrays.fill(ranks, GoogleRank.UNRANKED);
+
+        int remaining = targets.size();
+        for (int position = 1; position <= size && remaining > 0; position++) {
+            String url = urlAt.apply(position - 1);
+            if(url == null){
+                continue;
+            }
+
+            String host = host(url);
+            if(host != null){
+                remaining -= rank(domains.get(host), ranks, position);
+                if(!subdomains.isEmpty()){
+                    remaining -= rank(subdomains.get(host), ranks, position);
+                    for (int dot = host.indexOf('.', 1); dot != -1; dot = host.indexOf('.', dot + 1)) {
+                        remaining -= rank(subdomains.get(host.substring(dot + 1)), ranks, position);
+                    }
+                }
+            }
+
+            for (int i = 0; i < regexTargets.length; i++) {
+                int target = regexTargets[i];
+                if(ranks[target] != GoogleRank.UNRANKED){
+                    continue;
+                }
+                if(regexLiterals[i] != null && !url.contains(regexLiterals[i])){
+                    continue;
+                }
+                if(regexPatterns[i].matcher(url).find()){
+                    ranks[target] = position;
+                    --remaining;
+                }
+            }
+        }
+
+        return ranks;
+    }
+
+    protected static int rank(IntList targets, int[] ranks, int position){
+        if(targets == null){
+            return 0;
+        }
+        int ranked = 0;
+        for (int i = 0; i < targets.size(); i++) {
+            int target = targets.getInt(i);
+            if(ranks[target] == GoogleRank.UNRANKED){
+                ranks[target] = position;
+                ++ranked;
+            }
+        }
+        return ranked;
+    }
+
+    /**
+     * @return everything between the scheme and the first slash, as the DOMAIN and SUBDOMAIN patterns do
+     */
+    protected static String host(String url){
+        int start;
+        if(url.startsWith(HTTPS)){
+            start = HTTPS.length();
+        } else if(url.startsWith(HTTP)){
+            start = HTTP.length();
+        } else {
+            return null;
+        }
+
+        int end = url.indexOf('/', start);
+        return url.substring(start, end == -1 ? url.length() : end);
+    }
+
+    /**
+     * longest literal that any match of the regex must contain, null if none can be safely extracted.
+     * conservative : only top level literals of patterns without alternation, flags or quoting.
+     */
+    protected static String requiredLiteral(String regex){
+        if(regex.indexOf('|') != -1 || regex.contains("(?") || regex.contains("\\Q")){
+            return null;
+        }
+
+        String best = null;
+        StringBuilder current = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            switch(c){
+                case '\\':
+                    if(i + 1 >= regex.length()){
+                        return null;
+                    }
+                    char escaped = regex.charAt(++i);
+                    if(!Character.isLetterOrDigit(escaped)){
+                        if(depth == 0){
+                            current.append(escaped);
+                        }
+                    } else if(CHAR_CLASSES.indexOf(escaped) != -1){
+                        best = longest(best, current);
+                    } else {
+                        // hex, unicode, octal, back references...
+                        return null;
+                    }
+                    break;
+
+                case '?':
+                case '*':
+                case '{':
+                    // previous char is optional
+                    if(current.length() > 0){
+                        current.setLength(current.length() - 1);
+                    }
+                    best = longest(best, current);
+                    if(c == '{'){
+                        int close = regex.indexOf('}', i);
+                        if(close == -1){
+                            return null;
+                        }
+                        i = close;
+                    }
+                    break;
+
+                case '[':
+                    best = longest(best, current);
+                    i = classEnd(regex, i);
+                    if(i == -1){
+                        return null;
+                    }
+                    break;
+
+                case '(':
+                    best = longest(best, current);
+                    ++depth;
+                    break;
+
+                case ')':
+                    best = longest(best, current);
+                    --depth;
+                    break;
+
+                case '.':
+                case '+':
+                case '^':
+                case '$':
+                    best = longest(best, current);
+                    break;
+
+                default:
+                    if(depth == 0){
+                        current.append(c);
+                    }
+            }
+        }
+        best = longest(best, current);
+        return best;
+    }
+
+    protected static String longest(String best, StringBuilder current){
+        if(current.length() > 0 && (best == null || current.length() > best.length())){
+            best = current.toString();
+        }
+        current.setLength(0);
+        return best;
+    }
+
+    protected static int classEnd(String regex, int start){
+        int i = start + 1;
+        if(i < regex.length() && regex.charAt(i) == '^'){
+            ++i;
+        }
+        // a leading ] is a literal
+        if(i < regex.length() && regex.charAt(i) == ']'){
+            ++i;
+        }
+        int depth = 1;
+        for (; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if(c == '\\'){
+                ++i;
+            } else if(c == '['){
+                ++depth;
+            } else if(c == ']' && --depth == 0){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,25 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.models.google;
+
+/**
+ * stable integer ids of urls, id 0 is never a valid id
+ */
+public interface GoogleUrlDictionary {
+
+    /**
+     * @return the id of each url, missing urls are added, 0 for a null url or a url that can't be stored
+     */
+    int[] getIds(String[] urls);
+
+    /**
+     * @return the url of each id, null for an unknown id
+     */
+    String[] getUrls(int[] ids);
+
+}
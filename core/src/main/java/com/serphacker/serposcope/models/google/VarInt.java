@@ -0,0 +1,49 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.models.google;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * unsigned LEB128 varints and zigzag mapping of signed values, shared by the serialized models
+ */
+public final class VarInt {
+
+    private VarInt() {
+    }
+
+    public static void write(ByteArrayOutputStream out, int value){
+        while((value & ~0x7F) != 0){
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    public static int read(ByteBuffer buffer){
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+        }
+        throw new IllegalStateException("malformed varint");
+    }
+
+    public static int zigzagEncode(int value){
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int zigzagDecode(int value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.task.google;
+
+import java.util.BitSet;
+
+/**
+ * AIMD limit of the number of google threads scraping at the same time.
+ *
+ * every WINDOW_SIZE pages, the captcha rate, error rate and average latency of the window are
+ * compared to their thresholds. a healthy window adds one thread, an unhealthy one halves the
+ * number of threads, always between minThreads and maxThreads. the latency threshold is relative
+ * to the best window average seen during the run.
+ *
+ * threads are ranked among the running ones, a thread is active when its rank is below the limit,
+ * so the limit holds even when some threads stopped.
+ *
+ * thread safe
+ */
+public class GoogleConcurrencyController {
+
+    public final static int WINDOW_SIZE = 20;
+    public final static float MAX_CAPTCHA_RATE = 0.1f;
+    public final static float MAX_ERROR_RATE = 0.2f;
+    public final static float MAX_LATENCY_FACTOR = 2f;
+
+    public static class Decision {
+        public final int previousLimit;
+        public final int limit;
+        public final float captchaRate;
+        public final float errorRate;
+        public final long latencyMS;
+
+        Decision(int previousLimit, int limit, float captchaRate, float errorRate, long latencyMS) {
+            this.previousLimit = previousLimit;
+            this.limit = limit;
+            this.captchaRate = captchaRate;
+            this.errorRate = errorRate;
+            this.latencyMS = latencyMS;
+        }
+
+        public boolean changed(){
+            return limit != previousLimit;
+        }
+
+        @Override
+        public String toString() {
+            return previousLimit + " -> " + limit + " threads (captchas " + Math.round(captchaRate * 100) + "%"
+                + ", errors " + Math.round(errorRate * 100) + "%, latency " + latencyMS + "ms)";
+        }
+    }
+
+    final int minThreads;
+    final int maxThreads;
+    final BitSet running = new BitSet();
+    int limit;
+
+    int samples;
+    int captchas;
+    int errors;
+    long latencySumMS;
+    long bestLatencyMS = -1;
+
+    public GoogleConcurrencyController(int minThreads, int maxThreads) {
+        this.maxThreads = Math.max(1, maxThreads);
+        this.minThreads = Math.max(1, Math.min(minThreads, this.maxThreads));
+        this.limit = this.minThreads;
+    }
+
+    public synchronized void register(int thread){
+        running.set(thread);
+    }
+
+    public synchronized void unregister(int thread){
+        running.clear(thread);
+    }
+
+    public synchronized boolean isActive(int thread){
+        return running.get(0, thread).cardinality() < limit;
+    }
+
+    /**
+     * @return the decision taken when the page completed a window, null otherwise
+     */
+    public synchronized Decision record(long latencyMS, boolean error, int pageCaptchas){
+        ++samples;
+        latencySumMS += latencyMS;
+        if(error){
+            ++errors;
+        }
+        if(pageCaptchas > 0){
+            ++captchas;
+        }
+        if(samples < WINDOW_SIZE){
+            return null;
+        }
+
+        float captchaRate = (float)captchas / samples;
+        float errorRate = (float)errors / samples;
+        long latency = latencySumMS / samples;
+        samples = captchas = errors = 0;
+        latencySumMS = 0;
+
+        boolean slow = bestLatencyMS > 0 && latency > bestLatencyMS * MAX_LATENCY_FACTOR;
+        if(bestLatencyMS < 0 || latency < bestLatencyMS){
+            bestLatencyMS = latency;
+        }
+
+        int previousLimit = limit;
+        if(captchaRate > MAX_CAPTCHA_RATE || errorRate > MAX_ERROR_RATE || slow){
+            limit = Math.max(minThreads, limit / 2);
+        } else {
+            limit = Math.min(maxThreads, limit + 1);
+        }
+        return new Decision(previousLimit, limit, captchaRate, errorRate, latency);
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public int getMinThreads() {
+        return minThreads;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+}
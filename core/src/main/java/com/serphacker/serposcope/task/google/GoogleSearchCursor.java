@@ -0,0 +1,203 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.task.google;
+
+import com.serphacker.serposcope.db.google.GoogleSearchDB;
+import com.serphacker.serposcope.models.google.GoogleSearch;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * feeds the searches of a run to the work queue by chunks, keeping at most about prefetch searches
+ * queued. the search id range is walked in the order of a seeded permutation, a chunk of ids is
+ * loaded with a single query, ids without search (deleted) are skipped. a failed query stops the
+ * cursor, the ids not walked are counted as skipped.
+ *
+ * thread safe
+ */
+public class GoogleSearchCursor implements Runnable {
+
+    protected static final Logger LOG = LoggerFactory.getLogger(GoogleSearchCursor.class);
+
+    public final static int DEFAULT_CHUNK_SIZE = 500;
+    public final static int DEFAULT_PREFETCH = 2000;
+    public final static long WAIT_MS = 50l;
+
+    final GoogleSearchDB searchDB;
+    final BlockingQueue<GoogleSearch> queue;
+    final int minId;
+    final long rangeSize;
+    final IdPermutation permutation;
+    final Integer uncheckedRunId;
+    final int chunkSize;
+    final int prefetch;
+    Consumer<List<Integer>> listener;
+
+    long position;
+    volatile int fed;
+    volatile boolean done;
+    volatile boolean failed;
+    Thread thread;
+    volatile boolean closed;
+
+    /**
+     * @param seed order of the searches, null to keep the id order
+     * @param uncheckedRunId only feed the searches without serp in this run, null for all
+     */
+    public GoogleSearchCursor(GoogleSearchDB searchDB, BlockingQueue<GoogleSearch> queue,
+        Long seed, Integer uncheckedRunId
+    ) throws SQLException {
+        this(searchDB, queue, seed, uncheckedRunId, DEFAULT_CHUNK_SIZE, DEFAULT_PREFETCH);
+    }
+
+    public GoogleSearchCursor(GoogleSearchDB searchDB, BlockingQueue<GoogleSearch> queue,
+        Long seed, Integer uncheckedRunId, int chunkSize, int prefetch
+    ) throws SQLException {
+        this.searchDB = searchDB;
+        this.queue = queue;
+        this.uncheckedRunId = uncheckedRunId;
+        this.chunkSize = chunkSize;
+        this.prefetch = prefetch;
+
+        int[] range = searchDB.idRange();
+        if(range == null){
+            this.minId = 0;
+            this.rangeSize = 0;
+            this.permutation = null;
+            this.done = true;
+        } else {
+            this.minId = range[0];
+            this.rangeSize = (long)range[1] - range[0] + 1;
+            this.permutation = seed == null ? null : new IdPermutation(rangeSize, seed);
+        }
+    }
+
+    /**
+     * called with the ids of each chunk queued, in queue order
+     */
+    public void setListener(Consumer<List<Integer>> listener) {
+        this.listener = listener;
+    }
+
+    public void start(){
+        if(done){
+            return;
+        }
+        thread = new Thread(this, "google-searches");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void close(){
+        closed = true;
+        if(thread != null){
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while(!closed && !done){
+                while(queue.size() >= prefetch){
+                    Thread.sleep(WAIT_MS);
+                }
+                feedChunk();
+            }
+        } catch(InterruptedException ex){
+            LOG.debug("search cursor interrupted");
+        } catch(Exception ex){
+            LOG.error("search cursor crashed, {} search ids skipped", rangeSize - position, ex);
+            failed = true;
+        } finally {
+            done = true;
+        }
+    }
+
+    /**
+     * queue the searches of the next chunk of ids
+     *
+     * @return number of searches queued
+     */
+    protected int feedChunk() throws SQLException {
+        List<Integer> ids = new ArrayList<>(chunkSize);
+        long next = position;
+        while(ids.size() < chunkSize && next < rangeSize){
+            long offset = permutation == null ? next : permutation.get(next);
+            ids.add((int)(minId + offset));
+            ++next;
+        }
+        if(ids.isEmpty()){
+            done = true;
+            return 0;
+        }
+
+        // the chunk is walked once loaded, a failed chunk is skipped
+        Map<Integer,GoogleSearch> searches = searchDB.mapBySearchId(uncheckedRunId, ids);
+        position = next;
+
+        List<Integer> queued = new ArrayList<>(searches.size());
+        for (Integer id : ids) {
+            if(searches.containsKey(id)){
+                queued.add(id);
+            }
+        }
+        // the listener gets the ids before the scrapers
+        if(listener != null && !queued.isEmpty()){
+            listener.accept(queued);
+        }
+        for (Integer id : queued) {
+            queue.add(searches.get(id));
+        }
+        fed += queued.size();
+        if(position >= rangeSize){
+            done = true;
+        }
+        return queued.size();
+    }
+
+    /**
+     * @return true when every search has been queued
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return true when the cursor stopped on an error before queuing every search
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * @return number of search ids never loaded because the cursor failed
+     */
+    public long getSkipped() {
+        return failed ? rangeSize - position : 0;
+    }
+
+    /**
+     * @return number of searches queued so far
+     */
+    public int getFed() {
+        return fed;
+    }
+
+}
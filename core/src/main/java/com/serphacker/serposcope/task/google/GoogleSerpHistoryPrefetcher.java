@@ -0,0 +1,246 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.task.google;
+
+import com.serphacker.serposcope.db.google.GoogleSerpDB;
+import com.serphacker.serposcope.models.google.GoogleSerp;
+import com.serphacker.serposcope.models.google.GoogleSerpHistory;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * bulk loads the 1/7/30/90 days serps of the scheduled searches ahead of the scrapers
+ * and keeps them in a memory bounded cache until the search result is written. when the cache is
+ * full, the histories of searches the scrapers went past without writing them (failed, dropped
+ * by a stopped thread...) are evicted.
+ *
+ * thread safe
+ */
+public class GoogleSerpHistoryPrefetcher implements Runnable {
+
+    protected static final Logger LOG = LoggerFactory.getLogger(GoogleSerpHistoryPrefetcher.class);
+
+    public final static int DEFAULT_CHUNK_SIZE = 250;
+    public final static long DEFAULT_MAX_BYTES = 64l * 1024l * 1024l;
+
+    final GoogleSerpDB serpDB;
+    final Map<Integer,List<Short>> daysByRun = new HashMap<>();
+    final int chunkSize;
+    final long maxBytes;
+
+    final IntArrayFIFOQueue pending = new IntArrayFIFOQueue();
+    final Int2ObjectOpenHashMap<GoogleSerpHistory> cache = new Int2ObjectOpenHashMap<>();
+    final IntOpenHashSet missed = new IntOpenHashSet();
+    // cached searches in load order with their load sequence
+    final IntArrayFIFOQueue loaded = new IntArrayFIFOQueue();
+    final LongArrayFIFOQueue loadedSeqs = new LongArrayFIFOQueue();
+    final Int2LongOpenHashMap seqBySearch = new Int2LongOpenHashMap();
+    long seq;
+    long lastTakenSeq = -1;
+    long bytes;
+    long hits;
+    long misses;
+    long evicted;
+
+    Thread thread;
+    volatile boolean closed;
+
+    public GoogleSerpHistoryPrefetcher(GoogleSerpDB serpDB, Map<Short,Integer> runsByDay) {
+        this(serpDB, runsByDay, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_BYTES);
+    }
+
+    public GoogleSerpHistoryPrefetcher(GoogleSerpDB serpDB, Map<Short,Integer> runsByDay, int chunkSize, long maxBytes) {
+        this.serpDB = serpDB;
+        this.chunkSize = chunkSize;
+        this.maxBytes = maxBytes;
+        for (Map.Entry<Short, Integer> entry : runsByDay.entrySet()) {
+            daysByRun.computeIfAbsent(entry.getValue(), (k) -> new ArrayList<>()).add(entry.getKey());
+        }
+    }
+
+    public void start(){
+        thread = new Thread(this, "google-history");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * queue searches for prefetching, in the order they will be scraped
+     */
+    public synchronized void schedule(Collection<Integer> searchIds){
+        for (Integer searchId : searchIds) {
+            pending.enqueue(searchId);
+        }
+        notifyAll();
+    }
+
+    /**
+     * @return the prefetched history of the search or null if it wasn't prefetched yet
+     */
+    public synchronized GoogleSerpHistory take(int searchId){
+        GoogleSerpHistory history = cache.remove(searchId);
+        if(history == null){
+            ++misses;
+            missed.add(searchId);
+            return null;
+        }
+        ++hits;
+        bytes -= history.getEstimatedBytes();
+        lastTakenSeq = Math.max(lastTakenSeq, seqBySearch.remove(searchId));
+        evict(false);
+        notifyAll();
+        return history;
+    }
+
+    public void close(){
+        synchronized(this){
+            closed = true;
+            cache.clear();
+            seqBySearch.clear();
+            bytes = 0;
+            notifyAll();
+        }
+        if(thread != null){
+            try {
+                thread.join();
+            } catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+            }
+        }
+        LOG.info("serp history prefetch : {} hits, {} misses, {} evicted", new Object[]{hits, misses, evicted});
+    }
+
+    @Override
+    public void run() {
+        try {
+            List<Integer> chunk;
+            while((chunk = nextChunk()) != null){
+                load(chunk);
+            }
+        } catch(InterruptedException ex){
+            LOG.debug("serp history prefetcher interrupted");
+        } catch(Exception ex){
+            LOG.error("serp history prefetcher crashed", ex);
+        }
+    }
+
+    protected synchronized List<Integer> nextChunk() throws InterruptedException {
+        while(!closed && (pending.isEmpty() || bytes >= maxBytes)){
+            if(bytes >= maxBytes && evict(true) > 0){
+                continue;
+            }
+            wait();
+        }
+        if(closed){
+            return null;
+        }
+
+        List<Integer> chunk = new ArrayList<>(chunkSize);
+        while(!pending.isEmpty() && chunk.size() < chunkSize){
+            int searchId = pending.dequeueInt();
+            if(!missed.remove(searchId)){
+                chunk.add(searchId);
+            }
+        }
+        return chunk;
+    }
+
+    protected void load(List<Integer> chunk){
+        if(chunk.isEmpty()){
+            return;
+        }
+
+        Map<Integer,GoogleSerpHistory> histories = new HashMap<>();
+        for (Integer searchId : chunk) {
+            histories.put(searchId, new GoogleSerpHistory());
+        }
+
+        serpDB.stream(daysByRun.keySet(), chunk, (GoogleSerp serp) -> {
+            GoogleSerpHistory history = histories.get(serp.getGoogleSearchId());
+            List<Short> days = daysByRun.get(serp.getRunId());
+            if(history == null || days == null){
+                return;
+            }
+            for (Short day : days) {
+                history.add(day, serp);
+            }
+        });
+
+        synchronized(this){
+            if(closed){
+                return;
+            }
+            for (Map.Entry<Integer, GoogleSerpHistory> entry : histories.entrySet()) {
+                // scraped before we had a chance to prefetch it
+                if(missed.remove((int)entry.getKey())){
+                    continue;
+                }
+                GoogleSerpHistory previous = cache.put((int)entry.getKey(), entry.getValue());
+                if(previous != null){
+                    bytes -= previous.getEstimatedBytes();
+                }
+                bytes += entry.getValue().getEstimatedBytes();
+                seqBySearch.put((int)entry.getKey(), seq);
+                loaded.enqueue(entry.getKey());
+                loadedSeqs.enqueue(seq);
+                ++seq;
+            }
+        }
+    }
+
+    /**
+     * forget the taken histories at the head of the load order and, when full, evict the
+     * histories loaded more than a chunk before the last one taken, the scrapers went past
+     * these searches and they would otherwise stay until the end of the run
+     *
+     * @return number of histories evicted
+     */
+    protected synchronized int evict(boolean full){
+        int count = 0;
+        while(!loaded.isEmpty()){
+            int searchId = loaded.firstInt();
+            long loadSeq = loadedSeqs.firstLong();
+            if(seqBySearch.containsKey(searchId) && seqBySearch.get(searchId) == loadSeq){
+                if(!full || loadSeq >= lastTakenSeq - chunkSize){
+                    break;
+                }
+                seqBySearch.remove(searchId);
+                bytes -= cache.remove(searchId).getEstimatedBytes();
+                ++count;
+            }
+            // taken, evicted or loaded again
+            loaded.dequeueInt();
+            loadedSeqs.dequeueLong();
+        }
+        evicted += count;
+        return count;
+    }
+
+    public synchronized long getBytes(){
+        return bytes;
+    }
+
+    public synchronized int size(){
+        return cache.size();
+    }
+
+    public synchronized long getEvicted(){
+        return evicted;
+    }
+
+}
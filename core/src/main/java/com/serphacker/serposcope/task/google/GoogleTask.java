@@ -10,6 +10,7 @@ package com.serphacker.serposcope.task.google;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.serphacker.serposcope.db.google.GoogleDB;
+import com.serphacker.serposcope.db.google.GoogleRankSnapshot;
 import com.serphacker.serposcope.di.CaptchaSolverFactory;
 import com.serphacker.serposcope.di.ScrapClientFactory;
 //import com.serphacker.serposcope.di.ScraperFactory;
@@ -20,16 +21,27 @@ import com.serphacker.serposcope.models.google.GoogleRank;
 import com.serphacker.serposcope.models.google.GoogleSearch;
 import com.serphacker.serposcope.models.google.GoogleSerp;
 import com.serphacker.serposcope.models.google.GoogleSerpEntry;
+import com.serphacker.serposcope.models.google.GoogleSerpHistory;
 import com.serphacker.serposcope.models.google.GoogleTarget;
+import com.serphacker.serposcope.models.google.GoogleTargetMatcher;
+import com.serphacker.serposcope.scraper.captcha.solver.AsyncCaptchaSolver;
 import com.serphacker.serposcope.scraper.captcha.solver.CaptchaSolver;
 import com.serphacker.serposcope.scraper.google.GoogleScrapResult;
+import com.serphacker.serposcope.scraper.google.scraper.GoogleHedger;
 import com.serphacker.serposcope.scraper.google.scraper.GoogleScraper;
+import com.serphacker.serposcope.scraper.http.ResponseBufferPool;
+import com.serphacker.serposcope.scraper.http.ScrapConnectionPool;
+import com.serphacker.serposcope.scraper.http.extensions.ScrapClientSSLSessionCache;
 import com.serphacker.serposcope.scraper.http.ScrapClient;
 import com.serphacker.serposcope.scraper.http.proxy.DirectNoProxy;
+import com.serphacker.serposcope.scraper.http.proxy.ProxyHealth;
 import com.serphacker.serposcope.scraper.http.proxy.ProxyRotator;
 import com.serphacker.serposcope.task.AbstractTask;
+import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -37,18 +49,26 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.serphacker.serposcope.scraper.http.proxy.ScrapProxy;
-import java.util.stream.Collectors;
 import com.serphacker.serposcope.di.GoogleScraperFactory;
 import com.serphacker.serposcope.models.google.GoogleBest;
 import com.serphacker.serposcope.models.google.GoogleTargetSummary;
 import java.io.IOException;
-import java.util.Collections;
+import java.sql.SQLException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class GoogleTask extends AbstractTask {
 
     protected static final Logger LOG = LoggerFactory.getLogger(GoogleTask.class);
     
+    public final static int MAX_PROXY_THREADS = 1000;
+    public final static long PROXY_THREAD_STACK_SIZE = 256l * 1024l;
+    public final static int MAX_RESPONSE_BUFFERS = 32;
+    public final static int MAX_POOLED_CONNECTIONS_PER_THREAD = 4;
+    public final static int MAX_THREADS_LOG_LINES = 100;
+    
     GoogleScraperFactory googleScraperFactory;
     CaptchaSolverFactory captchaSolverFactory;
     ScrapClientFactory scrapClientFactory;
@@ -59,18 +79,29 @@ public class GoogleTask extends AbstractTask {
     Run previousRun;
     final Map<Short,Integer> previousRunsByDay = new ConcurrentHashMap<>();
     final Map<Integer,List<GoogleTarget>> targetsByGroup = new ConcurrentHashMap<>();
+    final Map<Integer,GoogleTargetMatcher> matchersByGroup = new ConcurrentHashMap<>();
     final Map<Integer,GoogleTargetSummary> summariesByTarget = new ConcurrentHashMap<>();
+    final GoogleRankSnapshot rankSnapshot = new GoogleRankSnapshot();
     
     LinkedBlockingQueue<GoogleSearch> searches;
+    GoogleSearchCursor searchCursor;
     GoogleSettings googleOptions;
     protected final AtomicInteger searchDone = new AtomicInteger();
     final AtomicInteger captchaCount = new AtomicInteger();
+    final AtomicInteger writeErrors = new AtomicInteger();
     
-    Thread[] threads;
+    ExecutorService executor;
+    ResponseBufferPool bufferPool;
+    ScrapConnectionPool connectionPool;
+    GoogleTaskWriter writer;
+    GoogleSerpHistoryPrefetcher historyPrefetcher;
+    GoogleConcurrencyController concurrency;
+    GoogleHedger hedger;
     volatile int totalSearch;
     volatile boolean interrupted;
     
     CaptchaSolver solver;
+    AsyncCaptchaSolver asyncSolver;
     String httpUserAgent;
     int httpTimeoutMS;
     boolean updateRun;
@@ -97,66 +128,167 @@ public class GoogleTask extends AbstractTask {
     
 
     @Override
-    public Run.Status doRun() {
+    public Run.Status doRun() throws Exception {
         solver = initializeCaptchaSolver();
         googleOptions = googleDB.options.get();
+        googleDB.serp.setKeyframeInterval(googleOptions.getSerpKeyframeInterval());
 
+        if(!googleDB.rankSeries.appendPendingRuns()){
+            LOG.warn("pending runs of the rank series are still not appended : {}", googleDB.rankSeries.getPendingRuns());
+        }
+        // pending until the end of the run, appended again by the next one if this one crashes
+        googleDB.rankSeries.addPendingRun(run.getId());
+        
         initializeSearches();
         initializePreviousRuns();
         initializeTargets();
         
         
         int nThread = googleOptions.getMaxThreads();
-        List<ScrapProxy> proxies = baseDB.proxy.list().stream().map(Proxy::toScrapProxy).collect(Collectors.toList());
+        Map<ScrapProxy,Proxy> dbProxies = new IdentityHashMap<>();
+        for (Proxy dbProxy : baseDB.proxy.list()) {
+            dbProxies.put(dbProxy.toScrapProxy(), dbProxy);
+        }
+        List<ScrapProxy> proxies = new ArrayList<>(dbProxies.keySet());
         
         if(proxies.isEmpty()){
             LOG.warn("no proxy configured, using direct connection");
             proxies.add(new DirectNoProxy());
         }
         
-        if( proxies.size() < nThread ){
+        if(googleOptions.isThreadPerProxy()){
+            nThread = Math.min(proxies.size(), MAX_PROXY_THREADS);
+            LOG.info("one thread per proxy, {} threads", nThread);
+        } else if( proxies.size() < nThread ){
             LOG.info("less proxy ({}) than max thread ({}), setting thread number to {}", 
                 new Object[]{proxies.size(), nThread, nThread});
             nThread = proxies.size();
         }
+        if(googleOptions.getMinThreads() > 0 && googleOptions.getMinThreads() < nThread){
+            // nThread threads are started but only the ones allowed by the controller scrap
+            concurrency = new GoogleConcurrencyController(googleOptions.getMinThreads(), nThread);
+            LOG.info("adaptive threads between {} and {}", concurrency.getMinThreads(), concurrency.getMaxThreads());
+            run.setThreads(concurrency.getLimit());
+        } else {
+            run.setThreads(nThread);
+        }
+        baseDB.run.updateThreads(run);
+        // responses are read in shared buffers grown by chunks, the memory kept between requests
+        // doesn't grow with the number of threads
+        bufferPool = new ResponseBufferPool(
+            ResponseBufferPool.DEFAULT_CHUNK_SIZE, 
+            ScrapClient.DEFAULT_MAX_RESPONSE_LENGTH + 1, 
+            (long)Math.min(nThread, MAX_RESPONSE_BUFFERS) * (ScrapClient.DEFAULT_MAX_RESPONSE_LENGTH + 1)
+        );
+        // keep-alive connections are kept per proxy and reused by the thread rotating to it,
+        // direct and socks connections share a route so a route must fit every thread
+        connectionPool = new ScrapConnectionPool(nThread, nThread * MAX_POOLED_CONNECTIONS_PER_THREAD);
         
-        rotator = new ProxyRotator(proxies);
-        totalSearch = searches.size();
-        
-        startThreads(nThread);
-        waitForThreads();
+        rotator = new ProxyRotator(proxies, googleOptions.getProxyRequestsPerMinute());
+        for (Map.Entry<ScrapProxy, Proxy> entry : dbProxies.entrySet()) {
+            rotator.setHealth(entry.getKey(), entry.getValue().toProxyHealth());
+        }
+        if(solver != null){
+            // searches wait for their captcha answer without holding a thread
+            asyncSolver = new AsyncCaptchaSolver(solver);
+        }
+        if(googleOptions.getHedgePercent() > 0){
+            // slow pages are requested again through the proxies no thread is using
+            hedger = new GoogleHedger(rotator, this::genHttp, googleOptions.getHedgePercent());
+        }
+        startHistoryPrefetcher();
+        searchCursor.start();
+        writer = new GoogleTaskWriter(this);
+        writer.start();
+        try {
+            startThreads(nThread);
+            waitForThreads();
+        } finally {
+            searchCursor.close();
+            writer.close();
+            if(asyncSolver != null){
+                asyncSolver.close();
+            }
+            if(historyPrefetcher != null){
+                historyPrefetcher.close();
+            }
+            if(hedger != null){
+                LOG.info("hedged requests : {}", hedger);
+                try {hedger.close();} catch (IOException ex) {}
+            }
+            connectionPool.close();
+        }
         
         finalizeSummaries();
+        boolean seriesAppended = googleDB.rankSeries.appendRun(run.getId());
+        if(!seriesAppended){
+            LOG.error("failed to append the ranks to the rank series, the next run will append them again");
+        }
         
         if(solver != null){
             try {solver.close();} catch (IOException ex) {}
         }
         
-        LOG.warn("{} proxies failed during the task", proxies.size() - rotator.list().size());
+        saveProxyHealth(dbProxies);
+        LOG.warn("{} proxies evicted during the task", rotator.evicted());
+        LOG.info("tls sessions : {}", ScrapClientSSLSessionCache.INSTANCE);
         
         int remainingSearch = totalSearch - searchDone.get();
         if(remainingSearch > 0){
-            run.setErrors(remainingSearch);
             LOG.warn("{} searches have not been checked", remainingSearch);
+        }
+        if(writeErrors.get() > 0){
+            LOG.warn("{} searches have not been saved", writeErrors.get());
+        }
+        int skippedSearch = (int)searchCursor.getSkipped();
+        if(searchCursor.isFailed()){
+            // the ids walked after the failure may be deleted searches, at least one search is missing
+            skippedSearch = Math.max(1, skippedSearch);
+            LOG.warn("{} search ids have not been loaded", skippedSearch);
+        }
+        int errors = remainingSearch + writeErrors.get() + skippedSearch;
+        if(errors > 0 || !seriesAppended){
+            run.setErrors(errors);
             return Run.Status.DONE_WITH_ERROR;
         }
         
         return Run.Status.DONE_SUCCESS;
     }
     
+    protected void saveProxyHealth(Map<ScrapProxy,Proxy> dbProxies){
+        for (Map.Entry<ScrapProxy, Proxy> entry : dbProxies.entrySet()) {
+            ProxyHealth health = rotator.getHealth(entry.getKey());
+            entry.getValue().setHealth(health);
+            LOG.debug("proxy {} : {}", entry.getKey(), health);
+        }
+        baseDB.proxy.updateHealth(dbProxies.values());
+    }
+    
+    protected void startHistoryPrefetcher(){
+        if(previousRunsByDay.isEmpty()){
+            return;
+        }
+        historyPrefetcher = new GoogleSerpHistoryPrefetcher(googleDB.serp, previousRunsByDay);
+        searchCursor.setListener(historyPrefetcher::schedule);
+        historyPrefetcher.start();
+    }
+    
     protected void startThreads(int nThread){
-        threads = new Thread[nThread];
-        for (int iThread = 0; iThread < threads.length; iThread++) {
-            threads[iThread] = new Thread(new GoogleTaskRunnable(this), "google-" + iThread);
-            threads[iThread].start();
-        }        
+        AtomicInteger threadId = new AtomicInteger();
+        long stackSize = googleOptions.isThreadPerProxy() ? PROXY_THREAD_STACK_SIZE : 0l;
+        executor = Executors.newFixedThreadPool(nThread, 
+            (r) -> new Thread(null, r, "google-" + threadId.getAndIncrement(), stackSize)
+        );
+        for (int iThread = 0; iThread < nThread; iThread++) {
+            executor.execute(new GoogleTaskRunnable(this, iThread));
+        }
+        executor.shutdown();
     }
     
     protected void waitForThreads(){
         while(true){
             try {
-                for (Thread thread : threads) {
-                    thread.join();
+                while(!executor.awaitTermination(1, TimeUnit.MINUTES)){
                 }
                 return;
             }catch(InterruptedException ex){
@@ -167,17 +299,23 @@ public class GoogleTask extends AbstractTask {
     
     protected void interruptThreads(){
         interrupted = true;
-        for (Thread thread : threads) {
-            thread.interrupt();
-        }
+        executor.shutdownNow();
     }
     
     protected boolean shouldStop(){
-        if(searchDone.get() == totalSearch){
+        if(interrupted){
             return true;
         }
         
-        if(interrupted){
+        if(searchCursor != null){
+            if(!searchCursor.isDone()){
+                return false;
+            }
+            // the count done when the task started is an estimate
+            totalSearch = searchCursor.getFed();
+        }
+        
+        if(searchDone.get() >= totalSearch){
             return true;
         }
         
@@ -189,8 +327,38 @@ public class GoogleTask extends AbstractTask {
         baseDB.run.updateCaptchas(run);
     }
     
-    protected void onSearchDone(GoogleSearch search, GoogleScrapResult res){
-        insertSearchResult(search, res);
+    protected void onPageDone(long latencyMS, boolean error, int captchas){
+        if(concurrency == null){
+            return;
+        }
+        GoogleConcurrencyController.Decision decision = concurrency.record(latencyMS, error, captchas);
+        if(decision == null){
+            return;
+        }
+        if(!decision.changed()){
+            LOG.debug("keeping {} threads", decision.limit);
+            return;
+        }
+        LOG.info("adaptive threads : {}", decision);
+        logThreads(decision);
+    }
+    
+    protected synchronized void logThreads(GoogleConcurrencyController.Decision decision){
+        List<String> lines = new ArrayList<>();
+        if(run.getThreadsLog() != null && !run.getThreadsLog().isEmpty()){
+            lines.addAll(Arrays.asList(run.getThreadsLog().split("\n")));
+        }
+        lines.add(LocalTime.now().withNano(0) + " " + decision);
+        if(lines.size() > MAX_THREADS_LOG_LINES){
+            lines = lines.subList(lines.size() - MAX_THREADS_LOG_LINES, lines.size());
+        }
+        run.setThreads(decision.limit);
+        run.setThreadsLog(String.join("\n", lines));
+        baseDB.run.updateThreads(run);
+    }
+    
+    protected void onSearchDone(GoogleSearch search, GoogleScrapResult res) throws InterruptedException {
+        writer.put(search, res);
         incSearchDone();
     }
     
@@ -199,8 +367,9 @@ public class GoogleTask extends AbstractTask {
         baseDB.run.updateProgress(run);
     }
     
-    protected void insertSearchResult(GoogleSearch search, GoogleScrapResult res) {
-        Map<Short, GoogleSerp> history = getHistory(search);
+    protected void insertSearchResult(GoogleSearch search, GoogleScrapResult res, List<Integer> groups,
+        List<GoogleSerp> serps, List<GoogleRank> ranks, List<GoogleBest> bests) {
+        GoogleSerpHistory history = getHistory(search);
 
         GoogleSerp serp = new GoogleSerp(run.getId(), search.getId(), run.getStarted());
         for (String url : res.urls) {
@@ -208,56 +377,61 @@ public class GoogleTask extends AbstractTask {
             entry.fillPreviousPosition(history);
             serp.addEntry(entry);
         }
-        googleDB.serp.insert(serp);
+        serps.add(serp);
 
-        List<Integer> groups = googleDB.search.listGroups(search);
         for (Integer group : groups) {
-            List<GoogleTarget> targets = targetsByGroup.get(group);
-            if (targets == null) {
+            GoogleTargetMatcher matcher = matchersByGroup.get(group);
+            if (matcher == null) {
                 continue;
             }
-            for (GoogleTarget target : targets) {
-                int best = googleDB.rank.getBest(group, target.getId(), search.getId()).getRank();
-                int rank = GoogleRank.UNRANKED;
-                String rankedUrl = null;
-                for (int i = 0; i < res.urls.size(); i++) {
-                    if (target.match(res.urls.get(i))) {
-                        rankedUrl = res.urls.get(i);
-                        rank = i + 1;
-                        break;
-                    }
-                }
+            List<GoogleTarget> targets = matcher.getTargets();
+            int[] targetRanks = matcher.match(res.urls);
+            for (int t = 0; t < targets.size(); t++) {
+                GoogleTarget target = targets.get(t);
+                int rank = targetRanks[t];
+                String rankedUrl = rank == GoogleRank.UNRANKED ? null : res.urls.get(rank - 1);
                 
-                int previousRank = GoogleRank.UNRANKED;
-                if (previousRun != null) {
-                    previousRank = googleDB.rank.get(previousRun.getId(), group, target.getId(), search.getId());
-                }
+                int previousRank = rankSnapshot.getPreviousRank(target.getId(), search.getId());
                 
                 GoogleRank gRank = new GoogleRank(run.getId(), group, target.getId(), search.getId(), rank, previousRank, rankedUrl);
-                googleDB.rank.insert(gRank);
+                ranks.add(gRank);
                 
-                GoogleTargetSummary summary = summariesByTarget.get(target.getId());
-                summary.addRankCandidat(gRank);
-                
-                if(rank != GoogleRank.UNRANKED && rank <= best){
-                    googleDB.rank.insertBest(new GoogleBest(group, target.getId(), search.getId(), rank, run.getStarted(), rankedUrl));
+                if(rankSnapshot.updateBest(target.getId(), search.getId(), rank)){
+                    bests.add(new GoogleBest(group, target.getId(), search.getId(), rank, run.getStarted(), rankedUrl));
                 }
             }
         }
     }    
     
-    protected void initializeSearches() {
-        List<GoogleSearch> searchList;
+    /**
+     * the ranks are only counted in the summaries once they are saved
+     */
+    protected void onResultsWritten(List<GoogleRank> ranks){
+        for (GoogleRank rank : ranks) {
+            GoogleTargetSummary summary = summariesByTarget.get(rank.googleTargetId);
+            if(summary != null){
+                summary.addRankCandidat(rank);
+            }
+        }
+    }
+    
+    protected void onWriteFailed(int searches){
+        writeErrors.addAndGet(searches);
+    }
+    
+    /**
+     * searches are streamed to the queue by chunks, shuffled by the run id so a recheck keeps the order
+     */
+    protected void initializeSearches() throws SQLException {
+        searches = new LinkedBlockingQueue<>();
         if(updateRun){
-            searchList = googleDB.search.listUnchecked(run.getId());
+            totalSearch = (int)googleDB.search.countUnchecked(run.getId());
         } else {
-            searchList = googleDB.search.list();
-        }
-        if(shuffle){
-            Collections.shuffle(searchList);
+            totalSearch = (int)googleDB.search.count();
         }
-        searches = new LinkedBlockingQueue<>(searchList);
-        LOG.info("{} searches to do", searches.size());
+        searchCursor = new GoogleSearchCursor(googleDB.search, searches, 
+            shuffle ? (long)run.getId() : null, updateRun ? run.getId() : null);
+        LOG.info("{} searches to do", totalSearch);
     }
     
     protected void initializeTargets() {
@@ -276,6 +450,9 @@ public class GoogleTask extends AbstractTask {
                 new GoogleTargetSummary(target.getGroupId(), target.getId(), run.getId(), previousScorePercent.getOrDefault(target.getId(), 0))
             );
         }
+        for (Map.Entry<Integer, List<GoogleTarget>> entry : targetsByGroup.entrySet()) {
+            matchersByGroup.put(entry.getKey(), new GoogleTargetMatcher(entry.getValue()));
+        }
         
         if(updateRun){
             List<GoogleTargetSummary> summaries = googleDB.targetSummary.list(run.getId());
@@ -287,6 +464,9 @@ public class GoogleTask extends AbstractTask {
     
     protected void initializePreviousRuns(){
         previousRun = baseDB.run.findPrevious(run.getId());
+        rankSnapshot.load(googleDB.rank, previousRun == null ? null : previousRun.getId());
+        LOG.info("rank snapshot loaded, {} previous ranks and {} bests", 
+            rankSnapshot.previousRankSize(), rankSnapshot.bestSize());
         if(previousRun == null){
             return;
         }
@@ -301,13 +481,19 @@ public class GoogleTask extends AbstractTask {
         }
     }
     
-    protected Map<Short,GoogleSerp> getHistory(GoogleSearch search){
-        Map<Short,GoogleSerp> history = new HashMap<>();
+    protected GoogleSerpHistory getHistory(GoogleSearch search){
+        if(historyPrefetcher != null){
+            GoogleSerpHistory history = historyPrefetcher.take(search.getId());
+            if(history != null){
+                return history;
+            }
+        }
         
+        GoogleSerpHistory history = new GoogleSerpHistory();
         for (Map.Entry<Short, Integer> entry : previousRunsByDay.entrySet()) {
             GoogleSerp serp = googleDB.serp.get(entry.getValue(), search.getId());
             if(serp != null){
-                history.put(entry.getKey(), serp);
+                history.add(entry.getKey(), serp);
             }
         }
         return history;
@@ -321,11 +507,22 @@ public class GoogleTask extends AbstractTask {
         googleDB.targetSummary.insert(summariesByTarget.values());
     }
     
+    protected ScrapClient genHttp(){
+        ScrapClient http = scrapClientFactory.get(httpUserAgent, httpTimeoutMS);
+        if(bufferPool != null){
+            http.setBufferPool(bufferPool);
+        }
+        if(connectionPool != null){
+            http.setConnectionPool(connectionPool);
+        }
+        return http;
+    }
+    
     protected GoogleScraper genScraper(){
-        return googleScraperFactory.get(
-            scrapClientFactory.get(httpUserAgent, httpTimeoutMS),
-            solver
-        );
+        GoogleScraper scraper = googleScraperFactory.get(genHttp(), solver);
+        scraper.setAsyncSolver(asyncSolver);
+        scraper.setHedger(hedger);
+        return scraper;
     }
 
     @Override
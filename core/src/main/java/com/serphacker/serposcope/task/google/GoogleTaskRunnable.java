@@ -11,6 +11,7 @@ import com.serphacker.serposcope.models.google.GoogleSettings;
 import com.serphacker.serposcope.models.google.GoogleSearch;
 import com.serphacker.serposcope.scraper.google.GoogleScrapSearch;
 import com.serphacker.serposcope.scraper.google.GoogleScrapResult;
+import com.serphacker.serposcope.scraper.google.GoogleScrapSession;
 import static com.serphacker.serposcope.scraper.google.GoogleScrapResult.Status.OK;
 import com.serphacker.serposcope.scraper.google.scraper.GoogleScraper;
 import java.util.concurrent.TimeUnit;
@@ -18,20 +19,56 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.serphacker.serposcope.scraper.http.proxy.ScrapProxy;
 import com.serphacker.serposcope.task.google.GoogleTask;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.PriorityQueue;
 import org.apache.http.cookie.Cookie;
 
 public class GoogleTaskRunnable implements Runnable {
 
     protected static final Logger LOG = LoggerFactory.getLogger(GoogleTaskRunnable.class);
 //    public final static int MAX_FETCH_TRY = 3;
+    public final static int MAX_IN_FLIGHT = 8;
+    public final static long MAX_IDLE_MS = 1000l;
+    public final static long PARKED_CHECK_MS = 200l;
+    
+    /**
+     * a search paused between two pages, resumed by the thread once its pause is over.
+     * the search keeps the proxy of its last request, the next page or the captcha answer
+     * is sent from the same proxy and cookies.
+     */
+    static class InFlight implements Comparable<InFlight> {
+        final GoogleSearch search;
+        final GoogleScrapSession session;
+        final int searchTry;
+        ScrapProxy proxy;
+
+        InFlight(GoogleSearch search, GoogleScrapSession session, int searchTry) {
+            this.search = search;
+            this.session = session;
+            this.searchTry = searchTry;
+        }
+
+        @Override
+        public int compareTo(InFlight o) {
+            return Long.compare(session.getResumeAt(), o.session.getResumeAt());
+        }
+    }
 
     GoogleTask controller;
     
     GoogleScraper scraper;
+    
+    final int threadId;
 
     public GoogleTaskRunnable(GoogleTask controller) {
+        this(controller, 0);
+    }
+
+    public GoogleTaskRunnable(GoogleTask controller, int threadId) {
         this.controller = controller;
+        this.threadId = threadId;
         scraper = controller.genScraper();
     }
     
@@ -39,11 +76,17 @@ public class GoogleTaskRunnable implements Runnable {
 
     @Override
     public void run() {
-        GoogleSearch search = null;
+        PriorityQueue<InFlight> inFlight = new PriorityQueue<>();
+        List<InFlight> parked = new ArrayList<>();
+        InFlight current = null;
         ScrapProxy proxy = null;
-        int searchTry = 0;
+        int maxInFlight = controller.googleOptions.getPages() > 1 || scraper.getAsyncSolver() != null ? MAX_IN_FLIGHT : 1;
+        GoogleConcurrencyController concurrency = controller.concurrency;
         
         LOG.info("google thread started");
+        if(concurrency != null){
+            concurrency.register(threadId);
+        }
         try {
             
             while (!controller.shouldStop()) {
@@ -53,82 +96,214 @@ public class GoogleTaskRunnable implements Runnable {
                     break;
                 }
                 
-                if(cookiesStickToProxy && proxy != null){
-                    List<Cookie> cookies = scraper.getHttp().getCookies();
-                    if(cookies != null){
-                        proxy.setAttr("cookies", cookies);
+                for (Iterator<InFlight> it = parked.iterator(); it.hasNext();) {
+                    InFlight entry = it.next();
+                    if(!entry.session.isParked()){
+                        it.remove();
+                        inFlight.add(entry);
                     }
                 }
-
-                proxy = controller.rotator.rotate(proxy);
-                if (proxy == null) {
-                    LOG.warn("no more proxy, stopping the thread");
-                    break;
-                }
-                scraper.getHttp().setProxy(proxy);
                 
-                if(cookiesStickToProxy){
-                    scraper.getHttp().clearCookies();
-                    List<Cookie> cookies = proxy.getAttr("cookies", List.class);
-                    if(cookies != null){
-                        scraper.getHttp().addCookies(proxy.getAttr("cookies", List.class));
-                    }
-                }
-
-                if(search == null){
+                // an inactive thread finishes its searches but doesn't start new ones
+                boolean active = concurrency == null || concurrency.isActive(threadId);
+                // the other proxies may be held by paused searches, a search without proxy
+                // waits for one to be free
+                boolean proxyFree = proxy != null || controller.rotator.remaining() > 0;
+                InFlight next = inFlight.peek();
+                boolean nextRunnable = next != null && (next.proxy != null || proxyFree);
+                
+                if(nextRunnable && next.session.getDelayMS() == 0){
+                    current = inFlight.poll();
+                } else if(active && proxyFree && inFlight.size() + parked.size() < maxInFlight){
+                    GoogleSearch search = null;
                     try {
-                        search = controller.searches.poll(1, TimeUnit.SECONDS);
+                        // only block when there is no paused search to resume
+                        search = inFlight.isEmpty() && parked.isEmpty() ? 
+                            controller.searches.poll(1, TimeUnit.SECONDS) : controller.searches.poll();
                     } catch (InterruptedException ex) {
                         LOG.error("interrupted while polling, aborting the thread");
                         break;
                     }
-                    searchTry = 0;
+                    if(search != null){
+                        current = start(search, 1);
+                    }
                 }
 
-                if (search == null) {
+                if (current == null) {
+                    if(!proxyFree && controller.rotator.isExhausted()){
+                        LOG.warn("no more proxy, stopping the thread");
+                        break;
+                    }
+                    if(!active && inFlight.isEmpty() && parked.isEmpty() && proxy != null){
+                        // the proxy is left to the active threads
+                        saveCookies(proxy);
+                        controller.rotator.add(proxy);
+                        proxy = null;
+                    }
+                    if(!inFlight.isEmpty() || !parked.isEmpty() || !active || !proxyFree){
+                        long idle = parked.isEmpty() && proxyFree ? MAX_IDLE_MS : PARKED_CHECK_MS;
+                        if(nextRunnable){
+                            idle = Math.min(idle, next.session.getDelayMS());
+                        }
+                        try {
+                            Thread.sleep(Math.max(1l, idle));
+                        } catch (InterruptedException ex) {
+                            LOG.error("interrupted, aborting the thread");
+                            break;
+                        }
+                    }
 //                    LOG.trace("no search to do, waiting for termination");
                     continue;
                 }
+                
+                saveCookies(proxy);
+                if(current.proxy != null){
+                    // the search continues from the proxy of its previous request
+                    if(proxy != null){
+                        controller.rotator.add(proxy);
+                    }
+                    proxy = current.proxy;
+                    current.proxy = null;
+                } else {
+                    try {
+                        proxy = controller.rotator.rotate(proxy);
+                    } catch (InterruptedException ex) {
+                        LOG.error("interrupted while waiting for a proxy, aborting the thread");
+                        proxy = null;
+                        break;
+                    }
+                    if (proxy == null) {
+                        if(controller.rotator.isExhausted()){
+                            LOG.warn("no more proxy, stopping the thread");
+                            break;
+                        }
+                        // taken by another thread meanwhile
+                        inFlight.add(current);
+                        current = null;
+                        continue;
+                    }
+                }
+                scraper.getHttp().setProxy(proxy);
+                loadCookies(proxy);
 
-                ++searchTry;
-                GoogleScrapResult res = null;
-                LOG.info("search \"{}\" | try {} | total search done : {}/{}",
-                    new Object[]{search.getKeyword(), searchTry, controller.getSearchDone(), controller.totalSearch});
-
+                GoogleScrapSession session = current.session;
+                int captchasBefore = session.getCaptchas();
+                long stepStart = System.currentTimeMillis();
                 try {
-                    res = scraper.scrap(getScrapConfig(controller.googleOptions, search));
+                    scraper.step(session);
                 } catch (InterruptedException ex) {
                     LOG.error("interrupted while scraping, aborting the thread");
                     break;
                 }
+                long stepMS = System.currentTimeMillis() - stepStart;
                 
-                if( res.captchas > 0 ){
-                    controller.incCaptchaCount(res.captchas);
+                int captchas = session.getCaptchas() - captchasBefore;
+                if( captchas > 0 ){
+                    controller.incCaptchaCount(captchas);
                 }
-
-                if (res.status != OK) {
-                    LOG.warn("scrap failed for {} because of {}", search.getKeyword(), res.status);
+                
+                if(session.getPendingCaptcha() != null){
+                    controller.onPageDone(stepMS, false, captchas);
+                    // the proxy stays with the search until the captcha is answered
+                    saveCookies(proxy);
+                    current.proxy = proxy;
+                    proxy = null;
+                    parked.add(current);
+                    current = null;
+                    continue;
+                }
+                
+                // a session still running without retry just fetched its page successfully
+                boolean pageOk = session.isDone() ? session.getResult().status == OK : session.getRetry() == 0;
+                if(pageOk){
+                    // a page won by a hedge is credited to the hedge proxy, the slow request of
+                    // this proxy was aborted
+                    if(scraper.getHedgeProxy() == null){
+                        controller.rotator.success(proxy, stepMS, captchas);
+                    }
+                } else {
+                    controller.rotator.failure(proxy, captchas);
+                }
+                controller.onPageDone(stepMS, !pageOk, captchas);
+                
+                if(!session.isDone()){
+                    // the proxy stays with the search until its next page
+                    saveCookies(proxy);
+                    current.proxy = proxy;
                     proxy = null;
+                    inFlight.add(current);
+                    current = null;
+                    continue;
+                }
+                
+                GoogleScrapResult res = session.getResult();
+                if (res.status != OK) {
+                    LOG.warn("scrap failed for {} because of {}", current.search.getKeyword(), res.status);
+                    inFlight.add(start(current.search, current.searchTry + 1));
+                    current = null;
                     continue;
                 }
 
-                controller.onSearchDone(search, res);
-                search = null;
+                try {
+                    controller.onSearchDone(current.search, res);
+                } catch (InterruptedException ex) {
+                    LOG.error("interrupted while handing off result, aborting the thread");
+                    break;
+                }
+                current = null;
             }
             
         } catch (Exception ex) {
             LOG.error("unhandled exception, aborting the thread", ex);
             ex.printStackTrace();
         } finally {
+            if (concurrency != null){
+                concurrency.unregister(threadId);
+            }
             if (proxy != null){
                 controller.rotator.add(proxy);
             }
-            if (search != null) {
-                controller.searches.add(search);
+            if (current != null) {
+                controller.searches.add(current.search);
+            }
+            for (InFlight pending : inFlight) {
+                if(pending.proxy != null){
+                    controller.rotator.add(pending.proxy);
+                }
+                controller.searches.add(pending.search);
+            }
+            for (InFlight pending : parked) {
+                controller.rotator.add(pending.proxy);
+                controller.searches.add(pending.search);
             }
         }
         LOG.info("google thread stopped");
     }
+    
+    protected void saveCookies(ScrapProxy proxy){
+        if(cookiesStickToProxy && proxy != null){
+            List<Cookie> cookies = scraper.getHttp().getCookies();
+            if(cookies != null){
+                proxy.setAttr("cookies", cookies);
+            }
+        }
+    }
+    
+    protected void loadCookies(ScrapProxy proxy){
+        if(cookiesStickToProxy){
+            scraper.getHttp().clearCookies();
+            List<Cookie> cookies = proxy.getAttr("cookies", List.class);
+            if(cookies != null){
+                scraper.getHttp().addCookies(proxy.getAttr("cookies", List.class));
+            }
+        }
+    }
+    
+    protected InFlight start(GoogleSearch search, int searchTry){
+        LOG.info("search \"{}\" | try {} | total search done : {}/{}",
+            new Object[]{search.getKeyword(), searchTry, controller.getSearchDone(), controller.totalSearch});
+        return new InFlight(search, new GoogleScrapSession(getScrapConfig(controller.googleOptions, search)), searchTry);
+    }
 
     protected GoogleScrapSearch getScrapConfig(GoogleSettings options, GoogleSearch search) {
         GoogleScrapSearch scrapSearch = new GoogleScrapSearch();
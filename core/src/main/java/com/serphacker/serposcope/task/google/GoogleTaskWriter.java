@@ -0,0 +1,212 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.task.google;
+
+import com.serphacker.serposcope.models.google.GoogleBest;
+import com.serphacker.serposcope.models.google.GoogleRank;
+import com.serphacker.serposcope.models.google.GoogleSearch;
+import com.serphacker.serposcope.models.google.GoogleSerp;
+import com.serphacker.serposcope.scraper.google.GoogleScrapResult;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * single writer stage of the google task, scraper threads hand off their results
+ * and block when the queue is full, results are written by batch in one transaction
+ */
+public class GoogleTaskWriter implements Runnable {
+
+    protected static final Logger LOG = LoggerFactory.getLogger(GoogleTaskWriter.class);
+
+    public final static int DEFAULT_QUEUE_SIZE = 1000;
+    public final static int DEFAULT_BATCH_SIZE = 100;
+    public final static int WRITE_TRIES = 3;
+    public final static long RETRY_PAUSE_MS = 1000l;
+
+    static class SearchResult {
+        final GoogleSearch search;
+        final GoogleScrapResult res;
+
+        SearchResult(GoogleSearch search, GoogleScrapResult res) {
+            this.search = search;
+            this.res = res;
+        }
+    }
+
+    final GoogleTask controller;
+    final BlockingQueue<SearchResult> queue;
+    final int batchSize;
+    long retryPauseMS = RETRY_PAUSE_MS;
+
+    final List<GoogleSerp> serps = new ArrayList<>();
+    final List<GoogleRank> ranks = new ArrayList<>();
+    final List<GoogleBest> bests = new ArrayList<>();
+
+    Thread thread;
+    volatile boolean closed;
+
+    public GoogleTaskWriter(GoogleTask controller) {
+        this(controller, DEFAULT_QUEUE_SIZE, DEFAULT_BATCH_SIZE);
+    }
+
+    public GoogleTaskWriter(GoogleTask controller, int queueSize, int batchSize) {
+        this.controller = controller;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+    }
+
+    public void start(){
+        thread = new Thread(this, "google-writer");
+        thread.start();
+    }
+
+    public void put(GoogleSearch search, GoogleScrapResult res) throws InterruptedException {
+        queue.put(new SearchResult(search, res));
+    }
+
+    /**
+     * stop accepting results and wait until every pending result is written
+     */
+    public void close(){
+        closed = true;
+        if(thread == null){
+            return;
+        }
+        while(true){
+            try {
+                thread.join();
+                return;
+            } catch(InterruptedException ex){
+                LOG.warn("interrupted while flushing pending results, waiting for the writer anyway");
+            }
+        }
+    }
+
+    public int pending(){
+        return queue.size();
+    }
+
+    @Override
+    public void run() {
+        LOG.info("google writer started");
+        List<SearchResult> batch = new ArrayList<>(batchSize);
+        while(true){
+            SearchResult first = null;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch(InterruptedException ex){
+                closed = true;
+            }
+
+            if(first == null){
+                if(closed && queue.isEmpty()){
+                    break;
+                }
+                continue;
+            }
+
+            batch.add(first);
+            queue.drainTo(batch, batchSize - 1);
+
+            try {
+                write(batch);
+            } catch(Exception ex){
+                LOG.error("failed to write {} search results", batch.size(), ex);
+                controller.onWriteFailed(batch.size());
+            }
+            batch.clear();
+        }
+        LOG.info("google writer stopped");
+    }
+
+    protected void write(List<SearchResult> batch){
+        List<Integer> searchIds = batch.stream().map((r) -> r.search.getId()).collect(Collectors.toList());
+        Map<Integer,List<Integer>> groupsBySearch = controller.googleDB.search.listGroups(searchIds);
+
+        try {
+            for (SearchResult result : batch) {
+                controller.insertSearchResult(
+                    result.search, result.res,
+                    groupsBySearch.getOrDefault(result.search.getId(), Collections.emptyList()),
+                    serps, ranks, bests
+                );
+            }
+            if(!insert()){
+                LOG.error("failed to write {} search results after {} tries, writing them one by one", batch.size(), WRITE_TRIES);
+                writeEach(batch);
+                return;
+            }
+            controller.onResultsWritten(ranks);
+        } finally {
+            serps.clear();
+            ranks.clear();
+            bests.clear();
+        }
+    }
+
+    /**
+     * write each search of a batch that can't be written in its own transaction, so a search
+     * failing every time doesn't lose the results of the others
+     */
+    protected void writeEach(List<SearchResult> batch){
+        Map<Integer,List<GoogleSerp>> serpsBySearch = serps.stream().collect(Collectors.groupingBy(GoogleSerp::getGoogleSearchId));
+        Map<Integer,List<GoogleRank>> ranksBySearch = ranks.stream().collect(Collectors.groupingBy((rank) -> rank.googleSearchId));
+        Map<Integer,List<GoogleBest>> bestsBySearch = bests.stream().collect(Collectors.groupingBy(GoogleBest::getGoogleSearchId));
+
+        List<GoogleRank> written = new ArrayList<>();
+        int failed = 0;
+        for (SearchResult result : batch) {
+            int searchId = result.search.getId();
+            List<GoogleRank> searchRanks = ranksBySearch.getOrDefault(searchId, Collections.emptyList());
+            if(controller.googleDB.batch.insert(
+                serpsBySearch.getOrDefault(searchId, Collections.emptyList()),
+                searchRanks,
+                bestsBySearch.getOrDefault(searchId, Collections.emptyList()))
+            ){
+                written.addAll(searchRanks);
+            } else {
+                LOG.error("failed to write the results of search {}", searchId);
+                ++failed;
+            }
+        }
+
+        controller.onResultsWritten(written);
+        if(failed > 0){
+            controller.onWriteFailed(failed);
+        }
+    }
+
+    /**
+     * the transaction is rolled back on failure so the same batch can be written again
+     */
+    protected boolean insert(){
+        for (int i = 1; i <= WRITE_TRIES; i++) {
+            if(controller.googleDB.batch.insert(serps, ranks, bests)){
+                return true;
+            }
+            LOG.warn("failed to write the batch, try {}/{}", i, WRITE_TRIES);
+            if(i < WRITE_TRIES){
+                try {
+                    Thread.sleep(retryPauseMS * i);
+                } catch(InterruptedException ex){
+                    closed = true;
+                }
+            }
+        }
+        return false;
+    }
+
+}
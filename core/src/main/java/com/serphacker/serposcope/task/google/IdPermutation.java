@@ -0,0 +1,74 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.task.google;
+
+/**
+ * pseudo random permutation of [0, size) computed one position at a time, the same seed always
+ * gives the same order. a 4 rounds feistel network over the next power of two, values out of the
+ * range are encrypted again until they fall in it (cycle walking).
+ */
+public class IdPermutation {
+
+    final static int ROUNDS = 4;
+
+    final long size;
+    final int halfBits;
+    final long halfMask;
+    final long[] keys = new long[ROUNDS];
+
+    public IdPermutation(long size, long seed) {
+        this.size = size;
+        int bits = 2;
+        while((1l << bits) < size){
+            bits += 2;
+        }
+        this.halfBits = bits / 2;
+        this.halfMask = (1l << halfBits) - 1;
+        long key = seed;
+        for (int i = 0; i < ROUNDS; i++) {
+            key = mix(key + 0x9E3779B97F4A7C15l);
+            keys[i] = key;
+        }
+    }
+
+    /**
+     * @return the value at the position, each value of [0, size) is returned by exactly one position
+     */
+    public long get(long position){
+        if(position < 0 || position >= size){
+            throw new IndexOutOfBoundsException(position + " not in [0," + size + ")");
+        }
+        long value = position;
+        do {
+            value = encrypt(value);
+        } while(value >= size);
+        return value;
+    }
+
+    protected long encrypt(long value){
+        long left = value >>> halfBits;
+        long right = value & halfMask;
+        for (int i = 0; i < ROUNDS; i++) {
+            long next = left ^ (mix(right ^ keys[i]) & halfMask);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    static long mix(long z){
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdl;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53l;
+        return z ^ (z >>> 33);
+    }
+
+    public long size(){
+        return size;
+    }
+
+}
@@ -1,6 +1,6 @@
 /*
  * Serposcope - SEO rank checker https://serposcope.serphacker.com/
- * 
+ *
  * Copyright (c) 2016 SERP Hacker
  * @author Pierre Nogues <support@serphacker.com>
  * @license https://opensource.org/licenses/MIT MIT License
@@ -12,34 +12,59 @@ import com.serphacker.serposcope.db.base.BaseDB;
 import com.serphacker.serposcope.models.base.Proxy;
 import com.serphacker.serposcope.scraper.http.ScrapClient;
 import com.serphacker.serposcope.scraper.http.proxy.ScrapProxy;
-import com.serphacker.serposcope.scraper.http.proxy.ScrapProxy;
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import javax.inject.Inject;
 import org.apache.commons.lang3.time.DurationFormatUtils;
 import org.slf4j.LoggerFactory;
 
+/**
+ * check every proxy against a judge url. probes run on many small stack threads, each reusing
+ * its client for the proxies it takes from the list. checked proxies are streamed back to this
+ * thread which writes them by batch while the probes go on. when interrupted, the proxies not
+ * checked get their previous status back.
+ */
 public class ProxyChecker extends Thread {
-    
+
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(ProxyChecker.class);
-    
+
+    public final static String DEFAULT_JUDGE_URL = "https://proxychecker.serphacker.com/";
+    public final static int DEFAULT_THREADS = 500;
+    public final static int DEFAULT_TIMEOUT_MS = 20000;
+    public final static int BATCH_SIZE = 200;
+    public final static long FLUSH_INTERVAL_MS = 1000l;
+    public final static long PROBE_THREAD_STACK_SIZE = 256l * 1024l;
+    public final static long PROBE_JOIN_MARGIN_MS = 1000l;
+
     static Pattern PATTERN_IP = Pattern.compile("Your IP: ([0-9.:\\[\\]]+)");
-    
+
     BaseDB db;
-    int nThread = 50;
-    int timeoutMS = 20000;
-    String judgeUrl = "https://proxychecker.serphacker.com/";
-    
+    int nThread = DEFAULT_THREADS;
+    int timeoutMS = DEFAULT_TIMEOUT_MS;
+    String judgeUrl = DEFAULT_JUDGE_URL;
+
+    final Queue<Proxy> pending = new ConcurrentLinkedQueue<>();
+    final BlockingQueue<Proxy> results = new LinkedBlockingQueue<>();
+    final List<Thread> probes = new ArrayList<>();
+    final Set<Integer> written = new HashSet<>();
+
     AtomicInteger checked = new AtomicInteger();
+    AtomicInteger alive = new AtomicInteger();
     volatile int totalProxies = 0;
 
     public ProxyChecker(BaseDB db, int threads, int timeoutMS){
@@ -47,75 +72,234 @@ public class ProxyChecker extends Thread {
         this.nThread = threads;
         this.timeoutMS = timeoutMS;
     }
-    
-    
+
+    public ProxyChecker(BaseDB db, int threads, int timeoutMS, String judgeUrl){
+        this(db, threads, timeoutMS);
+        this.judgeUrl = judgeUrl;
+    }
+
+    /**
+     * judge url from the settings
+     */
     public ProxyChecker(BaseDB db) {
         this.db = db;
+        String url = db.config.getConfig().getProxyJudgeUrl();
+        if(url != null && !url.isEmpty()){
+            this.judgeUrl = url;
+        }
     }
-    
+
     @Override
     public void run(){
-        
-        LOG.info("starting proxy checking task, threads = {}, timeout in MS = {}", nThread, timeoutMS);
-        
+
+        LOG.info("starting proxy checking task, threads = {}, timeout in MS = {}, judge = {}",
+            new Object[]{nThread, timeoutMS, judgeUrl});
+
         long start = System.currentTimeMillis();
-        
+
         List<Proxy> proxies = db.proxy.list();
         if(proxies == null || proxies.isEmpty()){
             LOG.debug("no proxy to check");
             return;
         }
-        
+
         totalProxies = proxies.size();
-        
-        ExecutorService executor = Executors.newFixedThreadPool(nThread);
-        db.proxy.updateStatus(Proxy.Status.UNCHECKED, proxies.stream().map((t) -> t.getId()).collect(Collectors.toList()));
-        
+
+        Map<Integer,Proxy.Status> previousStatus = new HashMap<>();
         for (Proxy proxy : proxies) {
-            executor.submit(new Runnable() {
-                @Override
-                public void run() {
-                    ScrapClient cli = new ScrapClient();
-                    
-                    cli.setTimeout(timeoutMS);
-                    ScrapProxy scrapProxy = proxy.toScrapProxy();
-                    cli.setProxy(scrapProxy);
-                    
-                    LOG.info("checking {}", scrapProxy);
-                    
-                    Proxy.Status proxyStatus = Proxy.Status.ERROR;
-                    
-//                    try{Thread.sleep(30000l);}catch(Exception ex){}
-                    
-                    int httpStatus = cli.get(judgeUrl);
-                    if(httpStatus == 200 && cli.getContentAsString() != null){
-                        Matcher matcher = PATTERN_IP.matcher(cli.getContentAsString());
-                        if(matcher.find()){
-                            proxy.setRemoteip(matcher.group(1));
-                            proxyStatus = Proxy.Status.OK;
-                        }
-                    }
-                    
-                    proxy.setStatus(proxyStatus);
-                    proxy.setLastCheck(LocalDateTime.now());
-                    db.proxy.update(proxy);
-                    
-                    checked.incrementAndGet();
-                }
-            });
+            previousStatus.put(proxy.getId(), proxy.getStatus());
         }
-        
-        executor.shutdown();
+        db.proxy.updateStatus(Proxy.Status.UNCHECKED, proxies.stream().map((t) -> t.getId()).collect(Collectors.toList()));
+        pending.addAll(proxies);
+
+        int threads = Math.max(1, Math.min(nThread, proxies.size()));
+        for (int i = 0; i < threads; i++) {
+            Thread probe = new Thread(null, this::probeLoop, "proxy-checker-" + i, PROBE_THREAD_STACK_SIZE);
+            probe.setDaemon(true);
+            probes.add(probe);
+            probe.start();
+        }
+
         try {
-            executor.awaitTermination(1, TimeUnit.HOURS);
+            writeResults();
         } catch (InterruptedException ex) {
-            executor.shutdownNow();
+            LOG.info("proxy checking interrupted");
+            pending.clear();
+            for (Thread probe : probes) {
+                probe.interrupt();
+            }
+            // probes blocked in a request end with its timeout
+            joinProbes(timeoutMS + PROBE_JOIN_MARGIN_MS);
+        }
+
+        // the proxies checked meanwhile
+        flush();
+        restoreStatus(proxies, previousStatus);
+
+        LOG.info("proxy checking finished in {}, {}/{} proxies ok", new Object[]{
+            DurationFormatUtils.formatDurationHMS(System.currentTimeMillis()-start), alive.get(), totalProxies
+        });
+    }
+
+    /**
+     * write the checked proxies when a batch is full or every FLUSH_INTERVAL_MS
+     */
+    protected void writeResults() throws InterruptedException {
+        List<Proxy> batch = new ArrayList<>(BATCH_SIZE);
+        int written = 0;
+        long lastFlush = System.currentTimeMillis();
+        try {
+            while(written < totalProxies){
+                Proxy proxy = results.poll(100, TimeUnit.MILLISECONDS);
+                if(proxy != null){
+                    batch.add(proxy);
+                    results.drainTo(batch, BATCH_SIZE - batch.size());
+                }
+
+                boolean done = proxy == null && !probesAlive() && results.isEmpty();
+                if(!batch.isEmpty() && (done || batch.size() >= BATCH_SIZE
+                    || System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL_MS
+                    || written + batch.size() >= totalProxies)
+                ){
+                    write(batch);
+                    written += batch.size();
+                    batch.clear();
+                    lastFlush = System.currentTimeMillis();
+                }
+                if(done){
+                    break;
+                }
+            }
+        } finally {
+            if(!batch.isEmpty()){
+                write(batch);
+            }
+        }
+    }
+
+    protected void flush(){
+        List<Proxy> batch = new ArrayList<>();
+        results.drainTo(batch);
+        if(!batch.isEmpty()){
+            write(batch);
+        }
+    }
+
+    protected void write(List<Proxy> batch){
+        db.proxy.updateChecks(batch);
+        for (Proxy proxy : batch) {
+            written.add(proxy.getId());
+        }
+    }
+
+    /**
+     * wait until the probes end, at most timeoutMS
+     */
+    protected void joinProbes(long timeoutMS){
+        long deadline = System.currentTimeMillis() + timeoutMS;
+        try {
+            for (Thread probe : probes) {
+                long remaining = deadline - System.currentTimeMillis();
+                if(remaining <= 0){
+                    break;
+                }
+                probe.join(remaining);
+            }
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * the proxies without a check written get back their status before the task
+     */
+    protected void restoreStatus(List<Proxy> proxies, Map<Integer,Proxy.Status> previousStatus){
+        Map<Proxy.Status,List<Integer>> idsByStatus = new EnumMap<>(Proxy.Status.class);
+        for (Proxy proxy : proxies) {
+            if(!written.contains(proxy.getId())){
+                proxy.setStatus(previousStatus.get(proxy.getId()));
+                idsByStatus.computeIfAbsent(previousStatus.get(proxy.getId()), (status) -> new ArrayList<>()).add(proxy.getId());
+            }
+        }
+        for (Map.Entry<Proxy.Status, List<Integer>> entry : idsByStatus.entrySet()) {
+            LOG.info("{} proxies not checked, back to {}", entry.getValue().size(), entry.getKey());
+            db.proxy.updateStatus(entry.getKey(), entry.getValue());
+        }
+    }
+
+    protected boolean probesAlive(){
+        for (Thread probe : probes) {
+            if(probe.isAlive()){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected void probeLoop(){
+        try(ScrapClient cli = new ScrapClient()){
+            cli.setTimeout(timeoutMS);
+            Proxy proxy;
+            while(!Thread.currentThread().isInterrupted() && (proxy = pending.poll()) != null){
+                check(cli, proxy);
+                if(Thread.currentThread().isInterrupted()){
+                    // the request may have been cut by the interruption
+                    break;
+                }
+                results.add(proxy);
+                checked.incrementAndGet();
+            }
+        } catch(IOException ex){
+            LOG.warn("failed to close the client of {}", Thread.currentThread().getName(), ex);
         }
-        LOG.info("proxy checking finished in {}",DurationFormatUtils.formatDurationHMS(System.currentTimeMillis()-start));
     }
-    
+
+    protected void check(ScrapClient cli, Proxy proxy){
+        ScrapProxy scrapProxy = proxy.toScrapProxy();
+        cli.setProxy(scrapProxy);
+
+        LOG.debug("checking {}", scrapProxy);
+
+        Proxy.Status proxyStatus = Proxy.Status.ERROR;
+
+        int httpStatus = cli.get(judgeUrl);
+        if(httpStatus == 200){
+            String content = cli.getContentAsString();
+            Matcher matcher = content == null ? null : PATTERN_IP.matcher(content);
+            if(matcher != null && matcher.find()){
+                proxy.setRemoteip(matcher.group(1));
+                proxyStatus = Proxy.Status.OK;
+                alive.incrementAndGet();
+            }
+        }
+
+        proxy.setStatus(proxyStatus);
+        proxy.setLastCheck(LocalDateTime.now());
+    }
+
     public int getProgress(){
-        return (int) (((float)checked.get()/(float)totalProxies)*100f);
+        int total = totalProxies;
+        return total == 0 ? 0 : (int) (((float)checked.get()/(float)total)*100f);
+    }
+
+    public int getChecked(){
+        return checked.get();
     }
-    
+
+    public int getAlive(){
+        return alive.get();
+    }
+
+    public int getTotalProxies(){
+        return totalProxies;
+    }
+
+    public String getJudgeUrl() {
+        return judgeUrl;
+    }
+
+    public void setJudgeUrl(String judgeUrl) {
+        this.judgeUrl = judgeUrl;
+    }
+
 }
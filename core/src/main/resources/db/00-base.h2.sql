@@ -54,7 +54,9 @@ create table `RUN` (
     captchas int,
     errors int,
     status int, -- running, aborted, finished, error
-    mode int
+    mode int,
+    threads int default 0,
+    threads_log text
 ) engine = innodb default charset=utf8 /*! collate utf8_bin */;
 create index RUN_MODULE_ID_DAY on RUN(module_id,day);
 
@@ -68,7 +70,12 @@ create table `PROXY` (
     `password` text,
     `last_check` datetime,
     `status` tinyint,
-    `remote_ip` varchar(256)
+    `remote_ip` varchar(256),
+    `success_count` int default 0,
+    `failure_count` int default 0,
+    `captcha_count` int default 0,
+    `latency_ms` int default 0,
+    `score` int default 0
 ) engine = innodb default charset=utf8 /*! collate utf8_bin */;
 
 
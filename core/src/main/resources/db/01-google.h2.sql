@@ -12,15 +12,26 @@ create table `GOOGLE_SEARCH` (
     custom_parameters varchar(255)
 ) engine = innodb default charset=utf8 /*! collate utf8_bin */;
 
+drop table if exists `GOOGLE_URL`;
+create table `GOOGLE_URL` (
+    id int primary key auto_increment,
+    hash int not null,
+    url varchar(2048) not null
+) engine = innodb default charset=utf8 /*! collate utf8_bin */;
+create index GOOGLE_URL_HASH on `GOOGLE_URL`(hash);
+
 drop table if exists `GOOGLE_SERP`;
 create table `GOOGLE_SERP` (
     run_id int,
     google_search_id int,
     run_day datetime default null,
     serp blob,
+    base_run_id int default null,
     primary key(run_id, google_search_id),
     foreign key (google_search_id) references `GOOGLE_SEARCH`(id)
 ) engine = innodb default charset=utf8 /*! collate utf8_bin */;
+create index GOOGLE_SERP_SEARCH_RUN on `GOOGLE_SERP`(google_search_id, run_id);
+create index GOOGLE_SERP_BASE_RUN on `GOOGLE_SERP`(base_run_id);
 
 drop table if exists `GOOGLE_SEARCH_GROUP`;
 create table `GOOGLE_SEARCH_GROUP` (
@@ -51,13 +62,14 @@ create table `GOOGLE_RANK` (
     rank smallint,
     previous_rank smallint,
     diff smallint,
-    url varchar(256),
+    url_id int,
 
     primary key(run_id, group_id, google_target_id, google_search_id),
     foreign key (run_id) references `RUN`(id),
     foreign key (group_id) references `GROUP`(id),
     foreign key (google_target_id) references `GOOGLE_TARGET`(id),
-    foreign key (google_search_id) references `GOOGLE_SEARCH`(id)
+    foreign key (google_search_id) references `GOOGLE_SEARCH`(id),
+    foreign key (url_id) references `GOOGLE_URL`(id)
 ) engine = innodb default charset=utf8 /*! collate utf8_bin */;
 
 drop table if exists `GOOGLE_RANK_BEST`;
@@ -68,7 +80,21 @@ create table `GOOGLE_RANK_BEST` (
 
     rank smallint,
     run_day datetime,
-    url varchar(256),
+    url_id int,
+
+    primary key(group_id, google_target_id, google_search_id),
+    foreign key (group_id) references `GROUP`(id),
+    foreign key (google_target_id) references `GOOGLE_TARGET`(id),
+    foreign key (google_search_id) references `GOOGLE_SEARCH`(id),
+    foreign key (url_id) references `GOOGLE_URL`(id)
+) engine = innodb default charset=utf8 /*! collate utf8_bin */;
+
+drop table if exists `GOOGLE_RANK_SERIES`;
+create table `GOOGLE_RANK_SERIES` (
+    group_id int,
+    google_target_id int,
+    google_search_id int,
+    ranks blob,
 
     primary key(group_id, google_target_id, google_search_id),
     foreign key (group_id) references `GROUP`(id),
@@ -0,0 +1,7 @@
+alter table `PROXY` add column `success_count` int default 0;
+alter table `PROXY` add column `failure_count` int default 0;
+alter table `PROXY` add column `captcha_count` int default 0;
+alter table `PROXY` add column `latency_ms` int default 0;
+alter table `PROXY` add column `score` int default 0;
+
+INSERT INTO `CONFIG` VALUES ('app.dbversion','8') ON DUPLICATE KEY UPDATE `value` = '8';
@@ -0,0 +1,4 @@
+alter table `RUN` add column `threads` int default 0;
+alter table `RUN` add column `threads_log` text;
+
+INSERT INTO `CONFIG` VALUES ('app.dbversion','9') ON DUPLICATE KEY UPDATE `value` = '9';
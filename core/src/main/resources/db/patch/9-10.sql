@@ -0,0 +1,13 @@
+create table `GOOGLE_RANK_SERIES` (
+    group_id int,
+    google_target_id int,
+    google_search_id int,
+    ranks blob,
+
+    primary key(group_id, google_target_id, google_search_id),
+    foreign key (group_id) references `GROUP`(id),
+    foreign key (google_target_id) references `GOOGLE_TARGET`(id),
+    foreign key (google_search_id) references `GOOGLE_SEARCH`(id)
+) engine = innodb default charset=utf8 /*! collate utf8_bin */;
+
+INSERT INTO `CONFIG` VALUES ('app.dbversion','10') ON DUPLICATE KEY UPDATE `value` = '10';
@@ -25,6 +25,7 @@ import com.serphacker.serposcope.models.base.User;
 import com.serphacker.serposcope.models.google.GoogleSearch;
 import com.serphacker.serposcope.models.google.GoogleSerp;
 import com.serphacker.serposcope.models.google.GoogleSerpEntry;
+import com.serphacker.serposcope.models.google.GoogleSerpHistory;
 import com.serphacker.serposcope.models.google.GoogleSettings;
 import com.serphacker.serposcope.models.google.GoogleTarget;
 import com.serphacker.serposcope.scraper.google.GoogleCountryCode;
@@ -37,7 +38,6 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Properties;
 import javax.sql.DataSource;
@@ -181,7 +181,7 @@ public class ExportDBIT {
         
         GoogleSerp serp = new GoogleSerp(run.getId(), search1.getId(), ldt);
         GoogleSerpEntry gse = new GoogleSerpEntry("url'");
-        gse.fillPreviousPosition(new HashMap<>());
+        gse.fillPreviousPosition(new GoogleSerpHistory());
         serp.addEntry(gse);
         googleDB.serp.insert(serp);
         
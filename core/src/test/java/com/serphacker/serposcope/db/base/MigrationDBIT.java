@@ -16,21 +16,33 @@ import com.google.inject.Module;
 import com.google.inject.Singleton;
 import com.querydsl.sql.Configuration;
 import static com.serphacker.serposcope.db.base.MigrationDB.LAST_DB_VERSION;
+import com.serphacker.serposcope.db.google.GoogleDB;
 import com.serphacker.serposcope.db.google.GoogleSearchDB;
 import com.serphacker.serposcope.di.db.ConfigurationProvider;
 import com.serphacker.serposcope.di.db.DataSourceProvider;
+import com.serphacker.serposcope.models.base.Group;
+import com.serphacker.serposcope.models.base.Run;
 import com.serphacker.serposcope.models.google.GoogleSearch;
+import com.serphacker.serposcope.models.google.GoogleSerp;
+import com.serphacker.serposcope.models.google.GoogleSerpEntry;
+import com.serphacker.serposcope.models.google.GoogleTarget;
 import com.serphacker.serposcope.scraper.google.GoogleCountryCode;
 import com.zaxxer.hikari.HikariDataSource;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 import javax.sql.DataSource;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import org.junit.Before;
@@ -43,7 +55,8 @@ public class MigrationDBIT {
     
     String[] tables = new String[]{
         "CONFIG", "USER", "GROUP", "EVENT", "USER_GROUP", "RUN", "GROUP_RUN", "PROXY",
-        "GOOGLE_SEARCH", "GOOGLE_SERP", "GOOGLE_SEARCH_GROUP", "GOOGLE_TARGET", "GOOGLE_RANK", "GOOGLE_RANK_BEST", "GOOGLE_TARGET_SUMMARY"
+        "GOOGLE_SEARCH", "GOOGLE_URL", "GOOGLE_SERP", "GOOGLE_SEARCH_GROUP", "GOOGLE_TARGET", "GOOGLE_RANK", "GOOGLE_RANK_BEST", 
+        "GOOGLE_RANK_SERIES", "GOOGLE_TARGET_SUMMARY"
     };
     
     protected Injector injectorH2 = null;
@@ -219,5 +232,118 @@ public class MigrationDBIT {
             assertEquals(tests[i].country, gsdb.find(i+1).getCountry());
         }
         
-    }  
+    }
+    
+    @Test
+    public void testUpgradeUrlIds() throws Exception {
+        testUpgradeUrlIds_(injectorH2);
+        testUpgradeUrlIds_(injectorMySQL);
+    }
+    
+    @Test
+    public void testResumeUpgradeUrlIds() throws Exception {
+        testUpgradeUrlIds_(injectorH2, true);
+        testUpgradeUrlIds_(injectorMySQL, true);
+    }
+    
+    public void testUpgradeUrlIds_(Injector injector) throws Exception {
+        testUpgradeUrlIds_(injector, false);
+    }
+    
+    /**
+     * @param abort first abort the migration once GOOGLE_URL is created, the serps and the ranks 
+     * upgraded and GOOGLE_RANK.url dropped
+     */
+    public void testUpgradeUrlIds_(Injector injector, boolean abort) throws Exception {
+        MigrationDB mig = injector.getInstance(MigrationDB.class);
+        DataSource ds = injector.getInstance(DataSource.class);
+        BaseDB baseDB = injector.getInstance(BaseDB.class);
+        GoogleDB googleDB = injector.getInstance(GoogleDB.class);
+        
+        mig.recreateDb(new String[]{
+            "/db/v10/00-base.h2.sql",
+            "/db/v10/01-google.h2.sql"
+        });
+        try(Connection con = ds.getConnection(); Statement stmt = con.createStatement();){
+            stmt.executeUpdate("INSERT INTO `CONFIG` VALUES ('app.dbversion','10')");
+        }
+        
+        Group grp = new Group(Group.Module.GOOGLE, "grp");
+        baseDB.group.insert(grp);
+        GoogleSearch search = new GoogleSearch("keyword");
+        googleDB.search.insert(Arrays.asList(search), grp.getId());
+        GoogleTarget target = new GoogleTarget(grp.getId(), "name", GoogleTarget.PatternType.REGEX, "pattern");
+        googleDB.target.insert(Arrays.asList(target));
+        Run run = new Run(Run.Mode.CRON, Group.Module.GOOGLE, LocalDateTime.now().withNano(0));
+        baseDB.run.insert(run);
+        
+        // version 0 serp, urls stored in full
+        GoogleSerp serp = new GoogleSerp(run.getId(), search.getId(), run.getStarted());
+        for (int i = 0; i < 10; i++) {
+            GoogleSerpEntry entry = new GoogleSerpEntry("http://www.site-" + (i % 5) + ".com/" + i);
+            entry.getMap().put((short)1, (short)(i + 1));
+            serp.addEntry(entry);
+        }
+        byte[] data = serp.getSerializedEntries();
+        LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+        byte[] compressed = new byte[4 + compressor.maxCompressedLength(data.length)];
+        ByteBuffer.wrap(compressed, 0, 4).putInt(data.length);
+        int compressedLength = compressor.compress(data, 0, data.length, compressed, 4, compressed.length - 4);
+        
+        try(Connection con = ds.getConnection()){
+            try(PreparedStatement ps = con.prepareStatement("INSERT INTO `GOOGLE_SERP` VALUES (?, ?, ?, ?)")){
+                ps.setInt(1, run.getId());
+                ps.setInt(2, search.getId());
+                ps.setTimestamp(3, java.sql.Timestamp.valueOf(run.getStarted()));
+                ps.setBytes(4, Arrays.copyOf(compressed, 4 + compressedLength));
+                ps.executeUpdate();
+            }
+            try(Statement stmt = con.createStatement()){
+                stmt.executeUpdate("INSERT INTO `GOOGLE_RANK` VALUES (" + run.getId() + "," + grp.getId() + "," + 
+                    target.getId() + "," + search.getId() + ",3,5,2,'http://www.site-2.com/2')");
+                stmt.executeUpdate("INSERT INTO `GOOGLE_RANK_BEST` VALUES (" + grp.getId() + "," + 
+                    target.getId() + "," + search.getId() + ",1,NULL,'http://www.site-0.com/0')");
+            }
+        }
+        
+        if(abort){
+            MigrationDB aborted = new MigrationDB(){
+                @Override
+                protected void upgradeUrls(Connection con, String select, String update) throws Exception {
+                    if(select.contains("GOOGLE_RANK_BEST")){
+                        throw new Exception("aborted");
+                    }
+                    super.upgradeUrls(con, select, update);
+                }
+            };
+            injector.injectMembers(aborted);
+            try {
+                aborted.migrateIfNeeded();
+                fail("migration not aborted");
+            } catch(Exception ex){
+                assertEquals("aborted", ex.getMessage());
+            }
+            assertEquals(10, injector.getInstance(ConfigDB.class).getInt(ConfigDB.APP_DBVERSION, 0));
+            try(Connection con = ds.getConnection()){
+                assertTrue(aborted.hasTable(con, "GOOGLE_URL"));
+                assertFalse(aborted.hasColumn(con, "GOOGLE_RANK", "url"));
+                assertTrue(aborted.hasColumn(con, "GOOGLE_RANK_BEST", "url"));
+            }
+        }
+        
+        mig.migrateIfNeeded();
+        assertEquals(LAST_DB_VERSION, injector.getInstance(ConfigDB.class).getInt(ConfigDB.APP_DBVERSION, 0));
+        
+        GoogleSerp upgraded = googleDB.serp.get(run.getId(), search.getId());
+        assertEquals(serp.getEntries(), upgraded.getEntries());
+        assertEquals("http://www.site-2.com/2", googleDB.rank.getFull(run.getId(), grp.getId(), target.getId(), search.getId()).url);
+        assertEquals("http://www.site-0.com/0", googleDB.rank.getBest(grp.getId(), target.getId(), search.getId()).getUrl());
+        
+        try(Connection con = ds.getConnection(); Statement stmt = con.createStatement()){
+            ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM `GOOGLE_URL`");
+            assertTrue(rs.next());
+            assertEquals(10, rs.getInt(1));
+        }
+    }
+    
 }
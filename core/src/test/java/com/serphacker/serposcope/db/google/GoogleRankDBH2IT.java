@@ -17,6 +17,7 @@ import com.serphacker.serposcope.models.google.GoogleRank;
 import com.serphacker.serposcope.models.google.GoogleSearch;
 import com.serphacker.serposcope.models.google.GoogleTarget;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
@@ -70,4 +71,38 @@ public class GoogleRankDBH2IT extends AbstractDBIT {
         GoogleBest best = new GoogleBest(grp.getId(), target.getId(), search.getId(), 1, LocalDateTime.MIN, longUrl);
         assertTrue(googleDB.rank.insertBest(best));        
     }
+    
+    @Test
+    public void testStreamTargets() {
+        Group grp = new Group(Group.Module.GOOGLE, "grp");
+        baseDB.group.insert(grp);
+        
+        GoogleSearch search = new GoogleSearch("keyword");
+        googleDB.search.insert(Arrays.asList(search), grp.getId());
+        
+        GoogleTarget target = new GoogleTarget(grp.getId(), "name", GoogleTarget.PatternType.REGEX, "pattern");
+        GoogleTarget other = new GoogleTarget(grp.getId(), "other", GoogleTarget.PatternType.REGEX, "other");
+        googleDB.target.insert(Arrays.asList(target, other));
+        
+        Run run = new Run(Run.Mode.CRON, Group.Module.GOOGLE, LocalDateTime.now().withNano(0));
+        baseDB.run.insert(run);
+        
+        for (GoogleTarget t : Arrays.asList(target, other)) {
+            assertTrue(googleDB.rank.insert(new GoogleRank(run.getId(), grp.getId(), t.getId(), search.getId(), 1, 2, "url")));
+            assertTrue(googleDB.rank.insertBest(new GoogleBest(grp.getId(), t.getId(), search.getId(), 1, LocalDateTime.MIN, "url")));
+        }
+        
+        List<Integer> targets = new ArrayList<>();
+        googleDB.rank.streamRanked(run.getId(), Arrays.asList(grp.getId()), Arrays.asList(target.getId()), 
+            (group, targetId, searchId, rank) -> targets.add(targetId));
+        assertEquals(Arrays.asList(target.getId()), targets);
+        
+        targets.clear();
+        googleDB.rank.streamBests(null, Arrays.asList(other.getId()), (group, targetId, searchId, rank) -> targets.add(targetId));
+        assertEquals(Arrays.asList(other.getId()), targets);
+        
+        targets.clear();
+        googleDB.rank.streamBests((group, targetId, searchId, rank) -> targets.add(targetId));
+        assertEquals(2, targets.size());
+    }
 }
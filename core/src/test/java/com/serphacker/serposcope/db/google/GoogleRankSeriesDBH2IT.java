@@ -0,0 +1,145 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.db.google;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.serphacker.serposcope.db.AbstractDBIT;
+import com.serphacker.serposcope.db.base.BaseDB;
+import com.serphacker.serposcope.models.base.Group;
+import com.serphacker.serposcope.models.base.Run;
+import com.serphacker.serposcope.models.google.GoogleRank;
+import com.serphacker.serposcope.models.google.GoogleRankSeries;
+import com.serphacker.serposcope.models.google.GoogleSearch;
+import com.serphacker.serposcope.models.google.GoogleTarget;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class GoogleRankSeriesDBH2IT extends AbstractDBIT {
+
+    @Inject
+    BaseDB baseDB;
+
+    @Inject
+    GoogleDB googleDB;
+
+    @Inject
+    Injector guice;
+
+    @Override
+    protected String getDbUrl() {
+        return "jdbc:h2:mem:test;MODE=MySQL";
+    }
+
+    @Test
+    public void testAppendRebuildDelete() {
+        Group grp = new Group(Group.Module.GOOGLE, "grp");
+        baseDB.group.insert(grp);
+
+        GoogleSearch search1 = new GoogleSearch("keyword1");
+        GoogleSearch search2 = new GoogleSearch("keyword2");
+        googleDB.search.insert(Arrays.asList(search1, search2), grp.getId());
+
+        GoogleTarget target = new GoogleTarget(grp.getId(), "name", GoogleTarget.PatternType.REGEX, "pattern");
+        googleDB.target.insert(Arrays.asList(target));
+
+        List<Run> runs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Run run = new Run(Run.Mode.CRON, Group.Module.GOOGLE, LocalDateTime.now().withNano(0).plusDays(i));
+            baseDB.run.insert(run);
+            runs.add(run);
+            assertTrue(googleDB.rank.insert(Arrays.asList(
+                new GoogleRank(run.getId(), grp.getId(), target.getId(), search1.getId(), 1 + i, GoogleRank.UNRANKED, "url"),
+                new GoogleRank(run.getId(), grp.getId(), target.getId(), search2.getId(), GoogleRank.UNRANKED, GoogleRank.UNRANKED, null)
+            )));
+            assertTrue(googleDB.rankSeries.appendRun(run.getId()));
+        }
+
+        Map<Integer, GoogleRankSeries> series = googleDB.rankSeries.list(grp.getId(), target.getId());
+        assertEquals(2, series.size());
+        for (int i = 0; i < runs.size(); i++) {
+            assertEquals(1 + i, series.get(search1.getId()).get(runs.get(i).getId()));
+            assertEquals(GoogleRank.UNRANKED, series.get(search2.getId()).get(runs.get(i).getId()));
+        }
+
+        // rescanned ranks
+        assertTrue(googleDB.rankSeries.merge(Arrays.asList(
+            new GoogleRank(runs.get(2).getId(), grp.getId(), target.getId(), search2.getId(), 7, GoogleRank.UNRANKED, "url")
+        )));
+        assertEquals(7, googleDB.rankSeries.list(grp.getId(), target.getId()).get(search2.getId()).get(runs.get(2).getId()));
+
+        // migration from GOOGLE_RANK
+        assertTrue(googleDB.rankSeries.rebuild());
+        series = googleDB.rankSeries.list(grp.getId(), target.getId());
+        assertEquals(5, series.get(search1.getId()).size());
+        assertEquals(3, series.get(search1.getId()).get(runs.get(2).getId()));
+        assertEquals(GoogleRank.UNRANKED, series.get(search2.getId()).get(runs.get(2).getId()));
+
+        googleDB.rank.deleteBySearch(grp.getId(), search1.getId());
+        assertEquals(1, googleDB.rankSeries.list(grp.getId(), target.getId()).size());
+        googleDB.rank.deleteByTarget(grp.getId(), target.getId());
+        assertTrue(googleDB.rankSeries.list(grp.getId(), target.getId()).isEmpty());
+        assertTrue(googleDB.target.delete(target.getId()));
+    }
+
+    @Test
+    public void testPendingRuns() {
+        Group grp = new Group(Group.Module.GOOGLE, "grp");
+        baseDB.group.insert(grp);
+
+        GoogleSearch search = new GoogleSearch("keyword");
+        googleDB.search.insert(Arrays.asList(search), grp.getId());
+
+        GoogleTarget target = new GoogleTarget(grp.getId(), "name", GoogleTarget.PatternType.REGEX, "pattern");
+        googleDB.target.insert(Arrays.asList(target));
+
+        GoogleRankSeriesDB failing = new GoogleRankSeriesDB(){
+            @Override
+            protected boolean append(int runId) {
+                return false;
+            }
+        };
+        guice.injectMembers(failing);
+
+        List<Run> runs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Run run = new Run(Run.Mode.CRON, Group.Module.GOOGLE, LocalDateTime.now().withNano(0).plusDays(i));
+            baseDB.run.insert(run);
+            runs.add(run);
+            googleDB.rankSeries.addPendingRun(run.getId());
+            assertTrue(googleDB.rank.insert(Arrays.asList(
+                new GoogleRank(run.getId(), grp.getId(), target.getId(), search.getId(), 1 + i, GoogleRank.UNRANKED, "url")
+            )));
+        }
+
+        // first run appended, second one failed, third one crashed before its append
+        assertTrue(googleDB.rankSeries.appendRun(runs.get(0).getId()));
+        assertFalse(failing.appendRun(runs.get(1).getId()));
+        assertEquals(new TreeSet<>(Arrays.asList(runs.get(1).getId(), runs.get(2).getId())),
+            googleDB.rankSeries.getPendingRuns());
+        assertEquals(1, googleDB.rankSeries.list(grp.getId(), target.getId()).get(search.getId()).size());
+
+        assertFalse(failing.appendPendingRuns());
+        assertEquals(2, googleDB.rankSeries.getPendingRuns().size());
+
+        assertTrue(googleDB.rankSeries.appendPendingRuns());
+        assertTrue(googleDB.rankSeries.getPendingRuns().isEmpty());
+        GoogleRankSeries serie = googleDB.rankSeries.list(grp.getId(), target.getId()).get(search.getId());
+        assertEquals(3, serie.size());
+        for (int i = 0; i < runs.size(); i++) {
+            assertEquals(1 + i, serie.get(runs.get(i).getId()));
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.db.google;
+
+import com.serphacker.serposcope.models.google.GoogleRank;
+import java.util.Arrays;
+import java.util.Collection;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class GoogleRankSnapshotTest {
+
+    @Test
+    public void testKey() {
+        assertTrue(GoogleRankSnapshot.key(1, 2) != GoogleRankSnapshot.key(2, 1));
+        assertTrue(GoogleRankSnapshot.key(1, -1) != GoogleRankSnapshot.key(0, -1));
+        assertEquals(GoogleRankSnapshot.key(Integer.MAX_VALUE, 7), GoogleRankSnapshot.key(Integer.MAX_VALUE, 7));
+    }
+
+    @Test
+    public void testPreviousRank() {
+        GoogleRankSnapshot snapshot = new GoogleRankSnapshot();
+        assertEquals(GoogleRank.UNRANKED, snapshot.getPreviousRank(1, 1));
+        snapshot.putPreviousRank(1, 1, 3);
+        assertEquals(3, snapshot.getPreviousRank(1, 1));
+        assertEquals(GoogleRank.UNRANKED, snapshot.getPreviousRank(1, 2));
+        snapshot.putPreviousRank(1, 1, GoogleRank.UNRANKED);
+        assertEquals(GoogleRank.UNRANKED, snapshot.getPreviousRank(1, 1));
+        assertEquals(0, snapshot.previousRankSize());
+    }
+
+    @Test
+    public void testUpdateBest() {
+        GoogleRankSnapshot snapshot = new GoogleRankSnapshot();
+        assertFalse(snapshot.updateBest(1, 1, GoogleRank.UNRANKED));
+        assertTrue(snapshot.updateBest(1, 1, 10));
+        assertEquals(10, snapshot.getBest(1, 1));
+        assertFalse(snapshot.updateBest(1, 1, 11));
+        assertTrue(snapshot.updateBest(1, 1, 10));
+        assertTrue(snapshot.updateBest(1, 1, 2));
+        assertEquals(2, snapshot.getBest(1, 1));
+        assertEquals(GoogleRank.UNRANKED, snapshot.getBest(2, 1));
+    }
+
+    @Test
+    public void testLoadTargets() {
+        Collection<Integer> groups = Arrays.asList(1);
+        Collection<Integer> targets = Arrays.asList(2, 3);
+        GoogleRankDB rankDB = mock(GoogleRankDB.class);
+        doAnswer((invocation) -> {
+            ((GoogleRankDB.RankConsumer)invocation.getArguments()[3]).accept(1, 2, 5, (short)4);
+            return null;
+        }).when(rankDB).streamRanked(eq(10), eq(groups), eq(targets), any(GoogleRankDB.RankConsumer.class));
+        doAnswer((invocation) -> {
+            ((GoogleRankDB.RankConsumer)invocation.getArguments()[2]).accept(1, 3, 5, (short)1);
+            return null;
+        }).when(rankDB).streamBests(eq(groups), eq(targets), any(GoogleRankDB.RankConsumer.class));
+
+        GoogleRankSnapshot snapshot = new GoogleRankSnapshot();
+        snapshot.load(rankDB, 10, groups, targets);
+        verify(rankDB).streamRanked(eq(10), eq(groups), eq(targets), any(GoogleRankDB.RankConsumer.class));
+        verify(rankDB).streamBests(eq(groups), eq(targets), any(GoogleRankDB.RankConsumer.class));
+        assertEquals(4, snapshot.getPreviousRank(2, 5));
+        assertEquals(1, snapshot.getBest(3, 5));
+        assertEquals(1, snapshot.previousRankSize());
+        assertEquals(1, snapshot.bestSize());
+    }
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.db.google;
+
+import com.google.inject.Inject;
+import com.querydsl.sql.Configuration;
+import com.querydsl.sql.SQLQuery;
+import com.serphacker.serposcope.db.AbstractDBIT;
+import com.serphacker.serposcope.db.base.BaseDB;
+import com.serphacker.serposcope.db.base.PruneDB;
+import com.serphacker.serposcope.models.base.Group;
+import com.serphacker.serposcope.models.base.Run;
+import com.serphacker.serposcope.models.google.GoogleSearch;
+import com.serphacker.serposcope.models.google.GoogleSerp;
+import com.serphacker.serposcope.models.google.GoogleSerpEntry;
+import com.serphacker.serposcope.querybuilder.QGoogleSerp;
+import java.io.IOException;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javax.sql.DataSource;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.unitils.reflectionassert.ReflectionAssert;
+
+public class GoogleSerpDBH2IT extends AbstractDBIT {
+
+    @Inject
+    BaseDB baseDB;
+
+    @Inject
+    GoogleDB googleDB;
+
+    @Inject
+    PruneDB pruneDB;
+
+    @Inject
+    DataSource ds;
+
+    @Inject
+    Configuration dbTplConf;
+
+    QGoogleSerp t_serp = QGoogleSerp.googleSerp;
+
+    Random r = new Random(42);
+
+    @Override
+    protected String getDbUrl() {
+        return "jdbc:h2:mem:test;MODE=MySQL";
+    }
+
+    @Test
+    public void testKeyframes() throws Exception {
+        googleDB.serp.setKeyframeInterval(3);
+        GoogleSearch search = createSearch("keyword");
+        List<GoogleSerp> serps = insertRuns(search, 8);
+
+        assertEquals(Arrays.asList(null, 1, 2, null, 4, 5, null, 7), baseRunIds(search.getId()));
+
+        for (GoogleSerp serp : serps) {
+            assertSerp(serp, googleDB.serp.get(serp.getRunId(), search.getId()));
+        }
+
+        List<GoogleSerp> streamed = new ArrayList<>();
+        googleDB.serp.stream(null, null, search.getId(), streamed::add);
+        assertSerps(serps, streamed);
+
+        streamed.clear();
+        googleDB.serp.stream(Arrays.asList(2, 3, 8), Arrays.asList(search.getId()), streamed::add);
+        assertSerps(Arrays.asList(serps.get(1), serps.get(2), serps.get(7)), streamed);
+
+        // full serps only when disabled
+        googleDB.serp.setKeyframeInterval(0);
+        GoogleSearch other = createSearch("other");
+        insertRuns(other, 3);
+        assertEquals(Arrays.asList(null, null, null), baseRunIds(other.getId()));
+    }
+
+    @Test
+    public void testBatchKeyframes() throws Exception {
+        googleDB.serp.setKeyframeInterval(3);
+        List<GoogleSearch> searches = Arrays.asList(createSearch("first"), createSearch("second"), createSearch("third"));
+        List<List<String>> urls = new ArrayList<>();
+        List<List<GoogleSerp>> serps = new ArrayList<>();
+        for (int i = 0; i < searches.size(); i++) {
+            urls.add(urls(i));
+            serps.add(new ArrayList<>());
+        }
+
+        LocalDateTime day = LocalDateTime.of(2016, 1, 1, 0, 0);
+        for (int i = 0; i < 7; i++) {
+            Run run = new Run(Run.Mode.MANUAL, Group.Module.GOOGLE, day.plusDays(i));
+            baseDB.run.insert(run);
+            List<GoogleSerp> batch = new ArrayList<>();
+            for (int j = 0; j < searches.size(); j++) {
+                // the third search skips the second run
+                if(j == 2 && i == 1){
+                    continue;
+                }
+                GoogleSerp serp = nextSerp(run, searches.get(j), urls.get(j), i);
+                batch.add(serp);
+                serps.get(j).add(serp);
+            }
+            assertTrue(googleDB.serp.insert(batch));
+        }
+
+        assertEquals(Arrays.asList(null, 1, 2, null, 4, 5, null), baseRunIds(searches.get(0).getId()));
+        assertEquals(Arrays.asList(null, 1, 2, null, 4, 5, null), baseRunIds(searches.get(1).getId()));
+        assertEquals(Arrays.asList(null, 1, 3, null, 5, 6), baseRunIds(searches.get(2).getId()));
+        for (int i = 0; i < searches.size(); i++) {
+            List<GoogleSerp> streamed = new ArrayList<>();
+            googleDB.serp.stream(null, null, searches.get(i).getId(), streamed::add);
+            assertSerps(serps.get(i), streamed);
+        }
+    }
+
+    @Test
+    public void testStreamView() throws Exception {
+        googleDB.serp.setKeyframeInterval(3);
+        GoogleSearch search = createSearch("keyword");
+        List<GoogleSerp> serps = insertRuns(search, 5);
+
+        List<GoogleSerp> viewed = new ArrayList<>();
+        googleDB.serp.streamView(null, null, search.getId(), (view) -> {
+            assertEquals(serps.get(viewed.size()).getEntries().get(3).getUrl(), view.getUrl(3));
+            assertEquals(3, view.indexOf(view.getUrl(3)));
+            viewed.add(view.toSerp());
+        });
+        assertSerps(serps, viewed);
+
+        viewed.clear();
+        googleDB.serp.streamView(2, 4, search.getId(), (view) -> viewed.add(view.toSerp()));
+        assertSerps(serps.subList(1, 4), viewed);
+    }
+
+    @Test
+    public void testCodec() throws Exception {
+        GoogleSearch search = createSearch("keyword");
+        List<GoogleSerp> serps = insertRuns(search, 2);
+
+        // lz4 behind another format byte
+        Lz4SerpCodec lz4 = new Lz4SerpCodec();
+        googleDB.serp.setCodec(new SerpCodec() {
+            @Override
+            public byte getFormat() {
+                return 2;
+            }
+
+            @Override
+            public byte[] compress(byte[] data) {
+                byte[] compressed = lz4.compress(data);
+                compressed[0] = getFormat();
+                return compressed;
+            }
+
+            @Override
+            public int getDecompressedLength(byte[] compressed, int length) throws IOException {
+                return lz4.getDecompressedLength(lz4Copy(compressed, length), length);
+            }
+
+            @Override
+            public void decompress(byte[] compressed, int length, byte[] decompressed) throws IOException {
+                lz4.decompress(lz4Copy(compressed, length), length, decompressed);
+            }
+
+            byte[] lz4Copy(byte[] compressed, int length){
+                byte[] copy = Arrays.copyOf(compressed, length);
+                copy[0] = Lz4SerpCodec.FORMAT;
+                return copy;
+            }
+        });
+        try {
+            GoogleSearch other = createSearch("other");
+            List<GoogleSerp> otherSerps = insertRuns(other, 2);
+            try(Connection con = ds.getConnection()){
+                for (Blob blob : new SQLQuery<Void>(con, dbTplConf).select(t_serp.serp).from(t_serp)
+                    .where(t_serp.googleSearchId.eq(other.getId())).fetch()) {
+                    assertEquals(2, blob.getBytes(1, 1)[0]);
+                }
+            }
+
+            // both formats are read
+            for (GoogleSerp serp : serps) {
+                assertSerp(serp, googleDB.serp.get(serp.getRunId(), search.getId()));
+            }
+            List<GoogleSerp> viewed = new ArrayList<>();
+            googleDB.serp.streamView(null, null, other.getId(), (view) -> viewed.add(view.toSerp()));
+            assertSerps(otherSerps, viewed);
+        } finally {
+            googleDB.serp.setCodec(lz4);
+        }
+    }
+
+    @Test
+    public void testDeleteBase() throws Exception {
+        googleDB.serp.setKeyframeInterval(4);
+        GoogleSearch search = createSearch("keyword");
+        List<GoogleSerp> serps = insertRuns(search, 4);
+
+        googleDB.serp.deleteByRun(2);
+        assertEquals(Arrays.asList(null, null, 3), baseRunIds(search.getId()));
+        assertNull(googleDB.serp.get(2, search.getId()));
+        assertSerp(serps.get(2), googleDB.serp.get(3, search.getId()));
+        assertSerp(serps.get(3), googleDB.serp.get(4, search.getId()));
+    }
+
+    @Test
+    public void testPrune() throws Exception {
+        googleDB.serp.setKeyframeInterval(10);
+        GoogleSearch search = createSearch("keyword");
+        List<GoogleSerp> serps = insertRuns(search, 5);
+
+        pruneDB.prune(3);
+        assertEquals(Arrays.asList(null, 3, 4), baseRunIds(search.getId()));
+        for (int i = 2; i < serps.size(); i++) {
+            assertSerp(serps.get(i), googleDB.serp.get(serps.get(i).getRunId(), search.getId()));
+        }
+    }
+
+    GoogleSearch createSearch(String keyword){
+        Group grp = new Group(Group.Module.GOOGLE, "group " + keyword);
+        baseDB.group.insert(grp);
+        GoogleSearch search = new GoogleSearch(keyword);
+        googleDB.search.insert(Arrays.asList(search), grp.getId());
+        return search;
+    }
+
+    /**
+     * insert a serp per run, each serp is the previous one with a few changes
+     */
+    List<GoogleSerp> insertRuns(GoogleSearch search, int count){
+        List<GoogleSerp> serps = new ArrayList<>();
+        List<String> urls = urls(0);
+
+        LocalDateTime day = LocalDateTime.of(2016, 1, 1, 0, 0);
+        List<Run> runs = baseDB.run.listByStatus(null, null, null);
+        for (int i = 0; i < count; i++) {
+            Run run;
+            if(i < runs.size()){
+                run = runs.get(runs.size() - 1 - i);
+            } else {
+                run = new Run(Run.Mode.MANUAL, Group.Module.GOOGLE, day.plusDays(i));
+                baseDB.run.insert(run);
+            }
+
+            GoogleSerp serp = nextSerp(run, search, urls, i);
+            assertTrue(googleDB.serp.insert(serp));
+            serps.add(serp);
+        }
+        return serps;
+    }
+
+    List<String> urls(int site){
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            urls.add("http://www.site-" + (site * 20 + i) + ".com/");
+        }
+        return urls;
+    }
+
+    /**
+     * the serp of the run, urls are moved and replaced from the previous serp of the search
+     */
+    GoogleSerp nextSerp(Run run, GoogleSearch search, List<String> urls, int i){
+        urls.add(r.nextInt(urls.size()), urls.remove(r.nextInt(urls.size())));
+        urls.set(r.nextInt(urls.size()), "http://www.new-" + search.getId() + "-" + i + ".com/");
+
+        GoogleSerp serp = new GoogleSerp(run.getId(), search.getId(), run.getStarted());
+        for (int j = 0; j < urls.size(); j++) {
+            GoogleSerpEntry entry = new GoogleSerpEntry(urls.get(j));
+            entry.getMap().put((short)1, (short)(j + i % 2));
+            serp.addEntry(entry);
+        }
+        return serp;
+    }
+
+    List<Integer> baseRunIds(int googleSearchId) throws Exception {
+        try(Connection con = ds.getConnection()){
+            return new SQLQuery<Void>(con, dbTplConf)
+                .select(t_serp.baseRunId)
+                .from(t_serp)
+                .where(t_serp.googleSearchId.eq(googleSearchId))
+                .orderBy(t_serp.runId.asc())
+                .fetch();
+        }
+    }
+
+    void assertSerps(List<GoogleSerp> expected, List<GoogleSerp> actual){
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSerp(expected.get(i), actual.get(i));
+        }
+    }
+
+    void assertSerp(GoogleSerp expected, GoogleSerp actual){
+        assertNotNull(actual);
+        assertEquals(expected.getRunId(), actual.getRunId());
+        ReflectionAssert.assertReflectionEquals(expected.getEntries(), actual.getEntries());
+    }
+
+}
@@ -16,7 +16,6 @@ import com.serphacker.serposcope.models.google.GoogleSearch;
 import com.serphacker.serposcope.models.google.GoogleSerp;
 import com.serphacker.serposcope.models.google.GoogleSerpEntry;
 import it.unimi.dsi.fastutil.shorts.Short2ShortArrayMap;
-import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
@@ -117,7 +116,7 @@ public class GoogleSerpDBIT extends AbstractDBIT {
     }
     
     @Test
-    public void testFFF() throws IOException {
+    public void testFFF() throws Exception {
         String raw = "http://www.banque.net/\n"
             + "http://www.banques-en-ligne.fr/\n"
             + "http://www.boursorama.com/banque-en-ligne/\n"
@@ -0,0 +1,49 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.db.google;
+
+import com.google.inject.Inject;
+import com.serphacker.serposcope.db.AbstractDBIT;
+import org.apache.commons.lang3.StringUtils;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class GoogleUrlDBH2IT extends AbstractDBIT {
+
+    @Inject
+    GoogleUrlDB urlDB;
+
+    @Override
+    protected String getDbUrl() {
+        return "jdbc:h2:mem:test;MODE=MySQL";
+    }
+
+    @Test
+    public void testIds() {
+        // same String.hashCode()
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+
+        int[] ids = urlDB.getIds(new String[]{"Aa", "BB", null, "Aa", StringUtils.repeat("a", GoogleUrlDB.MAX_URL_LENGTH + 1)});
+        assertTrue(ids[0] > 0);
+        assertTrue(ids[1] > 0);
+        assertTrue(ids[0] != ids[1]);
+        assertEquals(0, ids[2]);
+        assertEquals(ids[0], ids[3]);
+        assertEquals(0, ids[4]);
+
+        // ids are stable, with or without the cache
+        urlDB.clearCache();
+        assertArrayEquals(new int[]{ids[1], ids[0]}, urlDB.getIds(new String[]{"BB", "Aa"}));
+        urlDB.clearCache();
+        assertArrayEquals(new String[]{"Aa", "BB", null}, urlDB.getUrls(new int[]{ids[0], ids[1], 0}));
+        assertArrayEquals(new String[]{"Aa", "BB", null}, urlDB.getUrls(new int[]{ids[0], ids[1], 0}));
+        assertNull(urlDB.getUrl(ids[1] + 1000));
+        assertEquals(Integer.valueOf(ids[1]), urlDB.getId("BB"));
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.db.google;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class SerpCodecTest {
+
+    static List<byte[]> samples(int count, long seed){
+        Random random = new Random(seed);
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder builder = new StringBuilder();
+            for (int j = 0; j < 50; j++) {
+                builder.append("https://www.site-").append(random.nextInt(100)).append(".com/page/").append(j).append('|');
+            }
+            samples.add(builder.toString().getBytes());
+        }
+        return samples;
+    }
+
+    void assertRoundTrip(SerpCodec codec, byte[] data) throws IOException {
+        byte[] compressed = codec.compress(data);
+        assertEquals(codec.getFormat(), compressed[0]);
+
+        // compressed data read from a larger buffer
+        byte[] buffer = Arrays.copyOf(compressed, compressed.length + 7);
+        assertEquals(data.length, codec.getDecompressedLength(buffer, compressed.length));
+        byte[] decompressed = new byte[data.length + 3];
+        codec.decompress(buffer, compressed.length, decompressed);
+        assertArrayEquals(data, Arrays.copyOf(decompressed, data.length));
+    }
+
+    @Test
+    public void testLz4() throws IOException {
+        for (byte[] sample : samples(3, 1)) {
+            assertRoundTrip(new Lz4SerpCodec(), sample);
+        }
+    }
+
+}
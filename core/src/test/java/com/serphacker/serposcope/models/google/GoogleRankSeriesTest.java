@@ -0,0 +1,70 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.models.google;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GoogleRankSeriesTest {
+
+    GoogleRankSeries roundTrip(GoogleRankSeries series) throws Exception {
+        GoogleRankSeries decoded = new GoogleRankSeries(series.getGroupId(), series.getGoogleTargetId(), series.getGoogleSearchId());
+        decoded.setSerializedRanks(series.getSerializedRanks());
+        assertEquals(series.size(), decoded.size());
+        for (int i = 0; i < series.size(); i++) {
+            assertEquals(series.getRunId(i), decoded.getRunId(i));
+            assertEquals(series.getRank(i), decoded.getRank(i));
+        }
+        return decoded;
+    }
+
+    @Test
+    public void testStableRankIsRunLengthEncoded() throws Exception {
+        GoogleRankSeries series = new GoogleRankSeries(1, 2, 3);
+        for (int run = 1000; run < 1365; run++) {
+            series.put(run, 4);
+        }
+        // version, count, first run token, repeated token
+        assertTrue(series.getSerializedRanks().length <= 12);
+        GoogleRankSeries decoded = roundTrip(series);
+        assertEquals(4, decoded.get(1200));
+        assertEquals(GoogleRank.UNRANKED, decoded.get(999));
+        assertEquals(GoogleRank.UNRANKED, decoded.get(1365));
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+        Random random = new Random(0);
+        GoogleRankSeries series = new GoogleRankSeries(1, 2, 3);
+        int run = 1;
+        for (int i = 0; i < 1000; i++) {
+            run += 1 + (random.nextInt(10) == 0 ? random.nextInt(5) : 0);
+            int rank = random.nextInt(10) == 0 ? GoogleRank.UNRANKED : 1 + random.nextInt(100);
+            series.put(run, rank);
+        }
+        roundTrip(series);
+        roundTrip(new GoogleRankSeries(1, 2, 3));
+    }
+
+    @Test
+    public void testPutOutOfOrder() throws Exception {
+        GoogleRankSeries series = new GoogleRankSeries(1, 2, 3);
+        series.put(10, 1);
+        series.put(30, 3);
+        series.put(20, 2);
+        // rechecked run
+        series.put(30, 5);
+        assertEquals(3, series.size());
+        assertEquals(10, series.getRunId(0));
+        assertEquals(20, series.getRunId(1));
+        assertEquals(30, series.getRunId(2));
+        assertEquals(5, roundTrip(series).get(30));
+    }
+
+}
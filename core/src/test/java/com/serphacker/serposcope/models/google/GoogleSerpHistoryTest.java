@@ -0,0 +1,46 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ * 
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.models.google;
+
+import java.time.LocalDateTime;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GoogleSerpHistoryTest {
+
+    @Test
+    public void testFillPreviousPosition() throws Exception {
+        GoogleSerp serp1 = new GoogleSerp(1, 1, LocalDateTime.now());
+        serp1.addEntry(new GoogleSerpEntry("http://a.com"));
+        serp1.addEntry(new GoogleSerpEntry("http://b.com"));
+        serp1.addEntry(new GoogleSerpEntry("http://a.com"));
+        
+        GoogleSerp serp7 = new GoogleSerp(2, 1, LocalDateTime.now());
+        serp7.addEntry(new GoogleSerpEntry("http://b.com"));
+        
+        GoogleSerpHistory history = new GoogleSerpHistory();
+        assertTrue(history.isEmpty());
+        history.add((short)1, serp1);
+        history.add((short)7, serp7);
+        assertFalse(history.isEmpty());
+        assertTrue(history.getEstimatedBytes() > 0);
+        
+        assertEquals(3, history.getPosition((short)1, "http://a.com"));
+        assertEquals(2, history.getPosition((short)1, "http://b.com"));
+        assertEquals(1, history.getPosition((short)7, "http://b.com"));
+        assertEquals(0, history.getPosition((short)7, "http://a.com"));
+        assertEquals(0, history.getPosition((short)30, "http://a.com"));
+        
+        GoogleSerpEntry entry = new GoogleSerpEntry("http://a.com");
+        entry.fillPreviousPosition(history);
+        assertEquals(2, entry.getMap().size());
+        assertEquals(3, (short)entry.getMap().get((short)1));
+        assertEquals(0, (short)entry.getMap().get((short)7));
+    }
+    
+}
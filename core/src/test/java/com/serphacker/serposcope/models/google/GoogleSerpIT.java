@@ -8,6 +8,10 @@
 package com.serphacker.serposcope.models.google;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 import org.junit.Test;
@@ -46,4 +50,171 @@ public class GoogleSerpIT {
         
     }
     
+    static class MapDictionary implements GoogleUrlDictionary {
+        
+        final Map<String,Integer> ids = new HashMap<>();
+        final List<String> urls = new ArrayList<>();
+        
+        @Override
+        public int[] getIds(String[] urls) {
+            int[] result = new int[urls.length];
+            for (int i = 0; i < urls.length; i++) {
+                // long urls are inlined
+                if(urls[i].length() > 10){
+                    continue;
+                }
+                result[i] = ids.computeIfAbsent(urls[i], (url) -> {
+                    this.urls.add(url);
+                    return this.urls.size();
+                });
+            }
+            return result;
+        }
+
+        @Override
+        public String[] getUrls(int[] ids) {
+            String[] result = new String[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                result[i] = ids[i] == 0 ? null : urls.get(ids[i] - 1);
+            }
+            return result;
+        }
+        
+    }
+    
+    @Test
+    public void testSerializationUrlIds() throws IOException {
+        MapDictionary dictionary = new MapDictionary();
+        GoogleSerp serp = new GoogleSerp(1, 2, null);
+        
+        for (int i = 0; i < 20; i++) {
+            GoogleSerpEntry entry = new GoogleSerpEntry(i % 5 == 0 ? "http://www.long-url.com/" + i : "url-" + (i % 7));
+            entry.map.put((short)r.nextInt(Short.MAX_VALUE), (short)r.nextInt(Short.MIN_VALUE, Short.MAX_VALUE));
+            serp.addEntry(entry);
+        }
+        
+        byte[] data = serp.getSerializedEntries(dictionary);
+        assertEquals(7, dictionary.urls.size());
+        assertTrue(data.length < serp.getSerializedEntries().length);
+        
+        GoogleSerp serpUnserialized = new GoogleSerp(1, 2, null);
+        serpUnserialized.setSerializedEntries(data, dictionary);
+        ReflectionAssert.assertReflectionEquals(serp, serpUnserialized);
+        
+        // version 0 is still read
+        serpUnserialized.setSerializedEntries(serp.getSerializedEntries(), dictionary);
+        ReflectionAssert.assertReflectionEquals(serp, serpUnserialized);
+        
+        try {
+            serpUnserialized.setSerializedEntries(data);
+            fail("url ids read without dictionary");
+        } catch(IOException ex){
+        }
+    }
+    
+    @Test
+    public void testSerializationDelta() throws IOException {
+        MapDictionary dictionary = new MapDictionary();
+        GoogleSerp base = new GoogleSerp(1, 2, null);
+        for (int i = 0; i < 20; i++) {
+            GoogleSerpEntry entry = new GoogleSerpEntry(i % 5 == 0 ? "http://www.long-url.com/" + i : "url-" + (i % 7));
+            entry.map.put((short)1, (short)i);
+            base.addEntry(entry);
+        }
+        
+        // unchanged
+        GoogleSerp serp = new GoogleSerp(2, 2, null);
+        for (GoogleSerpEntry entry : base.getEntries()) {
+            GoogleSerpEntry copy = new GoogleSerpEntry(entry.getUrl());
+            copy.map.putAll(entry.map);
+            serp.addEntry(copy);
+        }
+        byte[] delta = serp.getSerializedDelta(base, 1, dictionary);
+        assertEquals(1, GoogleSerp.getDeltaDepth(delta));
+        assertEquals(0, GoogleSerp.getDeltaDepth(base.getSerializedEntries(dictionary)));
+        assertTrue(delta.length < 10);
+        assertDelta(serp, delta, dictionary, base);
+        
+        // moved, dropped, inserted and changed entries
+        GoogleSerpEntry moved = serp.entries.remove(3);
+        serp.entries.add(10, moved);
+        serp.entries.remove(15);
+        serp.entries.remove(0);
+        serp.entries.add(5, new GoogleSerpEntry("new-url"));
+        serp.entries.add(7, new GoogleSerpEntry("http://www.another-long-url.com/"));
+        serp.entries.add(new GoogleSerpEntry("url-1"));
+        serp.entries.get(12).map.put((short)7, (short)-3);
+        serp.entries.get(2).map.clear();
+        delta = serp.getSerializedDelta(base, 3, dictionary);
+        assertEquals(3, GoogleSerp.getDeltaDepth(delta));
+        assertTrue(delta.length < serp.getSerializedEntries(dictionary).length);
+        assertDelta(serp, delta, dictionary, base);
+        
+        // everything changed
+        serp.entries.clear();
+        for (int i = 0; i < 10; i++) {
+            serp.addEntry(new GoogleSerpEntry("other-" + i));
+        }
+        assertDelta(serp, serp.getSerializedDelta(base, 1, dictionary), dictionary, base);
+        
+        try {
+            new GoogleSerp(2, 2, null).setSerializedEntries(delta, dictionary);
+            fail("delta read without base");
+        } catch(IOException ex){
+        }
+    }
+    
+    void assertDelta(GoogleSerp serp, byte[] delta, GoogleUrlDictionary dictionary, GoogleSerp base) throws IOException {
+        GoogleSerp serpUnserialized = new GoogleSerp(serp.getRunId(), serp.getGoogleSearchId(), null);
+        serpUnserialized.setSerializedEntries(delta, dictionary, base);
+        ReflectionAssert.assertReflectionEquals(serp, serpUnserialized);
+    }
+    
+    @Test
+    public void testView() throws IOException {
+        MapDictionary dictionary = new MapDictionary();
+        GoogleSerp serp = new GoogleSerp(1, 2, null);
+        for (int i = 0; i < 25; i++) {
+            GoogleSerpEntry entry = new GoogleSerpEntry(i % 5 == 0 ? "http://www.long-url.com/" + i : "url-" + i);
+            entry.map.put((short)1, (short)r.nextInt(Short.MIN_VALUE, Short.MAX_VALUE));
+            serp.addEntry(entry);
+        }
+        
+        // data is viewed in a larger reused buffer
+        byte[] data = serp.getSerializedEntries(dictionary);
+        byte[] buffer = new byte[data.length + 10];
+        System.arraycopy(data, 0, buffer, 0, data.length);
+        
+        GoogleSerpView view = new GoogleSerpView();
+        view.reset(1, 2, null, buffer, data.length, dictionary);
+        assertEquals(25, view.size());
+        assertEquals("url-12", view.getUrl(12));
+        assertEquals("http://www.long-url.com/5", view.getUrl(5));
+        assertEquals(serp.getEntries().get(24).getMap(), view.getMap(24));
+        assertEquals(serp.getEntries().get(3).getMap(), view.getMap(3));
+        assertEquals(7, view.indexOf("url-7"));
+        assertEquals(-1, view.indexOf("url-100"));
+        ReflectionAssert.assertReflectionEquals(serp, view.toSerp());
+        
+        // only the first entries are resolved
+        view.reset(1, 2, null, buffer, data.length, dictionary);
+        assertEquals("url-1", view.getUrl(1));
+        assertEquals(GoogleSerpView.RESOLVE_CHUNK_SIZE, view.resolved);
+        
+        // version 0 is read through a serp
+        data = serp.getSerializedEntries();
+        view.reset(1, 2, null, data, data.length, null);
+        assertEquals("url-12", view.getUrl(12));
+        ReflectionAssert.assertReflectionEquals(serp, view.toSerp());
+        
+        try {
+            view.reset(1, 2, null, buffer, 0, dictionary);
+            assertEquals(0, view.size());
+            data = serp.getSerializedDelta(serp, 1, dictionary);
+            view.reset(1, 2, null, data, data.length, dictionary);
+            fail("delta viewed without base");
+        } catch(IOException ex){
+        }
+    }
+    
 }
@@ -0,0 +1,89 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ * 
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.models.google;
+
+import com.serphacker.serposcope.models.google.GoogleTarget.PatternType;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GoogleTargetMatcherTest {
+
+    @Test
+    public void testSameAsTargetMatch() throws Exception {
+        List<GoogleTarget> targets = Arrays.asList(
+            new GoogleTarget(1, "domain", PatternType.DOMAIN, "example.com"),
+            new GoogleTarget(1, "subdomain", PatternType.SUBDOMAIN, "example.com"),
+            new GoogleTarget(1, "deep-subdomain", PatternType.SUBDOMAIN, "b.example.com"),
+            new GoogleTarget(1, "other-domain", PatternType.DOMAIN, "pizza.com"),
+            new GoogleTarget(1, "regex", PatternType.REGEX, "^https?://[^/]+/abcd"),
+            new GoogleTarget(1, "regex-literal", PatternType.REGEX, "pizza\\.com/http"),
+            new GoogleTarget(1, "regex-optional", PatternType.REGEX, "sdfx?$"),
+            new GoogleTarget(1, "regex-class", PatternType.REGEX, "\\d+\\.html"),
+            new GoogleTarget(1, "never", PatternType.DOMAIN, "never.com")
+        );
+        
+        List<String> urls = Arrays.asList(
+            "https://pizza.com/http://example.com",
+            "https://domain.example.com/sdf",
+            "https://a.b.example.com/page-12.html",
+            "ftp://example.com/",
+            "http://example.com",
+            "https://pizza.com/abcd",
+            "http://b.example.com/"
+        );
+        
+        GoogleTargetMatcher matcher = new GoogleTargetMatcher(targets);
+        assertEquals(targets, matcher.getTargets());
+        
+        int[] ranks = matcher.match(urls);
+        assertEquals(targets.size(), ranks.length);
+        for (int t = 0; t < targets.size(); t++) {
+            int expected = GoogleRank.UNRANKED;
+            for (int i = 0; i < urls.size(); i++) {
+                if(targets.get(t).match(urls.get(i))){
+                    expected = i + 1;
+                    break;
+                }
+            }
+            assertEquals(targets.get(t).getName(), expected, ranks[t]);
+        }
+        
+        assertEquals(5, ranks[0]);
+        assertEquals(2, ranks[1]);
+        assertEquals(3, ranks[2]);
+        assertEquals(GoogleRank.UNRANKED, ranks[8]);
+    }
+    
+    @Test
+    public void testSerp() throws Exception {
+        GoogleSerp serp = new GoogleSerp(1, 1, null);
+        serp.addEntry(new GoogleSerpEntry("https://www.example.com/"));
+        serp.addEntry(new GoogleSerpEntry("https://example.com/"));
+        
+        GoogleTargetMatcher matcher = new GoogleTargetMatcher(Arrays.asList(
+            new GoogleTarget(1, "domain", PatternType.DOMAIN, "example.com"),
+            new GoogleTarget(1, "subdomain", PatternType.SUBDOMAIN, "example.com")
+        ));
+        assertArrayEquals(new int[]{2, 1}, matcher.match(serp));
+    }
+    
+    @Test
+    public void testRequiredLiteral() throws Exception {
+        assertEquals("://example", GoogleTargetMatcher.requiredLiteral("^https?://example"));
+        assertEquals("pizza.com/", GoogleTargetMatcher.requiredLiteral("pizza\\.com/"));
+        assertEquals("abc", GoogleTargetMatcher.requiredLiteral("abcd?"));
+        assertEquals("abcd", GoogleTargetMatcher.requiredLiteral("[a-z]+abcd(ef)?"));
+        assertNull(GoogleTargetMatcher.requiredLiteral("abc|def"));
+        assertNull(GoogleTargetMatcher.requiredLiteral("(?i)example"));
+        assertNull(GoogleTargetMatcher.requiredLiteral("\\x41bc"));
+        assertNull(GoogleTargetMatcher.requiredLiteral(".*"));
+    }
+    
+}
@@ -0,0 +1,82 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.task.google;
+
+import static com.serphacker.serposcope.task.google.GoogleConcurrencyController.WINDOW_SIZE;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GoogleConcurrencyControllerTest {
+
+    GoogleConcurrencyController.Decision window(GoogleConcurrencyController controller,
+        long latencyMS, int errors, int captchas){
+        GoogleConcurrencyController.Decision decision = null;
+        for (int i = 0; i < WINDOW_SIZE; i++) {
+            decision = controller.record(latencyMS, i < errors, i < captchas ? 1 : 0);
+            if(i < WINDOW_SIZE - 1){
+                assertNull(decision);
+            }
+        }
+        return decision;
+    }
+
+    @Test
+    public void testAdditiveIncrease() throws Exception {
+        GoogleConcurrencyController controller = new GoogleConcurrencyController(2, 4);
+        assertEquals(2, controller.getLimit());
+
+        assertEquals(3, window(controller, 1000, 0, 0).limit);
+        assertEquals(4, window(controller, 1000, 0, 0).limit);
+
+        GoogleConcurrencyController.Decision decision = window(controller, 1000, 0, 0);
+        assertEquals(4, decision.limit);
+        assertFalse(decision.changed());
+    }
+
+    @Test
+    public void testMultiplicativeDecrease() throws Exception {
+        GoogleConcurrencyController controller = new GoogleConcurrencyController(1, 16);
+        for (int i = 0; i < 15; i++) {
+            window(controller, 1000, 0, 0);
+        }
+        assertEquals(16, controller.getLimit());
+
+        // captchas
+        assertEquals(8, window(controller, 1000, 0, 4).limit);
+        // errors
+        assertEquals(4, window(controller, 1000, 5, 0).limit);
+        // latency twice the best window
+        assertEquals(2, window(controller, 2500, 0, 0).limit);
+        assertEquals(1, window(controller, 2500, 0, 0).limit);
+        assertEquals(1, window(controller, 1000, 10, 10).limit);
+
+        // under the thresholds
+        assertEquals(2, window(controller, 1000, 4, 2).limit);
+    }
+
+    @Test
+    public void testActiveThreads() throws Exception {
+        GoogleConcurrencyController controller = new GoogleConcurrencyController(2, 4);
+        for (int i = 0; i < 4; i++) {
+            controller.register(i);
+        }
+        assertTrue(controller.isActive(0));
+        assertTrue(controller.isActive(1));
+        assertFalse(controller.isActive(2));
+        assertFalse(controller.isActive(3));
+
+        // a stopped thread leaves its place to the next one
+        controller.unregister(0);
+        assertTrue(controller.isActive(2));
+        assertFalse(controller.isActive(3));
+
+        window(controller, 1000, 0, 0);
+        assertTrue(controller.isActive(3));
+    }
+
+}
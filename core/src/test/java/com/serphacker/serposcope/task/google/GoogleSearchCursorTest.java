@@ -0,0 +1,190 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.task.google;
+
+import com.serphacker.serposcope.db.google.GoogleSearchDB;
+import com.serphacker.serposcope.models.google.GoogleSearch;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GoogleSearchCursorTest {
+
+    static class GoogleSearchDBStub extends GoogleSearchDB {
+
+        final TreeMap<Integer,GoogleSearch> searches = new TreeMap<>();
+        final Set<Integer> checked = new HashSet<>();
+        int queries;
+        int failingQuery;
+
+        @Override
+        public int[] idRange() {
+            return searches.isEmpty() ? null : new int[]{searches.firstKey(), searches.lastKey()};
+        }
+
+        @Override
+        public Map<Integer, GoogleSearch> mapBySearchId(Integer uncheckedRunId, Collection<Integer> searchId) throws SQLException {
+            if(++queries == failingQuery){
+                throw new SQLException("connection lost");
+            }
+            Map<Integer, GoogleSearch> map = new HashMap<>();
+            for (Integer id : searchId) {
+                if(searches.containsKey(id)){
+                    map.put(id, searches.get(id));
+                }
+            }
+            if(uncheckedRunId != null){
+                map.keySet().removeAll(checked);
+            }
+            return map;
+        }
+    }
+
+    GoogleSearchDBStub db(int from, int to){
+        GoogleSearchDBStub db = new GoogleSearchDBStub();
+        for (int id = from; id <= to; id++) {
+            GoogleSearch search = new GoogleSearch("keyword-" + id);
+            search.setId(id);
+            db.searches.put(id, search);
+        }
+        return db;
+    }
+
+    List<Integer> drain(GoogleSearchCursor cursor, LinkedBlockingQueue<GoogleSearch> queue) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        while(!cursor.isDone()){
+            cursor.feedChunk();
+            GoogleSearch search;
+            while((search = queue.poll()) != null){
+                ids.add(search.getId());
+            }
+        }
+        return ids;
+    }
+
+    @Test
+    public void testSeededOrder() throws Exception {
+        GoogleSearchDBStub db = db(100, 1099);
+        // deleted searches
+        for (int id = 200; id < 300; id++) {
+            db.searches.remove(id);
+        }
+
+        LinkedBlockingQueue<GoogleSearch> queue = new LinkedBlockingQueue<>();
+        GoogleSearchCursor cursor = new GoogleSearchCursor(db, queue, 42l, null, 100, 1000);
+        List<Integer> ids = drain(cursor, queue);
+        assertEquals(900, ids.size());
+        assertEquals(900, cursor.getFed());
+        assertEquals(db.searches.keySet(), new HashSet<>(ids));
+        assertEquals(10, db.queries);
+        assertFalse(new ArrayList<>(db.searches.keySet()).equals(ids));
+
+        // same seed, same order
+        queue.clear();
+        assertEquals(ids, drain(new GoogleSearchCursor(db, queue, 42l, null, 100, 1000), queue));
+        assertFalse(ids.equals(drain(new GoogleSearchCursor(db, queue, 43l, null, 100, 1000), queue)));
+
+        // no seed, id order
+        assertEquals(
+            new ArrayList<>(db.searches.keySet()), 
+            drain(new GoogleSearchCursor(db, queue, null, null, 100, 1000), queue)
+        );
+    }
+
+    @Test
+    public void testUnchecked() throws Exception {
+        GoogleSearchDBStub db = db(1, 100);
+        for (int id = 1; id <= 100; id += 2) {
+            db.checked.add(id);
+        }
+        LinkedBlockingQueue<GoogleSearch> queue = new LinkedBlockingQueue<>();
+        List<Integer> ids = drain(new GoogleSearchCursor(db, queue, 1l, 1, 30, 1000), queue);
+        assertEquals(50, ids.size());
+        for (Integer id : ids) {
+            assertEquals(0, id % 2);
+        }
+    }
+
+    @Test
+    public void testBoundedPrefetch() throws Exception {
+        GoogleSearchDBStub db = db(1, 10000);
+        LinkedBlockingQueue<GoogleSearch> queue = new LinkedBlockingQueue<>();
+        GoogleSearchCursor cursor = new GoogleSearchCursor(db, queue, 7l, null, 100, 300);
+        List<Integer> scheduled = new ArrayList<>();
+        cursor.setListener(scheduled::addAll);
+        cursor.start();
+
+        Thread.sleep(200);
+        assertTrue(queue.size() >= 300 && queue.size() < 400);
+        assertFalse(cursor.isDone());
+
+        List<Integer> ids = new ArrayList<>();
+        while(!cursor.isDone() || !queue.isEmpty()){
+            GoogleSearch search = queue.poll();
+            if(search != null){
+                ids.add(search.getId());
+            }
+        }
+        cursor.close();
+        assertEquals(10000, ids.size());
+        assertEquals(scheduled, ids);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        GoogleSearchDBStub db = db(1, 1000);
+        db.failingQuery = 3;
+        LinkedBlockingQueue<GoogleSearch> queue = new LinkedBlockingQueue<>();
+        GoogleSearchCursor cursor = new GoogleSearchCursor(db, queue, null, null, 100, 1000);
+        cursor.start();
+        while(!cursor.isDone()){
+            Thread.sleep(10);
+        }
+        cursor.close();
+
+        assertTrue(cursor.isFailed());
+        assertEquals(200, cursor.getFed());
+        assertEquals(800, cursor.getSkipped());
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        LinkedBlockingQueue<GoogleSearch> queue = new LinkedBlockingQueue<>();
+        GoogleSearchCursor cursor = new GoogleSearchCursor(new GoogleSearchDBStub(), queue, 1l, null);
+        assertTrue(cursor.isDone());
+        cursor.start();
+        cursor.close();
+        assertEquals(0, cursor.getFed());
+        assertFalse(cursor.isFailed());
+    }
+
+    @Test
+    public void testPermutation() throws Exception {
+        for (long size : new long[]{1, 2, 3, 17, 1000, 4097}) {
+            IdPermutation permutation = new IdPermutation(size, size * 31);
+            Set<Long> values = new HashSet<>();
+            for (long i = 0; i < size; i++) {
+                long value = permutation.get(i);
+                assertTrue(value >= 0 && value < size);
+                values.add(value);
+                assertEquals(value, new IdPermutation(size, size * 31).get(i));
+            }
+            assertEquals(size, values.size());
+        }
+    }
+
+}
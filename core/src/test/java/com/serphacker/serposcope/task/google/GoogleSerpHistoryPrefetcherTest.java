@@ -0,0 +1,86 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.task.google;
+
+import com.serphacker.serposcope.db.google.GoogleSerpDB;
+import com.serphacker.serposcope.models.google.GoogleSerp;
+import com.serphacker.serposcope.models.google.GoogleSerpEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class GoogleSerpHistoryPrefetcherTest {
+
+    final static int RUN_ID = 1;
+
+    GoogleSerpDB serpDB(){
+        GoogleSerpDB serpDB = mock(GoogleSerpDB.class);
+        doAnswer((invocation) -> {
+            Collection<Integer> searchIds = (Collection<Integer>)invocation.getArguments()[1];
+            Consumer<GoogleSerp> callback = (Consumer<GoogleSerp>)invocation.getArguments()[2];
+            for (Integer searchId : searchIds) {
+                GoogleSerp serp = new GoogleSerp(RUN_ID, searchId, null);
+                serp.addEntry(new GoogleSerpEntry("http://www.site-" + searchId + ".com/"));
+                callback.accept(serp);
+            }
+            return null;
+        }).when(serpDB).stream(anyCollection(), anyCollection(), any(Consumer.class));
+        return serpDB;
+    }
+
+    List<Integer> ids(int from, int to){
+        List<Integer> ids = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            ids.add(i);
+        }
+        return ids;
+    }
+
+    void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while(!condition.getAsBoolean()){
+            assertTrue(System.currentTimeMillis() - start < 5000l);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testAbandonedSearchesAreEvicted() throws Exception {
+        Map<Short,Integer> runsByDay = new HashMap<>();
+        runsByDay.put((short)1, RUN_ID);
+        // room for about 10 histories, loaded by 2
+        GoogleSerpHistoryPrefetcher prefetcher = new GoogleSerpHistoryPrefetcher(serpDB(), runsByDay, 2, 10 * 100);
+        prefetcher.start();
+        prefetcher.schedule(ids(0, 100));
+        waitUntil(() -> prefetcher.getBytes() >= 10 * 100);
+        assertTrue(prefetcher.size() >= 10);
+
+        // searches 0 to 4 are never written
+        for (int i = 5; i < 10; i++) {
+            assertNotNull(prefetcher.take(i));
+        }
+        waitUntil(() -> prefetcher.getEvicted() == 5);
+        assertNull(prefetcher.take(0));
+        for (int i = 10; i < 15; i++) {
+            final int searchId = i;
+            waitUntil(() -> prefetcher.take(searchId) != null);
+        }
+        prefetcher.close();
+    }
+
+}
@@ -27,6 +27,7 @@ import com.serphacker.serposcope.models.google.GoogleSerpEntry;
 import com.serphacker.serposcope.models.google.GoogleTarget;
 import com.serphacker.serposcope.scraper.captcha.solver.CaptchaSolver;
 import com.serphacker.serposcope.scraper.google.GoogleScrapSearch;
+import com.serphacker.serposcope.scraper.google.GoogleScrapSession;
 import com.serphacker.serposcope.scraper.google.scraper.GoogleScraper;
 import com.serphacker.serposcope.scraper.http.ScrapClient;
 import java.security.NoSuchAlgorithmException;
@@ -179,6 +180,11 @@ public class GoogleTaskIT extends AbstractDBIT {
             @Override
             public GoogleScraper get(ScrapClient http, CaptchaSolver solver) {
                 return new GoogleScraper(http, solver){
+                    @Override
+                    public void step(GoogleScrapSession session) throws InterruptedException {
+                        session.finish(scrap(session.getSearch()));
+                    }
+
                     @Override
                     public GoogleScrapResult scrap(GoogleScrapSearch config) throws InterruptedException {
                         return new GoogleScrapResult(GoogleScrapResult.Status.ERROR_IP_BANNED, new ArrayList<>());
@@ -206,6 +212,11 @@ public class GoogleTaskIT extends AbstractDBIT {
             public GoogleScraper get(ScrapClient http, CaptchaSolver solver) {
                 return new GoogleScraper(http, solver){
                     Random r= new Random();
+                    @Override
+                    public void step(GoogleScrapSession session) throws InterruptedException {
+                        session.finish(scrap(session.getSearch()));
+                    }
+
                     @Override
                     public GoogleScrapResult scrap(GoogleScrapSearch config) throws InterruptedException {
                         GoogleScrapResult.Status status = r.nextBoolean() ? 
@@ -232,6 +243,11 @@ public class GoogleTaskIT extends AbstractDBIT {
             public GoogleScraper get(ScrapClient http, CaptchaSolver solver) {
                 return new GoogleScraper(http, solver){
                     Random r= new Random();
+                    @Override
+                    public void step(GoogleScrapSession session) throws InterruptedException {
+                        session.finish(scrap(session.getSearch()));
+                    }
+
                     @Override
                     public GoogleScrapResult scrap(GoogleScrapSearch config) throws InterruptedException {
                         GoogleScrapResult.Status status = r.nextBoolean() ? 
@@ -268,6 +284,11 @@ public class GoogleTaskIT extends AbstractDBIT {
             public GoogleScraper get(ScrapClient http, CaptchaSolver solver) {
                 return new GoogleScraper(http, solver){
                     Random r= new Random();
+                    @Override
+                    public void step(GoogleScrapSession session) throws InterruptedException {
+                        session.finish(scrap(session.getSearch()));
+                    }
+
                     @Override
                     public GoogleScrapResult scrap(GoogleScrapSearch config) throws InterruptedException {
                         GoogleScrapResult.Status status = r.nextBoolean() ? 
@@ -303,6 +324,11 @@ public class GoogleTaskIT extends AbstractDBIT {
             public GoogleScraper get(ScrapClient http, CaptchaSolver solver) {
                 return new GoogleScraper(http, solver){
                     Random r= new Random();
+                    @Override
+                    public void step(GoogleScrapSession session) throws InterruptedException {
+                        session.finish(scrap(session.getSearch()));
+                    }
+
                     @Override
                     public GoogleScrapResult scrap(GoogleScrapSearch config) throws InterruptedException {
                         GoogleScrapResult.Status status = r.nextBoolean() ? 
@@ -331,6 +357,11 @@ public class GoogleTaskIT extends AbstractDBIT {
             @Override
             public GoogleScraper get(ScrapClient http, CaptchaSolver solver) {
                 return new GoogleScraper(http, solver){
+                    @Override
+                    public void step(GoogleScrapSession session) throws InterruptedException {
+                        session.finish(scrap(session.getSearch()));
+                    }
+
                     @Override
                     public GoogleScrapResult scrap(GoogleScrapSearch config) throws InterruptedException {
                         return new GoogleScrapResult(GoogleScrapResult.Status.ERROR_IP_BANNED, new ArrayList<>());
@@ -13,6 +13,11 @@ import ch.qos.logback.core.Appender;
 import com.serphacker.serposcope.models.google.GoogleSettings;
 import com.serphacker.serposcope.models.google.GoogleSearch;
 import com.serphacker.serposcope.scraper.google.GoogleScrapResult;
+import com.serphacker.serposcope.scraper.google.GoogleScrapSession;
+import com.serphacker.serposcope.scraper.google.PendingCaptcha;
+import com.serphacker.serposcope.scraper.captcha.Captcha;
+import com.serphacker.serposcope.scraper.captcha.CaptchaImage;
+import com.serphacker.serposcope.scraper.captcha.solver.AsyncCaptchaSolver;
 import com.serphacker.serposcope.scraper.google.scraper.GoogleScraper;
 import com.serphacker.serposcope.scraper.http.ScrapClient;
 import com.serphacker.serposcope.scraper.http.proxy.BindProxy;
@@ -21,6 +26,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Assert;
@@ -28,6 +34,7 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.when;
@@ -38,6 +45,8 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
 import com.serphacker.serposcope.scraper.http.proxy.ScrapProxy;
 import java.util.ArrayList;
@@ -78,6 +87,161 @@ public class GoogleTaskRunnableTest {
         }));        
     }    
 
+    protected void finishWith(GoogleScrapResult result) throws Exception {
+        doAnswer((invocation) -> {
+            ((GoogleScrapSession)invocation.getArguments()[0]).finish(result);
+            return null;
+        }).when(runnable.scraper).step(any());
+    }
+
+    @Test
+    public void testPausedSearchIsResumed() throws Exception{
+        taskController.googleOptions.setPages(2);
+        List<ScrapProxy> proxies = Arrays.asList(new BindProxy("127.0.0.1"),new BindProxy("127.0.0.2"));
+        taskController.rotator.addAll(proxies);
+        taskController.searches = new LinkedBlockingQueue<>();
+        GoogleSearch first = new GoogleSearch("first");
+        GoogleSearch second = new GoogleSearch("second");
+        taskController.searches.addAll(Arrays.asList(first, second));
+
+        // both searches are started before the first one resumes its second page
+        List<String> steps = new ArrayList<>();
+        doAnswer((invocation) -> {
+            GoogleScrapSession session = (GoogleScrapSession)invocation.getArguments()[0];
+            steps.add(session.getSearch().getKeyword() + ":" + session.getPage());
+            if(session.getPage() == 0){
+                session.nextPage(20);
+            } else {
+                session.finish(GoogleScrapResult.Status.OK);
+            }
+            return null;
+        }).when(runnable.scraper).step(any());
+        when(taskController.shouldStop()).thenAnswer((invocation) -> steps.size() >= 4);
+
+        runnable.run();
+        assertEquals(Arrays.asList("first:0", "second:0", "first:1", "second:1"), steps);
+        verify(taskController, times(2)).onSearchDone(any(), any());
+        assertTrue(taskController.searches.isEmpty());
+        
+        // every page of a search is requested from the same proxy
+        ArgumentCaptor<ScrapProxy> usedProxies = ArgumentCaptor.forClass(ScrapProxy.class);
+        verify(runnable.scraper.getHttp(), times(4)).setProxy(usedProxies.capture());
+        assertSame(usedProxies.getAllValues().get(0), usedProxies.getAllValues().get(2));
+        assertSame(usedProxies.getAllValues().get(1), usedProxies.getAllValues().get(3));
+        assertNotSame(usedProxies.getAllValues().get(0), usedProxies.getAllValues().get(1));
+        Assert.assertEquals(new HashSet<>(proxies), new HashSet<>(taskController.rotator.list()));
+    }
+
+    @Test
+    public void testParkedSearchKeepsProxy() throws Exception{
+        List<ScrapProxy> proxies = Arrays.asList(new BindProxy("127.0.0.1"),new BindProxy("127.0.0.2"));
+        taskController.rotator.addAll(proxies);
+        taskController.searches = new LinkedBlockingQueue<>();
+        GoogleSearch theSearch = new GoogleSearch("keyword");
+        taskController.searches.add(theSearch);
+        
+        CompletableFuture<Captcha> answer = new CompletableFuture<>();
+        AtomicInteger steps = new AtomicInteger();
+        doAnswer((invocation) -> {
+            GoogleScrapSession session = (GoogleScrapSession)invocation.getArguments()[0];
+            if(steps.incrementAndGet() == 1){
+                PendingCaptcha pending = new PendingCaptcha(new CaptchaImage(new byte[][]{}), "redirect", "url", null);
+                pending.setFuture(answer);
+                session.addCaptchas(1);
+                session.park(pending);
+                new Thread(() -> {
+                    try {Thread.sleep(50);} catch(InterruptedException ex){}
+                    answer.complete(pending.getCaptcha());
+                }).start();
+            } else {
+                assertNotNull(session.takePendingCaptcha());
+                session.finish(GoogleScrapResult.Status.OK);
+            }
+            return null;
+        }).when(runnable.scraper).step(any());
+        when(taskController.shouldStop()).thenAnswer((invocation) -> steps.get() >= 2);
+        
+        runnable.run();
+        verify(taskController, times(1)).onSearchDone(any(), any());
+        verify(taskController, times(1)).incCaptchaCount(1);
+        
+        // the captcha is answered from the proxy it was issued to
+        ArgumentCaptor<ScrapProxy> usedProxies = ArgumentCaptor.forClass(ScrapProxy.class);
+        verify(runnable.scraper.getHttp(), times(2)).setProxy(usedProxies.capture());
+        assertSame(usedProxies.getAllValues().get(0), usedProxies.getAllValues().get(1));
+        Assert.assertEquals(new HashSet<>(proxies), new HashSet<>(taskController.rotator.list()));
+    }
+
+    @Test
+    public void testSingleProxyWaitsForParkedSearch() throws Exception{
+        ScrapProxy theProxy = new BindProxy("127.0.0.1");
+        taskController.rotator.add(theProxy);
+        taskController.searches = new LinkedBlockingQueue<>();
+        taskController.searches.addAll(Arrays.asList(new GoogleSearch("first"), new GoogleSearch("second")));
+        when(runnable.scraper.getAsyncSolver()).thenReturn(mock(AsyncCaptchaSolver.class));
+        
+        List<String> steps = new ArrayList<>();
+        doAnswer((invocation) -> {
+            GoogleScrapSession session = (GoogleScrapSession)invocation.getArguments()[0];
+            steps.add(session.getSearch().getKeyword());
+            if(steps.size() == 1){
+                CompletableFuture<Captcha> answer = new CompletableFuture<>();
+                PendingCaptcha pending = new PendingCaptcha(new CaptchaImage(new byte[][]{}), "redirect", "url", null);
+                pending.setFuture(answer);
+                session.addCaptchas(1);
+                session.park(pending);
+                new Thread(() -> {
+                    try {Thread.sleep(300);} catch(InterruptedException ex){}
+                    answer.complete(pending.getCaptcha());
+                }).start();
+            } else {
+                session.takePendingCaptcha();
+                session.finish(GoogleScrapResult.Status.OK);
+            }
+            return null;
+        }).when(runnable.scraper).step(any());
+        when(taskController.shouldStop()).thenAnswer((invocation) -> steps.size() >= 3);
+        
+        // the only proxy is held by the parked search, the second one waits for it
+        runnable.run();
+        assertEquals(Arrays.asList("first", "first", "second"), steps);
+        verify(taskController, times(2)).onSearchDone(any(), any());
+        verify(mockAppender, never()).doAppend(argThat(new ArgumentMatcher() {
+            @Override
+            public boolean matches(final Object argument) {
+                return ((LoggingEvent) argument).getFormattedMessage().equals("no more proxy, stopping the thread");
+            }
+        }));
+        assertTrue(taskController.searches.isEmpty());
+        assertEquals(Arrays.asList(theProxy), taskController.rotator.list());
+    }
+
+    @Test
+    public void testSingleProxyMultiPages() throws Exception{
+        taskController.googleOptions.setPages(2);
+        taskController.rotator.add(new BindProxy("127.0.0.1"));
+        taskController.searches = new LinkedBlockingQueue<>();
+        taskController.searches.addAll(Arrays.asList(new GoogleSearch("first"), new GoogleSearch("second")));
+        
+        List<String> steps = new ArrayList<>();
+        doAnswer((invocation) -> {
+            GoogleScrapSession session = (GoogleScrapSession)invocation.getArguments()[0];
+            steps.add(session.getSearch().getKeyword() + ":" + session.getPage());
+            if(session.getPage() == 0){
+                session.nextPage(20);
+            } else {
+                session.finish(GoogleScrapResult.Status.OK);
+            }
+            return null;
+        }).when(runnable.scraper).step(any());
+        when(taskController.shouldStop()).thenAnswer((invocation) -> steps.size() >= 4);
+        
+        // the proxy stays with the first search until its last page
+        runnable.run();
+        assertEquals(Arrays.asList("first:0", "first:1", "second:0", "second:1"), steps);
+        verify(taskController, times(2)).onSearchDone(any(), any());
+    }
+
     @Before
     public void before() {
         reconfigureLogger();
@@ -102,6 +266,8 @@ public class GoogleTaskRunnableTest {
 
     @Test
     public void testNoProxy() {
+        taskController.searches = new LinkedBlockingQueue<>();
+        taskController.searches.add(new GoogleSearch("keyword"));
         runnable.run();
         assertLogged("no more proxy, stopping the thread");
     }
@@ -137,7 +303,7 @@ public class GoogleTaskRunnableTest {
         taskController.searches.add(new GoogleSearch("keyword"));
 
         when(taskController.shouldStop()).thenReturn(false, true);
-        when(runnable.scraper.scrap(any())).thenThrow(new UnsupportedOperationException("lolex"));
+        doThrow(new UnsupportedOperationException("lolex")).when(runnable.scraper).step(any());
         
         runnable.run();
         assertLogged("unhandled exception, aborting the thread");
@@ -159,7 +325,7 @@ public class GoogleTaskRunnableTest {
         
         GoogleScrapResult scrapResult = new GoogleScrapResult(GoogleScrapResult.Status.OK, new ArrayList<>());
         
-        when(runnable.scraper.scrap(any())).thenReturn(scrapResult);
+        finishWith(scrapResult);
         
 //        taskController.scaperFactory = mock(ScraperFactory.class);
 //        when(taskController.scaperFactory.getGoogleScraper(any())).thenReturn(scraper);
@@ -170,6 +336,22 @@ public class GoogleTaskRunnableTest {
         assertTrue(taskController.searches.isEmpty());
     }
     
+    @Test
+    public void testHedgeWonIsNotCredited() throws Exception{
+        ScrapProxy theProxy = new BindProxy("127.0.0.1");
+        taskController.rotator.add(theProxy);
+        taskController.searches = new LinkedBlockingQueue<>();
+        taskController.searches.add(new GoogleSearch("keyword"));
+        when(taskController.shouldStop()).thenReturn(false, true);
+        finishWith(new GoogleScrapResult(GoogleScrapResult.Status.OK, new ArrayList<>()));
+        // the page was served through another proxy while the request of theProxy was aborted
+        when(runnable.scraper.getHedgeProxy()).thenReturn(new BindProxy("127.0.0.2"));
+        
+        runnable.run();
+        assertEquals(0, taskController.rotator.getHealth(theProxy).getSuccesses());
+        assertEquals(0, taskController.rotator.getHealth(theProxy).getFailures());
+    }
+    
     /*
     @Test
     public void testSucessfullSearchMultiTry() throws Exception{
@@ -225,7 +407,7 @@ public class GoogleTaskRunnableTest {
     */
     
     @Test
-    public void testProxyEviction() throws Exception{
+    public void testProxyFailure() throws Exception{
         ScrapProxy evictableProxy = new BindProxy("127.0.0.1");
         List<ScrapProxy> proxies = Arrays.asList(evictableProxy, new BindProxy("127.0.0.2"), new BindProxy("127.0.0.3"));
         taskController.rotator.addAll(proxies);
@@ -238,7 +420,7 @@ public class GoogleTaskRunnableTest {
         
         GoogleScrapResult networkError = new GoogleScrapResult(GoogleScrapResult.Status.ERROR_NETWORK, new ArrayList<>());
         
-        when(runnable.scraper.scrap(any())).thenReturn(networkError);
+        finishWith(networkError);
         
 //        taskController.scaperFactory = mock(ScraperFactory.class);
 //        when(taskController.scaperFactory.getGoogleScraper(any())).thenReturn(scraper);
@@ -247,8 +429,10 @@ public class GoogleTaskRunnableTest {
         assertLogged("search \"keyword\" | try 1 | total search done : 0/0");
         assertLogged("scrap failed for keyword because of ERROR_NETWORK");
         verify(taskController, never()).onSearchDone(any(), any());
-        assertFalse(taskController.rotator.list().contains(evictableProxy));
-        assertEquals(proxies.size()-1, taskController.rotator.list().size());
+        // failed proxy is kept and given back to the rotator
+        assertTrue(taskController.rotator.list().contains(evictableProxy));
+        assertEquals(proxies.size(), taskController.rotator.list().size());
+        assertEquals(1, taskController.rotator.getHealth(evictableProxy).getFailures());
         assertFalse(taskController.searches.isEmpty());
     }    
     
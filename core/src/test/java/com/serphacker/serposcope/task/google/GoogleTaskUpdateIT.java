@@ -22,6 +22,7 @@ import com.serphacker.serposcope.models.google.GoogleSearch;
 import com.serphacker.serposcope.models.google.GoogleTarget;
 import com.serphacker.serposcope.scraper.captcha.solver.CaptchaSolver;
 import com.serphacker.serposcope.scraper.google.GoogleScrapSearch;
+import com.serphacker.serposcope.scraper.google.GoogleScrapSession;
 import com.serphacker.serposcope.scraper.google.scraper.GoogleScraper;
 import com.serphacker.serposcope.scraper.http.ScrapClient;
 import java.time.LocalDateTime;
@@ -78,6 +79,11 @@ public class GoogleTaskUpdateIT extends AbstractDBIT {
         @Override
         public GoogleScraper get(ScrapClient http, CaptchaSolver solver) {
             return new GoogleScraper(http, solver) {
+                @Override
+                public void step(GoogleScrapSession session) throws InterruptedException {
+                    session.finish(scrap(session.getSearch()));
+                }
+
                 @Override
                 public GoogleScrapResult scrap(GoogleScrapSearch search) throws InterruptedException {
                     switch (search.getKeyword()) {
@@ -111,6 +117,11 @@ public class GoogleTaskUpdateIT extends AbstractDBIT {
             @Override
             public GoogleScraper get(ScrapClient http, CaptchaSolver solver) {
             return new GoogleScraper(http, solver) {
+                @Override
+                public void step(GoogleScrapSession session) throws InterruptedException {
+                    session.finish(scrap(session.getSearch()));
+                }
+
                 @Override
                 public GoogleScrapResult scrap(GoogleScrapSearch search) throws InterruptedException {
                     switch (search.getKeyword()) {
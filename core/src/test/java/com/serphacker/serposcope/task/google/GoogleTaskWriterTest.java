@@ -0,0 +1,166 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.task.google;
+
+import com.serphacker.serposcope.db.google.GoogleBatchDB;
+import com.serphacker.serposcope.db.google.GoogleDB;
+import com.serphacker.serposcope.db.google.GoogleSearchDB;
+import com.serphacker.serposcope.models.google.GoogleRank;
+import com.serphacker.serposcope.models.google.GoogleSearch;
+import com.serphacker.serposcope.models.google.GoogleSerp;
+import com.serphacker.serposcope.scraper.google.GoogleScrapResult;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class GoogleTaskWriterTest {
+
+    GoogleTask taskController;
+
+    @Before
+    public void before() {
+        taskController = mock(GoogleTask.class);
+        taskController.googleDB = mock(GoogleDB.class);
+        taskController.googleDB.search = mock(GoogleSearchDB.class);
+        taskController.googleDB.batch = mock(GoogleBatchDB.class);
+        when(taskController.googleDB.search.listGroups(anyCollection())).thenReturn(new HashMap<>());
+        when(taskController.googleDB.batch.insert(anyCollection(), anyCollection(), anyCollection())).thenReturn(true);
+    }
+
+    @Test
+    public void testFlushOnClose() throws Exception {
+        GoogleTaskWriter writer = new GoogleTaskWriter(taskController, 100, 10);
+        writer.start();
+
+        GoogleScrapResult res = new GoogleScrapResult(GoogleScrapResult.Status.OK, new ArrayList<>());
+        for (int i = 0; i < 35; i++) {
+            GoogleSearch search = new GoogleSearch("keyword-" + i);
+            search.setId(i + 1);
+            writer.put(search, res);
+        }
+        writer.close();
+
+        assertEquals(0, writer.pending());
+        verify(taskController, times(35)).insertSearchResult(any(), eq(res), anyList(), anyList(), anyList(), anyList());
+        verify(taskController.googleDB.batch, atLeast(4)).insert(anyCollection(), anyCollection(), anyCollection());
+        verify(taskController.googleDB.batch, atMost(35)).insert(anyCollection(), anyCollection(), anyCollection());
+        verify(taskController, atLeast(4)).onResultsWritten(anyList());
+        verify(taskController, never()).onWriteFailed(anyInt());
+    }
+
+    @Test
+    public void testWriteFailure() throws Exception {
+        when(taskController.googleDB.batch.insert(anyCollection(), anyCollection(), anyCollection()))
+            .thenReturn(false, true, false);
+        GoogleTaskWriter writer = new GoogleTaskWriter(taskController, 100, 10);
+        writer.retryPauseMS = 1l;
+
+        GoogleScrapResult res = new GoogleScrapResult(GoogleScrapResult.Status.OK, new ArrayList<>());
+        for (int i = 0; i < 3; i++) {
+            writer.put(new GoogleSearch("keyword-" + i), res);
+        }
+        // retried until written
+        writer.start();
+        writer.close();
+        verify(taskController.googleDB.batch, times(2)).insert(anyCollection(), anyCollection(), anyCollection());
+        verify(taskController, times(1)).onResultsWritten(anyList());
+
+        // given up after the last try then each search fails alone, the ranks aren't counted
+        writer = new GoogleTaskWriter(taskController, 100, 10);
+        writer.retryPauseMS = 1l;
+        for (int i = 0; i < 3; i++) {
+            GoogleSearch search = new GoogleSearch("keyword-" + i);
+            search.setId(i + 1);
+            writer.put(search, res);
+        }
+        writer.start();
+        writer.close();
+        verify(taskController.googleDB.batch, times(2 + GoogleTaskWriter.WRITE_TRIES + 3)).insert(anyCollection(), anyCollection(), anyCollection());
+        verify(taskController, times(2)).onResultsWritten(anyList());
+        verify(taskController).onWriteFailed(3);
+    }
+
+    @Test
+    public void testSplitFailedBatch() throws Exception {
+        // a result of each search, the second search can never be written
+        doAnswer((invocation) -> {
+            GoogleSearch search = (GoogleSearch)invocation.getArguments()[0];
+            ((List<GoogleSerp>)invocation.getArguments()[3]).add(new GoogleSerp(1, search.getId(), null));
+            ((List<GoogleRank>)invocation.getArguments()[4]).add(new GoogleRank(1, 1, 1, search.getId(), 1, 1, null));
+            return null;
+        }).when(taskController).insertSearchResult(any(), any(), anyList(), anyList(), anyList(), anyList());
+        when(taskController.googleDB.batch.insert(anyCollection(), anyCollection(), anyCollection())).thenAnswer((invocation) -> {
+            Collection<GoogleSerp> serps = (Collection<GoogleSerp>)invocation.getArguments()[0];
+            return serps.stream().noneMatch((serp) -> serp.getGoogleSearchId() == 2);
+        });
+
+        GoogleTaskWriter writer = new GoogleTaskWriter(taskController, 100, 10);
+        writer.retryPauseMS = 1l;
+        GoogleScrapResult res = new GoogleScrapResult(GoogleScrapResult.Status.OK, new ArrayList<>());
+        for (int i = 0; i < 3; i++) {
+            GoogleSearch search = new GoogleSearch("keyword-" + i);
+            search.setId(i + 1);
+            writer.put(search, res);
+        }
+        writer.start();
+        writer.close();
+
+        verify(taskController.googleDB.batch, times(GoogleTaskWriter.WRITE_TRIES + 3)).insert(anyCollection(), anyCollection(), anyCollection());
+        ArgumentCaptor<List> written = ArgumentCaptor.forClass(List.class);
+        verify(taskController).onResultsWritten(written.capture());
+        assertEquals(Arrays.asList(1, 3), ((List<GoogleRank>)written.getValue()).stream()
+            .map((rank) -> rank.googleSearchId).collect(Collectors.toList()));
+        verify(taskController).onWriteFailed(1);
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        GoogleTaskWriter writer = new GoogleTaskWriter(taskController, 2, 10);
+        GoogleScrapResult res = new GoogleScrapResult(GoogleScrapResult.Status.OK, new ArrayList<>());
+        writer.put(new GoogleSearch("a"), res);
+        writer.put(new GoogleSearch("b"), res);
+
+        Thread producer = new Thread(() -> {
+            try {
+                writer.put(new GoogleSearch("c"), res);
+            } catch(InterruptedException ex){
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        writer.start();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        writer.close();
+
+        verify(taskController, times(3)).insertSearchResult(any(), eq(res), anyList(), anyList(), anyList(), anyList());
+    }
+
+}
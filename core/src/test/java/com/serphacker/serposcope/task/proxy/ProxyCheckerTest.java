@@ -0,0 +1,170 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.task.proxy;
+
+import com.serphacker.serposcope.db.base.BaseDB;
+import com.serphacker.serposcope.db.base.ProxyDB;
+import com.serphacker.serposcope.models.base.Proxy;
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ProxyCheckerTest {
+
+    static class ProxyDBStub extends ProxyDB {
+
+        final List<Proxy> proxies = new ArrayList<>();
+        final List<List<Proxy>> batches = new ArrayList<>();
+        final Map<Proxy.Status,List<Integer>> statuses = new EnumMap<>(Proxy.Status.class);
+
+        @Override
+        public List<Proxy> list() {
+            return proxies;
+        }
+
+        @Override
+        public synchronized boolean updateStatus(Proxy.Status status, Collection<Integer> ids) {
+            statuses.computeIfAbsent(status, (t) -> new ArrayList<>()).addAll(ids);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean updateChecks(Collection<Proxy> proxies) {
+            batches.add(new ArrayList<>(proxies));
+            return true;
+        }
+
+    }
+
+    HttpServer server;
+    String judgeUrl;
+
+    @Before
+    public void before() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", (exchange) -> {
+            byte[] body = ("Your IP: " + exchange.getRemoteAddress().getAddress().getHostAddress())
+                .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try(OutputStream os = exchange.getResponseBody()){
+                os.write(body);
+            }
+        });
+        server.createContext("/slow", (exchange) -> {
+            try {
+                Thread.sleep(1000);
+            } catch(InterruptedException ex){
+            }
+            byte[] body = ("Your IP: " + exchange.getRemoteAddress().getAddress().getHostAddress())
+                .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try(OutputStream os = exchange.getResponseBody()){
+                os.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        judgeUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void after() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testCheck() throws Exception {
+        ProxyDBStub proxyDB = new ProxyDBStub();
+        int id = 0;
+        for (int i = 0; i < 300; i++) {
+            proxyDB.proxies.add(new Proxy(++id, Proxy.Type.BIND, "127.0.0.1", 0, null, null));
+        }
+        // nothing listens on the discard port
+        proxyDB.proxies.add(new Proxy(++id, Proxy.Type.HTTP, "127.0.0.1", 9, null, null));
+
+        BaseDB db = new BaseDB();
+        db.proxy = proxyDB;
+
+        ProxyChecker checker = new ProxyChecker(db, 20, 5000, judgeUrl);
+        checker.start();
+        checker.join(60000);
+        assertFalse(checker.isAlive());
+
+        assertEquals(301, checker.getChecked());
+        assertEquals(300, checker.getAlive());
+        assertEquals(100, checker.getProgress());
+
+        // streamed by batch instead of one update per proxy
+        assertTrue(proxyDB.batches.size() > 1);
+        assertTrue(proxyDB.batches.size() < 301);
+        assertEquals(301, proxyDB.batches.stream().mapToInt(List::size).sum());
+
+        for (Proxy proxy : proxyDB.proxies) {
+            assertNotNull(proxy.getLastCheck());
+            if(proxy.getType() == Proxy.Type.BIND){
+                assertEquals(Proxy.Status.OK, proxy.getStatus());
+                assertEquals("127.0.0.1", proxy.getRemoteip());
+            } else {
+                assertEquals(Proxy.Status.ERROR, proxy.getStatus());
+            }
+        }
+    }
+
+    @Test
+    public void testInterrupt() throws Exception {
+        ProxyDBStub proxyDB = new ProxyDBStub();
+        for (int i = 1; i <= 40; i++) {
+            Proxy proxy = new Proxy(i, Proxy.Type.BIND, "127.0.0.1", 0, null, null);
+            proxy.setStatus(Proxy.Status.OK);
+            proxyDB.proxies.add(proxy);
+        }
+
+        BaseDB db = new BaseDB();
+        db.proxy = proxyDB;
+
+        ProxyChecker checker = new ProxyChecker(db, 4, 2000, judgeUrl + "slow");
+        checker.start();
+        Thread.sleep(1500);
+        checker.interrupt();
+
+        // probes still in a request are waited for, at most the timeout
+        long start = System.currentTimeMillis();
+        checker.join(10000);
+        assertFalse(checker.isAlive());
+        assertTrue(System.currentTimeMillis() - start < 2000 + ProxyChecker.PROBE_JOIN_MARGIN_MS + 1000);
+
+        Set<Integer> written = proxyDB.batches.stream().flatMap(List::stream)
+            .map(Proxy::getId).collect(Collectors.toSet());
+        assertFalse(written.isEmpty());
+        assertTrue(written.size() < 40);
+
+        // every proxy not written is back to its previous status
+        Set<Integer> restored = new HashSet<>(proxyDB.statuses.get(Proxy.Status.OK));
+        assertEquals(40 - written.size(), restored.size());
+        for (Proxy proxy : proxyDB.proxies) {
+            assertTrue(written.contains(proxy.getId()) ^ restored.contains(proxy.getId()));
+            assertEquals(Proxy.Status.OK, proxy.getStatus());
+        }
+    }
+
+}
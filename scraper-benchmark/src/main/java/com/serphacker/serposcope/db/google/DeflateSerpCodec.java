@@ -0,0 +1,167 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.db.google;
+
+import com.serphacker.serposcope.models.google.VarInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * candidate codec compared to lz4 by SerpCodecBenchmark, not used by GoogleSerpDB : raw deflate,
+ * with an optional preset dictionary trained on other serps. format byte, varint decompressed
+ * length then the deflate stream.
+ */
+public class DeflateSerpCodec implements SerpCodec {
+
+    public final static byte FORMAT = 1;
+    public final static int MAX_DICTIONARY_SIZE = 32 * 1024;
+    public final static int SEGMENT_SIZE = 8;
+    public final static int LEVEL = 6;
+
+    final byte[] dictionary;
+
+    final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(LEVEL, true));
+    final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    /**
+     * @param dictionary empty for plain deflate
+     */
+    public DeflateSerpCodec(byte[] dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public byte getFormat() {
+        return FORMAT;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(16 + data.length / 2);
+        baos.write(FORMAT);
+        VarInt.write(baos, data.length);
+
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if(dictionary.length > 0){
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[Math.max(64, data.length / 2)];
+        while(!deflater.finished()){
+            int n = deflater.deflate(buffer);
+            baos.write(buffer, 0, n);
+        }
+        return baos.toByteArray();
+    }
+
+    @Override
+    public int getDecompressedLength(byte[] compressed, int length) throws IOException {
+        try {
+            return VarInt.read(ByteBuffer.wrap(compressed, 1, length - 1));
+        } catch(BufferUnderflowException | IllegalArgumentException ex){
+            throw new IOException("truncated deflate serp", ex);
+        }
+    }
+
+    @Override
+    public void decompress(byte[] compressed, int length, byte[] decompressed) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(compressed, 1, length - 1);
+        int decompressedLength;
+        try {
+            decompressedLength = VarInt.read(buffer);
+        } catch(BufferUnderflowException | IllegalArgumentException ex){
+            throw new IOException("truncated deflate serp", ex);
+        }
+
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        if(dictionary.length > 0){
+            inflater.setDictionary(dictionary);
+        }
+        inflater.setInput(compressed, buffer.position(), length - buffer.position());
+        try {
+            int read = 0;
+            while(read < decompressedLength){
+                int n = inflater.inflate(decompressed, read, decompressedLength - read);
+                if(n == 0 && (inflater.finished() || inflater.needsInput())){
+                    throw new IOException("truncated deflate serp");
+                }
+                read += n;
+            }
+        } catch(DataFormatException ex){
+            throw new IOException("malformed deflate serp", ex);
+        }
+    }
+
+    /**
+     * build a dictionary from the segments of SEGMENT_SIZE bytes found in the most samples, the
+     * most common segments are put at the end of the dictionary where they are the cheapest to
+     * reference.
+     *
+     * @param size maximum size of the dictionary, at most MAX_DICTIONARY_SIZE
+     */
+    public static byte[] train(Collection<byte[]> samples, int size){
+        size = Math.min(size, MAX_DICTIONARY_SIZE);
+
+        // number of samples containing each segment
+        Map<Long,Integer> counts = new HashMap<>();
+        for (byte[] sample : samples) {
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i + SEGMENT_SIZE <= sample.length; i++) {
+                Long segment = segment(sample, i);
+                if(seen.add(segment)){
+                    counts.merge(segment, 1, Integer::sum);
+                }
+            }
+        }
+
+        List<Map.Entry<Long,Integer>> common = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            if(entry.getValue() > 1){
+                common.add(entry);
+            }
+        }
+        common.sort((a, b) -> a.getValue().equals(b.getValue()) ?
+            Long.compare(a.getKey(), b.getKey()) : Integer.compare(b.getValue(), a.getValue()));
+
+        int segments = Math.min(common.size(), size / SEGMENT_SIZE);
+        byte[] dictionary = new byte[segments * SEGMENT_SIZE];
+        for (int i = 0; i < segments; i++) {
+            long segment = common.get(i).getKey();
+            int offset = dictionary.length - (i + 1) * SEGMENT_SIZE;
+            for (int j = SEGMENT_SIZE - 1; j >= 0; j--) {
+                dictionary[offset + j] = (byte)segment;
+                segment >>>= 8;
+            }
+        }
+        return dictionary;
+    }
+
+    static long segment(byte[] data, int offset){
+        long segment = 0;
+        for (int i = 0; i < SEGMENT_SIZE; i++) {
+            segment = (segment << 8) | (data[offset + i] & 0xFF);
+        }
+        return segment;
+    }
+
+}
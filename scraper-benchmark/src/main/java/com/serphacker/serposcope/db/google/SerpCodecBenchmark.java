@@ -0,0 +1,163 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.db.google;
+
+import com.serphacker.serposcope.models.google.GoogleSerp;
+import com.serphacker.serposcope.models.google.GoogleSerpEntry;
+import com.serphacker.serposcope.models.google.GoogleUrlDictionary;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * compression and decompression time of lz4 (GoogleSerpDB), deflate and deflate with a dictionary
+ * trained on other serps, one operation is one serp of 100 urls taken from a pool of shared urls.
+ * the compressed size of each codec is printed at setup.
+ *
+ * mvn -Pbenchmark -pl scraper,core,scraper-benchmark package
+ * java -jar scraper-benchmark/target/benchmarks.jar SerpCodecBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerpCodecBenchmark {
+
+    final static int SERPS = 5000;
+    final static int TRAINING_SERPS = 1000;
+
+    static class MapDictionary implements GoogleUrlDictionary {
+
+        final Map<String,Integer> ids = new HashMap<>();
+        final List<String> urls = new ArrayList<>();
+
+        @Override
+        public int[] getIds(String[] urls) {
+            int[] result = new int[urls.length];
+            for (int i = 0; i < urls.length; i++) {
+                result[i] = ids.computeIfAbsent(urls[i], (url) -> {
+                    this.urls.add(url);
+                    return this.urls.size();
+                });
+            }
+            return result;
+        }
+
+        @Override
+        public String[] getUrls(int[] ids) {
+            String[] result = new String[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                result[i] = urls.get(ids[i] - 1);
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * serps serialized with url ids (stored format) or full urls, compressed by a codec
+     */
+    @State(Scope.Thread)
+    public static class Serps {
+
+        @Param({"ids", "urls"})
+        String urls;
+
+        @Param({"lz4", "deflate", "deflate+dict"})
+        String codec;
+
+        SerpCodec serpCodec;
+        byte[][] serps;
+        byte[][] compressed;
+        byte[] decompressed = new byte[65536];
+        int serp;
+
+        @Setup
+        public void setup() throws IOException {
+            List<byte[]> all = serps("ids".equals(urls) ? new MapDictionary() : null);
+            switch(codec){
+                case "lz4":
+                    serpCodec = new Lz4SerpCodec();
+                    break;
+                case "deflate":
+                    serpCodec = new DeflateSerpCodec(new byte[0]);
+                    break;
+                default:
+                    serpCodec = new DeflateSerpCodec(DeflateSerpCodec.train(all.subList(0, TRAINING_SERPS),
+                        DeflateSerpCodec.MAX_DICTIONARY_SIZE));
+            }
+
+            // the serps of the training aren't measured
+            serps = all.subList(TRAINING_SERPS, all.size()).toArray(new byte[0][]);
+            compressed = new byte[serps.length][];
+            long raw = 0;
+            long size = 0;
+            for (int i = 0; i < serps.length; i++) {
+                compressed[i] = serpCodec.compress(serps[i]);
+                raw += serps[i].length;
+                size += compressed[i].length;
+            }
+            System.out.println(String.format("%s %s : ratio %.3f, %d bytes/serp",
+                urls, codec, (double)size / raw, size / serps.length));
+        }
+
+        int next(){
+            if(++serp == serps.length){
+                serp = 0;
+            }
+            return serp;
+        }
+    }
+
+    @Benchmark
+    public byte[] compress(Serps serps){
+        return serps.serpCodec.compress(serps.serps[serps.next()]);
+    }
+
+    @Benchmark
+    public byte[] decompress(Serps serps) throws IOException {
+        byte[] data = serps.compressed[serps.next()];
+        serps.serpCodec.decompress(data, data.length, serps.decompressed);
+        return serps.decompressed;
+    }
+
+    static List<byte[]> serps(GoogleUrlDictionary dictionary) throws IOException {
+        Random random = new Random(0);
+        List<byte[]> serps = new ArrayList<>();
+        for (int i = 0; i < SERPS; i++) {
+            GoogleSerp serp = new GoogleSerp(i, i, null);
+            for (int j = 0; j < 100; j++) {
+                // a few popular sites and a long tail
+                int site = random.nextInt(4) == 0 ? random.nextInt(50) : random.nextInt(20000);
+                GoogleSerpEntry entry = new GoogleSerpEntry("https://www.site-" + site + ".com/category/page-" + random.nextInt(10) + ".html");
+                entry.getMap().put((short)1, (short)(j + 1 + random.nextInt(3)));
+                entry.getMap().put((short)7, (short)(j + 1 + random.nextInt(10)));
+                serp.addEntry(entry);
+            }
+            serps.add(serp.getSerializedEntries(dictionary));
+        }
+        return serps;
+    }
+
+}
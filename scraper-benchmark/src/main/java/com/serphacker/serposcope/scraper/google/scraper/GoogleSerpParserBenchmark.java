@@ -0,0 +1,229 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.google.scraper;
+
+import com.serphacker.serposcope.scraper.http.ScrapClient;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * throughput and allocations of the serp parser on the test fixtures, one operation is one page
+ * (or one link / h3 element), the gc profiler reports the bytes allocated per page
+ * (gc.alloc.rate.norm).
+ *
+ * mvn -Pbenchmark -pl scraper,core,scraper-benchmark package
+ * java -jar scraper-benchmark/target/benchmarks.jar
+ *
+ * fixtures are read from scraper/src/test/resources/google, use -Dserposcope.fixtures=dir
+ * when running from another directory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GoogleSerpParserBenchmark {
+
+    final static String FIXTURES = "scraper/src/test/resources/google";
+
+    static class FixtureClient extends ScrapClient {
+
+        final byte[] content;
+        final String html;
+        final boolean stream;
+
+        FixtureClient(byte[] content, boolean stream) {
+            this.content = content;
+            this.html = new String(content, StandardCharsets.UTF_8);
+            this.stream = stream;
+        }
+
+        @Override
+        public ByteBuffer getContentView() {
+            return stream ? ByteBuffer.wrap(content).asReadOnlyBuffer() : null;
+        }
+
+        @Override
+        public String getContentAsString() {
+            return html;
+        }
+
+        @Override
+        public Charset getDetectedCharset() {
+            return StandardCharsets.UTF_8;
+        }
+
+    }
+
+    /**
+     * serps of a layout, parsed from the bytes (stream) or with jsoup only
+     */
+    @State(Scope.Thread)
+    public static class Pages {
+
+        @Param({"201804", "201810"})
+        String layout;
+
+        @Param({"stream", "jsoup"})
+        String parser;
+
+        GoogleScraper[] scrapers;
+        int page;
+
+        @Setup
+        public void setup() throws IOException {
+            List<byte[]> contents = readPages(layout);
+            scrapers = new GoogleScraper[contents.size()];
+            for (int i = 0; i < scrapers.length; i++) {
+                scrapers[i] = new GoogleScraper(new FixtureClient(contents.get(i), "stream".equals(parser)), null);
+                scrapers[i].parseSerp(new ArrayList<>());
+            }
+        }
+
+        GoogleScraper next(){
+            if(++page == scrapers.length){
+                page = 0;
+            }
+            return scrapers[page];
+        }
+    }
+
+    /**
+     * links and h3 elements of the serps of a layout
+     */
+    @State(Scope.Thread)
+    public static class PageElements {
+
+        @Param({"201804", "201810"})
+        String layout;
+
+        GoogleScraper scraper = new GoogleScraper(null, null);
+        Element[] links;
+        Element[] h3s;
+        int link;
+        int h3;
+
+        @Setup
+        public void setup() throws IOException {
+            List<Element> links = new ArrayList<>();
+            List<Element> h3s = new ArrayList<>();
+            for (byte[] content : readPages(layout)) {
+                Document document = Jsoup.parse(new String(content, StandardCharsets.UTF_8));
+                links.addAll(document.select("a[href]"));
+                h3s.addAll(document.getElementsByTag("h3"));
+            }
+            this.links = links.toArray(new Element[0]);
+            this.h3s = h3s.toArray(new Element[0]);
+        }
+
+        Element nextLink(){
+            if(++link == links.length){
+                link = 0;
+            }
+            return links[link];
+        }
+
+        Element nextH3(){
+            if(++h3 == h3s.length){
+                h3 = 0;
+            }
+            return h3s[h3];
+        }
+    }
+
+    @Benchmark
+    public List<String> parseSerp(Pages pages){
+        List<String> urls = new ArrayList<>();
+        pages.next().parseSerp(urls);
+        return urls;
+    }
+
+    @Benchmark
+    public long parseResultsNumberOnFirstPage(Pages pages){
+        return pages.next().parseResultsNumberOnFirstPage();
+    }
+
+    @Benchmark
+    public String extractLink(PageElements elements){
+        return elements.scraper.extractLink(elements.nextLink());
+    }
+
+    @Benchmark
+    public boolean isSiteLinkElement(PageElements elements){
+        return elements.scraper.isSiteLinkElement(elements.nextH3());
+    }
+
+    static List<byte[]> readPages(String layout) throws IOException {
+        Path directory = Paths.get(System.getProperty("serposcope.fixtures", FIXTURES), layout);
+        if(!Files.isDirectory(directory)){
+            directory = Paths.get("..", FIXTURES, layout);
+        }
+
+        List<byte[]> contents = new ArrayList<>();
+        for (String pages : new String[]{"top-10", "last-page"}) {
+            List<Path> files;
+            try(Stream<Path> stream = Files.list(directory.resolve(pages))){
+                files = stream
+                    .filter((p) -> !p.toString().endsWith(".res"))
+                    .sorted()
+                    .collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                contents.add(Files.readAllBytes(file));
+            }
+        }
+
+        if(contents.isEmpty()){
+            throw new IOException("no fixture in " + directory.toAbsolutePath());
+        }
+        return contents;
+    }
+
+    /**
+     * runs the benchmarks with the gc profiler, accepts the usual jmh options
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(cmd);
+        if(cmd.getIncludes().isEmpty()){
+            options.include(GoogleSerpParserBenchmark.class.getSimpleName());
+        }
+        options.addProfiler(GCProfiler.class);
+        new Runner(options.build()).run();
+    }
+
+}
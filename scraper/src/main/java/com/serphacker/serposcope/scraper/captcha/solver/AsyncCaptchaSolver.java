@@ -0,0 +1,240 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.captcha.solver;
+
+import com.serphacker.serposcope.scraper.captcha.Captcha;
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * solves captchas in the background so scrapers don't wait for the answer.
+ * at most maxInFlight captchas are being solved at once, the others are queued.
+ * captchas of a PollingCaptchaSolver are all checked by a single poller thread,
+ * other solvers are called on a pool of maxInFlight threads.
+ * the future completes with the captcha once it is SOLVED or in ERROR.
+ *
+ * thread safe
+ */
+public class AsyncCaptchaSolver implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncCaptchaSolver.class);
+
+    public final static int DEFAULT_MAX_IN_FLIGHT = 20;
+    public final static long DEFAULT_POLL_INTERVAL_MS = 2500l;
+
+    static class Job {
+        final Captcha captcha;
+        final CompletableFuture<Captcha> future = new CompletableFuture<>();
+        long started;
+
+        Job(Captcha captcha) {
+            this.captcha = captcha;
+        }
+    }
+
+    final CaptchaSolver solver;
+    final int maxInFlight;
+    final long pollIntervalMS;
+
+    final ArrayDeque<Job> queued = new ArrayDeque<>();
+    final List<Job> polled = new ArrayList<>();
+    int inFlight;
+    boolean closed;
+
+    final Thread poller;
+    final ExecutorService executor;
+
+    public AsyncCaptchaSolver(CaptchaSolver solver) {
+        this(solver, DEFAULT_MAX_IN_FLIGHT, DEFAULT_POLL_INTERVAL_MS);
+    }
+
+    public AsyncCaptchaSolver(CaptchaSolver solver, int maxInFlight, long pollIntervalMS) {
+        this.solver = solver;
+        this.maxInFlight = maxInFlight;
+        this.pollIntervalMS = pollIntervalMS;
+        this.executor = solver instanceof PollingCaptchaSolver ? null : Executors.newFixedThreadPool(maxInFlight, (r) -> {
+            Thread thread = new Thread(r, "captcha-solver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller = new Thread(this::run, "captcha-poller");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    public CaptchaSolver getSolver() {
+        return solver;
+    }
+
+    public CompletableFuture<Captcha> solve(Captcha captcha){
+        Job job = new Job(captcha);
+        synchronized(queued){
+            if(closed){
+                captcha.setError(Captcha.Error.INTERRUPTED);
+                job.future.complete(captcha);
+                return job.future;
+            }
+            queued.add(job);
+            queued.notifyAll();
+        }
+        return job.future;
+    }
+
+    /**
+     * @return number of captchas submitted and not answered yet
+     */
+    public int getInFlight(){
+        synchronized(queued){
+            return inFlight;
+        }
+    }
+
+    public int getQueued(){
+        synchronized(queued){
+            return queued.size();
+        }
+    }
+
+    protected void run(){
+        try {
+            while(true){
+                List<Job> toStart = new ArrayList<>();
+                synchronized(queued){
+                    while(!closed && polled.isEmpty() && (queued.isEmpty() || inFlight >= maxInFlight)){
+                        queued.wait();
+                    }
+                    if(closed){
+                        return;
+                    }
+                    while(!queued.isEmpty() && inFlight < maxInFlight){
+                        toStart.add(queued.poll());
+                        ++inFlight;
+                    }
+                }
+
+                for (Job job : toStart) {
+                    start(job);
+                }
+
+                if(!polled.isEmpty()){
+                    poll();
+                    synchronized(queued){
+                        if(!closed && (queued.isEmpty() || inFlight >= maxInFlight)){
+                            queued.wait(pollIntervalMS);
+                        }
+                    }
+                }
+            }
+        } catch(InterruptedException ex){
+        } catch(Exception ex){
+            LOG.error("captcha poller crashed", ex);
+        } finally {
+            abort();
+        }
+    }
+
+    protected void start(Job job){
+        job.started = System.currentTimeMillis();
+        if(executor != null){
+            executor.execute(() -> {
+                try {
+                    solver.solve(job.captcha);
+                } catch(Exception ex){
+                    LOG.error("captcha solver exception", ex);
+                    job.captcha.setError(Captcha.Error.EXCEPTION);
+                }
+                done(job);
+            });
+            return;
+        }
+
+        if(((PollingCaptchaSolver)solver).submit(job.captcha)){
+            polled.add(job);
+        } else {
+            done(job);
+        }
+    }
+
+    protected void poll(){
+        List<Captcha> captchas = new ArrayList<>(polled.size());
+        for (Job job : polled) {
+            captchas.add(job.captcha);
+        }
+
+        PollingCaptchaSolver pollingSolver = (PollingCaptchaSolver)solver;
+        try {
+            pollingSolver.poll(captchas);
+        } catch(Exception ex){
+            LOG.error("captcha solver exception", ex);
+        }
+
+        long now = System.currentTimeMillis();
+        for (Iterator<Job> it = polled.iterator(); it.hasNext();) {
+            Job job = it.next();
+            if(job.captcha.getStatus() == Captcha.Status.SUBMITTED && now - job.started > pollingSolver.getTimeoutMS()){
+                job.captcha.setError(Captcha.Error.TIMEOUT);
+            }
+            if(job.captcha.getStatus() != Captcha.Status.SUBMITTED){
+                it.remove();
+                done(job);
+            }
+        }
+    }
+
+    protected void done(Job job){
+        job.captcha.setSolveDuration(System.currentTimeMillis() - job.started);
+        synchronized(queued){
+            --inFlight;
+            queued.notifyAll();
+        }
+        job.future.complete(job.captcha);
+    }
+
+    protected void abort(){
+        List<Job> aborted = new ArrayList<>(polled);
+        polled.clear();
+        synchronized(queued){
+            closed = true;
+            aborted.addAll(queued);
+            queued.clear();
+        }
+        for (Job job : aborted) {
+            job.captcha.setError(Captcha.Error.INTERRUPTED);
+            job.future.complete(job.captcha);
+        }
+    }
+
+    /**
+     * stop solving, pending captchas complete with an INTERRUPTED error, the solver isn't closed
+     */
+    @Override
+    public void close() {
+        synchronized(queued){
+            closed = true;
+            queued.notifyAll();
+        }
+        poller.interrupt();
+        try {
+            poller.join();
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+        if(executor != null){
+            executor.shutdownNow();
+        }
+    }
+
+}
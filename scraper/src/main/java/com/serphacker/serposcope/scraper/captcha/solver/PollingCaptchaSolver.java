@@ -0,0 +1,33 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.captcha.solver;
+
+import com.serphacker.serposcope.scraper.captcha.Captcha;
+import java.util.List;
+
+/**
+ * solver where submitting a captcha and fetching its answer are separate calls,
+ * the answers of many captchas can then be polled together by AsyncCaptchaSolver.
+ */
+public interface PollingCaptchaSolver extends CaptchaSolver {
+    
+    /**
+     * submit the captcha without waiting for the answer
+     * @return false if the captcha was rejected, the error is set on the captcha
+     */
+    public boolean submit(Captcha captcha);
+    
+    /**
+     * fetch the answer of submitted captchas, solved and failed captchas get their
+     * status updated, the others are left SUBMITTED
+     */
+    public void poll(List<Captcha> captchas);
+    
+    public long getTimeoutMS();
+    
+}
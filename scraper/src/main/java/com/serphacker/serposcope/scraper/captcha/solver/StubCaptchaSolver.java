@@ -0,0 +1,148 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.captcha.solver;
+
+import com.serphacker.serposcope.scraper.captcha.Captcha;
+import com.serphacker.serposcope.scraper.captcha.CaptchaImage;
+import com.serphacker.serposcope.scraper.captcha.CaptchaRecaptcha;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * local provider answering every captcha with the same response after a fixed delay,
+ * for offline testing of the solving pipeline.
+ */
+public class StubCaptchaSolver implements PollingCaptchaSolver {
+    
+    final String response;
+    final long solveDelayMS;
+    final long timeoutMS;
+    final Map<String,Long> readyAt = new ConcurrentHashMap<>();
+    final AtomicInteger ids = new AtomicInteger();
+    final AtomicInteger polls = new AtomicInteger();
+    final AtomicInteger captchaCount = new AtomicInteger();
+
+    public StubCaptchaSolver(String response, long solveDelayMS) {
+        this(response, solveDelayMS, TwoCaptchaSolver.DEFAULT_TIMEOUT_MS);
+    }
+    
+    public StubCaptchaSolver(String response, long solveDelayMS, long timeoutMS) {
+        this.response = response;
+        this.solveDelayMS = solveDelayMS;
+        this.timeoutMS = timeoutMS;
+    }
+
+    @Override
+    public boolean submit(Captcha captcha) {
+        if(!(captcha instanceof CaptchaImage || captcha instanceof CaptchaRecaptcha)){
+            captcha.setError(Captcha.Error.UNSUPPORTED_TYPE);
+            return false;
+        }
+        captchaCount.incrementAndGet();
+        captcha.setLastSolver(this);
+        captcha.setId("" + ids.incrementAndGet());
+        captcha.setStatus(Captcha.Status.SUBMITTED);
+        readyAt.put(captcha.getId(), System.currentTimeMillis() + solveDelayMS);
+        return true;
+    }
+
+    @Override
+    public void poll(List<Captcha> captchas) {
+        polls.incrementAndGet();
+        long now = System.currentTimeMillis();
+        for (Captcha captcha : captchas) {
+            Long ready = readyAt.get(captcha.getId());
+            if(ready == null || ready > now){
+                continue;
+            }
+            readyAt.remove(captcha.getId());
+            if(captcha instanceof CaptchaImage){
+                ((CaptchaImage)captcha).setResponse(response);
+            } else {
+                ((CaptchaRecaptcha)captcha).setResponse(response);
+            }
+            captcha.setStatus(Captcha.Status.SOLVED);
+        }
+    }
+
+    @Override
+    public boolean solve(Captcha captcha) {
+        if(!submit(captcha)){
+            return false;
+        }
+        try {
+            Thread.sleep(solveDelayMS);
+        } catch(InterruptedException ex){
+            captcha.setError(Captcha.Error.INTERRUPTED);
+            return false;
+        }
+        poll(Collections.singletonList(captcha));
+        return captcha.getStatus() == Captcha.Status.SOLVED;
+    }
+
+    /**
+     * @return number of poll calls, a single call may check several captchas
+     */
+    public int getPollCount(){
+        return polls.get();
+    }
+
+    @Override
+    public long getTimeoutMS() {
+        return timeoutMS;
+    }
+
+    @Override
+    public boolean reportIncorrect(Captcha captcha) {
+        return true;
+    }
+
+    @Override
+    public String getFriendlyName() {
+        return "stub";
+    }
+
+    @Override
+    public float getCredit() {
+        return 1f;
+    }
+
+    @Override
+    public boolean hasCredit() {
+        return true;
+    }
+
+    @Override
+    public boolean testLogin() {
+        return true;
+    }
+
+    @Override
+    public boolean init() {
+        return true;
+    }
+
+    @Override
+    public int getCaptchaCount() {
+        return captchaCount.get();
+    }
+
+    @Override
+    public void resetCaptchaCount() {
+        captchaCount.set(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+}
@@ -17,7 +17,9 @@ import com.serphacker.serposcope.scraper.http.ScrapClient;
 import com.serphacker.serposcope.scraper.http.proxy.HttpProxy;
 import com.sun.org.apache.xerces.internal.impl.dv.util.Base64;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -27,7 +29,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
-public class TwoCaptchaSolver implements CaptchaSolver {
+public class TwoCaptchaSolver implements PollingCaptchaSolver {
     
     final static int SOFT_ID = 2083;
     
@@ -62,6 +64,7 @@ public class TwoCaptchaSolver implements CaptchaSolver {
         this.maxRetryOnOverload = maxRetryOnOverload;
     }
 
+    @Override
     public long getTimeoutMS() {
         return timeoutMS;
     }
@@ -96,6 +99,37 @@ public class TwoCaptchaSolver implements CaptchaSolver {
 
     @Override
     public boolean solve(Captcha captcha) {
+        long started = System.currentTimeMillis();
+        try {
+            if(!submit(captcha)){
+                return false;
+            }
+            
+            List<Captcha> captchas = Collections.singletonList(captcha);
+            long timeLimit=System.currentTimeMillis() + timeoutMS;
+            while(System.currentTimeMillis() < timeLimit){
+                poll(captchas);
+                if(captcha.getStatus() != Captcha.Status.SUBMITTED){
+                    return captcha.getStatus() == Captcha.Status.SOLVED;
+                }
+                
+                try {
+                    Thread.sleep(POLLING_PAUSE_MS);
+                } catch (InterruptedException ex) {
+                    break;
+                }
+            }
+            
+            captcha.setError(Captcha.Error.TIMEOUT);
+            captcha.setStatus(Captcha.Status.ERROR);
+            return false;
+        } finally {
+            captcha.setSolveDuration(System.currentTimeMillis()-started);
+        }
+    }
+    
+    @Override
+    public boolean submit(Captcha captcha) {
         if(!(captcha instanceof CaptchaImage || captcha instanceof CaptchaRecaptcha)){
             return false;
         }
@@ -120,9 +154,6 @@ public class TwoCaptchaSolver implements CaptchaSolver {
             createTaskMap.put("pageurl", ((CaptchaRecaptcha)captcha).getUrl());
         }
         
-
-        
-        long started = System.currentTimeMillis();
         captcha.setStatus(Captcha.Status.SUBMITTED);
         try(ScrapClient http = new ScrapClient()){
 //            http.setInsecureSSL(true);
@@ -176,59 +207,90 @@ public class TwoCaptchaSolver implements CaptchaSolver {
             }            
             
             captcha.setId(response.substring(3));
+            return true;
             
-            long timeLimit=System.currentTimeMillis() + timeoutMS;
-            while(System.currentTimeMillis() < timeLimit){
-
-                int status = http.get(apiUrl + "res.php?key=" + apiKey + 
+        } catch(IOException ex){
+            LOG.error("io exception", ex);
+            captcha.setError(EXCEPTION);
+        }
+        
+        return false;
+    }
+    
+    /**
+     * several captchas are checked with a single res.php?ids= request,
+     * the answers are returned in the same order separated by pipes
+     */
+    @Override
+    public void poll(List<Captcha> captchas) {
+        if(captchas.isEmpty()){
+            return;
+        }
+        
+        StringBuilder ids = new StringBuilder();
+        for (Captcha captcha : captchas) {
+            if(ids.length() > 0){
+                ids.append(',');
+            }
+            ids.append(captcha.getId());
+        }
+        
+        try(ScrapClient http = new ScrapClient()){
+            String res;
+            if(captchas.size() == 1){
+                http.get(apiUrl + "res.php?key=" + apiKey + 
                     "&action=get" + 
-                    "&id=" + captcha.getId() + 
+                    "&id=" + ids + 
                     "&random=" + random.nextInt(Integer.MAX_VALUE));
-                
-                String res = http.getContentAsString();
-                if(res == null){
-                    captcha.setError(Captcha.Error.NETWORK_ERROR);
-                    return false;
+                res = http.getContentAsString();
+                if(res != null && !"CAPCHA_NOT_READY".equals(res)){
+                    res = res.startsWith("OK|") ? res.substring(3) : "ERROR";
+                }
+            } else {
+                http.get(apiUrl + "res.php?key=" + apiKey + 
+                    "&action=get" + 
+                    "&ids=" + ids + 
+                    "&random=" + random.nextInt(Integer.MAX_VALUE));
+                res = http.getContentAsString();
+            }
+            
+            if(res == null){
+                LOG.debug("network error while polling {} captchas", captchas.size());
+                return;
+            }
+            
+            String[] answers = captchas.size() == 1 ? new String[]{res} : res.split("\\|", -1);
+            if(answers.length != captchas.size()){
+                LOG.debug("unexpected poll response \"{}\" for {} captchas", res, captchas.size());
+                return;
+            }
+            
+            for (int i = 0; i < answers.length; i++) {
+                Captcha captcha = captchas.get(i);
+                String answer = answers[i];
+                if("CAPCHA_NOT_READY".equals(answer)){
+                    continue;
                 }
                 
-                if(!"CAPCHA_NOT_READY".equals(res)){
-                    if(res.startsWith("OK|") && !res.substring(3).isEmpty()){
-                        
-                        if(captcha instanceof CaptchaRecaptcha){
-                            ((CaptchaRecaptcha)captcha).setResponse(res.substring(3));
-                        }
-                        
-                        if(captcha instanceof CaptchaImage){
-                            ((CaptchaImage)captcha).setResponse(res.substring(3));
-                        }
-                        captcha.setStatus(Captcha.Status.SOLVED);
-                        return true;
-                    }
-                    
+                if(answer.isEmpty() || answer.startsWith("ERROR")){
                     captcha.setError(Captcha.Error.NETWORK_ERROR);
                     captcha.setStatus(Captcha.Status.ERROR);
-                    return false;
-                }                
+                    continue;
+                }
                 
-                try {
-                    Thread.sleep(POLLING_PAUSE_MS);
-                } catch (InterruptedException ex) {
-                    break;
+                if(captcha instanceof CaptchaRecaptcha){
+                    ((CaptchaRecaptcha)captcha).setResponse(answer);
+                }
+
+                if(captcha instanceof CaptchaImage){
+                    ((CaptchaImage)captcha).setResponse(answer);
                 }
+                captcha.setStatus(Captcha.Status.SOLVED);
             }
-            
-            captcha.setError(Captcha.Error.TIMEOUT);
-            captcha.setStatus(Captcha.Status.ERROR);
-            
         } catch(IOException ex){
             LOG.error("io exception", ex);
-            captcha.setError(EXCEPTION);
-        } finally {
-            captcha.setSolveDuration(System.currentTimeMillis()-started);
         }
-        
-        return false;
-    }    
+    }
     
     public boolean isRetryable(String response){
         boolean retryable = response == null || response.toUpperCase().contains("ERROR_NO_SLOT_AVAILABLE");
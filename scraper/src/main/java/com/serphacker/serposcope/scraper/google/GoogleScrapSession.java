@@ -0,0 +1,130 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.google;
+
+import com.serphacker.serposcope.scraper.google.GoogleScrapResult.Status;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * state of a search being scraped page by page, see GoogleScraper.step.
+ * a session is either waiting to fetch its next page (after resumeAt), parked
+ * until the answer of a captcha is known, or done.
+ *
+ * not thread safe
+ */
+public class GoogleScrapSession {
+
+    final GoogleScrapSearch search;
+    final List<String> urls = new ArrayList<>();
+
+    int page;
+    int retry;
+    int captchas;
+    long resultsNumber;
+    long resumeAt;
+    PendingCaptcha captcha;
+
+    GoogleScrapResult result;
+
+    public GoogleScrapSession(GoogleScrapSearch search) {
+        this.search = search;
+    }
+
+    public GoogleScrapSearch getSearch() {
+        return search;
+    }
+
+    public List<String> getUrls() {
+        return urls;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getRetry() {
+        return retry;
+    }
+
+    public int getCaptchas() {
+        return captchas;
+    }
+
+    public void addCaptchas(int captchas){
+        this.captchas += captchas;
+    }
+
+    public void setResultsNumber(long resultsNumber) {
+        this.resultsNumber = resultsNumber;
+    }
+
+    /**
+     * page fetched, wait pauseMS before fetching the next one
+     */
+    public void nextPage(long pauseMS){
+        ++page;
+        retry = 0;
+        resumeAt = System.currentTimeMillis() + pauseMS;
+    }
+
+    /**
+     * page failed, wait backoffMS before trying again
+     */
+    public void retry(long backoffMS){
+        ++retry;
+        resumeAt = System.currentTimeMillis() + backoffMS;
+    }
+
+    /**
+     * wait for the captcha answer before resuming, the session is resumed with the
+     * same proxy once the answer is known
+     */
+    public void park(PendingCaptcha captcha){
+        this.captcha = captcha;
+    }
+
+    public PendingCaptcha getPendingCaptcha() {
+        return captcha;
+    }
+
+    public PendingCaptcha takePendingCaptcha(){
+        PendingCaptcha pending = captcha;
+        captcha = null;
+        return pending;
+    }
+
+    public boolean isParked(){
+        return captcha != null && !captcha.isAnswered();
+    }
+
+    public void finish(Status status){
+        result = new GoogleScrapResult(status, urls, captchas, status == Status.OK ? resultsNumber : 0);
+    }
+
+    public void finish(GoogleScrapResult result){
+        this.result = result;
+    }
+
+    public boolean isDone(){
+        return result != null;
+    }
+
+    public GoogleScrapResult getResult() {
+        return result;
+    }
+
+    public long getResumeAt() {
+        return resumeAt;
+    }
+
+    public long getDelayMS(){
+        return Math.max(0, resumeAt - System.currentTimeMillis());
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.google;
+
+import com.serphacker.serposcope.scraper.captcha.Captcha;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * captcha form waiting for its answer, the answer must be sent from the same proxy
+ * with the same cookies.
+ * form is posted with the recaptcha response, or null when the response is sent
+ * as a captcha parameter of formUrl.
+ */
+public class PendingCaptcha {
+
+    final Captcha captcha;
+    final String redirect;
+    final String formUrl;
+    final Map<String,Object> form;
+    CompletableFuture<Captcha> future;
+
+    public PendingCaptcha(Captcha captcha, String redirect, String formUrl, Map<String, Object> form) {
+        this.captcha = captcha;
+        this.redirect = redirect;
+        this.formUrl = formUrl;
+        this.form = form;
+    }
+
+    public Captcha getCaptcha() {
+        return captcha;
+    }
+
+    public String getRedirect() {
+        return redirect;
+    }
+
+    public String getFormUrl() {
+        return formUrl;
+    }
+
+    public Map<String, Object> getForm() {
+        return form;
+    }
+
+    public CompletableFuture<Captcha> getFuture() {
+        return future;
+    }
+
+    public void setFuture(CompletableFuture<Captcha> future) {
+        this.future = future;
+    }
+
+    public boolean isAnswered(){
+        return future == null || future.isDone();
+    }
+
+}
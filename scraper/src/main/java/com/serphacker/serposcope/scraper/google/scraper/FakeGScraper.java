@@ -9,10 +9,9 @@ package com.serphacker.serposcope.scraper.google.scraper;
 
 import com.serphacker.serposcope.scraper.captcha.solver.CaptchaSolver;
 import com.serphacker.serposcope.scraper.google.GoogleScrapSearch;
+import com.serphacker.serposcope.scraper.google.GoogleScrapSession;
 import com.serphacker.serposcope.scraper.google.GoogleScrapResult;
 import com.serphacker.serposcope.scraper.http.ScrapClient;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,28 +27,26 @@ public class FakeGScraper extends GoogleScraper {
     }
     
     @Override
-    public GoogleScrapResult scrap(GoogleScrapSearch options) throws InterruptedException {
-        List<String> urls = new ArrayList<>();
-        for (int page = 0; page < options.getPages(); page++) {
-
-            if (Thread.interrupted()) {
-                throw new InterruptedException();
-            }
-
-            for (int result = 0; result < options.getResultPerPage(); result++) {
-                int position = result + (page * options.getResultPerPage());
-                urls.add("http://www.site" + (position + 1) + ".com/" + options.getKeyword() + ".html");
-            }
-
-            long pauseMS = options.getRandomPagePauseMS();
-            if (pauseMS > 0) {
-                LOG.debug("KW {} page {} sleeping {} ms interrupt={}",
-                    new Object[]{options.getKeyword(), page, pauseMS, Thread.currentThread().isInterrupted()}
-                );
-                Thread.sleep(pauseMS);
-            }
+    public void step(GoogleScrapSession session) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
         }
-        return new GoogleScrapResult(GoogleScrapResult.Status.OK, urls);
+        
+        GoogleScrapSearch options = session.getSearch();
+        int page = session.getPage();
+        for (int result = 0; result < options.getResultPerPage(); result++) {
+            int position = result + (page * options.getResultPerPage());
+            session.getUrls().add("http://www.site" + (position + 1) + ".com/" + options.getKeyword() + ".html");
+        }
+        
+        if(page + 1 >= options.getPages()){
+            session.finish(new GoogleScrapResult(GoogleScrapResult.Status.OK, session.getUrls()));
+            return;
+        }
+
+        long pauseMS = options.getRandomPagePauseMS();
+        LOG.debug("KW {} page {} pausing {} ms", new Object[]{options.getKeyword(), page, pauseMS});
+        session.nextPage(pauseMS);
     }
 
 }
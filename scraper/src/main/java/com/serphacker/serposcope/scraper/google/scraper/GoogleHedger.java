@@ -0,0 +1,281 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.google.scraper;
+
+import com.serphacker.serposcope.scraper.http.ScrapClient;
+import com.serphacker.serposcope.scraper.http.proxy.ProxyRotator;
+import com.serphacker.serposcope.scraper.http.proxy.ScrapProxy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * requests a page a second time through another proxy when its download takes longer than the
+ * p95 of the last successful downloads. the first 200 response wins and the other request is
+ * aborted. hedges are capped to maxHedgePercent of the pages, a hedge only takes a proxy which
+ * is available right away.
+ *
+ * thread safe
+ */
+public class GoogleHedger implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GoogleHedger.class);
+
+    public final static int LATENCY_WINDOW = 200;
+    public final static int MIN_SAMPLES = 20;
+    public final static double PERCENTILE = 0.95d;
+
+    /**
+     * a page downloaded by the scraper client and maybe by a hedge client
+     */
+    static class Hedge {
+        final ScrapClient primary;
+        boolean primaryDone;
+        boolean hedgeStarted;
+        boolean hedgeDone;
+        ScrapClient hedgeClient;
+        ScrapClient winner;
+
+        Hedge(ScrapClient primary) {
+            this.primary = primary;
+        }
+    }
+
+    final ProxyRotator rotator;
+    final Supplier<ScrapClient> clientFactory;
+    final int maxHedgePercent;
+
+    final long[] latencies = new long[LATENCY_WINDOW];
+    int samples;
+    long pages;
+    long hedges;
+    long hedgeWins;
+
+    final ConcurrentLinkedQueue<ScrapClient> clients = new ConcurrentLinkedQueue<>();
+    final ScheduledExecutorService scheduler;
+    final ExecutorService executor;
+
+    /**
+     * @param clientFactory clients the hedges are sent with
+     * @param maxHedgePercent maximum number of hedges, as a percentage of the pages
+     */
+    public GoogleHedger(ProxyRotator rotator, Supplier<ScrapClient> clientFactory, int maxHedgePercent) {
+        this.rotator = rotator;
+        this.clientFactory = clientFactory;
+        this.maxHedgePercent = maxHedgePercent;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread thread = new Thread(r, "hedge-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor = Executors.newCachedThreadPool((r) -> {
+            Thread thread = new Thread(r, "hedge");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * download the url with the client, hedged with another proxy if too slow
+     *
+     * @param prepare applied to the hedge client before its request (user agent, routes)
+     * @return the client holding the response kept, a hedge client must be given back with release
+     */
+    public ScrapClient get(ScrapClient http, String url, String referrer, Consumer<ScrapClient> prepare) {
+        long delayMS = getDelayMS();
+        if (delayMS < 0) {
+            if (http.get(url, referrer) == 200) {
+                record(http.getExecutionTimeMS());
+            }
+            return http;
+        }
+
+        Hedge hedge = new Hedge(http);
+        long start = System.currentTimeMillis();
+        ScheduledFuture<?> timer = scheduler.schedule(
+            () -> executor.execute(() -> hedge(hedge, url, referrer, prepare)),
+            delayMS, TimeUnit.MILLISECONDS
+        );
+        int status = http.get(url, referrer);
+        timer.cancel(false);
+
+        ScrapClient winner;
+        synchronized (hedge) {
+            hedge.primaryDone = true;
+            if (status == 200 && hedge.winner == null) {
+                hedge.winner = http;
+                if (hedge.hedgeClient != null && !hedge.hedgeDone) {
+                    hedge.hedgeClient.abort();
+                }
+            }
+            try {
+                // the primary request failed, the hedge may still succeed
+                while (hedge.winner == null && hedge.hedgeStarted && !hedge.hedgeDone) {
+                    hedge.wait();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                if (hedge.hedgeClient != null) {
+                    hedge.hedgeClient.abort();
+                }
+            }
+            winner = hedge.winner == null ? http : hedge.winner;
+        }
+
+        if (winner.getStatusCode() == 200) {
+            record(System.currentTimeMillis() - start);
+        }
+        return winner;
+    }
+
+    protected void hedge(Hedge hedge, String url, String referrer, Consumer<ScrapClient> prepare) {
+        synchronized (hedge) {
+            if (hedge.primaryDone) {
+                return;
+            }
+            hedge.hedgeStarted = true;
+        }
+
+        ScrapProxy proxy = null;
+        ScrapClient client = null;
+        boolean won = false;
+        try {
+            if (!acquireBudget()) {
+                return;
+            }
+            proxy = rotator.poll();
+            if (proxy == null) {
+                releaseBudget();
+                return;
+            }
+
+            client = clients.poll();
+            if (client == null) {
+                client = clientFactory.get();
+            }
+            prepare.accept(client);
+            client.clearCookies();
+            client.setProxy(proxy);
+
+            synchronized (hedge) {
+                if (hedge.primaryDone) {
+                    return;
+                }
+                hedge.hedgeClient = client;
+            }
+
+            LOG.debug("hedging {} via {}", url, proxy);
+            long start = System.currentTimeMillis();
+            int status = client.get(url, referrer);
+            if (status == 200) {
+                rotator.success(proxy, System.currentTimeMillis() - start, 0);
+            } else if (status != -1 || !hedge.primaryDone) {
+                rotator.failure(proxy, status == 302 ? 1 : 0);
+            }
+
+            synchronized (hedge) {
+                if (status == 200 && hedge.winner == null) {
+                    hedge.winner = client;
+                    won = true;
+                    if (!hedge.primaryDone) {
+                        hedge.primary.abort();
+                    }
+                    synchronized (this) {
+                        ++hedgeWins;
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            LOG.error("hedge exception", ex);
+        } finally {
+            if (proxy != null) {
+                rotator.add(proxy);
+            }
+            if (client != null && !won) {
+                release(client);
+            }
+            synchronized (hedge) {
+                hedge.hedgeDone = true;
+                hedge.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * give back a hedge client returned by get
+     */
+    public void release(ScrapClient client) {
+        client.releaseContent();
+        clients.add(client);
+    }
+
+    /**
+     * @return p95 of the last successful downloads, -1 if not enough downloads are known
+     */
+    public synchronized long getDelayMS() {
+        int count = Math.min(samples, LATENCY_WINDOW);
+        if (count < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return sorted[Math.min(count - 1, (int) Math.ceil(count * PERCENTILE) - 1)];
+    }
+
+    protected synchronized void record(long latencyMS) {
+        latencies[samples % LATENCY_WINDOW] = latencyMS;
+        ++samples;
+        ++pages;
+    }
+
+    protected synchronized boolean acquireBudget() {
+        if ((hedges + 1) * 100 > pages * maxHedgePercent) {
+            return false;
+        }
+        ++hedges;
+        return true;
+    }
+
+    protected synchronized void releaseBudget() {
+        --hedges;
+    }
+
+    public synchronized long getHedges() {
+        return hedges;
+    }
+
+    public synchronized long getHedgeWins() {
+        return hedgeWins;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return hedges + " hedges for " + pages + " pages, " + hedgeWins + " won";
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+        ScrapClient client;
+        while ((client = clients.poll()) != null) {
+            client.close();
+        }
+    }
+
+}
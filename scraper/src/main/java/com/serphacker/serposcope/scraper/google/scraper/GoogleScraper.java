@@ -10,16 +10,21 @@ package com.serphacker.serposcope.scraper.google.scraper;
 import com.serphacker.serposcope.scraper.captcha.Captcha;
 import com.serphacker.serposcope.scraper.captcha.CaptchaImage;
 import com.serphacker.serposcope.scraper.captcha.CaptchaRecaptcha;
+import com.serphacker.serposcope.scraper.captcha.solver.AsyncCaptchaSolver;
 import com.serphacker.serposcope.scraper.captcha.solver.CaptchaSolver;
 import com.serphacker.serposcope.scraper.google.GoogleCountryCode;
 import com.serphacker.serposcope.scraper.google.GoogleScrapResult;
 import com.serphacker.serposcope.scraper.google.GoogleScrapResult.Status;
 import com.serphacker.serposcope.scraper.google.GoogleScrapSearch;
+import com.serphacker.serposcope.scraper.google.GoogleScrapSession;
+import com.serphacker.serposcope.scraper.google.PendingCaptcha;
 import com.serphacker.serposcope.scraper.http.ScrapClient;
 import com.serphacker.serposcope.scraper.http.proxy.DirectNoProxy;
+import com.serphacker.serposcope.scraper.http.proxy.ScrapProxy;
 import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.util.ArrayList;
@@ -28,6 +33,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -67,10 +73,20 @@ public class GoogleScraper {
     int maxRetry = DEFAULT_MAX_RETRY;
     protected ScrapClient http;
     protected CaptchaSolver solver;
+    protected AsyncCaptchaSolver asyncSolver;
+    protected GoogleHedger hedger;
+    protected ScrapClient serpHttp;
+    // a hedge is sent from another ip without the cookies of the session, only the last page
+    // of a search is hedged so the next page isn't requested with the referrer of another ip
+    boolean lastPage;
+    ScrapProxy hedgeProxy;
     Random random = new Random();
     
     Document lastSerpHtml = null;
+    SerpLinkExtractor lastSerpLinks = null;
     int captchas=0;
+    long backoffMS=0;
+    PendingCaptcha parkedCaptcha;
 
     public GoogleScraper(ScrapClient client, CaptchaSolver solver) {
 //        this.search = search;
@@ -79,79 +95,119 @@ public class GoogleScraper {
     }
     
     public GoogleScrapResult scrap(GoogleScrapSearch search) throws InterruptedException {
-        lastSerpHtml = null;
-        captchas = 0;
-        List<String> urls = new ArrayList<>();
-        prepareHttpClient(search);
-        long resultsNumber = 0;
-        
-        String referrer = "https://" + buildHost(search) + "/";
-        for (int page = 0; page < search.getPages(); page++) {
-            
-            if(Thread.interrupted()){
-                throw new InterruptedException();
-            }
-            
-            String url = buildRequestUrl(search, page);
-            
-            Status status = null;
-            for (int retry = 0; retry < maxRetry; retry++) {
-                
-                LOG.debug("GET {} via {} try {}", url, http.getProxy() == null ? new DirectNoProxy() : http.getProxy(), retry+1);
-                
-                status = downloadSerp(url, referrer, search, retry);
-                if(status == Status.OK){
-                    status = parseSerp(urls);
-                    if(status == Status.OK){
-                        break;
-                    }
-                }
-                
-                if(!isRetryableStatus(status)){
-                    break;
+        GoogleScrapSession session = new GoogleScrapSession(search);
+        while(!session.isDone()){
+            if(session.isParked()){
+                try {
+                    session.getPendingCaptcha().getFuture().get();
+                } catch(ExecutionException ex){
                 }
             }
-            
-            if(status != Status.OK){
-                return new GoogleScrapResult(status, urls, captchas);
+            long pause = session.getDelayMS();
+            if(pause > 0){
+                LOG.trace("sleeping {} milliseconds", pause);
+                Thread.sleep(pause);
             }
-            
-            if(page  == 0){
-                resultsNumber = parseResultsNumberOnFirstPage();
+            step(session);
+        }
+        return session.getResult();
+    }
+    
+    /**
+     * fetch the next page of the session without waiting, the session is then either done,
+     * waiting for its resume time (pause between pages or backoff before a retry) or
+     * parked until the answer of a captcha is known (only with an async solver).
+     */
+    public void step(GoogleScrapSession session) throws InterruptedException {
+        if(Thread.interrupted()){
+            throw new InterruptedException();
+        }
+        
+        try {
+            doStep(session);
+        } finally {
+            if(serpHttp != null && serpHttp != http){
+                hedger.release(serpHttp);
             }
-            
-            if(!hasNextPage()){
-                break;
+            serpHttp = null;
+        }
+    }
+    
+    protected void doStep(GoogleScrapSession session) throws InterruptedException {
+        GoogleScrapSearch search = session.getSearch();
+        lastSerpHtml = null;
+        lastSerpLinks = null;
+        captchas = 0;
+        backoffMS = 0;
+        parkedCaptcha = null;
+        hedgeProxy = null;
+        lastPage = session.getPage() + 1 >= search.getPages();
+        prepareHttpClient(search);
+        
+        Status status;
+        PendingCaptcha pending = session.takePendingCaptcha();
+        if(pending != null){
+            LOG.debug("answering captcha via {}", http.getProxy() == null ? new DirectNoProxy() : http.getProxy());
+            status = answerCaptcha(pending);
+        } else {
+            String referrer = "https://" + buildHost(search) + "/";
+            String url = buildRequestUrl(search, session.getPage());
+
+            LOG.debug("GET {} via {} try {}", url, http.getProxy() == null ? new DirectNoProxy() : http.getProxy(), session.getRetry()+1);
+            status = downloadSerp(url, referrer, search, session.getRetry());
+            if(parkedCaptcha != null){
+                session.addCaptchas(captchas);
+                session.park(parkedCaptcha);
+                parkedCaptcha = null;
+                return;
             }
-            
-            long pause = search.getRandomPagePauseMS();
-            if(pause > 0){
-                try {
-                    LOG.trace("sleeping {} milliseconds", pause);
-                    Thread.sleep(pause);
-                } catch(InterruptedException ex){
-                    throw ex;
-                }                
+        }
+        
+        if(status == Status.OK){
+            status = parseSerp(session.getUrls());
+        }
+        session.addCaptchas(captchas);
+        
+        if(status != Status.OK){
+            if(isRetryableStatus(status) && session.getRetry() + 1 < maxRetry){
+                session.retry(backoffMS);
+            } else {
+                session.finish(status);
             }
+            return;
         }
-        return new GoogleScrapResult(Status.OK, urls, captchas, resultsNumber);
+        
+        if(session.getPage() == 0){
+            session.setResultsNumber(parseResultsNumberOnFirstPage());
+        }
+        
+        if(!hasNextPage() || session.getPage() + 1 >= search.getPages()){
+            session.finish(Status.OK);
+            return;
+        }
+        
+        session.nextPage(search.getRandomPagePauseMS());
     }
     
     protected void prepareHttpClient(GoogleScrapSearch search){
+        prepareHttpClient(http, search);
+    }
+    
+    protected void prepareHttpClient(ScrapClient client, GoogleScrapSearch search){
         
         switch(search.getDevice()){
             case DESKTOP:
-                http.setUseragent(DEFAULT_DESKTOP_UA);
+                client.setUseragent(DEFAULT_DESKTOP_UA);
                 break;
             case SMARTPHONE:
-                http.setUseragent(DEFAULT_SMARTPHONE_UA);
+                client.setUseragent(DEFAULT_SMARTPHONE_UA);
                 break;
         }
         
         String hostname = "www.google.com";
-        http.removeRoutes();
+        client.removeRoutes();
         if(search.getDatacenter() != null && !search.getDatacenter().isEmpty()){
-            http.setRoute(new HttpHost(hostname, -1, "https"), new HttpHost(search.getDatacenter(), -1, "https"));
+            client.setRoute(new HttpHost(hostname, -1, "https"), new HttpHost(search.getDatacenter(), -1, "https"));
         }
     }
     
@@ -165,20 +221,35 @@ public class GoogleScraper {
         }
     }
     
+    /**
+     * @return null if the page is behind a captcha being solved asynchronously, see parkedCaptcha
+     */
     protected Status downloadSerp(String url, String referrer, GoogleScrapSearch search, int retry){
         if(referrer == null){
             referrer = "https://www.google.com";
         }
         
-        int status = http.get(url, referrer);
-        LOG.info("GOT status=[{}] exception=[{}]", status, http.getException() == null ? "none" : 
-            (http.getException().getClass().getSimpleName() + " : " + http.getException().getMessage()));
+        int status;
+        ScrapClient served = http;
+        if(hedger != null && lastPage){
+            serpHttp = hedger.get(http, url, referrer, (client) -> prepareHttpClient(client, search));
+            served = serpHttp;
+            status = serpHttp.getStatusCode();
+        } else {
+            status = http.get(url, referrer);
+        }
+        LOG.info("GOT status=[{}] exception=[{}]", status, served.getException() == null ? "none" : 
+            (served.getException().getClass().getSimpleName() + " : " + served.getException().getMessage()));
         switch(status){
             case 200:
+                if(served != http){
+                    hedgeProxy = served.getProxy();
+                    LOG.debug("hedge won via {}", hedgeProxy);
+                }
                 return Status.OK;
                 
             case 403:
-                try{Thread.sleep((retry+1)*1000);}catch(Exception ex){}
+                backoffMS = (retry+1)*1000l;
                 break;
 
             case 302:
@@ -190,7 +261,24 @@ public class GoogleScraper {
     }
     
     protected Status parseSerp(List<String> urls){
-        String html = http.getContentAsString();
+        ScrapClient serp = serpHttp != null ? serpHttp : http;
+        ByteBuffer content = serp.getContentView();
+        if(content != null && content.hasRemaining()){
+            SerpLinkExtractor extractor = new SerpLinkExtractor(content, serp.getDetectedCharset());
+            if(extractor.extract()){
+                lastSerpLinks = extractor;
+                for (String href : extractor.getLinks()) {
+                    String link = extractLink(href);
+                    if(link != null){
+                        urls.add(link);
+                    }
+                }
+                return Status.OK;
+            }
+            LOG.debug("unhandled serp layout, falling back to jsoup");
+        }
+        
+        String html = serp.getContentAsString();
         if(html == null || html.isEmpty()){
             return Status.ERROR_NETWORK;
         }
@@ -279,6 +367,10 @@ public class GoogleScraper {
     }
     
     protected long parseResultsNumberOnFirstPage(){
+        if(lastSerpLinks != null){
+            return extractResultsNumber(lastSerpLinks.getResultStats());
+        }
+        
         if(lastSerpHtml == null){
             return 0;
         }
@@ -328,7 +420,10 @@ public class GoogleScraper {
             return null;
         }
         
-        String attr = element.attr("href");
+        return extractLink(element.attr("href"));
+    }
+    
+    protected String extractLink(String attr){
         if(attr == null){
             return null;
         }
@@ -357,6 +452,10 @@ public class GoogleScraper {
     }
     
     protected boolean hasNextPage(){
+        if(lastSerpLinks != null){
+            return lastSerpLinks.hasNextPage();
+        }
+        
         if(lastSerpHtml == null){
             return false;
         }
@@ -463,7 +562,7 @@ public class GoogleScraper {
             return Status.ERROR_IP_BANNED;
         }
         
-        if(solver == null){
+        if(solver == null && asyncSolver == null){
             return Status.ERROR_CAPTCHA_NO_SOLVER;
         }
         
@@ -539,44 +638,7 @@ public class GoogleScraper {
         }
         
         CaptchaRecaptcha captcha = new CaptchaRecaptcha(siteKey, captchaRedirect);
-        boolean solved = solver.solve(captcha);
-        if(!solved || !Captcha.Status.SOLVED.equals(captcha.getStatus())){
-            LOG.error("solver can't resolve captcha error = {}", captcha.getError());
-            if(Captcha.Error.SERVICE_OVERLOADED.equals(captcha.getError())){
-                LOG.warn("server is overloaded, increase maximum BID on {}", captcha.getLastSolver().getFriendlyName());
-            }
-            return Status.ERROR_CAPTCHA_INCORRECT;
-        }
-        LOG.debug("got captcha response {} in {} seconds from {}", captcha.getResponse(), captcha.getSolveDuration()/1000l, 
-            (captcha.getLastSolver() == null ? "?" : captcha.getLastSolver().getFriendlyName())
-        );
-        map.put("g-recaptcha-response", captcha.getResponse());
-        
-        int postCaptchaStatus = http.post(formAction, map, ScrapClient.PostType.URL_ENCODED, "utf-8", captchaRedirect);
-        if(postCaptchaStatus == 302){
-            String redirectOnSuccess = http.getResponseHeader("location");
-            if(redirectOnSuccess.startsWith("http://")){
-                redirectOnSuccess = "https://" + redirectOnSuccess.substring(7);
-            }
-            
-            int redirect1status = http.get(redirectOnSuccess, captchaRedirect);
-            if(redirect1status == 200){
-                return Status.OK;
-            }
-            
-            if(redirect1status == 302){
-                if(http.get(http.getResponseHeader("location"), captchaRedirect) == 200){
-                    return Status.OK;
-                }
-            }
-        }
-        
-        if(postCaptchaStatus == 503){
-            LOG.debug("Failed to resolve captcha (incorrect response = {}) (recaptcha)", captcha.getResponse());
-//            solver.reportIncorrect(captcha);
-        }
-        
-        return Status.ERROR_CAPTCHA_INCORRECT;
+        return solveCaptcha(new PendingCaptcha(captcha, captchaRedirect, formAction, map));
     }
     
     protected void debugDump(String name, String data){
@@ -644,19 +706,10 @@ public class GoogleScraper {
         }
         
         CaptchaImage captcha = new CaptchaImage(new byte[][]{http.getContent()});
-        boolean solved = solver.solve(captcha);
-        if(!solved || !Captcha.Status.SOLVED.equals(captcha.getStatus())){
-            LOG.error("solver can't resolve captcha (overload ?) error = {}", captcha.getError());
-            return Status.ERROR_CAPTCHA_INCORRECT;
-        }
-        LOG.debug("got captcha response {} in {} seconds from {}", captcha.getResponse(), captcha.getSolveDuration()/1000l, 
-            (captcha.getLastSolver() == null ? "?" : captcha.getLastSolver().getFriendlyName())
-        );
         
         try {
             formUrl += "?continue=" + URLEncoder.encode(continueValue, "utf-8");
         }catch(Exception ex){}
-        formUrl += "&captcha=" + captcha.getResponse();
         
         if(formIdValue != null){
             formUrl += "&id=" + formIdValue;
@@ -665,7 +718,48 @@ public class GoogleScraper {
             formUrl += "&q=" + formQValue;
         }
         
-        int postCaptchaStatus = http.get(formUrl, captchaRedirect);
+        return solveCaptcha(new PendingCaptcha(captcha, captchaRedirect, formUrl, null));
+    }
+    
+    /**
+     * solve the captcha right away, or park it on the async solver when there is one
+     * @return null if the captcha was parked
+     */
+    protected Status solveCaptcha(PendingCaptcha pending){
+        if(asyncSolver != null){
+            pending.setFuture(asyncSolver.solve(pending.getCaptcha()));
+            parkedCaptcha = pending;
+            return null;
+        }
+        solver.solve(pending.getCaptcha());
+        return answerCaptcha(pending);
+    }
+    
+    protected Status answerCaptcha(PendingCaptcha pending){
+        Captcha captcha = pending.getCaptcha();
+        if(!Captcha.Status.SOLVED.equals(captcha.getStatus())){
+            LOG.error("solver can't resolve captcha error = {}", captcha.getError());
+            if(Captcha.Error.SERVICE_OVERLOADED.equals(captcha.getError()) && captcha.getLastSolver() != null){
+                LOG.warn("server is overloaded, increase maximum BID on {}", captcha.getLastSolver().getFriendlyName());
+            }
+            return Status.ERROR_CAPTCHA_INCORRECT;
+        }
+        
+        String response = captcha instanceof CaptchaImage ? 
+            ((CaptchaImage)captcha).getResponse() : ((CaptchaRecaptcha)captcha).getResponse();
+        LOG.debug("got captcha response {} in {} seconds from {}", response, captcha.getSolveDuration()/1000l, 
+            (captcha.getLastSolver() == null ? "?" : captcha.getLastSolver().getFriendlyName())
+        );
+        
+        String captchaRedirect = pending.getRedirect();
+        int postCaptchaStatus;
+        if(pending.getForm() != null){
+            Map<String,Object> map = new HashMap<>(pending.getForm());
+            map.put("g-recaptcha-response", response);
+            postCaptchaStatus = http.post(pending.getFormUrl(), map, ScrapClient.PostType.URL_ENCODED, "utf-8", captchaRedirect);
+        } else {
+            postCaptchaStatus = http.get(pending.getFormUrl() + "&captcha=" + response, captchaRedirect);
+        }
         
         if(postCaptchaStatus == 302){
             String redirectOnSuccess = http.getResponseHeader("location");
@@ -686,13 +780,46 @@ public class GoogleScraper {
         }
         
         if(postCaptchaStatus == 503){
-            LOG.debug("reporting incorrect captcha (incorrect response = {})", captcha.getResponse());
-            solver.reportIncorrect(captcha);
+            LOG.debug("incorrect captcha response = {}", response);
+            // recaptcha responses are not reported
+            if(pending.getForm() == null && captcha.getLastSolver() != null){
+                captcha.getLastSolver().reportIncorrect(captcha);
+            }
         }
         
         return Status.ERROR_CAPTCHA_INCORRECT;
     }
     
+    public AsyncCaptchaSolver getAsyncSolver() {
+        return asyncSolver;
+    }
+
+    /**
+     * park sessions on captchas instead of waiting for the answer in step
+     */
+    public void setAsyncSolver(AsyncCaptchaSolver asyncSolver) {
+        this.asyncSolver = asyncSolver;
+    }
+    
+    public GoogleHedger getHedger() {
+        return hedger;
+    }
+    
+    /**
+     * @return proxy of the hedge which served the page of the last step, its health is recorded by
+     * the hedger, null if the page was served by the scraper client
+     */
+    public ScrapProxy getHedgeProxy() {
+        return hedgeProxy;
+    }
+
+    /**
+     * send a second request through another proxy when a serp download is too slow
+     */
+    public void setHedger(GoogleHedger hedger) {
+        this.hedger = hedger;
+    }
+    
     public ScrapClient getHttp() {
         return http;
     }
@@ -9,11 +9,10 @@ package com.serphacker.serposcope.scraper.google.scraper;
 
 import com.serphacker.serposcope.scraper.captcha.solver.CaptchaSolver;
 import com.serphacker.serposcope.scraper.google.GoogleScrapSearch;
+import com.serphacker.serposcope.scraper.google.GoogleScrapSession;
 import com.serphacker.serposcope.scraper.google.GoogleScrapResult;
 import com.serphacker.serposcope.scraper.http.ScrapClient;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 import org.slf4j.Logger;
@@ -35,36 +34,30 @@ public class RandomGScraper extends GoogleScraper {
     }    
     
     @Override
-    public GoogleScrapResult scrap(GoogleScrapSearch options) throws InterruptedException {
+    public void step(GoogleScrapSession session) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
         
-        List<String> urls = new ArrayList<>();
-        for (int page = 0; page < options.getPages(); page++) {
-
-            if (Thread.interrupted()) {
-                throw new InterruptedException();
-            }
-
-            for (int result = 0; result < options.getResultPerPage(); result++) {
-                int position = result + (page * options.getResultPerPage());
-                String url = "http://www.site" + (position + 1) + ".com/" + options.getKeyword() + ".html";
-                if(random.nextInt(options.getResultPerPage()*2) == 0){
-//                    LOG.trace("skip ranking for {}", url);
-                    continue;
-                }                
-                urls.add(url);
-            }
-            
-//            long pauseMS = options.getRandomPagePauseMS();
-//            if (pauseMS > 0) {
-//                LOG.debug("KW {} page {} sleeping {} ms interrupt={}",
-//                    new Object[]{options.getKeyword(), page, pauseMS, Thread.currentThread().isInterrupted()}
-//                );
-//                Thread.sleep(pauseMS);
-//            }
+        GoogleScrapSearch options = session.getSearch();
+        int page = session.getPage();
+        for (int result = 0; result < options.getResultPerPage(); result++) {
+            int position = result + (page * options.getResultPerPage());
+            String url = "http://www.site" + (position + 1) + ".com/" + options.getKeyword() + ".html";
+            if(random.nextInt(options.getResultPerPage()*2) == 0){
+//                LOG.trace("skip ranking for {}", url);
+                continue;
+            }                
+            session.getUrls().add(url);
+        }
+        
+        if(page + 1 < options.getPages()){
+            session.nextPage(0);
+            return;
         }
         
-        Collections.shuffle(urls, random);
-        return new GoogleScrapResult(GoogleScrapResult.Status.OK, urls, random.nextInt(5) + 5);
+        Collections.shuffle(session.getUrls(), random);
+        session.finish(new GoogleScrapResult(GoogleScrapResult.Status.OK, session.getUrls(), random.nextInt(5) + 5));
     }
 
 }
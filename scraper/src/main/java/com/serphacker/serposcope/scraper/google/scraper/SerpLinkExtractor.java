@@ -0,0 +1,1023 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.google.scraper;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.jsoup.parser.Parser;
+
+/**
+ * extracts the result links of a serp with the #res layout by scanning the response bytes,
+ * without building a DOM. only the stack of open tags is kept, elements are matched the way
+ * GoogleScraper matches them with jsoup (a &gt; h3:first-child in #res, or the first link of
+ * each h3 outside of sitelinks), the next page marker and #resultStats are extracted on the way.
+ *
+ * extract() returns false when the layout isn't handled or when the markup would need html5
+ * error recovery (misnested formatting tags, foster parenting...), the serp must then be parsed
+ * with jsoup.
+ *
+ * not thread safe
+ */
+public class SerpLinkExtractor {
+
+    final static int VOID = 1;
+    final static int FORMATTING = 1 << 1;
+    final static int RAWTEXT = 1 << 2;
+    final static int CLOSES_P = 1 << 3;
+    final static int SPECIAL = 1 << 4;
+    final static int HEADING = 1 << 5;
+    final static int SCOPE = 1 << 6;
+    final static int MARKER = 1 << 7;
+    final static int TABLE_CONTEXT = 1 << 8;
+    final static int TABLE_PART = 1 << 9;
+    final static int IGNORED = 1 << 10;
+    final static int UNSUPPORTED = 1 << 11;
+
+    final static String[] TAGS = new String[]{
+        "a", "address", "applet", "area", "article", "aside", "b", "base", "basefont", "bgsound",
+        "big", "blockquote", "body", "br", "button", "caption", "center", "code", "col", "colgroup",
+        "dd", "details", "dialog", "dir", "div", "dl", "dt", "em", "embed", "fieldset",
+        "figcaption", "figure", "font", "footer", "form", "frame", "frameset", "h1", "h2", "h3",
+        "h4", "h5", "h6", "head", "header", "hgroup", "hr", "html", "i", "iframe",
+        "image", "img", "input", "keygen", "li", "link", "listing", "main", "marquee", "menu",
+        "meta", "nav", "nobr", "noembed", "noframes", "object", "ol", "optgroup", "option", "p",
+        "param", "plaintext", "pre", "s", "script", "section", "select", "small", "source", "strike",
+        "strong", "style", "summary", "table", "tbody", "td", "template", "textarea", "tfoot", "th",
+        "thead", "title", "tr", "track", "tt", "u", "ul", "wbr", "xmp", "math",
+        "svg", "isindex", "ruby", "rp", "rt", "menuitem"
+    };
+
+    final static int[] FLAGS = new int[TAGS.length];
+
+    final static int T_A = tag("a");
+    final static int T_BR = tag("br");
+    final static int T_P = tag("p");
+    final static int T_LI = tag("li");
+    final static int T_DD = tag("dd");
+    final static int T_DT = tag("dt");
+    final static int T_H3 = tag("h3");
+    final static int T_FOOTER = tag("footer");
+    final static int T_FORM = tag("form");
+    final static int T_BUTTON = tag("button");
+    final static int T_NOBR = tag("nobr");
+    final static int T_OPTION = tag("option");
+    final static int T_OPTGROUP = tag("optgroup");
+    final static int T_SELECT = tag("select");
+    final static int T_TD = tag("td");
+    final static int T_TH = tag("th");
+    final static int T_TR = tag("tr");
+    final static int T_TABLE = tag("table");
+    final static int T_SCRIPT = tag("script");
+    final static int T_STYLE = tag("style");
+    final static int T_IMAGE = tag("image");
+    final static int T_IMG = tag("img");
+    final static int T_OL = tag("ol");
+    final static int T_UL = tag("ul");
+    final static int T_ADDRESS = tag("address");
+    final static int T_DIV = tag("div");
+
+    static {
+        flag(VOID, "area", "base", "basefont", "bgsound", "br", "col", "embed", "frame", "hr", "image",
+            "img", "input", "keygen", "link", "meta", "param", "source", "track", "wbr", "menuitem");
+        flag(FORMATTING, "a", "b", "big", "code", "em", "font", "i", "nobr", "s", "small", "strike",
+            "strong", "tt", "u");
+        flag(RAWTEXT, "iframe", "noembed", "noframes", "script", "style", "textarea", "title", "xmp");
+        flag(CLOSES_P, "address", "article", "aside", "blockquote", "center", "details", "dialog",
+            "dir", "div", "dl", "fieldset", "figcaption", "figure", "footer", "header", "hgroup",
+            "main", "menu", "nav", "ol", "p", "section", "summary", "ul", "h1", "h2", "h3", "h4", "h5",
+            "h6", "pre", "listing", "form", "li", "dd", "dt", "hr", "xmp", "table");
+        flag(SPECIAL, "address", "applet", "area", "article", "aside", "base", "basefont", "bgsound",
+            "blockquote", "body", "br", "button", "caption", "center", "col", "colgroup", "dd",
+            "details", "dir", "div", "dl", "dt", "embed", "fieldset", "figcaption", "figure", "footer",
+            "form", "frame", "frameset", "h1", "h2", "h3", "h4", "h5", "h6", "head", "header", "hgroup",
+            "hr", "html", "iframe", "img", "input", "isindex", "li", "link", "listing", "main",
+            "marquee", "menu", "meta", "nav", "noembed", "noframes", "object", "ol", "p",
+            "param", "plaintext", "pre", "script", "section", "select", "style", "summary", "table",
+            "tbody", "td", "template", "textarea", "tfoot", "th", "thead", "title", "tr", "ul", "wbr",
+            "xmp");
+        flag(HEADING, "h1", "h2", "h3", "h4", "h5", "h6");
+        flag(SCOPE, "applet", "caption", "html", "table", "td", "th", "marquee", "object", "template");
+        flag(MARKER, "applet", "caption", "marquee", "object", "td", "th", "template");
+        flag(TABLE_CONTEXT, "table", "tbody", "thead", "tfoot", "tr");
+        flag(TABLE_PART, "caption", "colgroup", "col", "tbody", "thead", "tfoot", "tr", "td", "th");
+        flag(IGNORED, "html", "head", "body");
+        flag(UNSUPPORTED, "plaintext", "frameset", "isindex", "math", "ruby", "rp", "rt", "template");
+    }
+
+    static int tag(String name){
+        for (int i = 0; i < TAGS.length; i++) {
+            if(TAGS[i].equals(name)){
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    static void flag(int flag, String... names){
+        for (String name : names) {
+            FLAGS[tag(name)] |= flag;
+        }
+    }
+
+    final static int RES = 1;
+    final static int SITELINK = 1 << 1;
+    final static int FOOTER = 1 << 2;
+    final static int RESULT_STATS = 1 << 3;
+    final static int H3 = 1 << 4;
+    final static int FOOTER_LINK = 1 << 5;
+
+    static class Node {
+        int tag;
+        int nameStart;
+        int nameEnd;
+        int flags;
+        int marks;
+        int children;
+        int hrefStart;
+        int hrefEnd;
+        int legacyLink;
+        long serial;
+    }
+
+    final ByteBuffer content;
+    final int length;
+    final Charset charset;
+    int pos;
+
+    Node[] stack = new Node[64];
+    int depth;
+    long serial;
+
+    // marks of the open elements
+    int inRes;
+    int inSiteLink;
+    int inFooter;
+    int inFooterLink;
+    int inH3;
+    int inSelect;
+    int inForm;
+    boolean resFound;
+    boolean resultStatsFound;
+
+    int nameStart;
+    int nameEnd;
+    int tagId;
+    boolean selfClosing;
+    int idStart;
+    int idEnd;
+    int classStart;
+    int classEnd;
+    int hrefStart;
+    int hrefEnd;
+
+    boolean nextPage;
+    int navends;
+    long lastNavend = -1;
+    boolean lastNavendStartsWithLink;
+    boolean footerLinkText;
+    boolean footerLinkEndsWithGt;
+
+    int resultStatsStart = -1;
+    int resultStatsEnd = -1;
+    String resultStats;
+
+    final List<String> links = new ArrayList<>();
+    final List<String> legacyLinks = new ArrayList<>();
+    boolean linkedH3;
+
+    /**
+     * @param charset charset of the content, null for utf-8
+     */
+    public SerpLinkExtractor(byte[] content, Charset charset) {
+        this(content, content.length, charset);
+    }
+
+    public SerpLinkExtractor(byte[] content, int length, Charset charset) {
+        this(ByteBuffer.wrap(content, 0, length), charset);
+    }
+
+    /**
+     * @param content bytes from its position to its limit, read without copy
+     */
+    public SerpLinkExtractor(ByteBuffer content, Charset charset) {
+        this.content = content.slice();
+        this.length = this.content.limit();
+        this.charset = charset == null ? StandardCharsets.UTF_8 : charset;
+    }
+
+    /**
+     * @return false if the serp must be parsed with jsoup
+     */
+    public boolean extract(){
+        if(!StandardCharsets.UTF_8.equals(charset) && charset.newEncoder().maxBytesPerChar() != 1f){
+            return false;
+        }
+
+        pos = 0;
+        while(pos < length){
+            int lt = indexOf((byte)'<', pos);
+            if(lt == -1){
+                text(pos, length);
+                break;
+            }
+            if(lt > pos){
+                text(pos, lt);
+            }
+            if(!markup(lt)){
+                return false;
+            }
+        }
+
+        if(!resFound){
+            return false;
+        }
+
+        if(resultStatsStart != -1){
+            resultStats = decode(resultStatsStart, resultStatsEnd == -1 ? length : resultStatsEnd);
+        }
+        return true;
+    }
+
+    /**
+     * @return the unescaped href of the result links in order, not filtered, null for a missing href
+     */
+    public List<String> getLinks(){
+        return linkedH3 ? links : legacyLinks;
+    }
+
+    public boolean hasNextPage(){
+        if(nextPage){
+            return true;
+        }
+        if(navends > 1 && lastNavendStartsWithLink){
+            return true;
+        }
+        return footerLinkText;
+    }
+
+    /**
+     * @return inner html of #resultStats or null
+     */
+    public String getResultStats(){
+        return resultStats;
+    }
+
+    protected boolean markup(int lt){
+        pos = lt + 1;
+        if(pos >= length){
+            text(lt, length);
+            return true;
+        }
+
+        byte c = content.get(pos);
+        if(isLetter(c)){
+            return startTag(lt);
+        }
+
+        if(c == '/'){
+            ++pos;
+            if(pos < length && isLetter(content.get(pos))){
+                return endTag(lt);
+            }
+            if(pos < length && content.get(pos) == '>'){
+                ++pos;
+                return true;
+            }
+            skipTo((byte)'>');
+            return true;
+        }
+
+        if(c == '!'){
+            if(startsWith("!--", pos)){
+                pos += 3;
+                if(startsWith(">", pos)){
+                    ++pos;
+                    return true;
+                }
+                if(startsWith("->", pos)){
+                    pos += 2;
+                    return true;
+                }
+                int end = indexOf("--", pos);
+                while(end != -1){
+                    if(startsWith("-->", end)){
+                        pos = end + 3;
+                        return true;
+                    }
+                    if(startsWith("--!>", end)){
+                        pos = end + 4;
+                        return true;
+                    }
+                    end = indexOf("--", end + 1);
+                }
+                pos = length;
+                return true;
+            }
+            if(startsWith("![CDATA[", pos)){
+                return false;
+            }
+            skipTo((byte)'>');
+            return true;
+        }
+
+        if(c == '?'){
+            skipTo((byte)'>');
+            return true;
+        }
+
+        text(lt, pos);
+        return true;
+    }
+
+    protected boolean startTag(int lt){
+        tagName();
+        if(!attributes()){
+            return false;
+        }
+
+        if(tagId == T_IMAGE){
+            tagId = T_IMG;
+        }
+        int flags = tagId == -1 ? 0 : FLAGS[tagId];
+
+        if((flags & IGNORED) != 0){
+            return true;
+        }
+
+        if((flags & UNSUPPORTED) != 0){
+            return false;
+        }
+
+        if(inSelect > 0 && tagId != T_OPTION && tagId != T_OPTGROUP && tagId != T_SCRIPT && tagId != T_STYLE){
+            return false;
+        }
+
+        if((flags & TABLE_PART) != 0){
+            if(find(T_TABLE, 0) == -1){
+                return true;
+            }
+            if(!closeTablePart(lt)){
+                return false;
+            }
+        } else if(depth > 0 && (stack[depth-1].flags & TABLE_CONTEXT) != 0
+            && tagId != T_SCRIPT && tagId != T_STYLE
+        ){
+            // foster parenting
+            return false;
+        }
+
+        if(tagId == T_TABLE){
+            if(find(T_P, SCOPE) != -1){
+                return false;
+            }
+        } else if(tagId == T_FORM){
+            if(inForm > 0){
+                return true;
+            }
+        } else if(tagId == T_A || tagId == T_NOBR){
+            for (int i = depth-1; i >= 0 && (stack[i].flags & MARKER) == 0; i--) {
+                if(stack[i].tag == tagId){
+                    return false;
+                }
+            }
+        } else if(tagId == T_BUTTON){
+            if(find(T_BUTTON, SCOPE) != -1){
+                return false;
+            }
+        } else if(tagId == T_OPTION || tagId == T_OPTGROUP){
+            if(depth > 0 && stack[depth-1].tag == T_OPTION){
+                pop(lt);
+            }
+        } else if(tagId == T_LI || tagId == T_DD || tagId == T_DT){
+            for (int i = depth-1; i >= 0; i--) {
+                Node node = stack[i];
+                boolean match = tagId == T_LI ? node.tag == T_LI : (node.tag == T_DD || node.tag == T_DT);
+                if(match){
+                    if(!popTo(i, lt)){
+                        return false;
+                    }
+                    break;
+                }
+                if((node.flags & SPECIAL) != 0 && node.tag != T_ADDRESS && node.tag != T_DIV && node.tag != T_P){
+                    break;
+                }
+            }
+        }
+
+        if((flags & CLOSES_P) != 0){
+            int p = find(T_P, SCOPE);
+            if(p != -1 && !popTo(p, lt)){
+                return false;
+            }
+        }
+
+        if((flags & HEADING) != 0 && depth > 0 && (stack[depth-1].flags & HEADING) != 0){
+            pop(lt);
+        }
+
+        push(flags);
+
+        if((flags & VOID) != 0){
+            pop(pos);
+            return true;
+        }
+
+        if(selfClosing){
+            return endTag(tagId, nameStart, nameEnd, pos);
+        }
+
+        if((flags & RAWTEXT) != 0){
+            return rawText();
+        }
+
+        return true;
+    }
+
+    /**
+     * close the open cell, row or row group before opening a new one
+     */
+    protected boolean closeTablePart(int lt){
+        for (int i = depth-1; i >= 0; i--) {
+            Node node = stack[i];
+            if(node.tag == T_TD || node.tag == T_TH){
+                if(!popTo(i, lt)){
+                    return false;
+                }
+                break;
+            }
+            if(node.tag == T_TABLE){
+                break;
+            }
+        }
+
+        if(tagId == T_TD || tagId == T_TH){
+            return stack[depth-1].tag == T_TR;
+        }
+
+        if(tagId != T_TR && stack[depth-1].tag == T_TR){
+            pop(lt);
+        }
+
+        Node current = stack[depth-1];
+        if(tagId == T_TR){
+            if(current.tag == T_TR){
+                pop(lt);
+            }
+            return (stack[depth-1].flags & TABLE_CONTEXT) != 0 && stack[depth-1].tag != T_TR;
+        }
+
+        if(current.tag != T_TABLE && (current.flags & TABLE_CONTEXT) != 0){
+            pop(lt);
+        }
+        return stack[depth-1].tag == T_TABLE;
+    }
+
+    protected boolean endTag(int lt){
+        tagName();
+        if(!attributes()){
+            return false;
+        }
+        return endTag(tagId, nameStart, nameEnd, lt);
+    }
+
+    protected boolean endTag(int tagId, int nameStart, int nameEnd, int lt){
+        int flags = tagId == -1 ? 0 : FLAGS[tagId];
+
+        if((flags & IGNORED) != 0){
+            return true;
+        }
+
+        if(tagId == T_BR || (tagId == T_P && find(T_P, SCOPE) == -1)){
+            this.tagId = tagId;
+            idStart = classStart = hrefStart = -1;
+            push(FLAGS[tagId]);
+            pop(pos);
+            return true;
+        }
+
+        if((flags & FORMATTING) != 0){
+            for (int i = depth-1; i >= 0 && (stack[i].flags & MARKER) == 0; i--) {
+                if(stack[i].tag == tagId){
+                    if(i != depth-1){
+                        return false;
+                    }
+                    pop(lt);
+                    return true;
+                }
+            }
+        }
+
+        boolean tableEnd = (flags & (TABLE_CONTEXT|TABLE_PART)) != 0;
+        for (int i = depth-1; i >= 0; i--) {
+            Node node = stack[i];
+            boolean match = tagId == -1 ? node.tag == -1 && sameName(node, nameStart, nameEnd) :
+                node.tag == tagId || ((flags & HEADING) != 0 && (node.flags & HEADING) != 0);
+            if(match){
+                if(tagId == T_FORM && i != depth-1){
+                    return false;
+                }
+                return popTo(i, lt);
+            }
+            if((node.flags & SPECIAL) != 0){
+                if((flags & SPECIAL) == 0){
+                    return true;
+                }
+                if(((node.flags & SCOPE) != 0 && !(tableEnd && (node.flags & MARKER) != 0))
+                    || (tagId == T_P && node.tag == T_BUTTON)
+                    || (tagId == T_LI && (node.tag == T_OL || node.tag == T_UL))
+                ){
+                    return true;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * pop the open elements down to index, formatting elements can't be closed implicitly
+     * unless they are in a cell, forms can't be closed implicitly
+     */
+    protected boolean popTo(int index, int at){
+        int marker = -1;
+        for (int i = index; i < depth; i++) {
+            if((stack[i].flags & MARKER) != 0){
+                marker = i;
+                break;
+            }
+        }
+
+        while(depth > index + 1){
+            Node node = stack[depth-1];
+            if(node.tag == T_FORM || ((node.flags & FORMATTING) != 0 && (marker == -1 || marker >= depth-1))){
+                return false;
+            }
+            pop(at);
+        }
+        pop(at);
+        return true;
+    }
+
+    protected int find(int tag, int boundaries){
+        for (int i = depth-1; i >= 0; i--) {
+            Node node = stack[i];
+            if(node.tag == tag){
+                return i;
+            }
+            if((node.flags & boundaries) != 0 || (tag == T_P && node.tag == T_BUTTON)){
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    protected void push(int flags){
+        Node parent = depth > 0 ? stack[depth-1] : null;
+        if(depth == stack.length){
+            Node[] grown = new Node[depth * 2];
+            System.arraycopy(stack, 0, grown, 0, depth);
+            stack = grown;
+        }
+        Node node = stack[depth];
+        if(node == null){
+            node = stack[depth] = new Node();
+        }
+        node.tag = tagId;
+        node.nameStart = nameStart;
+        node.nameEnd = nameEnd;
+        node.flags = flags;
+        node.marks = 0;
+        node.children = 0;
+        node.hrefStart = hrefStart;
+        node.hrefEnd = hrefEnd;
+        node.legacyLink = -1;
+        node.serial = serial++;
+
+        if(parent != null){
+            if(parent.serial == lastNavend && parent.children == 0){
+                lastNavendStartsWithLink = tagId == T_A;
+            }
+            if(tagId == T_H3 && inRes > 0 && parent.tag == T_A && parent.children == 0){
+                linkedH3 = true;
+                links.add(href(parent));
+            }
+            parent.children++;
+        }
+
+        if(idStart != -1){
+            if(!resFound && equals("res", idStart, idEnd)){
+                resFound = true;
+                node.marks |= RES;
+            } else if(equals("pnnext", idStart, idEnd)){
+                nextPage = true;
+            } else if(!resultStatsFound && equals("resultStats", idStart, idEnd)){
+                resultStatsFound = true;
+                node.marks |= RESULT_STATS;
+                resultStatsStart = pos;
+            }
+        }
+
+        if(classStart != -1){
+            if(hasClass("navend")){
+                ++navends;
+                lastNavend = node.serial;
+                lastNavendStartsWithLink = false;
+            }
+            if(hasClass("mslg") || hasClass("nrg") || hasClass("nrgw")){
+                node.marks |= SITELINK;
+            }
+        }
+
+        if(tagId == T_A){
+            for (int i = depth-1; inH3 > 0 && i >= 0; i--) {
+                if(stack[i].legacyLink != -1){
+                    legacyLinks.set(stack[i].legacyLink, href(node));
+                    stack[i].legacyLink = -1;
+                }
+            }
+            if(inFooter > 0){
+                node.marks |= FOOTER_LINK;
+                footerLinkEndsWithGt = false;
+            }
+        } else if(tagId == T_H3){
+            node.marks |= H3;
+            if(inRes > 0 && inSiteLink == 0){
+                node.legacyLink = legacyLinks.size();
+                legacyLinks.add(null);
+            }
+        } else if(tagId == T_FOOTER){
+            node.marks |= FOOTER;
+        } else if(tagId == T_SELECT){
+            ++inSelect;
+        } else if(tagId == T_FORM){
+            ++inForm;
+        }
+
+        mark(node, 1);
+        depth++;
+    }
+
+    protected void pop(int at){
+        Node node = stack[--depth];
+        mark(node, -1);
+        if(node.tag == T_SELECT){
+            --inSelect;
+        } else if(node.tag == T_FORM){
+            --inForm;
+        }
+        if((node.marks & FOOTER_LINK) != 0 && footerLinkEndsWithGt){
+            footerLinkText = true;
+        }
+        if((node.marks & RESULT_STATS) != 0){
+            resultStatsEnd = at;
+        }
+    }
+
+    protected void mark(Node node, int delta){
+        if((node.marks & RES) != 0){
+            inRes += delta;
+        }
+        if((node.marks & SITELINK) != 0){
+            inSiteLink += delta;
+        }
+        if((node.marks & FOOTER) != 0){
+            inFooter += delta;
+        }
+        if((node.marks & FOOTER_LINK) != 0){
+            inFooterLink += delta;
+        }
+        if((node.marks & H3) != 0){
+            inH3 += delta;
+        }
+    }
+
+    /**
+     * only the last visible char of the footer links is needed
+     */
+    protected void text(int start, int end){
+        if(inFooterLink == 0){
+            return;
+        }
+
+        boolean utf8 = StandardCharsets.UTF_8.equals(charset);
+        for (int i = start; i < end; i++) {
+            byte c = content.get(i);
+            if(isWhitespace(c)){
+                continue;
+            }
+            if(c == (byte)0xA0 && (!utf8 || (i > start && content.get(i-1) == (byte)0xC2))){
+                continue;
+            }
+            if(utf8 && c == (byte)0xC2 && i + 1 < end && content.get(i+1) == (byte)0xA0){
+                continue;
+            }
+            if(c == '&'){
+                int semicolon = indexOf((byte)';', i);
+                if(semicolon != -1 && semicolon < end && semicolon - i < 32){
+                    String decoded = Parser.unescapeEntities(decode(i, semicolon + 1), false);
+                    char last = decoded.isEmpty() ? ' ' : decoded.charAt(decoded.length()-1);
+                    if(last != ' ' && last != '\u00a0'){
+                        footerLinkEndsWithGt = last == '>';
+                    }
+                    i = semicolon;
+                    continue;
+                }
+            }
+            footerLinkEndsWithGt = c == '>';
+        }
+    }
+
+    /**
+     * skip the content of script, style, textarea... up to its end tag
+     */
+    protected boolean rawText(){
+        Node node = stack[depth-1];
+        int nameLen = node.nameEnd - node.nameStart;
+        int start = pos;
+        int end = start;
+        while(true){
+            end = indexOf("</", end);
+            if(end == -1){
+                end = length;
+                break;
+            }
+            int after = end + 2 + nameLen;
+            if(after <= length && sameName(node, end + 2, after)
+                && (after == length || isWhitespace(content.get(after)) || content.get(after) == '/' || content.get(after) == '>')
+            ){
+                break;
+            }
+            end += 2;
+        }
+
+        if(node.tag == T_SCRIPT){
+            int comment = indexOf("<!--", start);
+            if(comment != -1 && comment < end){
+                return false;
+            }
+        }
+
+        if(node.tag != T_SCRIPT && node.tag != T_STYLE){
+            text(start, end);
+        }
+
+        pos = end;
+        if(end < length){
+            pos = end + 2;
+            tagName();
+            if(!attributes()){
+                return false;
+            }
+        }
+        pop(end);
+        return true;
+    }
+
+    protected void tagName(){
+        nameStart = pos;
+        while(pos < length){
+            byte c = content.get(pos);
+            if(isWhitespace(c) || c == '/' || c == '>'){
+                break;
+            }
+            ++pos;
+        }
+        nameEnd = pos;
+        tagId = lookup(nameStart, nameEnd);
+    }
+
+    /**
+     * parse attributes until the end of the tag, keeping the first id, class and href
+     */
+    protected boolean attributes(){
+        selfClosing = false;
+        idStart = idEnd = classStart = classEnd = hrefStart = hrefEnd = -1;
+
+        while(true){
+            while(pos < length && isWhitespace(content.get(pos))){
+                ++pos;
+            }
+            if(pos >= length){
+                return true;
+            }
+            byte c = content.get(pos);
+            if(c == '>'){
+                ++pos;
+                return true;
+            }
+            if(c == '/'){
+                ++pos;
+                if(pos < length && content.get(pos) == '>'){
+                    selfClosing = true;
+                    ++pos;
+                    return true;
+                }
+                continue;
+            }
+
+            int attrStart = pos++;
+            while(pos < length){
+                c = content.get(pos);
+                if(isWhitespace(c) || c == '/' || c == '=' || c == '>'){
+                    break;
+                }
+                ++pos;
+            }
+            int attrEnd = pos;
+
+            while(pos < length && isWhitespace(content.get(pos))){
+                ++pos;
+            }
+
+            int valueStart = pos;
+            int valueEnd = pos;
+            if(pos < length && content.get(pos) == '='){
+                ++pos;
+                while(pos < length && isWhitespace(content.get(pos))){
+                    ++pos;
+                }
+                if(pos >= length){
+                    return true;
+                }
+                c = content.get(pos);
+                if(c == '"' || c == '\''){
+                    valueStart = ++pos;
+                    int quote = indexOf(c, pos);
+                    if(quote == -1){
+                        return false;
+                    }
+                    valueEnd = quote;
+                    pos = quote + 1;
+                } else if(c != '>'){
+                    valueStart = pos;
+                    while(pos < length && !isWhitespace(content.get(pos)) && content.get(pos) != '>'){
+                        ++pos;
+                    }
+                    valueEnd = pos;
+                } else {
+                    valueStart = valueEnd = pos;
+                }
+            }
+
+            if(attrEnd - attrStart == 2 && equalsIgnoreCase("id", attrStart, attrEnd)){
+                if(idStart == -1){
+                    idStart = valueStart;
+                    idEnd = valueEnd;
+                }
+            } else if(attrEnd - attrStart == 5 && equalsIgnoreCase("class", attrStart, attrEnd)){
+                if(classStart == -1){
+                    classStart = valueStart;
+                    classEnd = valueEnd;
+                }
+            } else if(attrEnd - attrStart == 4 && equalsIgnoreCase("href", attrStart, attrEnd)){
+                if(hrefStart == -1){
+                    hrefStart = valueStart;
+                    hrefEnd = valueEnd;
+                }
+            }
+        }
+    }
+
+    protected boolean hasClass(String name){
+        int i = classStart;
+        while(i < classEnd){
+            while(i < classEnd && isWhitespace(content.get(i))){
+                ++i;
+            }
+            int start = i;
+            while(i < classEnd && !isWhitespace(content.get(i))){
+                ++i;
+            }
+            if(i - start == name.length() && equalsIgnoreCase(name, start, i)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected String href(Node node){
+        if(node.hrefStart == -1){
+            return null;
+        }
+        String href = decode(node.hrefStart, node.hrefEnd);
+        if(href.indexOf('&') != -1){
+            href = Parser.unescapeEntities(href, true);
+        }
+        return href;
+    }
+
+    protected String decode(int start, int end){
+        if(content.hasArray()){
+            return new String(content.array(), content.arrayOffset() + start, end - start, charset);
+        }
+        byte[] bytes = new byte[end - start];
+        ByteBuffer duplicate = content.duplicate();
+        duplicate.position(start);
+        duplicate.get(bytes);
+        return new String(bytes, charset);
+    }
+
+    protected int lookup(int start, int end){
+        int len = end - start;
+        for (int i = 0; i < TAGS.length; i++) {
+            if(TAGS[i].length() == len && equalsIgnoreCase(TAGS[i], start, end)){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    protected boolean sameName(Node node, int start, int end){
+        int len = node.nameEnd - node.nameStart;
+        if(end - start != len){
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if(lower(content.get(node.nameStart + i)) != lower(content.get(start + i))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected boolean equals(String value, int start, int end){
+        if(end - start != value.length()){
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if(content.get(start + i) != value.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected boolean equalsIgnoreCase(String lowerValue, int start, int end){
+        if(end - start != lowerValue.length()){
+            return false;
+        }
+        for (int i = 0; i < lowerValue.length(); i++) {
+            if(lower(content.get(start + i)) != lowerValue.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected boolean startsWith(String value, int at){
+        if(at + value.length() > length){
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if(content.get(at + i) != value.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected int indexOf(byte b, int from){
+        for (int i = from; i < length; i++) {
+            if(content.get(i) == b){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    protected int indexOf(String value, int from){
+        byte first = (byte)value.charAt(0);
+        for (int i = indexOf(first, from); i != -1; i = indexOf(first, i + 1)) {
+            if(startsWith(value, i)){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    protected void skipTo(byte b){
+        int index = indexOf(b, pos);
+        pos = index == -1 ? length : index + 1;
+    }
+
+    static boolean isLetter(byte c){
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    static boolean isWhitespace(byte c){
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    static int lower(byte c){
+        return c >= 'A' && c <= 'Z' ? c + 32 : c;
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.http;
+
+import java.util.ArrayDeque;
+
+/**
+ * response buffers shared by several ScrapClient. a response is read in a buffer of chunkSize
+ * which is swapped for one twice as large each time it is full, up to maxBufferSize, so a
+ * client only holds memory for the size of its last response.
+ * buffers are leased per request and released when the next request starts or the client is
+ * closed, released buffers are kept up to maxRetainedBytes, above that they are left to the gc.
+ * acquire never waits.
+ *
+ * thread safe
+ */
+public class ResponseBufferPool {
+
+    public final static int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public final static long DEFAULT_MAX_RETAINED_BYTES = 64l * 1024l * 1024l;
+
+    /**
+     * pool used by the clients without a pool of their own
+     */
+    public final static ResponseBufferPool SHARED = new ResponseBufferPool(
+        DEFAULT_CHUNK_SIZE, ScrapClient.DEFAULT_MAX_RESPONSE_LENGTH + 1, DEFAULT_MAX_RETAINED_BYTES
+    );
+
+    final int chunkSize;
+    final int maxBufferSize;
+    final long maxRetainedBytes;
+    final ArrayDeque<byte[]>[] buffers;
+    long retainedBytes;
+    int allocated;
+
+    @SuppressWarnings("unchecked")
+    public ResponseBufferPool(int chunkSize, int maxBufferSize, long maxRetainedBytes) {
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxRetainedBytes = maxRetainedBytes;
+        int classes = 1;
+        while ((long) this.chunkSize << (classes - 1) < maxBufferSize) {
+            ++classes;
+        }
+        this.maxBufferSize = this.chunkSize << (classes - 1);
+        buffers = new ArrayDeque[classes];
+        for (int i = 0; i < classes; i++) {
+            buffers[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * @return index of the smallest buffer size greater or equal to size, -1 if size is too big to be pooled
+     */
+    int sizeClass(int size) {
+        for (int i = 0; i < buffers.length; i++) {
+            if (chunkSize << i >= size) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a buffer of at least size bytes
+     */
+    public byte[] acquire(int size) {
+        int sizeClass = sizeClass(size);
+        if (sizeClass == -1) {
+            return new byte[size];
+        }
+        synchronized (buffers) {
+            byte[] buffer = buffers[sizeClass].pollFirst();
+            if (buffer != null) {
+                retainedBytes -= buffer.length;
+                return buffer;
+            }
+            ++allocated;
+        }
+        return new byte[chunkSize << sizeClass];
+    }
+
+    /**
+     * swap a full buffer for a larger one keeping its first used bytes
+     */
+    public byte[] grow(byte[] buffer, int used, int size) {
+        byte[] larger = acquire(Math.max(size, buffer.length + 1));
+        System.arraycopy(buffer, 0, larger, 0, used);
+        release(buffer);
+        return larger;
+    }
+
+    public void release(byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        int sizeClass = sizeClass(buffer.length);
+        if (sizeClass == -1 || chunkSize << sizeClass != buffer.length) {
+            return;
+        }
+        synchronized (buffers) {
+            if (retainedBytes + buffer.length > maxRetainedBytes) {
+                return;
+            }
+            retainedBytes += buffer.length;
+            buffers[sizeClass].addFirst(buffer);
+        }
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    /**
+     * @return number of buffers allocated by the pool since its creation
+     */
+    public int allocated() {
+        synchronized (buffers) {
+            return allocated;
+        }
+    }
+
+    public int available() {
+        synchronized (buffers) {
+            int available = 0;
+            for (ArrayDeque<byte[]> deque : buffers) {
+                available += deque.size();
+            }
+            return available;
+        }
+    }
+
+    public long retainedBytes() {
+        synchronized (buffers) {
+            return retainedBytes;
+        }
+    }
+
+}
@@ -16,16 +16,19 @@ import com.serphacker.serposcope.scraper.http.proxy.BindProxy;
 import com.serphacker.serposcope.scraper.http.proxy.DirectNoProxy;
 import com.serphacker.serposcope.scraper.http.proxy.HttpProxy;
 import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpException;
@@ -38,8 +41,10 @@ import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.entity.DeflateInputStream;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.routing.HttpRoutePlanner;
 import org.apache.http.conn.routing.RouteInfo;
@@ -96,6 +101,7 @@ public class ScrapClient implements Closeable, CredentialsProvider {
     public final static String DEFAULT_USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; WOW64; rv:42.0) Gecko/20100101 Firefox/42.0";
     public final static int DEFAULT_TIMEOUT_MS = 30000;
     public final static int DEFAULT_MAX_RESPONSE_LENGTH = (1024 * 1024 * 4) - 1;// 4MB
+    public final static String ACCEPT_ENCODING = "gzip, deflate";
 
     CloseableHttpClient client;
     BasicCredentialsProvider credentialProvider = new BasicCredentialsProvider();
@@ -108,23 +114,71 @@ public class ScrapClient implements Closeable, CredentialsProvider {
     Integer timeoutMS = DEFAULT_TIMEOUT_MS;
     ScrapProxy proxy;
     int maxResponseLength;
-    byte[] buffer;
+    ResponseBufferPool bufferPool = ResponseBufferPool.SHARED;
+    ScrapConnectionPool connectionPool;
     List<Header> requestHeaders = new ArrayList<>();
     Map<HttpHost, HttpHost> routes = new HashMap<>();
     boolean proxyChangedSinceLastRequest;
     int maxRedirect = 0;
+    boolean compression = true;
 
     long executionTimeMS;
+    volatile HttpRequestBase pendingRequest;
     CloseableHttpResponse response;
+    byte[] contentBuffer;
+    int contentLength;
     byte[] content;
     int statusCode;
     Exception exception;
     String lastRedirect;
+    long compressedLength;
+    long uncompressedLength;
+
+    /**
+     * counts the bytes read from the connection, before decompression
+     */
+    static class CountingInputStream extends FilterInputStream {
+
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                ++count;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+    }
 
     class SCliConnectionReuseStrategy extends DefaultConnectionReuseStrategy {
 
         @Override
         public boolean keepAlive(HttpResponse response, HttpContext context) {
+            if (connectionPool != null) {
+                return super.keepAlive(response, context);
+            }
             if (!proxyChangedSinceLastRequest && (proxy == null || (proxy instanceof BindProxy))) {
                 return super.keepAlive(response, context);
             } else {
@@ -189,16 +243,22 @@ public class ScrapClient implements Closeable, CredentialsProvider {
             .build()
         );
 
-        client = HttpClients
+        client = buildClient(connManager, false);
+
+        setTimeout(timeoutMS);
+    }
+
+    protected final CloseableHttpClient buildClient(HttpClientConnectionManager manager, boolean shared) {
+        return HttpClients
             .custom()
             .setRoutePlanner(this.new SCliHttpRoutePlanner())
             .setDefaultCredentialsProvider(this)
             .setDefaultCookieStore(basicCookieStore)
             .setConnectionReuseStrategy(this.new SCliConnectionReuseStrategy())
-            .setConnectionManager(connManager)
+            .setConnectionManager(manager)
+            .setConnectionManagerShared(shared)
+            .disableContentCompression()
             .build();
-
-        setTimeout(timeoutMS);
     }
 
     public void addCookie(Cookie cookie) {
@@ -236,8 +296,10 @@ public class ScrapClient implements Closeable, CredentialsProvider {
     }
 
     public void setProxy(ScrapProxy proxy) {
-        synchronized (connManager) {
-            connManager.closeConnection();
+        if (connectionPool == null) {
+            synchronized (connManager) {
+                connManager.closeConnection();
+            }
         }
         proxyChangedSinceLastRequest = true;
         if (proxy != null && proxy instanceof DirectNoProxy) {
@@ -274,19 +336,125 @@ public class ScrapClient implements Closeable, CredentialsProvider {
 
     public final void setMaxResponseLength(int maxResponseLength) {
         this.maxResponseLength = maxResponseLength + 1;
-        buffer = new byte[this.maxResponseLength];
+    }
+
+    public ResponseBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * pool the response buffers are leased from, null for the pool shared by every client
+     */
+    public void setBufferPool(ResponseBufferPool bufferPool) {
+        this.bufferPool = bufferPool == null ? ResponseBufferPool.SHARED : bufferPool;
+    }
+
+    /**
+     * give back the buffer holding the last response, the content is no more available
+     */
+    public void releaseContent() {
+        if (contentBuffer != null) {
+            bufferPool.release(contentBuffer);
+            contentBuffer = null;
+        }
+        contentLength = 0;
+        content = null;
+    }
+
+    public ScrapConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * lease connections from a pool shared with other clients instead of a single connection
+     * closed on each proxy change, keep-alive connections of a proxy are reused by any client
+     * switching to this proxy. null to go back to a connection owned by the client.
+     */
+    public void setConnectionPool(ScrapConnectionPool connectionPool) {
+        synchronized (connManager) {
+            if (this.connectionPool == connectionPool) {
+                return;
+            }
+            // the previous client is not closed, it would shut down its connection manager
+            this.connectionPool = connectionPool;
+            if (connectionPool == null) {
+                client = buildClient(connManager, false);
+            } else {
+                connManager.closeConnection();
+                client = buildClient(connectionPool.getConnectionManager(), true);
+            }
+        }
+    }
+
+    /**
+     * identifies the connections usable by the current proxy and ssl settings
+     */
+    protected String getConnectionKey() {
+        return (isInsecureSSL() ? "insecure:" : "") + getProxyIdentity();
+    }
+
+    protected String getProxyIdentity() {
+        return proxy == null ? "proxy:direct" : proxy.toString();
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * negotiate gzip/deflate transfer, responses are decompressed while being read
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * @return number of bytes of the last response body as transferred (compressed or not)
+     */
+    public long getCompressedLength() {
+        return compressedLength;
+    }
+
+    /**
+     * @return number of bytes of the last response body after decompression
+     */
+    public long getUncompressedLength() {
+        return uncompressedLength;
     }
 
     public CloseableHttpResponse getResponse() {
         return response;
     }
 
+    /**
+     * @return copy of the response body, see getContentView
+     */
     public byte[] getContent() {
+        if (content == null && contentBuffer != null) {
+            content = Arrays.copyOf(contentBuffer, contentLength);
+        }
         return content;
     }
 
+    /**
+     * @return read only view of the response body without copy, valid until the next request
+     */
+    public ByteBuffer getContentView() {
+        if (contentBuffer != null) {
+            return ByteBuffer.wrap(contentBuffer, 0, contentLength).asReadOnlyBuffer();
+        }
+        if (content != null) {
+            return ByteBuffer.wrap(content).asReadOnlyBuffer();
+        }
+        return null;
+    }
+
+    public int getContentLength() {
+        return contentBuffer != null ? contentLength : (content != null ? content.length : 0);
+    }
+
     public String getContentAsString() {
-        if (response == null || content == null) {
+        if (response == null || (contentBuffer == null && content == null)) {
             return null;
         }
 
@@ -296,6 +464,9 @@ public class ScrapClient implements Closeable, CredentialsProvider {
             charset = Charset.forName("UTF-8");
         }
 
+        if (contentBuffer != null) {
+            return new String(contentBuffer, 0, contentLength, charset);
+        }
         return new String(content, charset);
     }
 
@@ -327,12 +498,14 @@ public class ScrapClient implements Closeable, CredentialsProvider {
     final static Pattern pcharset = Pattern.compile("charset=['\"]?([^\"'\\s]+)");
 
     protected Charset detectCharsetFromHtmlMeta() {
-        if (content == null) {
+        byte[] data = contentBuffer != null ? contentBuffer : content;
+        if (data == null) {
             return null;
         }
 
-        int len = content.length > 4096 ? 4096 : content.length;
-        Matcher matcher = pcharset.matcher(new ByteCharSequence(content, 0, len));
+        int length = getContentLength();
+        int len = length > 4096 ? 4096 : length;
+        Matcher matcher = pcharset.matcher(new ByteCharSequence(data, 0, len));
         if (matcher.find()) {
             try {
                 return Charset.forName(matcher.group(1));
@@ -504,11 +677,23 @@ public class ScrapClient implements Closeable, CredentialsProvider {
     }
 
     protected void clearPreviousRequest() {
-        content = null;
+        releaseContent();
         exception = null;
         response = null;
         statusCode = 0;
         lastRedirect = null;
+        compressedLength = 0;
+        uncompressedLength = 0;
+    }
+
+    /**
+     * abort the request being executed by another thread, the request returns -1
+     */
+    public void abort() {
+        HttpRequestBase request = pendingRequest;
+        if (request != null) {
+            request.abort();
+        }
     }
 
     public int request(HttpRequestBase request) {
@@ -516,6 +701,7 @@ public class ScrapClient implements Closeable, CredentialsProvider {
             try {
                 clearPreviousRequest();
                 executionTimeMS = System.currentTimeMillis();
+                pendingRequest = request;
                 
                 HttpClientContext context = HttpClientContext.create();
                 initializeRequest(request, context);
@@ -527,35 +713,17 @@ public class ScrapClient implements Closeable, CredentialsProvider {
                     lastRedirect = redirects.get(redirects.size()-1).toString();
                 }
 
-                HttpEntity entity = response.getEntity();
-                long contentLength = entity.getContentLength();
-
-                if (contentLength > maxResponseLength) {
-                    throw new ResponseTooBigException(
-                        "content length (" + contentLength + ") "
-                        + "is greater than max response leength (" + maxResponseLength + ")"
-                    );
-                }
-
-                InputStream stream = entity.getContent();
-                int totalRead = 0;
-                int read = 0;
-
-                while (totalRead < maxResponseLength
-                    && (read = stream.read(buffer, totalRead, maxResponseLength - totalRead)) != -1) {
-                    totalRead += read;
-                }
-
-                if (totalRead == maxResponseLength && read != 0) {
-                    throw new ResponseTooBigException("already read " + totalRead + " bytes");
-                }
-                content = Arrays.copyOfRange(buffer, 0, totalRead);
+                readContent(response.getEntity());
 
             } catch (Exception ex) {
-                content = null;
+                if (ex instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                releaseContent();
                 statusCode = -1;
                 exception = ex;
             } finally {
+                pendingRequest = null;
                 proxyChangedSinceLastRequest = false;
                 closeResponse();
                 executionTimeMS = System.currentTimeMillis() - executionTimeMS;
@@ -565,10 +733,77 @@ public class ScrapClient implements Closeable, CredentialsProvider {
         }
     }
     
+    /**
+     * read the entity in a buffer leased from the pool, decompressing it if needed. the buffer
+     * grows while reading, maxResponseLength applies to the decompressed content.
+     */
+    protected void readContent(HttpEntity entity) throws IOException {
+        Header encodingHeader = entity.getContentEncoding();
+        String encoding = encodingHeader == null ? "identity" : encodingHeader.getValue().trim().toLowerCase();
+        boolean identity = encoding.isEmpty() || "identity".equals(encoding);
+
+        long contentLength = entity.getContentLength();
+        if (identity && contentLength > maxResponseLength) {
+            throw new ResponseTooBigException(
+                "content length (" + contentLength + ") "
+                + "is greater than max response leength (" + maxResponseLength + ")"
+            );
+        }
+
+        CountingInputStream counter = new CountingInputStream(entity.getContent());
+        byte[] readBuffer = null;
+        try {
+            InputStream stream;
+            if (identity) {
+                stream = counter;
+            } else if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+                stream = new GZIPInputStream(counter);
+            } else if ("deflate".equals(encoding)) {
+                stream = new DeflateInputStream(counter);
+            } else {
+                throw new IOException("unsupported content encoding " + encoding);
+            }
+
+            // room for the eof when the length is known
+            readBuffer = bufferPool.acquire(identity && contentLength >= 0
+                ? (int) Math.min(contentLength + 1, maxResponseLength)
+                : Math.min(bufferPool.getChunkSize(), maxResponseLength));
+
+            int totalRead = 0;
+            while (true) {
+                int capacity = Math.min(readBuffer.length, maxResponseLength);
+                if (totalRead == capacity) {
+                    if (capacity == maxResponseLength) {
+                        throw new ResponseTooBigException("already read " + totalRead + " bytes");
+                    }
+                    readBuffer = bufferPool.grow(readBuffer, totalRead, Math.min(readBuffer.length * 2, maxResponseLength));
+                    continue;
+                }
+                int read = stream.read(readBuffer, totalRead, capacity - totalRead);
+                if (read == -1) {
+                    break;
+                }
+                totalRead += read;
+            }
+
+            uncompressedLength = totalRead;
+            contentBuffer = readBuffer;
+            this.contentLength = totalRead;
+            readBuffer = null;
+        } finally {
+            bufferPool.release(readBuffer);
+            compressedLength = counter.count;
+        }
+    }
+
     protected void initializeRequest(HttpRequestBase request, HttpClientContext context){
         if (request.getFirstHeader("user-agent") == null) {
             request.setHeader("User-Agent", useragent);
         }
+        
+        if (compression && request.getFirstHeader("accept-encoding") == null) {
+            request.setHeader("Accept-Encoding", ACCEPT_ENCODING);
+        }
 
         for (Header requestHeader : requestHeaders) {
             request.setHeader(requestHeader);
@@ -593,6 +828,15 @@ public class ScrapClient implements Closeable, CredentialsProvider {
         
         context.setAttribute(HttpClientContext.REQUEST_CONFIG, config);
         request.setConfig(config);
+
+        // tls sessions are resumed only through the same proxy
+        context.setAttribute(ScrapClientSSLConnectionFactory.IDENTITY_ATTRIBUTE, getProxyIdentity());
+
+        if (connectionPool != null) {
+            // pooled connections are only leased to requests sent with the same proxy
+            context.setUserToken(getConnectionKey());
+            context.setAttribute(ScrapClientSSLConnectionFactory.INSECURE_ATTRIBUTE, isInsecureSSL());
+        }
     }
     
     public void closeResponse() {
@@ -608,6 +852,7 @@ public class ScrapClient implements Closeable, CredentialsProvider {
     @Override
     public void close() throws IOException {
         closeResponse();
+        releaseContent();
         if (client != null) {
             client.close();
         }
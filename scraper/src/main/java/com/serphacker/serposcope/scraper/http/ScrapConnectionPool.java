@@ -0,0 +1,115 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.http;
+
+import com.serphacker.serposcope.scraper.http.extensions.ScrapClientPlainConnectionFactory;
+import com.serphacker.serposcope.scraper.http.extensions.ScrapClientSSLConnectionFactory;
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * keep-alive connections shared by several ScrapClient, see ScrapClient.setConnectionPool.
+ * connections are pooled by route (target host, http proxy or bind ip) and tagged with the
+ * proxy they were opened with, a client only reuses a connection opened with its current proxy.
+ * connections idle for more than idleTimeoutMS are closed by a background thread.
+ *
+ * thread safe
+ */
+public class ScrapConnectionPool implements Closeable {
+
+    public final static long DEFAULT_IDLE_TIMEOUT_MS = 30000;
+
+    final PoolingHttpClientConnectionManager connManager;
+    final long idleTimeoutMS;
+    final Thread evictor;
+    volatile boolean closed;
+
+    public ScrapConnectionPool(int maxPerRoute, int maxTotal) {
+        this(maxPerRoute, maxTotal, DEFAULT_IDLE_TIMEOUT_MS);
+    }
+
+    public ScrapConnectionPool(int maxPerRoute, int maxTotal, long idleTimeoutMS) {
+        ScrapClientPlainConnectionFactory plainConnectionFactory = new ScrapClientPlainConnectionFactory();
+        connManager = new PoolingHttpClientConnectionManager(
+            RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", plainConnectionFactory)
+            .register("https", new ScrapClientSSLConnectionFactory(plainConnectionFactory))
+            .build()
+        );
+        connManager.setDefaultMaxPerRoute(Math.max(1, maxPerRoute));
+        connManager.setMaxTotal(Math.max(1, Math.max(maxPerRoute, maxTotal)));
+        connManager.setDefaultSocketConfig(SocketConfig.custom().setSoTimeout(ScrapClient.DEFAULT_TIMEOUT_MS).build());
+
+        this.idleTimeoutMS = Math.max(1, idleTimeoutMS);
+        evictor = new Thread(this::evictIdleConnections, "connection-evictor");
+        evictor.setDaemon(true);
+        evictor.start();
+    }
+
+    protected void evictIdleConnections() {
+        long delayMS = Math.max(1000, idleTimeoutMS / 2);
+        while (!closed) {
+            try {
+                Thread.sleep(delayMS);
+            } catch (InterruptedException ex) {
+                break;
+            }
+            closeIdleConnections();
+        }
+    }
+
+    /**
+     * close the connections expired or idle for more than idleTimeoutMS
+     */
+    public void closeIdleConnections() {
+        connManager.closeExpiredConnections();
+        connManager.closeIdleConnections(idleTimeoutMS, TimeUnit.MILLISECONDS);
+    }
+
+    HttpClientConnectionManager getConnectionManager() {
+        return connManager;
+    }
+
+    public long getIdleTimeoutMS() {
+        return idleTimeoutMS;
+    }
+
+    /**
+     * @return number of connections leased by a client
+     */
+    public int leased() {
+        return connManager.getTotalStats().getLeased();
+    }
+
+    /**
+     * @return number of idle connections kept alive
+     */
+    public int available() {
+        return connManager.getTotalStats().getAvailable();
+    }
+
+    @Override
+    public String toString() {
+        PoolStats stats = connManager.getTotalStats();
+        return "leased=" + stats.getLeased() + " available=" + stats.getAvailable() + " max=" + stats.getMax();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        evictor.interrupt();
+        connManager.shutdown();
+    }
+
+}
@@ -71,6 +71,16 @@ public class ScrapClientSSLConnectionFactory implements LayeredConnectionSocketF
     public static final String SSL = "SSL";
     public static final String SSLV2 = "SSLv2";
 
+    /**
+     * context attribute overriding the insecure flag, used when the factory is shared by several clients
+     */
+    public static final String INSECURE_ATTRIBUTE = "ssl.insecure";
+
+    /**
+     * context attribute identifying the proxy, sessions are only resumed within an identity
+     */
+    public static final String IDENTITY_ATTRIBUTE = "ssl.identity";
+
     private final Log log = LogFactory.getLog(getClass());
 
     private static String[] split(final String s) {
@@ -88,6 +98,7 @@ public class ScrapClientSSLConnectionFactory implements LayeredConnectionSocketF
     private final String[] supportedProtocols;
     private final String[] supportedCipherSuites;
     private boolean insecure;
+    private ScrapClientSSLSessionCache sessionCache;
 
     public ScrapClientSSLConnectionFactory(ScrapClientPlainConnectionFactory plainConnectionSocketFactory) {
         this(plainConnectionSocketFactory, false);
@@ -102,6 +113,7 @@ public class ScrapClientSSLConnectionFactory implements LayeredConnectionSocketF
             INSECURE_HOSTNAME_VERIFIER,
             null, null, insecure
         );
+        this.sessionCache = ScrapClientSSLSessionCache.INSTANCE;
     }
 
     public ScrapClientSSLConnectionFactory(
@@ -173,8 +185,8 @@ public class ScrapClientSSLConnectionFactory implements LayeredConnectionSocketF
         if (sock instanceof SSLSocket) {
             final SSLSocket sslsock = (SSLSocket) sock;
             this.log.debug("Starting handshake");
-            sslsock.startHandshake();
-            verifyHostname(sslsock, host.getHostName());
+            handshake(sslsock);
+            verifyHostname(sslsock, host.getHostName(), isInsecure(context));
             return sock;
         } else {
             return createLayeredSocket(sock, host.getHostName(), remoteAddress.getPort(), context);
@@ -188,7 +200,14 @@ public class ScrapClientSSLConnectionFactory implements LayeredConnectionSocketF
         final int port,
         final HttpContext context) throws IOException {
 
-        SSLSocketFactory sslSocketFactory = insecure ? insecoreSSLSocketfactory : defaultSSLSocketFactory;
+        boolean insecure = isInsecure(context);
+        Object identity = context == null ? null : context.getAttribute(IDENTITY_ATTRIBUTE);
+        SSLSocketFactory sslSocketFactory;
+        if (sessionCache != null && identity != null) {
+            sslSocketFactory = sessionCache.getSocketFactory(identity.toString(), insecure);
+        } else {
+            sslSocketFactory = insecure ? insecoreSSLSocketfactory : defaultSSLSocketFactory;
+        }
 
         final SSLSocket sslsock = (SSLSocket) sslSocketFactory.createSocket(
             socket,
@@ -222,12 +241,20 @@ public class ScrapClientSSLConnectionFactory implements LayeredConnectionSocketF
 
         prepareSocket(sslsock);
         this.log.debug("Starting handshake");
-        sslsock.startHandshake();
-        verifyHostname(sslsock, target);
+        handshake(sslsock);
+        verifyHostname(sslsock, target, insecure);
         return sslsock;
     }
 
-    private void verifyHostname(final SSLSocket sslsock, final String hostname) throws IOException {
+    private void handshake(final SSLSocket sslsock) throws IOException {
+        if (sessionCache != null) {
+            sessionCache.handshake(sslsock);
+        } else {
+            sslsock.startHandshake();
+        }
+    }
+
+    private void verifyHostname(final SSLSocket sslsock, final String hostname, final boolean insecure) throws IOException {
         try {
             SSLSession session = sslsock.getSession();
             if (session == null) {
@@ -308,6 +335,22 @@ public class ScrapClientSSLConnectionFactory implements LayeredConnectionSocketF
         }
     }
 
+    protected boolean isInsecure(HttpContext context) {
+        Object attribute = context == null ? null : context.getAttribute(INSECURE_ATTRIBUTE);
+        return attribute instanceof Boolean ? (Boolean) attribute : insecure;
+    }
+
+    public ScrapClientSSLSessionCache getSessionCache() {
+        return sessionCache;
+    }
+
+    /**
+     * null to use the ssl socket factories given to the constructor without resumption metrics
+     */
+    public void setSessionCache(ScrapClientSSLSessionCache sessionCache) {
+        this.sessionCache = sessionCache;
+    }
+
     public boolean isInsecure() {
         return insecure;
     }
@@ -0,0 +1,180 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.http.extensions;
+
+import java.io.IOException;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * tls sessions kept per proxy identity so new connections resume a session instead of doing a
+ * full handshake. each identity has its own ssl context, a session negotiated through a proxy
+ * is never offered through another one (the session id or ticket would link the proxies).
+ * the least recently used identities are dropped above maxIdentities.
+ *
+ * also counts the handshakes, the resumed ones and the time spent in them.
+ *
+ * thread safe
+ */
+public class ScrapClientSSLSessionCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScrapClientSSLSessionCache.class);
+
+    public final static int DEFAULT_MAX_IDENTITIES = 4096;
+    public final static int DEFAULT_SESSIONS_PER_IDENTITY = 64;
+    public final static int DEFAULT_SESSION_TIMEOUT_S = 3600;
+
+    public final static ScrapClientSSLSessionCache INSTANCE = new ScrapClientSSLSessionCache();
+
+    static TrustManager[] DEFAULT_TRUST_MANAGERS = null;
+    static TrustManager[] INSECURE_TRUST_MANAGERS = new TrustManager[]{new X509TrustManager() {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }};
+
+    static {
+        try {
+            TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            factory.init((KeyStore) null);
+            DEFAULT_TRUST_MANAGERS = factory.getTrustManagers();
+        } catch (Exception ex) {
+            LOG.error("ex in trust manager initialization", ex);
+        }
+    }
+
+    final int maxIdentities;
+    final int sessionsPerIdentity;
+    final int sessionTimeoutS;
+    final Map<String, SSLSocketFactory> factories;
+
+    final AtomicLong handshakes = new AtomicLong();
+    final AtomicLong resumed = new AtomicLong();
+    final AtomicLong handshakeNanos = new AtomicLong();
+
+    public ScrapClientSSLSessionCache() {
+        this(DEFAULT_MAX_IDENTITIES, DEFAULT_SESSIONS_PER_IDENTITY, DEFAULT_SESSION_TIMEOUT_S);
+    }
+
+    public ScrapClientSSLSessionCache(int maxIdentities, int sessionsPerIdentity, int sessionTimeoutS) {
+        this.maxIdentities = Math.max(1, maxIdentities);
+        this.sessionsPerIdentity = sessionsPerIdentity;
+        this.sessionTimeoutS = sessionTimeoutS;
+        this.factories = new LinkedHashMap<String, SSLSocketFactory>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SSLSocketFactory> eldest) {
+                return size() > ScrapClientSSLSessionCache.this.maxIdentities;
+            }
+        };
+    }
+
+    /**
+     * @return socket factory whose sessions are only shared by connections of this identity
+     */
+    public SSLSocketFactory getSocketFactory(String identity, boolean insecure) throws IOException {
+        String key = (insecure ? "insecure:" : "") + identity;
+        synchronized (factories) {
+            SSLSocketFactory factory = factories.get(key);
+            if (factory == null) {
+                factory = newSSLContext(insecure).getSocketFactory();
+                factories.put(key, factory);
+            }
+            return factory;
+        }
+    }
+
+    protected SSLContext newSSLContext(boolean insecure) throws IOException {
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, insecure ? INSECURE_TRUST_MANAGERS : DEFAULT_TRUST_MANAGERS, null);
+            SSLSessionContext sessions = context.getClientSessionContext();
+            sessions.setSessionCacheSize(sessionsPerIdentity);
+            sessions.setSessionTimeout(sessionTimeoutS);
+            return context;
+        } catch (Exception ex) {
+            throw new IOException("failed to create ssl context", ex);
+        }
+    }
+
+    /**
+     * handshake and record its duration, a session created before the handshake started has
+     * been resumed
+     */
+    public void handshake(SSLSocket sslsock) throws IOException {
+        long startMS = System.currentTimeMillis();
+        long start = System.nanoTime();
+        sslsock.startHandshake();
+        handshakeNanos.addAndGet(System.nanoTime() - start);
+        handshakes.incrementAndGet();
+        if (sslsock.getSession().getCreationTime() < startMS) {
+            resumed.incrementAndGet();
+        }
+    }
+
+    public int size() {
+        synchronized (factories) {
+            return factories.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (factories) {
+            factories.clear();
+        }
+    }
+
+    public long getHandshakes() {
+        return handshakes.get();
+    }
+
+    public long getResumedHandshakes() {
+        return resumed.get();
+    }
+
+    /**
+     * @return total time spent in handshakes, in nanoseconds
+     */
+    public long getHandshakeNanos() {
+        return handshakeNanos.get();
+    }
+
+    public void resetMetrics() {
+        handshakes.set(0);
+        resumed.set(0);
+        handshakeNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        long count = handshakes.get();
+        return "identities=" + size() + " handshakes=" + count + " resumed=" + resumed.get()
+            + " avg=" + (count == 0 ? 0 : handshakeNanos.get() / count / 1000) + "us";
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.http.proxy;
+
+/**
+ * success rate, latency and captcha rate of a proxy with a circuit breaker :
+ * after some consecutive failures the proxy is quarantined with an exponential backoff,
+ * the first use after the quarantine decides if it is re-admitted or quarantined again.
+ * a proxy quarantined too many times in a row is evicted.
+ *
+ * not thread safe
+ */
+public class ProxyHealth {
+
+    public final static int FAILURE_THRESHOLD = 2;
+    public final static long BASE_QUARANTINE_MS = 30000l;
+    public final static long MAX_QUARANTINE_MS = 15l * 60000l;
+    public final static int MAX_TRIPS = 4;
+    public final static double LATENCY_ALPHA = 0.2d;
+
+    long successes;
+    long failures;
+    long captchas;
+    double latencyMS;
+
+    int consecutiveFailures;
+    int trips;
+    boolean halfOpen;
+    long quarantinedUntil;
+
+    public ProxyHealth() {
+    }
+
+    public ProxyHealth(long successes, long failures, long captchas, int latencyMS) {
+        this.successes = successes;
+        this.failures = failures;
+        this.captchas = captchas;
+        this.latencyMS = latencyMS;
+    }
+
+    public void onSuccess(long latencyMS, int captchas){
+        ++successes;
+        this.captchas += captchas;
+        this.latencyMS = successes == 1 && this.latencyMS == 0 ?
+            latencyMS : LATENCY_ALPHA * latencyMS + (1d - LATENCY_ALPHA) * this.latencyMS;
+        consecutiveFailures = 0;
+        trips = 0;
+        halfOpen = false;
+    }
+
+    public void onFailure(int captchas, long now){
+        ++failures;
+        this.captchas += captchas;
+        ++consecutiveFailures;
+        if(halfOpen || consecutiveFailures >= FAILURE_THRESHOLD){
+            trip(now);
+        }
+    }
+
+    protected void trip(long now){
+        ++trips;
+        long backoff = Math.min(BASE_QUARANTINE_MS << Math.min(trips - 1, 20), MAX_QUARANTINE_MS);
+        quarantinedUntil = now + backoff;
+        consecutiveFailures = 0;
+        halfOpen = true;
+    }
+
+    public boolean isQuarantined(long now){
+        return quarantinedUntil > now;
+    }
+
+    public boolean isEvicted(){
+        return trips > MAX_TRIPS;
+    }
+
+    /**
+     * @return smoothed success rate weighted by the captcha rate, between 0 and 1
+     */
+    public double getScore(){
+        long attempts = successes + failures;
+        double successRate = (successes + 1d) / (attempts + 2d);
+        double captchaRate = Math.min(1d, (double)captchas / Math.max(1l, attempts));
+        return successRate * (1d - captchaRate / 2d);
+    }
+
+    public long getSuccesses() {
+        return successes;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getCaptchas() {
+        return captchas;
+    }
+
+    public int getLatencyMS() {
+        return (int)latencyMS;
+    }
+
+    public long getQuarantinedUntil() {
+        return quarantinedUntil;
+    }
+
+    public int getTrips() {
+        return trips;
+    }
+
+    @Override
+    public String toString() {
+        return "score=" + (int)(getScore() * 100) + "% success=" + successes + " failure=" + failures +
+            " captcha=" + captchas + " latency=" + getLatencyMS() + "ms";
+    }
+
+}
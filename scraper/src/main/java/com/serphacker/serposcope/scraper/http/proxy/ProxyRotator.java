@@ -1,67 +1,228 @@
-/* 
+/*
  * Serposcope - SEO rank checker https://serposcope.serphacker.com/
- * 
+ *
  * Copyright (c) 2016 SERP Hacker
  * @author Pierre Nogues <support@serphacker.com>
  * @license https://opensource.org/licenses/MIT MIT License
  */
 package com.serphacker.serposcope.scraper.http.proxy;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 /**
+ * hands out the proxy allowed to be used the earliest, a proxy is allowed again
+ * a minimum interval (plus a random jitter) after it was handed out, or when its
+ * quarantine ends. evicted proxies are not given back.
+ * without rate limit the rotation is FIFO.
+ *
  * thread safe
  * @author admin
  */
 public class ProxyRotator {
 
-    final Queue<ScrapProxy> proxies = new ArrayDeque<>();
+    public final static double DEFAULT_JITTER = 0.2d;
+
+    static class Slot implements Comparable<Slot> {
+        final ScrapProxy proxy;
+        final long nextAllowed;
+        final long sequence;
+
+        Slot(ScrapProxy proxy, long nextAllowed, long sequence) {
+            this.proxy = proxy;
+            this.nextAllowed = nextAllowed;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Slot o) {
+            int cmp = Long.compare(nextAllowed, o.nextAllowed);
+            return cmp != 0 ? cmp : Long.compare(sequence, o.sequence);
+        }
+    }
+
+    final PriorityQueue<Slot> proxies = new PriorityQueue<>();
+    final Map<ScrapProxy,Long> handedOut = new IdentityHashMap<>();
+    final Map<ScrapProxy,ProxyHealth> healths = new IdentityHashMap<>();
+    int evicted;
+    final long minIntervalMS;
+    final double jitter;
+    long sequence;
 
     public ProxyRotator(Collection<ScrapProxy> proxies) {
-        this.proxies.addAll(proxies);
+        this(proxies, 0);
     }
-    
+
+    /**
+     * @param requestsPerMinute maximum number of rotations per minute for a same proxy, 0 for unlimited
+     */
+    public ProxyRotator(Collection<ScrapProxy> proxies, int requestsPerMinute) {
+        this(proxies, requestsPerMinute, DEFAULT_JITTER);
+    }
+
+    /**
+     * @param jitter random extra delay, as a ratio of the minimum interval
+     */
+    public ProxyRotator(Collection<ScrapProxy> proxies, int requestsPerMinute, double jitter) {
+        this.minIntervalMS = requestsPerMinute > 0 ? 60000l / requestsPerMinute : 0l;
+        this.jitter = jitter;
+        addAll(proxies);
+    }
+
     public boolean addAll(Collection<ScrapProxy> proxies){
-        synchronized(proxies){
-            return this.proxies.addAll(proxies);
+        synchronized(this.proxies){
+            for (ScrapProxy proxy : proxies) {
+                release(proxy);
+            }
+            this.proxies.notifyAll();
+            return !proxies.isEmpty();
         }
     }
-    
+
     public boolean add(ScrapProxy proxy){
-        synchronized(proxy){
-            return proxies.add(proxy);
+        synchronized(proxies){
+            release(proxy);
+            proxies.notifyAll();
+            return true;
         }
     }
-    
+
+    /**
+     * @return a proxy allowed to be used now or null
+     */
     public ScrapProxy poll(){
-        return rotate(null);
+        synchronized(proxies){
+            Slot head = proxies.peek();
+            if(head == null || head.nextAllowed > System.currentTimeMillis()){
+                return null;
+            }
+            return take();
+        }
     }
-    
-    public ScrapProxy rotate(ScrapProxy previousProxy){
+
+    /**
+     * give back the previous proxy and wait until the next one is allowed to be used
+     * @return null if there is no more proxy
+     */
+    public ScrapProxy rotate(ScrapProxy previousProxy) throws InterruptedException {
         synchronized(proxies){
             if(previousProxy != null){
-                proxies.add(previousProxy);
+                release(previousProxy);
+                proxies.notifyAll();
+            }
+
+            while(true){
+                Slot head = proxies.peek();
+                if(head == null){
+                    return null;
+                }
+                long waitMS = head.nextAllowed - System.currentTimeMillis();
+                if(waitMS <= 0){
+                    return take();
+                }
+                proxies.wait(waitMS);
             }
-            return proxies.poll();
+        }
+    }
+
+    public void success(ScrapProxy proxy, long latencyMS, int captchas){
+        synchronized(proxies){
+            getHealth(proxy).onSuccess(latencyMS, captchas);
         }
     }
     
-    public int remaining(){
+    public void failure(ScrapProxy proxy, int captchas){
         synchronized(proxies){
-            return proxies.size();
+            getHealth(proxy).onFailure(captchas, System.currentTimeMillis());
         }
     }
     
-    public List<ScrapProxy> list(){
+    public ProxyHealth getHealth(ScrapProxy proxy){
+        synchronized(proxies){
+            return healths.computeIfAbsent(proxy, (p) -> new ProxyHealth());
+        }
+    }
+    
+    public void setHealth(ScrapProxy proxy, ProxyHealth health){
         synchronized(proxies){
-            return new ArrayList<>(proxies);
+            healths.put(proxy, health);
         }
-    } 
+    }
     
+    /**
+     * @return number of proxies evicted after too many quarantines
+     */
+    public int evicted(){
+        synchronized(proxies){
+            return evicted;
+        }
+    }
     
+    /**
+     * forget a proxy that was handed out and won't be given back
+     */
+    public void discard(ScrapProxy proxy){
+        synchronized(proxies){
+            handedOut.remove(proxy);
+        }
+    }
+
+    protected ScrapProxy take(){
+        ScrapProxy proxy = proxies.poll().proxy;
+        handedOut.put(proxy, System.currentTimeMillis());
+        return proxy;
+    }
+
+    protected void release(ScrapProxy proxy){
+        long now = System.currentTimeMillis();
+        long nextAllowed = now;
+        Long lastUse = handedOut.remove(proxy);
+        if(lastUse != null && minIntervalMS > 0){
+            long jitterMS = (long)(minIntervalMS * jitter);
+            nextAllowed = lastUse + minIntervalMS + (jitterMS > 0 ? ThreadLocalRandom.current().nextLong(jitterMS + 1) : 0);
+        }
+        
+        ProxyHealth health = healths.get(proxy);
+        if(health != null){
+            if(health.isEvicted()){
+                ++evicted;
+                return;
+            }
+            nextAllowed = Math.max(nextAllowed, health.getQuarantinedUntil());
+        }
+        proxies.add(new Slot(proxy, nextAllowed, sequence++));
+    }
+
+    /**
+     * @return true if there is no proxy left, neither available nor handed out
+     */
+    public boolean isExhausted(){
+        synchronized(proxies){
+            return proxies.isEmpty() && handedOut.isEmpty();
+        }
+    }
+
+    public int remaining(){
+        synchronized(proxies){
+            return proxies.size();
+        }
+    }
+
+    public List<ScrapProxy> list(){
+        synchronized(proxies){
+            List<ScrapProxy> list = new ArrayList<>(proxies.size());
+            for (Slot slot : proxies) {
+                list.add(slot.proxy);
+            }
+            return list;
+        }
+    }
+
+
 }
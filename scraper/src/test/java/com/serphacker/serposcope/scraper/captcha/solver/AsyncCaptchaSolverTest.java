@@ -0,0 +1,71 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.captcha.solver;
+
+import com.serphacker.serposcope.scraper.captcha.Captcha;
+import com.serphacker.serposcope.scraper.captcha.CaptchaImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AsyncCaptchaSolverTest {
+
+    @Test
+    public void testBulkPolling() throws Exception {
+        StubCaptchaSolver stub = new StubCaptchaSolver("answer", 50);
+        try(AsyncCaptchaSolver async = new AsyncCaptchaSolver(stub, 3, 20)){
+            List<CompletableFuture<Captcha>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(async.solve(new CaptchaImage(new byte[][]{new byte[]{1}})));
+            }
+            assertTrue(async.getInFlight() <= 3);
+            
+            for (CompletableFuture<Captcha> future : futures) {
+                CaptchaImage captcha = (CaptchaImage)future.get(5, TimeUnit.SECONDS);
+                assertEquals(Captcha.Status.SOLVED, captcha.getStatus());
+                assertEquals("answer", captcha.getResponse());
+            }
+            assertEquals(6, stub.getCaptchaCount());
+            // outstanding captchas are checked together
+            assertTrue(stub.getPollCount() < 6 * 3);
+            assertEquals(0, async.getInFlight());
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        StubCaptchaSolver stub = new StubCaptchaSolver("answer", 10000, 50);
+        try(AsyncCaptchaSolver async = new AsyncCaptchaSolver(stub, 3, 20)){
+            Captcha captcha = async.solve(new CaptchaImage(new byte[][]{new byte[]{1}})).get(5, TimeUnit.SECONDS);
+            assertEquals(Captcha.Status.ERROR, captcha.getStatus());
+            assertEquals(Captcha.Error.TIMEOUT, captcha.getError());
+        }
+    }
+
+    @Test
+    public void testBlockingSolver() throws Exception {
+        try(AsyncCaptchaSolver async = new AsyncCaptchaSolver(new BlankCaptchaSolver(), 2, 20)){
+            CaptchaImage captcha = (CaptchaImage)async.solve(new CaptchaImage(new byte[][]{new byte[]{1}})).get(5, TimeUnit.SECONDS);
+            assertEquals(Captcha.Status.SOLVED, captcha.getStatus());
+            assertEquals("blank", captcha.getResponse());
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        StubCaptchaSolver stub = new StubCaptchaSolver("answer", 10000);
+        AsyncCaptchaSolver async = new AsyncCaptchaSolver(stub, 3, 20);
+        CompletableFuture<Captcha> future = async.solve(new CaptchaImage(new byte[][]{new byte[]{1}}));
+        async.close();
+        assertEquals(Captcha.Error.INTERRUPTED, future.get(5, TimeUnit.SECONDS).getError());
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.google.scraper;
+
+import com.serphacker.serposcope.scraper.http.ScrapClient;
+import com.serphacker.serposcope.scraper.http.proxy.DirectNoProxy;
+import com.serphacker.serposcope.scraper.http.proxy.ProxyRotator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GoogleHedgerTest {
+
+    final static long SLOW_MS = 3000;
+
+    HttpServer server;
+    ExecutorService serverExecutor;
+    String url;
+    AtomicInteger slowRequests = new AtomicInteger();
+
+    @Before
+    public void before() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/fast", (exchange) -> {
+            respond(exchange, "fast");
+        });
+        // only the first request of a page is slow
+        server.createContext("/slow", (exchange) -> {
+            if(slowRequests.incrementAndGet() == 1){
+                try {
+                    Thread.sleep(SLOW_MS);
+                } catch(InterruptedException ex){
+                }
+                respond(exchange, "primary");
+            } else {
+                respond(exchange, "hedge");
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    void respond(HttpExchange exchange, String content) {
+        try {
+            byte[] body = content.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try(OutputStream os = exchange.getResponseBody()){
+                os.write(body);
+            }
+        } catch(Exception ex){
+        }
+    }
+
+    @After
+    public void after() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    GoogleHedger hedger(int maxHedgePercent){
+        ProxyRotator rotator = new ProxyRotator(Arrays.asList(new DirectNoProxy()));
+        return new GoogleHedger(rotator, ScrapClient::new, maxHedgePercent);
+    }
+
+    void warmup(GoogleHedger hedger, ScrapClient http){
+        assertEquals(-1, hedger.getDelayMS());
+        for (int i = 0; i < GoogleHedger.MIN_SAMPLES; i++) {
+            assertSame(http, hedger.get(http, url + "/fast", null, (cli) -> {}));
+            assertEquals("fast", http.getContentAsString());
+        }
+        assertTrue(hedger.getDelayMS() >= 0);
+    }
+
+    @Test
+    public void testHedgeWins() throws Exception {
+        try(GoogleHedger hedger = hedger(10); ScrapClient http = new ScrapClient()){
+            warmup(hedger, http);
+
+            long start = System.currentTimeMillis();
+            ScrapClient winner = hedger.get(http, url + "/slow", null, (cli) -> cli.setUseragent("hedge"));
+            assertTrue(System.currentTimeMillis() - start < SLOW_MS);
+            assertNotSame(http, winner);
+            assertEquals(200, winner.getStatusCode());
+            assertEquals("hedge", winner.getContentAsString());
+            assertEquals("hedge", winner.getUseragent());
+            assertEquals(1, hedger.getHedges());
+            assertEquals(1, hedger.getHedgeWins());
+            hedger.release(winner);
+
+            // the aborted primary client is still usable
+            assertSame(http, hedger.get(http, url + "/fast", null, (cli) -> {}));
+            assertEquals("fast", http.getContentAsString());
+        }
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        try(GoogleHedger hedger = hedger(1); ScrapClient http = new ScrapClient()){
+            warmup(hedger, http);
+
+            // 1% of 20 pages doesn't allow a hedge
+            long start = System.currentTimeMillis();
+            assertSame(http, hedger.get(http, url + "/slow", null, (cli) -> {}));
+            assertTrue(System.currentTimeMillis() - start >= SLOW_MS);
+            assertEquals("primary", http.getContentAsString());
+            assertEquals(0, hedger.getHedges());
+        }
+    }
+
+}
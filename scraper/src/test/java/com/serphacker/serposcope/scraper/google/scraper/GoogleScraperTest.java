@@ -13,13 +13,21 @@ import com.serphacker.serposcope.scraper.google.GoogleCountryCode;
 import static com.serphacker.serposcope.scraper.google.GoogleScrapResult.Status.ERROR_NETWORK;
 import static com.serphacker.serposcope.scraper.google.GoogleScrapResult.Status.OK;
 
+import com.serphacker.serposcope.scraper.captcha.CaptchaImage;
+import com.serphacker.serposcope.scraper.captcha.solver.AsyncCaptchaSolver;
+import com.serphacker.serposcope.scraper.captcha.solver.StubCaptchaSolver;
+import com.serphacker.serposcope.scraper.google.GoogleScrapResult.Status;
 import com.serphacker.serposcope.scraper.google.GoogleScrapSearch;
+import com.serphacker.serposcope.scraper.google.GoogleScrapSession;
+import com.serphacker.serposcope.scraper.google.PendingCaptcha;
 import com.serphacker.serposcope.scraper.http.ScrapClient;
+import com.serphacker.serposcope.scraper.http.proxy.HttpProxy;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.is;
 
@@ -31,6 +39,8 @@ import org.junit.runner.RunWith;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.mockito.runners.MockitoJUnitRunner;
@@ -160,6 +170,75 @@ public class GoogleScraperTest {
     }
 
 
+    @Test
+    public void testParkOnCaptcha() throws Exception {
+        ScrapClient http = mock(ScrapClient.class);
+        when(http.get(any(), any())).thenReturn(200);
+        when(http.getContentAsString()).thenReturn("");
+
+        GoogleScrapSearch search = new GoogleScrapSearch();
+        search.setKeyword("suivi de position");
+
+        GoogleScraper scraper = new GoogleScraper(http, null) {
+            @Override
+            protected Status downloadSerp(String url, String referrer, GoogleScrapSearch search, int retry) {
+                ++captchas;
+                CaptchaImage captcha = new CaptchaImage(new byte[][]{new byte[]{1}});
+                return solveCaptcha(new PendingCaptcha(captcha, "https://www.google.com/sorry", "https://www.google.com/sorry/index?continue=x", null));
+            }
+        };
+        try(AsyncCaptchaSolver async = new AsyncCaptchaSolver(new StubCaptchaSolver("answer", 20), 1, 10)){
+            scraper.setAsyncSolver(async);
+            
+            GoogleScrapSession session = new GoogleScrapSession(search);
+            scraper.step(session);
+            assertFalse(session.isDone());
+            assertNotNull(session.getPendingCaptcha());
+            assertEquals(1, session.getCaptchas());
+            verify(http, never()).get(any(), any());
+            
+            session.getPendingCaptcha().getFuture().get(5, TimeUnit.SECONDS);
+            assertFalse(session.isParked());
+            
+            // resumed with the answer instead of fetching the serp again
+            scraper.step(session);
+            verify(http).get("https://www.google.com/sorry/index?continue=x&captcha=answer", "https://www.google.com/sorry");
+            assertNull(session.getPendingCaptcha());
+        }
+    }
+
+    @Test
+    public void testHedgeOnlyLastPage() throws Exception {
+        ScrapClient http = mock(ScrapClient.class);
+        when(http.get(any(), any())).thenReturn(200);
+        when(http.getContentAsString()).thenReturn("");
+        
+        HttpProxy proxy = new HttpProxy("127.0.0.1", 8080);
+        ScrapClient hedgeClient = mock(ScrapClient.class);
+        when(hedgeClient.getStatusCode()).thenReturn(200);
+        when(hedgeClient.getProxy()).thenReturn(proxy);
+        when(hedgeClient.getContentAsString()).thenReturn("");
+        GoogleHedger hedger = mock(GoogleHedger.class);
+        when(hedger.get(any(), any(), any(), any())).thenReturn(hedgeClient);
+        
+        GoogleScraper scraper = new GoogleScraper(http, null);
+        scraper.setHedger(hedger);
+        
+        // the next pages would be requested from the scraper client
+        GoogleScrapSearch search = new GoogleScrapSearch();
+        search.setKeyword("suivi de position");
+        search.setPages(2);
+        scraper.step(new GoogleScrapSession(search));
+        verify(hedger, never()).get(any(), any(), any(), any());
+        assertNull(scraper.getHedgeProxy());
+        
+        search.setPages(1);
+        scraper.step(new GoogleScrapSession(search));
+        verify(hedger).get(any(), any(), any(), any());
+        assertSame(proxy, scraper.getHedgeProxy());
+        verify(hedger).release(hedgeClient);
+    }
+
     @Test
     public void testBuildUule() {
         GoogleScraper scraper = new GoogleScraper(null, null);
@@ -0,0 +1,111 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.google.scraper;
+
+import com.serphacker.serposcope.scraper.ResourceHelper;
+import com.serphacker.serposcope.scraper.http.ScrapClient;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class SerpLinkExtractorTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SerpLinkExtractorTest.class);
+
+    @Test
+    public void testSameAsJsoup() throws Exception {
+        List<String> files = ResourceHelper.listResourceInDirectories(new String[]{
+            "/google/201804/top-10",
+            "/google/201810/top-10",
+            "/google/201804/last-page",
+            "/google/201810/last-page"
+        });
+
+        int desktop = 0;
+        int streamed = 0;
+        for (String file : files) {
+            if (file.endsWith(".res")) {
+                continue;
+            }
+
+            String serpHtml = ResourceHelper.toString(file);
+            byte[] content = serpHtml.getBytes(StandardCharsets.UTF_8);
+
+            SerpLinkExtractor extractor = new SerpLinkExtractor(content, StandardCharsets.UTF_8);
+            boolean extracted = extractor.extract();
+            LOG.debug("{} extracted : {}", file, extracted);
+            if(file.toLowerCase().contains("desktop")){
+                ++desktop;
+            }
+            if(!extracted){
+                continue;
+            }
+            ++streamed;
+
+            ScrapClient jsoupHttp = mock(ScrapClient.class);
+            when(jsoupHttp.getContentAsString()).thenReturn(serpHtml);
+            GoogleScraper jsoupScraper = new GoogleScraper(jsoupHttp, null);
+            List<String> jsoupUrls = new ArrayList<>();
+            jsoupScraper.parseSerp(jsoupUrls);
+
+            ScrapClient streamHttp = mock(ScrapClient.class);
+            when(streamHttp.getContentView()).thenReturn(ByteBuffer.wrap(content).asReadOnlyBuffer());
+            GoogleScraper streamScraper = new GoogleScraper(streamHttp, null);
+            List<String> streamUrls = new ArrayList<>();
+            streamScraper.parseSerp(streamUrls);
+            assertNotNull(streamScraper.lastSerpLinks);
+
+            assertEquals(file, jsoupUrls, streamUrls);
+            assertEquals(file, jsoupScraper.hasNextPage(), streamScraper.hasNextPage());
+            assertEquals(file, jsoupScraper.parseResultsNumberOnFirstPage(), streamScraper.parseResultsNumberOnFirstPage());
+
+            if(file.contains("top-10")){
+                List<String> serpTop10 = Arrays.asList(ResourceHelper.toString(file + ".res").split("\n"));
+                assertEquals(file, serpTop10, streamUrls);
+            }
+        }
+
+        // desktop serps with nested links are left to jsoup
+        assertTrue(streamed >= desktop - 1);
+    }
+
+    @Test
+    public void testUnknownLayout() throws Exception {
+        byte[] content = "<html><body><div id=\"main\"><div><div><a href=\"http://www.example.com/\">x</a></div></div></div></body></html>"
+            .getBytes(StandardCharsets.UTF_8);
+        assertFalse(new SerpLinkExtractor(content, null).extract());
+    }
+
+    @Test
+    public void testMisnestedFallback() throws Exception {
+        byte[] content = "<div id=\"res\"><a href=\"http://www.example.com/\"><b><h3>x</a></b></h3></div>"
+            .getBytes(StandardCharsets.UTF_8);
+        assertFalse(new SerpLinkExtractor(content, null).extract());
+    }
+
+    @Test
+    public void testEscapedLinks() throws Exception {
+        byte[] content = ("<div id=res><div class=g><a href='/url?q=http://www.example.com/&amp;sa=U'><h3>x</h3></a></div>"
+            + "<div class=g><a href=\"https://www.example.org/a?b=1&amp;c=2\"><h3>y</h3></a></div></div>"
+            + "<footer><a href=/next>Next&nbsp;&gt;</a></footer>")
+            .getBytes(StandardCharsets.UTF_8);
+        SerpLinkExtractor extractor = new SerpLinkExtractor(content, null);
+        assertTrue(extractor.extract());
+        assertEquals(Arrays.asList("/url?q=http://www.example.com/&sa=U", "https://www.example.org/a?b=1&c=2"), extractor.getLinks());
+        assertTrue(extractor.hasNextPage());
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.http;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ResponseBufferPoolTest {
+
+    @Test
+    public void testReuse() throws Exception {
+        ResponseBufferPool pool = new ResponseBufferPool(16, 64, 1024);
+        byte[] first = pool.acquire(10);
+        assertEquals(16, first.length);
+        pool.release(first);
+        assertSame(first, pool.acquire(16));
+        
+        byte[] second = pool.acquire(1);
+        assertNotSame(first, second);
+        assertEquals(2, pool.allocated());
+        
+        // foreign buffers are not pooled
+        pool.release(new byte[8]);
+        assertEquals(0, pool.available());
+    }
+
+    @Test
+    public void testGrow() throws Exception {
+        ResponseBufferPool pool = new ResponseBufferPool(16, 64, 1024);
+        byte[] buffer = pool.acquire(16);
+        for (int i = 0; i < buffer.length; i++) {
+            buffer[i] = (byte)i;
+        }
+        byte[] larger = pool.grow(buffer, 16, 17);
+        assertEquals(32, larger.length);
+        assertEquals(15, larger[15]);
+        assertEquals(1, pool.available());
+        assertSame(buffer, pool.acquire(16));
+
+        // too large to be pooled
+        assertEquals(65, pool.acquire(65).length);
+        assertEquals(2, pool.allocated());
+    }
+
+    @Test
+    public void testRetainedBytes() throws Exception {
+        ResponseBufferPool pool = new ResponseBufferPool(16, 64, 32);
+        byte[] first = pool.acquire(16);
+        byte[] second = pool.acquire(16);
+        byte[] third = pool.acquire(16);
+        pool.release(first);
+        pool.release(second);
+        // dropped, the pool already retains 32 bytes
+        pool.release(third);
+        assertEquals(2, pool.available());
+        assertEquals(32, pool.retainedBytes());
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.http;
+
+import com.serphacker.serposcope.scraper.http.extensions.ScrapClientSSLSessionCache;
+import com.serphacker.serposcope.scraper.http.proxy.BindProxy;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * handshakes against a local tls server
+ */
+public class ScrapClientSSLSessionCacheTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScrapClientSSLSessionCacheTest.class);
+
+    final static int REQUESTS = 20;
+
+    HttpsServer server;
+    String url;
+
+    @Before
+    public void before() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try(InputStream is = ScrapClientSSLSessionCacheTest.class.getResourceAsStream("/tls/localhost.jks")){
+            keyStore.load(is, "serposcope".toCharArray());
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, "serposcope".toCharArray());
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagers.getKeyManagers(), null, null);
+
+        server = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+        server.createContext("/", (exchange) -> {
+            exchange.getResponseHeaders().add("Connection", "close");
+            exchange.sendResponseHeaders(200, 2);
+            try(OutputStream os = exchange.getResponseBody()){
+                os.write("ok".getBytes());
+            }
+        });
+        server.start();
+        url = "https://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void after() {
+        server.stop(0);
+    }
+
+    ScrapClient client(ScrapClientSSLSessionCache cache){
+        ScrapClient cli = new ScrapClient();
+        cli.setInsecureSSL(true);
+        cli.sslConnectionFactory.setSessionCache(cache);
+        return cli;
+    }
+
+    @Test
+    public void testResumption() throws Exception {
+        ScrapClientSSLSessionCache cache = new ScrapClientSSLSessionCache();
+
+        ScrapClient cli1 = client(cache);
+        assertEquals(200, cli1.get(url));
+        assertEquals(1, cache.getHandshakes());
+        assertEquals(0, cache.getResumedHandshakes());
+
+        // another client through the same proxy resumes the session
+        ScrapClient cli2 = client(cache);
+        assertEquals(200, cli2.get(url));
+        assertEquals(2, cache.getHandshakes());
+        assertEquals(1, cache.getResumedHandshakes());
+
+        // but not through another proxy
+        cli2.setProxy(new BindProxy("127.0.0.1"));
+        assertEquals(200, cli2.get(url));
+        assertEquals(3, cache.getHandshakes());
+        assertEquals(1, cache.getResumedHandshakes());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testHandshakeTime() throws Exception {
+        ScrapClientSSLSessionCache cache = new ScrapClientSSLSessionCache();
+        ScrapClient cli = client(cache);
+        assertEquals(200, cli.get(url));
+        long fullNanos = cache.getHandshakeNanos();
+        cache.resetMetrics();
+
+        for (int i = 0; i < REQUESTS; i++) {
+            assertEquals(200, client(cache).get(url));
+        }
+        assertEquals(REQUESTS, cache.getHandshakes());
+        assertEquals(REQUESTS, cache.getResumedHandshakes());
+        LOG.info("full handshake {}us, resumed {}", fullNanos / 1000, cache);
+    }
+
+}
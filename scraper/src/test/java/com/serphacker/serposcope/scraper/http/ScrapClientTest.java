@@ -0,0 +1,154 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHeader;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScrapClientTest {
+
+    byte[] page(){
+        byte[] page = new byte[100000];
+        for (int i = 0; i < page.length; i++) {
+            page[i] = (byte)('a' + (i % 7));
+        }
+        return page;
+    }
+
+    BasicHttpEntity entity(byte[] body, String encoding){
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(new ByteArrayInputStream(body));
+        entity.setContentLength(body.length);
+        if(encoding != null){
+            entity.setContentEncoding(new BasicHeader("Content-Encoding", encoding));
+        }
+        return entity;
+    }
+
+    @Test
+    public void testIdentity() throws Exception {
+        ScrapClient cli = new ScrapClient();
+        byte[] page = page();
+        cli.readContent(entity(page, null));
+        byte[] content = cli.getContent();
+        assertTrue(Arrays.equals(page, content));
+        assertEquals(page.length, cli.getCompressedLength());
+        assertEquals(page.length, cli.getUncompressedLength());
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        ScrapClient cli = new ScrapClient();
+        byte[] page = page();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try(GZIPOutputStream gzip = new GZIPOutputStream(baos)){
+            gzip.write(page);
+        }
+        byte[] gzipped = baos.toByteArray();
+
+        cli.readContent(entity(gzipped, "gzip"));
+        byte[] content = cli.getContent();
+        assertTrue(Arrays.equals(page, content));
+        assertEquals(gzipped.length, cli.getCompressedLength());
+        assertEquals(page.length, cli.getUncompressedLength());
+        assertTrue(cli.getCompressedLength() < cli.getUncompressedLength());
+    }
+
+    @Test
+    public void testDeflate() throws Exception {
+        ScrapClient cli = new ScrapClient();
+        byte[] page = page();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try(DeflaterOutputStream deflate = new DeflaterOutputStream(baos)){
+            deflate.write(page);
+        }
+
+        cli.readContent(entity(baos.toByteArray(), "deflate"));
+        byte[] content = cli.getContent();
+        assertTrue(Arrays.equals(page, content));
+        assertEquals(baos.size(), cli.getCompressedLength());
+    }
+
+    @Test
+    public void testMaxLengthAppliesToDecompressedSize() throws Exception {
+        ScrapClient cli = new ScrapClient();
+        cli.setMaxResponseLength(50000);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try(GZIPOutputStream gzip = new GZIPOutputStream(baos)){
+            gzip.write(page());
+        }
+        assertTrue(baos.size() < 50000);
+
+        try {
+            cli.readContent(entity(baos.toByteArray(), "gzip"));
+            fail();
+        } catch(ResponseTooBigException ex){
+        }
+    }
+
+    @Test
+    public void testUnsupportedEncoding() throws Exception {
+        ScrapClient cli = new ScrapClient();
+        try {
+            cli.readContent(entity(page(), "br"));
+            fail();
+        } catch(IOException ex){
+            assertFalse(ex instanceof ResponseTooBigException);
+        }
+    }
+
+    @Test
+    public void testLeasedContent() throws Exception {
+        ResponseBufferPool pool = new ResponseBufferPool(1024, 1024 * 1024, 1024 * 1024);
+        ScrapClient cli = new ScrapClient();
+        cli.setBufferPool(pool);
+        byte[] page = page();
+        BasicHttpEntity entity = entity(page, null);
+        entity.setContentLength(-1);
+        cli.readContent(entity);
+
+        // grown chunk by chunk up to the response size
+        assertEquals(131072, cli.contentBuffer.length);
+        ByteBuffer view = cli.getContentView();
+        assertTrue(view.isReadOnly());
+        assertEquals(page.length, view.remaining());
+        assertEquals(page[page.length - 1], view.get(page.length - 1));
+
+        cli.releaseContent();
+        assertNull(cli.getContentView());
+        // every buffer used while growing is back in the pool
+        assertEquals(8, pool.available());
+        assertEquals(8, pool.allocated());
+        assertEquals(255 * 1024, pool.retainedBytes());
+    }
+
+    @Test
+    public void testAcceptEncoding() throws Exception {
+        ScrapClient cli = new ScrapClient();
+        HttpGet request = new HttpGet("http://www.example.com/");
+        cli.initializeRequest(request, HttpClientContext.create());
+        assertEquals(ScrapClient.ACCEPT_ENCODING, request.getFirstHeader("Accept-Encoding").getValue());
+
+        cli.setCompression(false);
+        request = new HttpGet("http://www.example.com/");
+        cli.initializeRequest(request, HttpClientContext.create());
+        assertNull(request.getFirstHeader("Accept-Encoding"));
+    }
+
+}
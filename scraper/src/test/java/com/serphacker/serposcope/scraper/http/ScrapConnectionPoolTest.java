@@ -0,0 +1,107 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.http;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScrapConnectionPoolTest {
+
+    HttpServer server;
+    String url;
+
+    @Before
+    public void before() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", (exchange) -> {
+            // the client port identifies the connection
+            byte[] body = String.valueOf(exchange.getRemoteAddress().getPort()).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try(OutputStream os = exchange.getResponseBody()){
+                os.write(body);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void after() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testReuseAcrossClients() throws Exception {
+        try(ScrapConnectionPool pool = new ScrapConnectionPool(4, 8)){
+            ScrapClient cli1 = new ScrapClient();
+            cli1.setConnectionPool(pool);
+            ScrapClient cli2 = new ScrapClient();
+            cli2.setConnectionPool(pool);
+
+            assertEquals(200, cli1.get(url));
+            String connection = cli1.getContentAsString();
+            assertEquals(1, pool.available());
+            assertEquals(0, pool.leased());
+
+            assertEquals(200, cli2.get(url));
+            assertEquals(connection, cli2.getContentAsString());
+
+            // another proxy key doesn't get the connection
+            cli2.setInsecureSSL(true);
+            assertEquals(200, cli2.get(url));
+            assertFalse(connection.equals(cli2.getContentAsString()));
+            assertEquals(2, pool.available());
+
+            assertEquals(200, cli1.get(url));
+            assertEquals(connection, cli1.getContentAsString());
+
+            cli1.close();
+            cli2.close();
+            assertEquals(2, pool.available());
+        }
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        try(ScrapConnectionPool pool = new ScrapConnectionPool(4, 8, 1)){
+            ScrapClient cli = new ScrapClient();
+            cli.setConnectionPool(pool);
+            assertEquals(200, cli.get(url));
+            String connection = cli.getContentAsString();
+            assertEquals(1, pool.available());
+
+            Thread.sleep(10);
+            pool.closeIdleConnections();
+            assertEquals(0, pool.available());
+
+            assertEquals(200, cli.get(url));
+            assertFalse(connection.equals(cli.getContentAsString()));
+        }
+    }
+
+    @Test
+    public void testDetachPool() throws Exception {
+        try(ScrapConnectionPool pool = new ScrapConnectionPool(4, 8)){
+            ScrapClient cli = new ScrapClient();
+            cli.setConnectionPool(pool);
+            assertEquals(200, cli.get(url));
+            cli.setConnectionPool(null);
+            assertEquals(200, cli.get(url));
+            assertEquals(1, pool.available());
+            cli.close();
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Serposcope - SEO rank checker https://serposcope.serphacker.com/
+ *
+ * Copyright (c) 2016 SERP Hacker
+ * @author Pierre Nogues <support@serphacker.com>
+ * @license https://opensource.org/licenses/MIT MIT License
+ */
+package com.serphacker.serposcope.scraper.http.proxy;
+
+import static com.serphacker.serposcope.scraper.http.proxy.ProxyHealth.BASE_QUARANTINE_MS;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ProxyHealthTest {
+
+    @Test
+    public void testQuarantineBackoff() {
+        ProxyHealth health = new ProxyHealth();
+        long now = 1000;
+        
+        // a single failure doesn't quarantine
+        health.onFailure(0, now);
+        assertFalse(health.isQuarantined(now));
+        
+        health.onFailure(0, now);
+        assertTrue(health.isQuarantined(now));
+        assertEquals(now + BASE_QUARANTINE_MS, health.getQuarantinedUntil());
+        
+        // half open : the first failure after the quarantine doubles the backoff
+        now = health.getQuarantinedUntil();
+        assertFalse(health.isQuarantined(now));
+        health.onFailure(0, now);
+        assertEquals(now + 2 * BASE_QUARANTINE_MS, health.getQuarantinedUntil());
+        
+        // re-admitted on success
+        now = health.getQuarantinedUntil();
+        health.onSuccess(100, 0);
+        health.onFailure(0, now);
+        assertFalse(health.isQuarantined(now));
+        assertFalse(health.isEvicted());
+        
+        assertEquals(1, health.getSuccesses());
+        assertEquals(4, health.getFailures());
+    }
+    
+    @Test
+    public void testEviction() {
+        ProxyHealth health = new ProxyHealth();
+        for (int i = 0; i < ProxyHealth.FAILURE_THRESHOLD + ProxyHealth.MAX_TRIPS; i++) {
+            assertFalse(health.isEvicted());
+            health.onFailure(0, 0);
+        }
+        assertTrue(health.isEvicted());
+    }
+    
+    @Test
+    public void testScore() {
+        ProxyHealth good = new ProxyHealth();
+        ProxyHealth captcha = new ProxyHealth();
+        ProxyHealth bad = new ProxyHealth();
+        for (int i = 0; i < 10; i++) {
+            good.onSuccess(100, 0);
+            captcha.onSuccess(100, 1);
+            bad.onFailure(0, 0);
+        }
+        assertTrue(good.getScore() > captcha.getScore());
+        assertTrue(captcha.getScore() > bad.getScore());
+        
+        good.onSuccess(200, 0);
+        assertEquals(120, good.getLatencyMS());
+    }
+    
+    @Test
+    public void testRotatorQuarantine() throws Exception {
+        ScrapProxy proxy1 = new HttpProxy("127.0.0.1", 0);
+        ScrapProxy proxy2 = new HttpProxy("127.0.0.2", 0);
+        ProxyRotator rotator = new ProxyRotator(Arrays.asList(proxy1, proxy2));
+        
+        ScrapProxy proxy = rotator.rotate(null);
+        assertSame(proxy1, proxy);
+        for (int i = 0; i < ProxyHealth.FAILURE_THRESHOLD; i++) {
+            rotator.failure(proxy1, 0);
+        }
+        
+        // quarantined proxy comes back after the healthy one
+        assertSame(proxy2, rotator.rotate(proxy1));
+        assertSame(proxy2, rotator.rotate(proxy2));
+        assertNull(rotator.poll());
+        assertEquals(1, rotator.remaining());
+        
+        // evicted proxy is not given back
+        ScrapProxy proxy3 = new HttpProxy("127.0.0.3", 0);
+        rotator.add(proxy3);
+        assertSame(proxy3, rotator.poll());
+        for (int i = 0; i < ProxyHealth.FAILURE_THRESHOLD + ProxyHealth.MAX_TRIPS; i++) {
+            rotator.failure(proxy3, 0);
+        }
+        rotator.add(proxy3);
+        assertEquals(1, rotator.remaining());
+        assertEquals(1, rotator.evicted());
+    }
+    
+}
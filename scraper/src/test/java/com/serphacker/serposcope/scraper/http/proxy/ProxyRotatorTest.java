@@ -8,6 +8,7 @@
 package com.serphacker.serposcope.scraper.http.proxy;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -23,7 +24,7 @@ public class ProxyRotatorTest {
     private static final Logger LOG = LoggerFactory.getLogger(ProxyRotatorTest.class);
 
     @Test
-    public void testCycle() {
+    public void testCycle() throws Exception {
         
         List<ScrapProxy> proxies = Arrays.asList(
             new HttpProxy("127.0.0.1", 0),
@@ -44,6 +45,42 @@ public class ProxyRotatorTest {
         assertEquals(proxies.size(), rotator.remaining());
     }
     
+    @Test
+    public void testRateLimit() throws Exception {
+        ScrapProxy proxy1 = new HttpProxy("127.0.0.1", 0);
+        ScrapProxy proxy2 = new HttpProxy("127.0.0.2", 0);
+        
+        // 100ms between two uses of a same proxy, no jitter
+        ProxyRotator rotator = new ProxyRotator(Arrays.asList(proxy1, proxy2), 600, 0d);
+        
+        long start = System.currentTimeMillis();
+        assertSame(proxy1, rotator.rotate(null));
+        assertSame(proxy2, rotator.rotate(proxy1));
+        assertNull(rotator.poll());
+        assertSame(proxy1, rotator.rotate(proxy2));
+        assertTrue(System.currentTimeMillis() - start >= 100);
+        assertSame(proxy2, rotator.rotate(proxy1));
+        
+        rotator.discard(proxy2);
+        assertEquals(1, rotator.remaining());
+    }
+    
+    @Test
+    public void testExhausted() throws Exception {
+        ScrapProxy proxy = new HttpProxy("127.0.0.1", 0);
+        ProxyRotator rotator = new ProxyRotator(Arrays.asList(proxy));
+        assertFalse(rotator.isExhausted());
+        
+        // handed out, it will be given back
+        assertSame(proxy, rotator.rotate(null));
+        assertNull(rotator.poll());
+        assertFalse(rotator.isExhausted());
+        
+        rotator.discard(proxy);
+        assertTrue(rotator.isExhausted());
+        assertTrue(new ProxyRotator(Collections.EMPTY_LIST).isExhausted());
+    }
+    
     public void testDrain(){
         List<ScrapProxy> proxies = Arrays.asList(
             new HttpProxy("127.0.0.1", 0),
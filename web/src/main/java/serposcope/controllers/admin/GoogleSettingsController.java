@@ -53,7 +53,12 @@ public class GoogleSettingsController extends BaseController {
         @Param("searchDisplayMode") String searchDispayMode,
         @Param("pages") Integer pages, @Param("result-per-page") Integer resultPerPage,
         @Param("min-pause") Integer minPause, @Param("max-pause") Integer maxPause,
-        @Param("maxThreads") Integer maxThreads, @Param("fetchRetry") Integer fetchRetry,
+        @Param("maxThreads") Integer maxThreads, @Param("minThreads") Integer minThreads,
+        @Param("hedgePercent") Integer hedgePercent,
+        @Param("fetchRetry") Integer fetchRetry,
+        @Param("proxyRequestsPerMinute") Integer proxyRequestsPerMinute,
+        @Param("threadPerProxy") Boolean threadPerProxy,
+        @Param("serpKeyframeInterval") Integer serpKeyframeInterval,
         @Param("country") String country, @Param("datacenter") String datacenter,
         @Param("device") Integer device,
         @Param("local") String local, @Param("custom") String custom
@@ -88,6 +93,24 @@ public class GoogleSettingsController extends BaseController {
         if(maxThreads != null){
             options.setMaxThreads(maxThreads);
         }
+        
+        if(minThreads != null && minThreads >= 0){
+            options.setMinThreads(minThreads);
+        }
+        
+        if(hedgePercent != null && hedgePercent >= 0 && hedgePercent <= 100){
+            options.setHedgePercent(hedgePercent);
+        }
+        
+        if(proxyRequestsPerMinute != null && proxyRequestsPerMinute >= 0){
+            options.setProxyRequestsPerMinute(proxyRequestsPerMinute);
+        }
+        options.setThreadPerProxy(threadPerProxy != null && threadPerProxy);
+        
+        if(serpKeyframeInterval != null && serpKeyframeInterval >= 0){
+            options.setSerpKeyframeInterval(serpKeyframeInterval);
+        }
+        
         options.setDefaultCountry(country);
         
         if(!Validator.isEmpty(datacenter)){
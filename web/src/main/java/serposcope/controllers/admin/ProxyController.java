@@ -56,16 +56,25 @@ public class ProxyController extends BaseController {
         
         boolean running = false;
         int progress = 0;
+        int checked = 0;
+        int alive = 0;
+        int total = 0;
         synchronized(lockProxyChecker){
             if(currentProxyChecker != null){
                 running = currentProxyChecker.isAlive();
                 progress = currentProxyChecker.getProgress();
+                checked = currentProxyChecker.getChecked();
+                alive = currentProxyChecker.getAlive();
+                total = currentProxyChecker.getTotalProxies();
             }
         }
         
         return Results.ok()
             .render("running", running)
             .render("progress", progress)
+            .render("checked", checked)
+            .render("alive", alive)
+            .render("total", total)
             .render("proxies", baseDB.proxy.list());
     }
     
@@ -91,7 +91,8 @@ public class SettingsController extends BaseController {
         @Param("anticaptchaApiKey") String anticaptchaApiKey,
         @Param("twoCaptchaKey") String twoCaptchaKey,
         @Param("imageTyperzKey") String imageTyperzKey,
-        @Param("pruneRuns") Integer pruneRuns
+        @Param("pruneRuns") Integer pruneRuns,
+        @Param("proxyJudgeUrl") String proxyJudgeUrl
     ){
         FlashScope flash = context.getFlashScope();
         
@@ -142,6 +143,14 @@ public class SettingsController extends BaseController {
             config.setPruneRuns(pruneRuns);
         }
         
+        if(!Validator.isEmpty(proxyJudgeUrl)){
+            if(!proxyJudgeUrl.startsWith("http://") && !proxyJudgeUrl.startsWith("https://")){
+                flash.error("admin.settings.proxyJudgeUrlError");
+                return Results.redirect(router.getReverseRoute(SettingsController.class, "settings"));
+            }
+            config.setProxyJudgeUrl(proxyJudgeUrl);
+        }
+        
         if(displayHome != null && !Config.DEFAULT_DISPLAY_HOME.equals(displayHome) && Config.VALID_DISPLAY_HOME.contains(displayHome)){
             config.setDisplayHome(displayHome);
         }
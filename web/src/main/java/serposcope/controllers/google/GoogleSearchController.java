@@ -28,8 +28,10 @@ import static com.serphacker.serposcope.models.google.GoogleRank.UNRANKED;
 import com.serphacker.serposcope.models.google.GoogleSettings;
 import com.serphacker.serposcope.models.google.GoogleSearch;
 import com.serphacker.serposcope.models.google.GoogleSerp;
+import com.serphacker.serposcope.models.google.GoogleSerpView;
 import com.serphacker.serposcope.models.google.GoogleSerpEntry;
 import com.serphacker.serposcope.models.google.GoogleTarget;
+import com.serphacker.serposcope.models.google.GoogleTargetMatcher;
 import java.time.LocalDate;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
@@ -171,23 +173,16 @@ public class GoogleSearchController extends GoogleController {
         builder.append(",\"ranks\":[");
         
         final int[] maxRank = new int[1];
+        final GoogleTargetMatcher matcher = new GoogleTargetMatcher(targets);
         
-        googleDB.serp.stream(firstRun.getId(), lastRun.getId(), searchId, (GoogleSerp serp) -> {
+        googleDB.serp.streamView(firstRun.getId(), lastRun.getId(), searchId, (GoogleSerpView serp) -> {
             
             builder.append('[').append(serp.getRunDay().toEpochSecond(ZoneOffset.UTC)*1000l).append(',');
             
             // calendar
             builder.append("null").append(",");
             
-            for (GoogleTarget target : targets) {
-                int position = UNRANKED;
-                for (int i = 0; i < serp.getEntries().size(); i++) {
-                    if(target.match(serp.getEntries().get(i).getUrl())){
-                        position = i + 1;
-                        break;
-                    }
-                }
-                
+            for (int position : matcher.match(serp)) {
                 builder.append(position == UNRANKED ? "null" : position).append(',');
                 if(position != UNRANKED && position > maxRank[0]){
                     maxRank[0] = position;
@@ -243,14 +238,8 @@ public class GoogleSearchController extends GoogleController {
         }
         
         StringBuilder builder = new StringBuilder("{");
-        googleDB.serp.stream(firstRun.getId(), lastRun.getId(), search.getId(), (GoogleSerp t) -> {
-            int position = 0;
-            for (int i = 0; i < t.getEntries().size(); i++) {
-                if(t.getEntries().get(i).getUrl().equals(url)){
-                    position = i + 1;
-                    break;
-                }
-            }
+        googleDB.serp.streamView(firstRun.getId(), lastRun.getId(), search.getId(), (GoogleSerpView t) -> {
+            int position = t.indexOf(url) + 1;
             
             builder
                 .append("\"")
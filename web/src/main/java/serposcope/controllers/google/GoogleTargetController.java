@@ -24,6 +24,7 @@ import com.serphacker.serposcope.models.base.Group;
 import com.serphacker.serposcope.models.base.Run;
 import com.serphacker.serposcope.models.google.GoogleBest;
 import com.serphacker.serposcope.models.google.GoogleRank;
+import com.serphacker.serposcope.models.google.GoogleRankSeries;
 import static com.serphacker.serposcope.models.google.GoogleRank.UNRANKED;
 import com.serphacker.serposcope.models.google.GoogleSearch;
 import com.serphacker.serposcope.models.google.GoogleTarget;
@@ -39,6 +40,7 @@ import java.time.LocalDate;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -406,22 +408,22 @@ public class GoogleTargetController extends GoogleController {
         builder.setCharAt(builder.length() - 1, ']');
         builder.append(",\"ranks\": [");
 
+        // the whole history of the target in one query
+        Map<Integer, GoogleRankSeries> series = googleDB.rankSeries.list(group.getId(), target.getId());
+        
         int maxRank = 0;
         for (Run run : runs) {
             builder.append("\n\t[").append(run.getStarted().toEpochSecond(ZoneOffset.UTC) * 1000l).append(",");
             // calendar
             builder.append("null,");
 
-            Map<Integer, GoogleRank> ranks = googleDB.rank.list(run.getId(), group.getId(), target.getId())
-                .stream().collect(Collectors.toMap((g) -> g.googleSearchId, Function.identity()));
-            
             for (GoogleSearch search : searches) {
-                GoogleRank fullRank = ranks.get(search.getId());
-//                GoogleRank fullRank = googleDB.rank.getFull(run.getId(), group.getId(), target.getId(), search.getId());
-                if (fullRank != null && fullRank.rank != GoogleRank.UNRANKED && fullRank.rank > maxRank) {
-                    maxRank = fullRank.rank;
+                GoogleRankSeries serie = series.get(search.getId());
+                int rank = serie == null ? GoogleRank.UNRANKED : serie.get(run.getId());
+                if (rank != GoogleRank.UNRANKED && rank > maxRank) {
+                    maxRank = rank;
                 }
-                builder.append(fullRank == null || fullRank.rank == GoogleRank.UNRANKED ? "null" : fullRank.rank).append(',');
+                builder.append(rank == GoogleRank.UNRANKED ? "null" : rank).append(',');
             }
 
             builder.setCharAt(builder.length() - 1, ']');
@@ -641,11 +643,22 @@ public class GoogleTargetController extends GoogleController {
             builder.append("[");
         }
 
+        // one query for every run instead of one per run
+        Map<Integer, Map<Integer, GoogleRank>> ranksByRun = new HashMap<>();
+        if (!runs.isEmpty()) {
+            List<GoogleRank> ranks = googleDB.rank.list(
+                runs.stream().map(Run::getId).collect(Collectors.toList()), 
+                Arrays.asList(group.getId()), Arrays.asList(target.getId()), null
+            );
+            for (GoogleRank rank : ranks) {
+                ranksByRun.computeIfAbsent(rank.runId, (k) -> new HashMap<>()).put(rank.googleSearchId, rank);
+            }
+        }
+        
         for (int i = 0; i < runs.size(); i++) {
             Run run = runs.get(i);
 
-            Map<Integer, GoogleRank> ranks = googleDB.rank.list0(run.getId(), group.getId(), target.getId())
-                .stream().collect(Collectors.toMap((r) -> r.googleSearchId, Function.identity()));
+            Map<Integer, GoogleRank> ranks = ranksByRun.getOrDefault(run.getId(), Collections.emptyMap());
 
             for (GoogleSearch search : searches) {
                 StringBuilder builder = builders.get(search.getId());